@@ -0,0 +1,100 @@
+package it.unisa.diem.ingsoft.biblioteca.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseAuthService;
+
+/**
+ * Benchmark dei metodi di DatabaseAuthService.
+ * La tabella auth contiene una sola riga: il tempo e' dominato da BCrypt e non dipende
+ * dalla dimensione del catalogo, quindi l'unico parametro e' il tipo di database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthServiceBenchmark {
+    private static final String PASSWORD = "password";
+    private static final String ANSWER = "risposta";
+
+    @Param({"MEMORY", "DISK"})
+    public String storage;
+
+    private Database database;
+    private AuthService authService;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if ("DISK".equals(this.storage)) {
+            this.file = Files.createTempFile("biblioteca-bench-auth", ".db");
+            Files.delete(this.file);
+            this.database = Database.at(this.file);
+        } else {
+            this.database = Database.inMemory();
+        }
+
+        this.authService = new DatabaseAuthService(this.database);
+        this.authService.setup(PASSWORD, ANSWER, ANSWER, ANSWER);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        this.database.close();
+
+        if (this.file != null) {
+            Files.deleteIfExists(this.file);
+        }
+    }
+
+    @Benchmark
+    public boolean isPresent() {
+        return this.authService.isPresent();
+    }
+
+    @Benchmark
+    public boolean checkPassword() {
+        return this.authService.checkPassword(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean checkAnswer() {
+        return this.authService.checkAnswer(ANSWER, 1);
+    }
+
+    @Benchmark
+    public void changePassword() {
+        this.authService.changePassword(PASSWORD);
+    }
+
+    @Benchmark
+    public void changeAnswer() {
+        this.authService.changeAnswer(ANSWER, 2);
+    }
+
+    @Benchmark
+    public void setupCredentials() {
+        this.authService.setup(PASSWORD, ANSWER, ANSWER, ANSWER);
+    }
+}
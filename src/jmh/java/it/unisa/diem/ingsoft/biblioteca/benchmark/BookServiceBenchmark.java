@@ -0,0 +1,139 @@
+package it.unisa.diem.ingsoft.biblioteca.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+
+/**
+ * Benchmark dei metodi di DatabaseBookService.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BookServiceBenchmark {
+    @Benchmark
+    public List<Book> getAll(Dataset data) {
+        return data.bookService.getAll();
+    }
+
+    @Benchmark
+    public Page<Book> getPage(Dataset data) {
+        return data.bookService.getPage(PageKey.first(), 200, BookSort.TITLE);
+    }
+
+    @Benchmark
+    public Optional<Book> getByIsbn(Dataset data) {
+        return data.bookService.getByIsbn(Dataset.isbn(data.randomAny()));
+    }
+
+    @Benchmark
+    public List<Book> getAllByIsbnContaining(Dataset data) {
+        // Le ultime 6 cifre selezionano pochi libri, come un codice digitato a meta'
+        return data.bookService.getAllByIsbnContaining(Dataset.isbn(data.randomAny()).substring(7));
+    }
+
+    @Benchmark
+    public List<Book> getAllByAuthorContaining(Dataset data) {
+        return data.bookService.getAllByAuthorContaining("AUTORE " + (data.randomAny() % 1000));
+    }
+
+    @Benchmark
+    public List<Book> getAllByGenreContaining(Dataset data) {
+        return data.bookService.getAllByGenreContaining("STORICO");
+    }
+
+    @Benchmark
+    public List<Book> getAllByReleaseYear(Dataset data) {
+        return data.bookService.getAllByReleaseYear(1900 + data.randomAny() % 125);
+    }
+
+    @Benchmark
+    public List<Book> getAllByTitleContaining(Dataset data) {
+        return data.bookService.getAllByTitleContaining("TITOLO " + data.randomAny());
+    }
+
+    @Benchmark
+    public List<Book> search(Dataset data) {
+        return data.bookService.search("titolo " + data.randomAny(), 20);
+    }
+
+    @Benchmark
+    public boolean existsByIsbn(Dataset data) {
+        return data.bookService.existsByIsbn(Dataset.isbn(data.randomAny()));
+    }
+
+    @Benchmark
+    public List<String> existingIsbns(Dataset data) {
+        List<String> isbns = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            isbns.add(Dataset.isbn(data.randomAny()));
+        }
+
+        return data.bookService.existingIsbns(isbns);
+    }
+
+    @Benchmark
+    public int countRemainingCopies(Dataset data) {
+        return data.bookService.countRemainingCopies(Dataset.isbn(data.randomAny()));
+    }
+
+    @Benchmark
+    public boolean isIsbnValid(Dataset data) {
+        return data.bookService.isIsbnValid(Dataset.isbn(data.randomAny()));
+    }
+
+    @Benchmark
+    public boolean addAndRemove(Dataset data) throws Exception {
+        String isbn = Dataset.isbn(data.nextNew());
+        data.bookService.add(new Book(isbn, "NUOVO", "AUTORE", 2024, 1, 1, "GIALLO", "DESCRIZIONE"));
+
+        return data.bookService.removeByIsbn(isbn);
+    }
+
+    @Benchmark
+    public boolean addAllAndRemove(Dataset data) throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            books.add(new Book(Dataset.isbn(data.nextNew()), "NUOVO", "AUTORE", 2024, 1, 1, "GIALLO", "DESCRIZIONE"));
+        }
+        data.bookService.addAll(books);
+
+        boolean removed = true;
+        for (Book book : books) {
+            removed &= data.bookService.removeByIsbn(book.getIsbn());
+        }
+
+        return removed;
+    }
+
+    @Benchmark
+    public void updateByIsbn(Dataset data) throws Exception {
+        int index = data.randomFree();
+        data.bookService.updateByIsbn(new Book(Dataset.isbn(index), "TITOLO " + index,
+                    "AUTORE " + (index % 1000), 1900 + index % 125, 5, 5, "SAGGIO", "DESCRIZIONE"));
+    }
+
+    @Benchmark
+    public void updateRemainingCopies(Dataset data) throws Exception {
+        String isbn = Dataset.isbn(data.randomFree());
+
+        data.bookService.updateRemainingCopies(isbn, -1);
+        data.bookService.updateRemainingCopies(isbn, 1);
+    }
+}
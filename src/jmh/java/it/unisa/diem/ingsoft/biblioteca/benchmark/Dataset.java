@@ -0,0 +1,180 @@
+package it.unisa.diem.ingsoft.biblioteca.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
+import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.UserService;
+
+/**
+ * Database popolato condiviso dai benchmark dei service.
+ * Contiene size utenti e size libri; la prima meta' degli utenti ha un prestito attivo
+ * sul libro con lo stesso indice, la seconda meta' e' riservata ai benchmark di scrittura.
+ * I benchmark di scrittura annullano le proprie modifiche nella stessa invocazione (ad
+ * esempio un prestito viene registrato e restituito); i prestiti conclusi che ne restano
+ * vengono eliminati alla fine di ogni iterazione, cosi' il dataset non cresce.
+ */
+@State(Scope.Benchmark)
+public class Dataset {
+    private static final int BATCH = 10000;
+    private static final String[] GENRES = {"GIALLO", "FANTASY", "STORICO", "DRAMMATICO", "SAGGIO"};
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"MEMORY", "DISK"})
+    public String storage;
+
+    public Database database;
+    public UserService userService;
+    public BookService bookService;
+    public LoanService loanService;
+
+    private Path file;
+    private long seededLoans;
+    private final AtomicInteger nextWrite = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if ("DISK".equals(this.storage)) {
+            this.file = Files.createTempFile("biblioteca-bench", ".db");
+            Files.delete(this.file);
+            this.database = Database.at(this.file);
+        } else {
+            this.database = Database.inMemory();
+        }
+
+        this.populate();
+
+        // I service costruiscono gli indici in memoria sui dati appena inseriti
+        this.userService = new DatabaseUserService(this.database);
+        this.bookService = new DatabaseBookService(this.database);
+        this.loanService = new DatabaseLoanService(this.userService, this.bookService, this.database);
+    }
+
+    @TearDown(Level.Iteration)
+    public void resetWrites() {
+        // Ogni benchmark di scrittura restituisce i prestiti che registra: restano solo
+        // le righe storiche da eliminare
+        this.database.getJdbi()
+            .useHandle(handle -> handle.execute("DELETE FROM loans WHERE id > ?", this.seededLoans));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        this.database.close();
+
+        if (this.file != null) {
+            Files.deleteIfExists(this.file);
+            Files.deleteIfExists(Path.of(this.file + "-wal"));
+            Files.deleteIfExists(Path.of(this.file + "-shm"));
+        }
+    }
+
+    public static String userId(int index) {
+        return String.format("U%09d", index);
+    }
+
+    public static String isbn(int index) {
+        return String.format("978%010d", index);
+    }
+
+    /**
+     * Indice casuale nella prima meta' del dataset: utenti e libri con un prestito attivo.
+     */
+    public int randomLent() {
+        return ThreadLocalRandom.current().nextInt(this.size / 2);
+    }
+
+    /**
+     * Indice casuale nella seconda meta' del dataset: utenti e libri senza prestiti.
+     */
+    public int randomFree() {
+        return this.size / 2 + ThreadLocalRandom.current().nextInt(this.size - this.size / 2);
+    }
+
+    /**
+     * Indice casuale in tutto il dataset.
+     */
+    public int randomAny() {
+        return ThreadLocalRandom.current().nextInt(this.size);
+    }
+
+    /**
+     * Indice mai usato nel dataset, per inserire righe nuove.
+     */
+    public int nextNew() {
+        return this.size + this.nextWrite.getAndIncrement();
+    }
+
+    private void populate() {
+        LocalDate start = LocalDate.now();
+
+        this.database.getJdbi().useTransaction(handle -> {
+            PreparedBatch users = handle.prepareBatch("INSERT INTO users(id, email, name, surname) "
+                    + "VALUES (:id, :email, :name, :surname)");
+            PreparedBatch books = handle.prepareBatch("INSERT INTO books(isbn, title, author, "
+                    + "release_year, total_copies, remaining_copies, genre, description) "
+                    + "VALUES (:isbn, :title, :author, :year, 5, :remaining, :genre, 'DESCRIZIONE')");
+            PreparedBatch loans = handle.prepareBatch("INSERT INTO loans(book_isbn, user_id, "
+                    + "loan_start, loan_deadline) VALUES (:isbn, :user, :start, :deadline)");
+
+            for (int i = 0; i < this.size; i++) {
+                boolean lent = i < this.size / 2;
+
+                users.bind("id", Dataset.userId(i))
+                    .bind("email", Dataset.userId(i).toLowerCase() + "@studenti.unisa.it")
+                    .bind("name", "NOME" + (i % 997))
+                    .bind("surname", "COGNOME" + (i % 1009))
+                    .add();
+                books.bind("isbn", Dataset.isbn(i))
+                    .bind("title", "TITOLO " + i)
+                    .bind("author", "AUTORE " + (i % 1000))
+                    .bind("year", 1900 + i % 125)
+                    .bind("remaining", lent ? 4 : 5)
+                    .bind("genre", GENRES[i % GENRES.length])
+                    .add();
+
+                if (lent) {
+                    loans.bind("isbn", Dataset.isbn(i))
+                        .bind("user", Dataset.userId(i))
+                        .bind("start", start)
+                        .bind("deadline", start.plusDays(1 + i % 60))
+                        .add();
+                }
+
+                if ((i + 1) % BATCH == 0) {
+                    users.execute();
+                    books.execute();
+                    loans.execute();
+                }
+            }
+
+            users.execute();
+            books.execute();
+            loans.execute();
+        });
+
+        this.seededLoans = this.database.getJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT COALESCE(MAX(id), 0) FROM loans")
+                    .mapTo(Long.class)
+                    .one());
+    }
+}
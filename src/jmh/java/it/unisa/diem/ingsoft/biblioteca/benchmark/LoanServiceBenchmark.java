@@ -0,0 +1,123 @@
+package it.unisa.diem.ingsoft.biblioteca.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
+import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanRequest;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanSort;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.ReturnRequest;
+
+/**
+ * Benchmark dei metodi di DatabaseLoanService.
+ * I benchmark di scrittura prestano libri della seconda meta' del dataset e li
+ * restituiscono nella stessa invocazione.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LoanServiceBenchmark {
+    private static final int BATCH = 100;
+
+    @Benchmark
+    public List<Loan> getAll(Dataset data) {
+        return data.loanService.getAll();
+    }
+
+    @Benchmark
+    public List<Loan> getActive(Dataset data) {
+        return data.loanService.getActive();
+    }
+
+    @Benchmark
+    public Page<Loan> getActivePage(Dataset data) {
+        return data.loanService.getActivePage(PageKey.first(), 200, LoanSort.DEADLINE);
+    }
+
+    @Benchmark
+    public Optional<Loan> getByUserIdAndBookIsbn(Dataset data) {
+        int index = data.randomLent();
+        return data.loanService.getByUserIdAndBookIsbn(Dataset.userId(index), Dataset.isbn(index));
+    }
+
+    @Benchmark
+    public List<Loan> getByUserIdContaining(Dataset data) {
+        return data.loanService.getByUserIdContaining(Dataset.userId(data.randomLent()).substring(4));
+    }
+
+    @Benchmark
+    public List<Loan> getByBookIsbnContaining(Dataset data) {
+        return data.loanService.getByBookIsbnContaining(Dataset.isbn(data.randomLent()).substring(7));
+    }
+
+    @Benchmark
+    public boolean isActive(Dataset data) {
+        int index = data.randomLent();
+        return data.loanService.isActive(Dataset.userId(index), Dataset.isbn(index));
+    }
+
+    @Benchmark
+    public int countById(Dataset data) throws Exception {
+        return data.loanService.countById(Dataset.userId(data.randomAny()));
+    }
+
+    @Benchmark
+    public List<Loan> getActiveByUserId(Dataset data) {
+        return data.loanService.getActiveByUserId(Dataset.userId(data.randomLent()));
+    }
+
+    @Benchmark
+    public List<Loan> getActiveByUserIdContaining(Dataset data) {
+        return data.loanService.getActiveByUserIdContaining(Dataset.userId(data.randomLent()).substring(4));
+    }
+
+    @Benchmark
+    public List<Loan> getActiveByBookIsbnContaining(Dataset data) {
+        return data.loanService.getActiveByBookIsbnContaining(Dataset.isbn(data.randomLent()).substring(7));
+    }
+
+    @Benchmark
+    public void registerAndComplete(Dataset data) throws Exception {
+        int index = data.randomFree();
+        String userId = Dataset.userId(index);
+        String isbn = Dataset.isbn(index);
+        LocalDate today = LocalDate.now();
+
+        data.loanService.register(userId, isbn, today, today.plusDays(30));
+        data.loanService.complete(userId, isbn, today);
+    }
+
+    @Benchmark
+    public BatchResult<ReturnRequest> registerAllAndCompleteAll(Dataset data) {
+        LocalDate today = LocalDate.now();
+        int first = data.randomFree();
+
+        List<LoanRequest> loans = new ArrayList<>();
+        List<ReturnRequest> returns = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            // Indici consecutivi nella seconda meta', senza ripetizioni nello stesso lotto
+            int index = data.size / 2 + (first - data.size / 2 + i) % (data.size - data.size / 2);
+            loans.add(new LoanRequest(Dataset.userId(index), Dataset.isbn(index), today, today.plusDays(30)));
+            returns.add(new ReturnRequest(Dataset.userId(index), Dataset.isbn(index)));
+        }
+
+        data.loanService.registerAll(loans);
+        return data.loanService.completeAll(returns, today);
+    }
+}
@@ -0,0 +1,64 @@
+package it.unisa.diem.ingsoft.biblioteca.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark dei controlli di esistenza con e senza il riuso delle istruzioni preparate
+ * (StatementCache): con cacheSize = 0 ogni chiamata prepara di nuovo la propria query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StatementCacheBenchmark {
+    @State(Scope.Benchmark)
+    public static class Cache {
+        @Param({"0", "64"})
+        public int cacheSize;
+
+        @Setup(Level.Trial)
+        public void setup(Dataset data) {
+            data.database.getStatementCache().setMaxSize(this.cacheSize);
+        }
+    }
+
+    @Benchmark
+    public boolean existsByIsbn(Dataset data, Cache cache) {
+        return data.bookService.existsByIsbn(Dataset.isbn(data.randomAny()));
+    }
+
+    @Benchmark
+    public boolean existsById(Dataset data, Cache cache) {
+        return data.userService.existsById(Dataset.userId(data.randomAny()));
+    }
+
+    @Benchmark
+    public boolean existsByEmail(Dataset data, Cache cache) {
+        return data.userService.existsByEmail(Dataset.userId(data.randomAny()).toLowerCase() + "@studenti.unisa.it");
+    }
+
+    @Benchmark
+    public boolean isActive(Dataset data, Cache cache) {
+        int index = data.randomAny();
+        return data.loanService.isActive(Dataset.userId(index), Dataset.isbn(index));
+    }
+
+    @Benchmark
+    public int countById(Dataset data, Cache cache) throws Exception {
+        return data.loanService.countById(Dataset.userId(data.randomAny()));
+    }
+}
@@ -0,0 +1,95 @@
+package it.unisa.diem.ingsoft.biblioteca.benchmark;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.model.UserSort;
+
+/**
+ * Benchmark dei metodi di DatabaseUserService.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UserServiceBenchmark {
+    @Benchmark
+    public List<User> getAll(Dataset data) {
+        return data.userService.getAll();
+    }
+
+    @Benchmark
+    public Page<User> getPage(Dataset data) {
+        return data.userService.getPage(PageKey.first(), 200, UserSort.SURNAME);
+    }
+
+    @Benchmark
+    public Optional<User> getById(Dataset data) {
+        return data.userService.getById(Dataset.userId(data.randomAny()));
+    }
+
+    @Benchmark
+    public List<User> getAllByIdContaining(Dataset data) {
+        return data.userService.getAllByIdContaining(Dataset.userId(data.randomAny()).substring(4));
+    }
+
+    @Benchmark
+    public List<User> getAllByEmailContaining(Dataset data) {
+        return data.userService.getAllByEmailContaining(Dataset.userId(data.randomAny()).toLowerCase());
+    }
+
+    @Benchmark
+    public List<User> getAllByFullNameContaining(Dataset data) {
+        int index = data.randomAny();
+        return data.userService.getAllByFullNameContaining("NOME" + (index % 997), "COGNOME" + (index % 1009));
+    }
+
+    @Benchmark
+    public boolean existsById(Dataset data) {
+        return data.userService.existsById(Dataset.userId(data.randomAny()));
+    }
+
+    @Benchmark
+    public boolean existsByEmail(Dataset data) {
+        return data.userService.existsByEmail(Dataset.userId(data.randomAny()).toLowerCase() + "@studenti.unisa.it");
+    }
+
+    @Benchmark
+    public boolean isEmailValid(Dataset data) {
+        return data.userService.isEmailValid(Dataset.userId(data.randomAny()).toLowerCase() + "@studenti.unisa.it");
+    }
+
+    @Benchmark
+    public boolean isIdValid(Dataset data) {
+        return data.userService.isIdValid(Dataset.userId(data.randomAny()));
+    }
+
+    @Benchmark
+    public boolean registerAndRemove(Dataset data) throws Exception {
+        String id = Dataset.userId(data.nextNew());
+        data.userService.register(new User(id, id.toLowerCase() + "@studenti.unisa.it", "NUOVO", "UTENTE"));
+
+        return data.userService.removeById(id);
+    }
+
+    @Benchmark
+    public void updateById(Dataset data) throws Exception {
+        int index = data.randomFree();
+        String id = Dataset.userId(index);
+        data.userService.updateById(new User(id, id.toLowerCase() + "@studenti.unisa.it",
+                    "NOME" + (index % 997), "COGNOME" + (index % 1009)));
+    }
+}
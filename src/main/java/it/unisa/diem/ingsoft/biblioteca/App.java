@@ -1,7 +1,17 @@
 package it.unisa.diem.ingsoft.biblioteca;
 
-import java.util.Optional;
-
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanSort;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.UserSort;
 import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
 import it.unisa.diem.ingsoft.biblioteca.service.BookService;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseAuthService;
@@ -10,39 +20,46 @@ import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
 import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
+import it.unisa.diem.ingsoft.biblioteca.service.SubstringIndex;
 import it.unisa.diem.ingsoft.biblioteca.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.stage.Stage;
 
 public class App extends Application {
-    private static final String DATABASE_CONNECTION_URL = "jdbc:sqlite:database.db";
+    private static final Logger LOGGER = LoggerFactory.getLogger(App.class);
 
-    @Override
-    public void start(Stage primaryStage) {
-        Optional<Database> databaseOpt = this.connectToDatabase();
+    private static final Path DATABASE_PATH = Path.of("database.db");
 
-        if (databaseOpt.isEmpty()) {
-            System.err.println("La connessione al database è fallita. Il software sara' terminato.");
-            return;
-        }
+    // Il primo tentativo e' immediato, i successivi attendono 100, 200, 400 e 800 ms
+    private static final int CONNECTION_ATTEMPTS = 5;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 100;
 
-        Database database = databaseOpt.get();
-        UserService userService = new DatabaseUserService(database);
-        AuthService authService = new DatabaseAuthService(database);
-        BookService bookService = new DatabaseBookService(database);
-        LoanService loanService = new DatabaseLoanService(userService, bookService, database);
-        ServiceRepository serviceRepository = new ServiceRepository(authService, userService,
-                bookService, loanService);
+    // Le view aperte dalla homepage, lette in background dopo il login per riscaldare FXML e classi
+    private static final List<String> PRELOADED_VIEWS = List.of(Views.HOMEPAGE_PATH, Views.BOOK_PATH,
+            Views.LOAN_PATH, Views.USER_PATH);
+    // Come PagedTableLoader.PAGE_SIZE: la prima pagina che le tabelle chiederanno
+    private static final int WARM_UP_PAGE_SIZE = 200;
 
-        // password di default
-        if (!authService.isPresent()) {
-            authService.setup("admin", "GRUPPO06", "INGEGNERIA SOFTWARE", "NICOLA CAPUANO");
-        }
+    private static final ExecutorService STARTUP = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Override
+    public void start(Stage primaryStage) {
+        long startup = System.nanoTime();
+
+        // La view di login non usa il database finche' non si preme il pulsante: viene
+        // mostrata subito, mentre in background si apre il database e si preparano i service
+        CompletableFuture<ServiceRepository> servicesReady = CompletableFuture
+            .supplyAsync(this::startServices, STARTUP);
+        FXMLLoader loader = App.timed("lettura della view di login", () -> Scenes.load(Views.LOGIN_PATH));
 
-        FXMLLoader loader = Scenes.setupLoader(Views.LOGIN_PATH, serviceRepository);
         Parent root = loader.getRoot();
         Scene scene = new Scene(root);
 
@@ -55,26 +72,136 @@ public class App extends Application {
         primaryStage.show();
 
         //Rendiamo la finisce di nuovo visibile
-        javafx.application.Platform.runLater(() -> {
+        Platform.runLater(() -> {
             primaryStage.setOpacity(1);
         });
+
+        App.log("avvio fino alla schermata di login", startup);
+
+        // I pulsanti del login restano disabilitati finche' il controller non riceve i service
+        servicesReady.whenComplete((serviceRepository, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                LOGGER.error("La connessione al database e' fallita. Il software sara' terminato.", cause);
+
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Errore database");
+                alert.setHeaderText(null);
+                alert.setContentText("La connessione al database è fallita. Il software sarà terminato.");
+                alert.showAndWait();
+                Platform.exit();
+                return;
+            }
+
+            Scenes.setServices(loader, serviceRepository);
+            App.log("avvio fino al collegamento dei service", startup);
+            this.warmUp(serviceRepository);
+        }));
     }
 
-    private Optional<Database> connectToDatabase() {
-        int i = 0;
-        Optional<Database> databaseOpt = Optional.empty();
+    /**
+     * @brief Apre il database e crea i service. Gli indici delle ricerche vengono costruiti
+     *  in parallelo tra loro e con la creazione della password di default.
+     * @throws IllegalStateException Se il database non e' raggiungibile.
+     */
+    private ServiceRepository startServices() {
+        Database database = App.timed("connessione e verifica dello schema", this::connectToDatabase);
 
-        while (databaseOpt.isEmpty() && i < 3) {
-            try {
-                Thread.sleep(3000);
-            } catch(InterruptedException e) {}
+        CompletableFuture<Void> indexes = CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> App.timed("indice delle matricole",
+                        () -> SubstringIndex.ofUserIds(database)), STARTUP),
+                CompletableFuture.runAsync(() -> App.timed("indice degli ISBN",
+                        () -> SubstringIndex.ofBookIsbns(database)), STARTUP));
+
+        AuthService authService = new DatabaseAuthService(database);
+
+        // password di default
+        if (!authService.isPresent()) {
+            App.timed("password di default", () -> {
+                authService.setup("admin", "GRUPPO06", "INGEGNERIA SOFTWARE", "NICOLA CAPUANO");
+                return null;
+            });
+        }
+
+        indexes.join();
+        UserService userService = new DatabaseUserService(database);
+        BookService bookService = new DatabaseBookService(database);
+        LoanService loanService = new DatabaseLoanService(userService, bookService, database);
+        // Le statistiche delle query restano consultabili da JConsole per tutta l'esecuzione
+        database.getQueryMetrics().registerMBean();
+        ServiceRepository serviceRepository = new ServiceRepository(authService, userService,
+                bookService, loanService, database.getQueryMetrics());
+        serviceRepository.getOverdueMonitor().start();
+
+        return serviceRepository;
+    }
+
+    /**
+     * @brief Prepara in background, mentre viene mostrato il login, cio' che servira' subito
+     *  dopo: le view della homepage e la prima pagina di ogni tabella. Gli errori vengono
+     *  solo registrati, la stessa operazione verra' ripetuta quando servira'.
+     */
+    private void warmUp(ServiceRepository serviceRepository) {
+        for (String view : PRELOADED_VIEWS) {
+            CompletableFuture.runAsync(() -> App.timed("lettura di " + view, () -> Scenes.load(view)), STARTUP)
+                .exceptionally(App::logWarmUpError);
+        }
+
+        CompletableFuture.runAsync(() -> App.timed("prima pagina di libri, utenti e prestiti", () -> {
+                    serviceRepository.getBookService().getPage(PageKey.first(), WARM_UP_PAGE_SIZE, BookSort.TITLE);
+                    serviceRepository.getUserService().getPage(PageKey.first(), WARM_UP_PAGE_SIZE, UserSort.SURNAME);
+                    return serviceRepository.getLoanService()
+                        .getActivePage(PageKey.first(), WARM_UP_PAGE_SIZE, LoanSort.DEADLINE);
+                }), STARTUP)
+            .exceptionally(App::logWarmUpError);
+    }
+
+    private static Void logWarmUpError(Throwable e) {
+        LOGGER.warn("Preparazione in background non riuscita", e);
+        return null;
+    }
+
+    /**
+     * @brief Apre il database, riprovando con attese crescenti se non e' raggiungibile.
+     * @throws IllegalStateException Se tutti i tentativi falliscono.
+     */
+    private Database connectToDatabase() {
+        long delay = FIRST_RETRY_DELAY_MILLIS;
+        RuntimeException lastError = null;
 
-            databaseOpt = Database.connect(DATABASE_CONNECTION_URL); 
-            i++;
+        for (int i = 1; i <= CONNECTION_ATTEMPTS; i++) {
+            LOGGER.info("Tentativo di connessione al database. Tentativo numero: {}", i);
 
-            System.out.println("Tentativo di connessione al database. Tentativo numero: " + i);
+            try {
+                // Le ricerche dei controller girano in background: serve un pool, non una connessione sola
+                return Database.pooled(DATABASE_PATH);
+            } catch (RuntimeException e) {
+                lastError = e;
+                LOGGER.warn("Tentativo di connessione numero {} fallito", i, e);
+            }
+
+            if (i < CONNECTION_ATTEMPTS) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                delay *= 2;
+            }
         }
 
-        return databaseOpt;
+        throw new IllegalStateException("Database non raggiungibile: " + DATABASE_PATH, lastError);
+    }
+
+    private static <T> T timed(String phase, Supplier<T> task) {
+        long start = System.nanoTime();
+        T result = task.get();
+        App.log(phase, start);
+        return result;
+    }
+
+    private static void log(String phase, long start) {
+        LOGGER.info("Avvio: {} in {} ms", phase, (System.nanoTime() - start) / 1_000_000);
     }
 }
@@ -8,36 +8,98 @@ import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
+import org.jdbi.v3.core.ConnectionFactory;
+import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
 import it.unisa.diem.ingsoft.biblioteca.mapper.BookMapper;
+import it.unisa.diem.ingsoft.biblioteca.mapper.LoanDetailsMapper;
 import it.unisa.diem.ingsoft.biblioteca.mapper.LoanMapper;
 import it.unisa.diem.ingsoft.biblioteca.mapper.UserMapper;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
 
 /**
  * @brief Classe di incapsulamento del database con JDBI
  */
 public class Database {
-    private final Connection connection;
+    private static final Duration DEFAULT_BUSY_TIMEOUT = Duration.ofSeconds(5);
+
+    private final List<AutoCloseable> resources;
+    private final Map<String, Object> shared = new ConcurrentHashMap<>();
     private final Jdbi jdbi;
+    private final Jdbi readJdbi;
+    private final Dialect dialect;
+    private final StatementCache statementCache;
+    private final QueryMetrics queryMetrics;
 
     /**
      * @brief Costruttore che inizializza JDBI per un database
+     *  La connessione viene usata da un handle alla volta: un thread che apre un handle
+     *  attende che gli altri thread abbiano chiuso il proprio, cosi' le transazioni di
+     *  thread diversi non si intrecciano sulla stessa connessione.
      * @param connection La connessione verso il database
      */
     public Database(Connection connection) {
-        this.connection = connection;
+        this(Jdbi.create(new SingleConnectionFactory(connection)), null, List.of(connection));
+    }
+
+    /**
+     * @brief Costruttore che inizializza JDBI con un'istanza per le scritture ed una,
+     *  opzionale, per le sole letture.
+     * @param jdbi L'istanza JDBI usata per le scritture.
+     * @param readJdbi L'istanza JDBI usata per le letture, null se coincide con jdbi.
+     * @param resources Le risorse da chiudere alla chiusura del database.
+     */
+    private Database(Jdbi jdbi, Jdbi readJdbi, List<AutoCloseable> resources) {
+        this.resources = resources;
 
-        this.jdbi = Jdbi.create(connection);
-        this.jdbi.registerRowMapper(new UserMapper());
-        this.jdbi.registerRowMapper(new LoanMapper());
-        this.jdbi.registerRowMapper(new BookMapper());
+        this.jdbi = jdbi;
+        this.readJdbi = readJdbi != null ? readJdbi : jdbi;
+        this.statementCache = new StatementCache(StatementCache.DEFAULT_MAX_SIZE);
+        this.queryMetrics = new QueryMetrics();
+        this.jdbi.setStatementBuilderFactory(this.queryMetrics.countingBatchRows(this.statementCache));
+        this.readJdbi.setStatementBuilderFactory(this.queryMetrics.countingBatchRows(this.statementCache));
+        this.jdbi.getConfig(SqlStatements.class).setSqlLogger(this.queryMetrics);
+        this.readJdbi.getConfig(SqlStatements.class).setSqlLogger(this.queryMetrics);
+        this.dialect = jdbi.withHandle(handle -> Dialect.of(handle.getConnection()));
+        this.registerMappers(this.jdbi);
+        if (this.readJdbi != this.jdbi) {
+            this.registerMappers(this.readJdbi);
+        }
 
         this.setupTables();
     }
 
+    /**
+     * @brief Costruttore per i Database che inoltrano le operazioni ad un altro Database
+     *  gia' aperto, come ReplicatedDatabase: JDBI, tipo e schema sono quelli di primary,
+     *  mentre gli oggetti condivisi (getShared) sono propri.
+     * @param primary Il database a cui inoltrare le scritture.
+     */
+    Database(Database primary) {
+        this.resources = List.of();
+
+        this.jdbi = primary.jdbi;
+        this.readJdbi = primary.readJdbi;
+        this.dialect = primary.dialect;
+        this.statementCache = primary.statementCache;
+        this.queryMetrics = primary.queryMetrics;
+    }
+
     /**
      * @brief Crea un oggetto di classe Database che incapsula JDBI per la connessione ad un
      *  database.
@@ -91,6 +153,138 @@ public class Database {
         }
     }
 
+    /**
+     * @brief Crea un oggetto di classe Database SU DISCO con SQLite, in modalita' WAL,
+     *  servito da un pool con una connessione di scrittura ed un processore per lettore.
+     * @param path Il percorso del database.
+     * @return Un oggetto di tipo Database con un pool di connessioni verso il database su disco
+     * @see Database#pooled(Path, int, Duration)
+     */
+    public static Database pooled(Path path) {
+        int readers = Runtime.getRuntime().availableProcessors();
+        return Database.pooled(path, readers, DEFAULT_BUSY_TIMEOUT);
+    }
+
+    /**
+     * @brief Crea un oggetto di classe Database SU DISCO con SQLite servito da due pool di
+     *  connessioni: uno con una singola connessione di scrittura e uno con N connessioni
+     *  di sola lettura.
+     *  Il database e' aperto con journal_mode=WAL e synchronous=NORMAL, in modo che le letture
+     *  non attendano la fine di una scrittura lunga (ad esempio un addAll). Le transazioni
+     *  di scrittura acquisiscono il lock di scrittura gia' all'inizio (BEGIN IMMEDIATE).
+     * @param path Il percorso del database.
+     * @param readers Il numero di connessioni di sola lettura.
+     * @param busyTimeout Il tempo massimo di attesa quando il database e' bloccato da un'altra
+     *  connessione.
+     * @return Un oggetto di tipo Database con un pool di connessioni verso il database su disco
+     * @throws IllegalArgumentException Se il numero di lettori non e' positivo.
+     */
+    public static Database pooled(Path path, int readers, Duration busyTimeout) {
+        if (readers < 1) {
+            throw new IllegalArgumentException("Numero di lettori non valido: " + readers);
+        }
+
+        String url = "jdbc:sqlite:" + path.toAbsolutePath().toString();
+        int timeout = (int) busyTimeout.toMillis();
+
+        SQLiteConfig writerConfig = new SQLiteConfig();
+        writerConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        writerConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        writerConfig.setBusyTimeout(timeout);
+        // BEGIN IMMEDIATE: con piu' sedi sullo stesso file, una transazione che legge e poi
+        // scrive non puo' trovare le proprie letture superate da un'altra sede
+        writerConfig.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+        // I lettori vengono aperti dopo lo scrittore: il file esiste gia' in modalita' WAL
+        SQLiteConfig readerConfig = new SQLiteConfig();
+        readerConfig.setBusyTimeout(timeout);
+
+        HikariDataSource writerPool = Database.createPool("biblioteca-writer", url, writerConfig, 1,
+                false);
+        HikariDataSource readerPool;
+        try {
+            readerPool = Database.createPool("biblioteca-reader", url, readerConfig, readers, true);
+        } catch (RuntimeException e) {
+            writerPool.close();
+            throw e;
+        }
+
+        return new Database(Jdbi.create(writerPool), Jdbi.create(readerPool),
+                List.of(readerPool, writerPool));
+    }
+
+    /**
+     * @brief Crea un oggetto di classe Database su un server PostgreSQL, servito da una
+     *  connessione di scrittura ed un processore per lettore.
+     * @param connectionUrl L'URL JDBC del database, con le credenziali.
+     * @return Un oggetto di tipo Database con un pool di connessioni verso il server
+     * @see Database#postgres(String, int)
+     */
+    public static Database postgres(String connectionUrl) {
+        int readers = Runtime.getRuntime().availableProcessors();
+        return Database.postgres(connectionUrl, readers);
+    }
+
+    /**
+     * @brief Crea un oggetto di classe Database su un server PostgreSQL, condivisibile da
+     *  piu' sedi della biblioteca, servito da due pool di connessioni: uno con una singola
+     *  connessione di scrittura, come su SQLite, e uno con N connessioni di sola lettura.
+     *  Lo schema usa indici trigram GIN (estensione pg_trgm) per le ricerche per
+     *  sottostringa: l'utente deve poter creare l'estensione o questa deve essere gia'
+     *  installata nel database.
+     * @param connectionUrl L'URL JDBC del database, con le credenziali.
+     * @param readers Il numero di connessioni di sola lettura.
+     * @return Un oggetto di tipo Database con un pool di connessioni verso il server
+     * @throws IllegalArgumentException Se il numero di lettori non e' positivo.
+     */
+    public static Database postgres(String connectionUrl, int readers) {
+        if (readers < 1) {
+            throw new IllegalArgumentException("Numero di lettori non valido: " + readers);
+        }
+
+        HikariDataSource writerPool = Database.createPool("biblioteca-writer", connectionUrl, 1, false);
+        HikariDataSource readerPool;
+        try {
+            readerPool = Database.createPool("biblioteca-reader", connectionUrl, readers, true);
+        } catch (RuntimeException e) {
+            writerPool.close();
+            throw e;
+        }
+
+        return new Database(Jdbi.create(writerPool), Jdbi.create(readerPool),
+                List.of(readerPool, writerPool));
+    }
+
+    private static HikariDataSource createPool(String name, String url, int size, boolean readOnly) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(url);
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(size);
+        config.setReadOnly(readOnly);
+
+        return new HikariDataSource(config);
+    }
+
+    private static HikariDataSource createPool(String name, String url, SQLiteConfig sqliteConfig,
+            int size, boolean queryOnly) {
+        SQLiteDataSource dataSource = new SQLiteDataSource(sqliteConfig);
+        dataSource.setUrl(url);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setDataSource(dataSource);
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(size);
+
+        // SQLite non permette di cambiare il flag read-only di una connessione gia' aperta
+        if (queryOnly) {
+            config.setConnectionInitSql("PRAGMA query_only = true");
+        }
+
+        return new HikariDataSource(config);
+    }
+
     /**
      * @brief Getter per l'istanza di JDBI connessa al database
      */
@@ -99,57 +293,122 @@ public class Database {
     }
 
     /**
-     * @brief Chiude la connessione col database
+     * @brief Getter per il tipo di database, per le query che differiscono tra SQLite e
+     *  PostgreSQL.
+     */
+    public Dialect getDialect() {
+        return this.dialect;
+    }
+
+    /**
+     * @brief Getter per la cache delle istruzioni preparate, condivisa dalle istanze di
+     *  scrittura e di lettura.
+     */
+    public StatementCache getStatementCache() {
+        return this.statementCache;
+    }
+
+    /**
+     * @brief Getter per le statistiche delle query eseguite, di scrittura e di lettura.
+     */
+    public QueryMetrics getQueryMetrics() {
+        return this.queryMetrics;
+    }
+
+    /**
+     * @brief Getter per l'istanza di JDBI da usare per le sole letture.
+     *  Se il thread corrente ha gia' un handle di scrittura aperto (ad esempio dentro una
+     *  transazione) viene restituita l'istanza di scrittura, cosi' da leggere i dati
+     *  non ancora confermati.
+     */
+    public Jdbi getReadJdbi() {
+        if (this.jdbi.getHandleScope().get() != null) {
+            return this.jdbi;
+        }
+
+        return this.readJdbi;
+    }
+
+    /**
+     * @brief Restituisce un oggetto condiviso da tutti i service che usano questo database
+     *  (ad esempio un indice in memoria), creandolo alla prima richiesta.
+     * @param key La chiave che identifica l'oggetto.
+     * @param factory La funzione che crea l'oggetto a partire dal database.
+     * @return L'oggetto associato alla chiave.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getShared(String key, Function<Database, T> factory) {
+        return (T) this.shared.computeIfAbsent(key, k -> factory.apply(this));
+    }
+
+    /**
+     * @brief Chiamato dai service, tramite ChangeNotifier, per ogni modifica eseguita con
+     *  l'handle specificato, prima che venga confermata.
+     *  Non fa nulla: ReplicatedDatabase la ridefinisce per registrare le modifiche nel
+     *  change log da cui vengono aggiornate le repliche, e richiede che l'handle sia in
+     *  una transazione. I service eseguono quindi in una transazione ogni modifica che
+     *  notificano.
+     * @param handle L'handle con cui sono state eseguite le modifiche.
+     * @param changes Le modifiche, nell'ordine in cui sono state eseguite.
+     */
+    public void recordChanges(Handle handle, List<EntityChange> changes) {
+    }
+
+    /**
+     * @brief Chiude le connessioni col database
      */
     public void close() {
-        try {
-            if (this.connection.isClosed()) { return; }
-            this.connection.close();
-        } catch(SQLException e) {
-            e.printStackTrace();
+        this.queryMetrics.unregisterMBean();
+
+        for (AutoCloseable resource : this.resources) {
+            try {
+                if (resource instanceof Connection connection && connection.isClosed()) {
+                    continue;
+                }
+
+                resource.close();
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
         }
     }
 
+    /**
+     * @brief Fornisce a JDBI sempre la stessa connessione, senza chiuderla alla chiusura
+     *  degli handle, trattenendo un lock per tutta la durata dell'handle.
+     */
+    private static class SingleConnectionFactory implements ConnectionFactory {
+        private final Connection connection;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        SingleConnectionFactory(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Connection openConnection() {
+            this.lock.lock();
+            return this.connection;
+        }
+
+        @Override
+        public void closeConnection(Connection connection) {
+            this.lock.unlock();
+        }
+    }
+
+    private void registerMappers(Jdbi jdbi) {
+        jdbi.registerRowMapper(new UserMapper());
+        jdbi.registerRowMapper(new LoanMapper());
+        jdbi.registerRowMapper(new LoanDetailsMapper());
+        jdbi.registerRowMapper(new BookMapper());
+    }
+
+    /**
+     * @brief Crea o aggiorna lo schema del database.
+     * @see SchemaMigrator
+     */
     private void setupTables() {
-        String usersSql = "CREATE TABLE IF NOT EXISTS users ("
-            + "id TEXT NOT NULL UNIQUE PRIMARY KEY,"
-            + "email TEXT NOT NULL UNIQUE,"
-            + "name TEXT NOT NULL,"
-            + "surname TEXT NOT NULL"
-            + ");";
-
-        String loansSql = "CREATE TABLE IF NOT EXISTS loans ("
-            + "id INTEGER PRIMARY KEY,"
-            + "book_isbn TEXT NOT NULL,"
-            + "user_id TEXT NOT NULL,"
-            + "loan_start DATE NOT NULL,"
-            + "loan_deadline DATE NOT NULL,"
-            + "loan_end DATE"
-            + ");";
-
-        String booksSql = "CREATE TABLE IF NOT EXISTS books ("
-            + "isbn TEXT NOT NULL PRIMARY KEY,"
-            + "title TEXT NOT NULL,"
-            + "author TEXT NOT NULL,"
-            + "release_year INTEGER NOT NULL,"
-            + "total_copies INTEGER NOT NULL,"
-            + "remaining_copies INTEGER NOT NULL,"
-            + "genre TEXT NOT NULL,"
-            + "description TEXT NOT NULL"
-            + ");";
-
-        String authSql = "CREATE TABLE IF NOT EXISTS auth ("
-            + "password_hash TEXT NOT NULL PRIMARY KEY,"
-            + "question_one TEXT NOT NULL,"
-            + "question_two TEXT NOT NULL,"
-            + "question_three TEXT NOT NULL"
-            + ");";
-
-        this.jdbi.useHandle(handle -> {
-            handle.execute(usersSql);
-            handle.execute(loansSql);
-            handle.execute(booksSql);
-            handle.execute(authSql);
-        });
+        SchemaMigrator.migrate(this.jdbi);
     }
 }
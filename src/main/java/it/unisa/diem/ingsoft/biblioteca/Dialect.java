@@ -0,0 +1,75 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * @brief Il tipo di database su cui e' aperto un Database, con le poche differenze di
+ *  sintassi SQL che i service devono conoscere.
+ *  Le query comuni ai due database (ON CONFLICT, RETURNING, confronti tra tuple, LIMIT)
+ *  non passano da qui.
+ */
+public enum Dialect {
+    SQLITE,
+    POSTGRES;
+
+    /**
+     * @brief Ricava il dialetto dal prodotto dichiarato dal driver JDBC.
+     * @throws IllegalStateException Se il database non e' ne' SQLite ne' PostgreSQL.
+     */
+    public static Dialect of(Connection connection) {
+        String product;
+        try {
+            product = connection.getMetaData()
+                .getDatabaseProductName();
+        } catch (SQLException e) {
+            throw new RuntimeException("Impossibile determinare il tipo di database", e);
+        }
+
+        if ("SQLite".equalsIgnoreCase(product)) {
+            return SQLITE;
+        }
+
+        if ("PostgreSQL".equalsIgnoreCase(product)) {
+            return POSTGRES;
+        }
+
+        throw new IllegalStateException("Database non supportato: " + product);
+    }
+
+    /**
+     * @brief Restituisce l'operatore per la ricerca per sottostringa senza distinguere
+     *  maiuscole e minuscole: la LIKE di SQLite non le distingue, quella di PostgreSQL si'.
+     */
+    public String like() {
+        return this == POSTGRES ? "ILIKE" : "LIKE";
+    }
+
+    /**
+     * @brief Restituisce la funzione che calcola il massimo tra due valori della stessa riga.
+     */
+    public String greatest() {
+        return this == POSTGRES ? "GREATEST" : "MAX";
+    }
+
+    /**
+     * @brief Converte in testo un'espressione numerica, per confrontarla con LIKE.
+     *  SQLite converte da solo, PostgreSQL richiede un cast esplicito.
+     */
+    public String asText(String expression) {
+        return this == POSTGRES ? "CAST(" + expression + " AS TEXT)" : expression;
+    }
+
+    /**
+     * @brief Restituisce la clausola, da aggiungere in fondo ad una select, che blocca le
+     *  righe lette fino alla fine della transazione. Su SQLite non serve: la transazione di
+     *  scrittura blocca gia' l'intero database.
+     */
+    public String forUpdate() {
+        return this == POSTGRES ? " FOR UPDATE" : "";
+    }
+}
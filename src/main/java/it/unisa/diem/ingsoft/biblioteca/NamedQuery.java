@@ -0,0 +1,37 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+/**
+ * @brief Le query brevi eseguite piu' spesso dai service, come i controlli di esistenza
+ *  chiamati prima di ogni inserimento o prestito.
+ *  Per queste query il tempo di preparazione dell'istruzione supera quello di esecuzione:
+ *  StatementCache le prepara non appena incontra una nuova connessione e non le scarta
+ *  mai. Le altre query vengono comunque riusate, ma preparate al primo utilizzo.
+ *  Il testo deve essere valido su SQLite e su PostgreSQL.
+ */
+public enum NamedQuery {
+    BOOK_EXISTS_BY_ISBN("SELECT COUNT(isbn) FROM books WHERE isbn = :isbn"),
+    BOOK_BY_ISBN("SELECT * FROM books WHERE isbn = :isbn"),
+    USER_EXISTS_BY_ID("SELECT COUNT(id) FROM users WHERE id = :id"),
+    USER_EXISTS_BY_EMAIL("SELECT COUNT(email) FROM users WHERE email = :email"),
+    USER_ACTIVE_LOANS("SELECT active_loans FROM users WHERE id = :user_id"),
+    LOAN_IS_ACTIVE("SELECT COUNT(*) FROM loans "
+            + "WHERE user_id = :user_id AND book_isbn = :book_isbn AND loan_end IS NULL"),
+    AUTH_IS_PRESENT("SELECT COUNT(*) FROM auth");
+
+    private final String sql;
+
+    NamedQuery(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * @brief Restituisce il testo della query, con i parametri nominali di JDBI.
+     */
+    public String getSql() {
+        return this.sql;
+    }
+}
@@ -0,0 +1,447 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementBuilder;
+import org.jdbi.v3.core.statement.StatementBuilderFactory;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @brief Raccoglie, per ogni query eseguita su un Database, il numero di esecuzioni, le
+ *  righe lette o modificate e la distribuzione dei tempi di esecuzione (mediana, 99-esimo
+ *  percentile e massimo), e registra nel log le esecuzioni piu' lente di una soglia.
+ *  Viene installato come SqlLogger di JDBI: il tempo misurato e' quello dell'istruzione
+ *  JDBC, senza la lettura delle righe. Le NamedQuery sono identificate dal proprio nome, le
+ *  altre query dal testo SQL prima dei template, cosi' le liste di lunghezza diversa
+ *  (IN (<isbns>)) condividono le stesse statistiche.
+ *  Le righe modificate da un PreparedBatch sono la somma dei risultati di executeBatch,
+ *  raccolti dalle istruzioni create con countingBatchRows: dopo un batch getUpdateCount
+ *  restituisce -1.
+ *  Il log delle query lente riporta il testo SQL con i soli nomi dei parametri: i valori
+ *  legati (matricole, email, hash) non vengono mai registrati.
+ *  Le statistiche sono visibili dalla vista di diagnostica e, dopo registerMBean(), via JMX.
+ */
+public class QueryMetrics implements SqlLogger, QueryMetricsMXBean {
+    /**
+     * @brief Il nome con cui le statistiche vengono registrate nel server JMX della JVM.
+     */
+    public static final String OBJECT_NAME = "it.unisa.diem.ingsoft.biblioteca:type=QueryMetrics";
+
+    /**
+     * @brief Soglia predefinita oltre cui un'esecuzione viene registrata nel log.
+     */
+    public static final Duration DEFAULT_SLOW_QUERY_THRESHOLD = Duration.ofMillis(100);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryMetrics.class);
+    // Attributo dello StatementContext con le righe modificate dall'ultimo executeBatch
+    private static final String BATCH_ROWS = "queryMetrics.batchRows";
+    private static final Map<String, NamedQuery> NAMED_QUERIES = new HashMap<>();
+
+    static {
+        for (NamedQuery query : NamedQuery.values()) {
+            NAMED_QUERIES.put(query.getSql(), query);
+        }
+    }
+
+    // Statistiche per testo SQL prima dei template
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder slowQueries = new LongAdder();
+    private volatile long slowQueryThresholdNanos = DEFAULT_SLOW_QUERY_THRESHOLD.toNanos();
+    private ObjectName registeredName;
+
+    @Override
+    public void logAfterExecution(StatementContext ctx) {
+        this.record(ctx, false);
+    }
+
+    @Override
+    public void logException(StatementContext ctx, SQLException ex) {
+        this.record(ctx, true);
+    }
+
+    private void record(StatementContext ctx, boolean failed) {
+        String rawSql = ctx.getRawSql();
+        if (rawSql == null) {
+            return;
+        }
+
+        long nanos = Math.max(0, ctx.getElapsedTime(ChronoUnit.NANOS));
+        Entry entry = this.entries.get(rawSql);
+        if (entry == null) {
+            entry = this.entries.computeIfAbsent(rawSql, Entry::new);
+        }
+
+        entry.calls.increment();
+        entry.totalNanos.add(nanos);
+        entry.histogram.record(nanos);
+        if (failed) {
+            entry.errors.increment();
+        }
+
+        boolean slow = nanos >= this.slowQueryThresholdNanos;
+        if (slow) {
+            this.slowQueries.increment();
+        }
+
+        long updated = failed ? 0 : QueryMetrics.updateCount(ctx);
+        entry.rows.add(updated);
+
+        if (failed) {
+            if (slow) {
+                this.logSlowQuery(entry, ctx, nanos, "errore");
+            }
+            return;
+        }
+
+        // Le righe lette sono note solo quando lo statement viene chiuso
+        Entry finalEntry = entry;
+        ctx.addCleanable(() -> {
+            long mapped = ctx.getMappedRows();
+            finalEntry.rows.add(mapped);
+
+            if (slow) {
+                this.logSlowQuery(finalEntry, ctx, nanos, (updated + mapped) + " righe");
+            }
+        });
+    }
+
+    private static long updateCount(StatementContext ctx) {
+        // Un PreparedBatch non imposta lo statement nel contesto
+        if (ctx.getAttribute(BATCH_ROWS) instanceof Long rows) {
+            return rows;
+        }
+
+        PreparedStatement statement = ctx.getStatement();
+        if (statement == null) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, statement.getUpdateCount());
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @brief Restituisce una StatementBuilderFactory che crea le istruzioni con factory e,
+     *  per i PreparedBatch, ne conserva il numero di righe modificate da executeBatch.
+     * @param factory La factory che crea e chiude le istruzioni.
+     */
+    StatementBuilderFactory countingBatchRows(StatementBuilderFactory factory) {
+        return connection -> new BatchCountingBuilder(factory.createStatementBuilder(connection));
+    }
+
+    private void logSlowQuery(Entry entry, StatementContext ctx, long nanos, String outcome) {
+        String sql = QueryMetrics.compact(ctx.getRenderedSql());
+        if (entry.name.equals(entry.sql)) {
+            LOGGER.warn("Query lenta: {} ms, {} [{}]", nanos / 1_000_000, outcome, sql);
+        } else {
+            LOGGER.warn("Query lenta {}: {} ms, {} [{}]", entry.name, nanos / 1_000_000, outcome, sql);
+        }
+    }
+
+    private static String compact(String sql) {
+        return sql == null ? "" : sql.replaceAll("\\s+", " ").trim();
+    }
+
+    @Override
+    public List<QueryStats> getQueries() {
+        List<QueryStats> queries = new ArrayList<>();
+        for (Entry entry : this.entries.values()) {
+            queries.add(entry.snapshot());
+        }
+
+        queries.sort(Comparator.comparingLong(QueryStats::getTotalMicros).reversed());
+        return queries;
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return this.slowQueries.sum();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return Duration.ofNanos(this.slowQueryThresholdNanos).toMillis();
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long thresholdMillis) {
+        this.setSlowQueryThreshold(Duration.ofMillis(thresholdMillis));
+    }
+
+    /**
+     * @brief Cambia la soglia oltre cui un'esecuzione viene registrata nel log.
+     * @throws IllegalArgumentException Se la soglia e' negativa.
+     */
+    public void setSlowQueryThreshold(Duration threshold) {
+        if (threshold.isNegative()) {
+            throw new IllegalArgumentException("Soglia delle query lente non valida: " + threshold);
+        }
+
+        this.slowQueryThresholdNanos = threshold.toNanos();
+    }
+
+    @Override
+    public void reset() {
+        this.entries.clear();
+        this.slowQueries.reset();
+    }
+
+    /**
+     * @brief Registra le statistiche nel server JMX della JVM con il nome OBJECT_NAME.
+     *  Un errore di registrazione (ad esempio un altro Database gia' registrato) viene
+     *  solo riportato nel log: la diagnostica non deve impedire l'avvio.
+     */
+    public synchronized void registerMBean() {
+        if (this.registeredName != null) {
+            return;
+        }
+
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            this.registeredName = name;
+        } catch (JMException e) {
+            LOGGER.warn("Impossibile registrare le statistiche delle query via JMX", e);
+        }
+    }
+
+    /**
+     * @brief Rimuove le statistiche dal server JMX, se registrate.
+     */
+    public synchronized void unregisterMBean() {
+        if (this.registeredName == null) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(this.registeredName);
+        } catch (JMException e) {
+            LOGGER.warn("Impossibile rimuovere le statistiche delle query da JMX", e);
+        }
+        this.registeredName = null;
+    }
+
+    /**
+     * @brief Lo StatementBuilder di un handle: le istruzioni dei PreparedBatch vengono
+     *  avvolte in un BatchStatement, e restituite a builder senza l'involucro.
+     */
+    private static class BatchCountingBuilder implements StatementBuilder {
+        private final StatementBuilder builder;
+
+        private BatchCountingBuilder(StatementBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public Statement create(Connection connection, StatementContext ctx) throws SQLException {
+            return this.builder.create(connection, ctx);
+        }
+
+        @Override
+        public PreparedStatement create(Connection connection, String sql, StatementContext ctx)
+                throws SQLException {
+            PreparedStatement statement = this.builder.create(connection, sql, ctx);
+            if (!PreparedBatch.class.equals(ctx.getJdbiStatementType())) {
+                return statement;
+            }
+
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new BatchStatement(statement, ctx));
+        }
+
+        @Override
+        public CallableStatement createCall(Connection connection, String sql, StatementContext ctx)
+                throws SQLException {
+            return this.builder.createCall(connection, sql, ctx);
+        }
+
+        @Override
+        public void close(Connection connection, String sql, Statement statement) throws SQLException {
+            if (statement != null && Proxy.isProxyClass(statement.getClass())
+                    && Proxy.getInvocationHandler(statement) instanceof BatchStatement batch) {
+                statement = batch.statement;
+            }
+
+            this.builder.close(connection, sql, statement);
+        }
+
+        @Override
+        public void close(Connection connection) {
+            this.builder.close(connection);
+        }
+    }
+
+    /**
+     * @brief Inoltra le chiamate all'istruzione di un PreparedBatch e somma nel contesto i
+     *  risultati di executeBatch: SUCCESS_NO_INFO conta come una riga, EXECUTE_FAILED come
+     *  nessuna.
+     */
+    private static class BatchStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final StatementContext ctx;
+
+        private BatchStatement(PreparedStatement statement, StatementContext ctx) {
+            this.statement = statement;
+            this.ctx = ctx;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(this.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            if (result instanceof int[] counts && method.getName().equals("executeBatch")) {
+                long rows = 0;
+                for (int count : counts) {
+                    rows += BatchStatement.rowsOf(count);
+                }
+                this.ctx.define(BATCH_ROWS, rows);
+            } else if (result instanceof long[] counts && method.getName().equals("executeLargeBatch")) {
+                long rows = 0;
+                for (long count : counts) {
+                    rows += BatchStatement.rowsOf(count);
+                }
+                this.ctx.define(BATCH_ROWS, rows);
+            }
+
+            return result;
+        }
+
+        private static long rowsOf(long count) {
+            if (count == Statement.SUCCESS_NO_INFO) {
+                return 1;
+            }
+
+            return Math.max(0, count);
+        }
+    }
+
+    /**
+     * @brief Le statistiche di una query.
+     */
+    private static class Entry {
+        private final String name;
+        private final String sql;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Entry(String sql) {
+            NamedQuery named = NAMED_QUERIES.get(sql);
+
+            this.sql = QueryMetrics.compact(sql);
+            this.name = named != null ? named.name() : this.sql;
+        }
+
+        private QueryStats snapshot() {
+            return new QueryStats(this.name, this.sql, this.calls.sum(), this.totalNanos.sum() / 1000,
+                    this.errors.sum(), this.rows.sum(), this.histogram.percentile(0.5) / 1000,
+                    this.histogram.percentile(0.99) / 1000, this.histogram.max.get() / 1000);
+        }
+    }
+
+    /**
+     * @brief Istogramma dei tempi con intervalli logaritmici: quattro intervalli per ogni
+     *  potenza di due, quindi ogni valore viene approssimato per eccesso di al piu' il 25%.
+     */
+    private static class LatencyHistogram {
+        // Quattro intervalli per ciascuno degli esponenti da 1 a 62, piu' i valori da 0 a 3
+        private static final int BUCKETS = 62 * 4;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(long nanos) {
+            this.counts.incrementAndGet(LatencyHistogram.bucketOf(nanos));
+            this.max.accumulateAndGet(nanos, Math::max);
+        }
+
+        private static int bucketOf(long value) {
+            if (value < 4) {
+                return (int) value;
+            }
+
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int fraction = (int) (value >>> (exponent - 2)) & 3;
+            return (exponent - 1) * 4 + fraction;
+        }
+
+        private static long upperBoundOf(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+
+            int exponent = bucket / 4 + 1;
+            int fraction = bucket % 4;
+            return ((5L + fraction) << (exponent - 2)) - 1;
+        }
+
+        /**
+         * @return Il limite superiore dell'intervallo che contiene il percentile, senza
+         *  superare il massimo registrato.
+         */
+        private long percentile(double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += this.counts.get(i);
+            }
+
+            if (total == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.counts.get(i);
+                if (seen >= target) {
+                    return Math.min(LatencyHistogram.upperBoundOf(i), this.max.get());
+                }
+            }
+
+            return this.max.get();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.util.List;
+
+/**
+ * @brief Interfaccia JMX di QueryMetrics, visibile ad esempio da JConsole con il nome
+ *  QueryMetrics#OBJECT_NAME.
+ */
+public interface QueryMetricsMXBean {
+    /**
+     * @brief Restituisce le statistiche di ogni query eseguita, dalla piu' lenta in totale.
+     */
+    List<QueryStats> getQueries();
+
+    /**
+     * @brief Restituisce il numero di esecuzioni piu' lente della soglia.
+     */
+    long getSlowQueryCount();
+
+    /**
+     * @brief Restituisce la soglia oltre cui un'esecuzione viene registrata nel log.
+     */
+    long getSlowQueryThresholdMillis();
+
+    /**
+     * @brief Cambia la soglia oltre cui un'esecuzione viene registrata nel log.
+     * @throws IllegalArgumentException Se la soglia e' negativa.
+     */
+    void setSlowQueryThresholdMillis(long thresholdMillis);
+
+    /**
+     * @brief Azzera tutte le statistiche.
+     */
+    void reset();
+}
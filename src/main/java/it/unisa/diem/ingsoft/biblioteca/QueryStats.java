@@ -0,0 +1,85 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * @brief Le statistiche di una query, lette da QueryMetrics in un dato istante.
+ *  I percentili sono approssimati per eccesso di al piu' un quarto del valore; il
+ *  massimo e' esatto.
+ */
+public class QueryStats {
+    private final String name;
+    private final String sql;
+    private final long calls;
+    private final long totalMicros;
+    private final long errors;
+    private final long rows;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    /**
+     * @param name Il nome della NamedQuery, o il testo SQL per le altre query.
+     * @param sql Il testo SQL della query, con i parametri ma senza i valori.
+     * @param calls Il numero di esecuzioni.
+     * @param totalMicros Il tempo di esecuzione di tutte le esecuzioni, in microsecondi.
+     * @param errors Il numero di esecuzioni terminate con un errore.
+     * @param rows Le righe lette o modificate da tutte le esecuzioni.
+     * @param p50Micros La mediana dei tempi di esecuzione, in microsecondi.
+     * @param p99Micros Il 99-esimo percentile dei tempi di esecuzione, in microsecondi.
+     * @param maxMicros Il tempo di esecuzione massimo, in microsecondi.
+     */
+    @ConstructorParameters({"name", "sql", "calls", "totalMicros", "errors", "rows", "p50Micros", "p99Micros", "maxMicros"})
+    public QueryStats(String name, String sql, long calls, long totalMicros, long errors, long rows,
+            long p50Micros, long p99Micros, long maxMicros) {
+        this.name = name;
+        this.sql = sql;
+        this.calls = calls;
+        this.totalMicros = totalMicros;
+        this.errors = errors;
+        this.rows = rows;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getSql() {
+        return this.sql;
+    }
+
+    public long getCalls() {
+        return this.calls;
+    }
+
+    public long getTotalMicros() {
+        return this.totalMicros;
+    }
+
+    public long getErrors() {
+        return this.errors;
+    }
+
+    public long getRows() {
+        return this.rows;
+    }
+
+    public long getP50Micros() {
+        return this.p50Micros;
+    }
+
+    public long getP99Micros() {
+        return this.p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return this.maxMicros;
+    }
+}
@@ -0,0 +1,496 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.jdbi.v3.core.transaction.TransactionIsolationLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+
+/**
+ * @brief Porta su una replica locale le modifiche che tutte le sedi registrano nel change
+ *  log del database primario.
+ *  Una voce del change log indica solo quale libro, utente o prestito e' cambiato: le voci
+ *  e lo stato attuale delle righe indicate vengono letti dal primario nella stessa
+ *  transazione e sostituiti, in un'unica transazione, alle righe della replica. Di un
+ *  prestito viene ricopiato tutto lo storico della coppia utente/libro, insieme all'utente
+ *  e al libro di cui cambiano i contatori.
+ *  Una replica mai sincronizzata, o rimasta indietro oltre le voci ancora conservate, viene
+ *  ricopiata da capo: le tabelle del primario vengono lette a pagine, in ordine di chiave,
+ *  e ogni pagina viene scritta sulla replica prima di leggere la successiva, sempre in
+ *  un'unica transazione su entrambi i database. La posizione raggiunta e' salvata nella replica (replica_state) e
+ *  comunicata al primario (replica_positions), che elimina le voci gia' applicate da tutte
+ *  le repliche registrate. Una replica che non comunica la propria posizione da piu' di
+ *  positionRetention, perche' dismessa o ferma, non trattiene piu' le voci: se torna,
+ *  viene ricopiata da capo. Una replica in funzione ma senza nuove voci da applicare
+ *  ripete la propria posizione prima che scada.
+ */
+class ReplicaShipper implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaShipper.class);
+    // Voci del change log applicate in una stessa transazione sulla replica
+    private static final int BATCH_SIZE = 500;
+    // Righe lette dal primario e inserite nella replica per volta durante una copia da capo
+    private static final int COPY_PAGE_SIZE = 1000;
+
+    private final Database primary;
+    private final Database replica;
+    private final String session;
+    private final Consumer<List<EntityChange>> onRemoteChanges;
+    private final Runnable onCopy;
+    private final AtomicBoolean syncPending = new AtomicBoolean();
+    // Separato dal monitor dell'oggetto: requestSync non deve attendere un allineamento in corso
+    private final Object syncLock = new Object();
+    private final String replicaId;
+    private final Duration positionRetention;
+
+    private boolean initialized;
+    // System.nanoTime() dell'ultima posizione comunicata al primario da questa istanza
+    private volatile long registeredAt;
+    private volatile boolean registered;
+    private volatile long position;
+    // System.nanoTime() dell'ultima lettura dal primario che ha trovato la replica allineata
+    private volatile long syncedAt;
+    private volatile boolean synced;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param primary Il database su cui tutte le sedi scrivono.
+     * @param replica Il database locale da mantenere allineato.
+     * @param session L'origine delle voci scritte da questa sede, che non vengono notificate.
+     * @param onRemoteChanges Chiamato dopo aver applicato le modifiche delle altre sedi.
+     * @param onCopy Chiamato dopo aver ricopiato da capo una replica gia' sincronizzata in
+     *  precedenza.
+     * @param positionRetention Da quanto tempo una replica deve aver comunicato la propria
+     *  posizione perche' le voci che non ha ancora applicato vengano conservate.
+     */
+    ReplicaShipper(Database primary, Database replica, String session,
+            Consumer<List<EntityChange>> onRemoteChanges, Runnable onCopy, Duration positionRetention) {
+        this.primary = primary;
+        this.positionRetention = positionRetention;
+        this.replica = replica;
+        this.session = session;
+        this.onRemoteChanges = onRemoteChanges;
+        this.onCopy = onCopy;
+
+        Optional<ReplicaState> state = replica.getJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT replica, applied_seq FROM replica_state")
+                    .map((rs, ctx) -> new ReplicaState(rs.getString("replica"), rs.getLong("applied_seq")))
+                    .findOne());
+
+        this.initialized = state.isPresent();
+        this.replicaId = state.map(ReplicaState::replica)
+            .orElseGet(() -> UUID.randomUUID().toString());
+        this.position = state.map(ReplicaState::position)
+            .orElse(0L);
+    }
+
+    /**
+     * @brief Avvia l'allineamento periodico, a partire da subito. Non ha effetto se e' gia'
+     *  avviato.
+     * @param interval L'intervallo tra la fine di un allineamento e l'inizio del successivo.
+     */
+    synchronized void start(Duration interval) {
+        if (this.scheduler != null) {
+            return;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-shipper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::syncQuietly, 0, interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @brief Chiede un allineamento subito, senza attenderlo. Piu' richieste ravvicinate
+     *  producono un solo allineamento; non ha effetto se l'allineamento periodico non e'
+     *  avviato.
+     */
+    synchronized void requestSync() {
+        if (this.scheduler != null && this.syncPending.compareAndSet(false, true)) {
+            this.scheduler.execute(() -> {
+                this.syncPending.set(false);
+                this.syncQuietly();
+            });
+        }
+    }
+
+    /**
+     * @brief Ferma l'allineamento periodico.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.scheduler == null) {
+            return;
+        }
+
+        this.scheduler.shutdownNow();
+        this.scheduler = null;
+    }
+
+    /**
+     * @brief Applica alla replica tutte le voci del change log confermate sul primario.
+     */
+    void sync() {
+        synchronized (this.syncLock) {
+            // Le voci arrivano a blocchi: si continua finche' un blocco non e' incompleto
+            while (this.syncBatch()) {
+            }
+        }
+    }
+
+    /**
+     * @brief Restituisce il numero di sequenza dell'ultima voce applicata alla replica.
+     */
+    long getPosition() {
+        return this.position;
+    }
+
+    /**
+     * @brief Restituisce da quanto tempo la replica non viene trovata allineata al primario,
+     *  oppure Long.MAX_VALUE se non e' mai stata allineata da questa istanza.
+     */
+    long getStalenessNanos() {
+        return this.synced ? System.nanoTime() - this.syncedAt : Long.MAX_VALUE;
+    }
+
+    private void syncQuietly() {
+        try {
+            this.sync();
+        } catch (RuntimeException e) {
+            // Un primario irraggiungibile non deve fermare l'allineamento periodico
+            LOGGER.warn("Allineamento della replica non riuscito", e);
+        }
+    }
+
+    /**
+     * @brief Legge dal primario ed applica alla replica un blocco di voci.
+     * @return true se sul primario restano altre voci da applicare.
+     */
+    private boolean syncBatch() {
+        long start = System.nanoTime();
+        TransactionIsolationLevel isolation = this.primary.getDialect() == Dialect.POSTGRES
+            ? TransactionIsolationLevel.REPEATABLE_READ
+            : TransactionIsolationLevel.UNKNOWN;
+
+        Snapshot snapshot = this.primary.getReadJdbi()
+            .inTransaction(isolation, this::readSnapshot);
+        boolean wasInitialized = this.initialized;
+
+        if (snapshot.copy() || snapshot.position() != this.position) {
+            if (!snapshot.copy()) {
+                this.replica.getJdbi().useTransaction(handle -> this.apply(handle, snapshot));
+            }
+            this.position = snapshot.position();
+            this.initialized = true;
+            this.register();
+        } else if (this.initialized
+                && (!this.registered || start - this.registeredAt > this.positionRetention.toNanos() / 2)) {
+            // Nessuna voce nuova: la posizione va ripetuta perche' non venga considerata scaduta
+            this.register();
+        }
+
+        if (!snapshot.more()) {
+            this.syncedAt = start;
+            this.synced = true;
+        }
+
+        if (snapshot.copy()) {
+            if (wasInitialized) {
+                this.onCopy.run();
+            }
+        } else {
+            List<EntityChange> remote = snapshot.entries().stream()
+                .filter(entry -> !entry.origin().equals(this.session))
+                .map(LogEntry::change)
+                .toList();
+            if (!remote.isEmpty()) {
+                this.onRemoteChanges.accept(remote);
+            }
+        }
+
+        return snapshot.more();
+    }
+
+    private Snapshot readSnapshot(Handle handle) {
+        long oldest = handle.createQuery("SELECT COALESCE(MIN(seq), 0) FROM change_log")
+            .mapTo(Long.class)
+            .one();
+
+        // Le voci successive alla posizione della replica sono gia' state eliminate
+        if (!this.initialized || this.position < oldest - 1) {
+            long head = handle.createQuery("SELECT COALESCE(MAX(seq), 0) FROM change_log")
+                .mapTo(Long.class)
+                .one();
+
+            this.replica.getJdbi().useTransaction(replicaHandle -> this.copy(handle, replicaHandle, head));
+            return new Snapshot(head, true, false, List.of(), Map.of(), Set.of(), Set.of(), Set.of());
+        }
+
+        List<LogEntry> entries = handle.createQuery("SELECT seq, origin, entity, change_type, key_one, key_two "
+                    + "FROM change_log WHERE seq > :position ORDER BY seq LIMIT :limit")
+            .bind("position", this.position)
+            .bind("limit", BATCH_SIZE)
+            .map((rs, ctx) -> LogEntry.read(rs))
+            .list();
+
+        if (entries.isEmpty()) {
+            return new Snapshot(this.position, false, false, entries, Map.of(), Set.of(), Set.of(), Set.of());
+        }
+
+        Set<String> isbns = new LinkedHashSet<>();
+        Set<String> userIds = new LinkedHashSet<>();
+        Set<List<String>> loans = new LinkedHashSet<>();
+        for (LogEntry entry : entries) {
+            List<String> key = entry.change().getKey();
+
+            switch (entry.change().getEntity()) {
+                case BOOK -> isbns.add(key.get(0));
+                case USER -> userIds.add(key.get(0));
+                case LOAN -> {
+                    loans.add(key);
+                    userIds.add(key.get(0));
+                    isbns.add(key.get(1));
+                }
+            }
+        }
+
+        Map<Table, List<Map<String, Object>>> rows = new HashMap<>();
+        rows.put(Table.BOOKS, ReplicaShipper.readRows(handle, Table.BOOKS, "isbn IN (<keys>)", isbns));
+        rows.put(Table.USERS, ReplicaShipper.readRows(handle, Table.USERS, "id IN (<keys>)", userIds));
+
+        Set<String> loanUsers = loans.stream().map(key -> key.get(0)).collect(Collectors.toSet());
+        rows.put(Table.LOANS, loans.isEmpty() ? List.of() : handle.createQuery("SELECT " + Table.LOANS.columnList()
+                    + " FROM loans WHERE user_id IN (<keys>)")
+                .bindList("keys", loanUsers)
+                .map((rs, ctx) -> Table.LOANS.read(rs))
+                .filter(row -> loans.contains(List.of((String) row.get("user_id"), (String) row.get("book_isbn"))))
+                .list());
+
+        long last = entries.get(entries.size() - 1).seq();
+        return new Snapshot(last, false, entries.size() == BATCH_SIZE, entries, rows, isbns, userIds, loans);
+    }
+
+    private static List<Map<String, Object>> readRows(Handle handle, Table table, String condition,
+            Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+
+        return handle.createQuery("SELECT " + table.columnList() + " FROM " + table.name + " WHERE " + condition)
+            .bindList("keys", List.copyOf(keys))
+            .map((rs, ctx) -> table.read(rs))
+            .list();
+    }
+
+    /**
+     * @brief Sostituisce il contenuto della replica con quello del primario, una pagina di
+     *  COPY_PAGE_SIZE righe alla volta.
+     * @param primaryHandle L'handle della transazione di lettura sul primario.
+     * @param replicaHandle L'handle della transazione di scrittura sulla replica.
+     * @param head Il numero di sequenza dell'ultima voce del change log sul primario.
+     */
+    private void copy(Handle primaryHandle, Handle replicaHandle, long head) {
+        replicaHandle.execute("DELETE FROM loans");
+        replicaHandle.execute("DELETE FROM users");
+        replicaHandle.execute("DELETE FROM books");
+
+        for (Table table : Table.values()) {
+            String select = "SELECT " + table.columnList() + " FROM " + table.name;
+            String order = " ORDER BY " + table.key + " LIMIT " + COPY_PAGE_SIZE;
+            List<Map<String, Object>> page = primaryHandle.createQuery(select + order)
+                .map((rs, ctx) -> table.read(rs))
+                .list();
+
+            while (!page.isEmpty()) {
+                ReplicaShipper.insertRows(replicaHandle, table, page);
+                if (page.size() < COPY_PAGE_SIZE) {
+                    break;
+                }
+
+                page = primaryHandle.createQuery(select + " WHERE " + table.key + " > :after" + order)
+                    .bind("after", page.get(page.size() - 1).get(table.key))
+                    .map((rs, ctx) -> table.read(rs))
+                    .list();
+            }
+        }
+
+        this.savePosition(replicaHandle, head);
+    }
+
+    private void apply(Handle handle, Snapshot snapshot) {
+        // Le righe eliminate dal primario non compaiono nello snapshot
+        ReplicaShipper.deleteRows(handle, "DELETE FROM books WHERE isbn IN (<keys>)", snapshot.isbns());
+        ReplicaShipper.deleteRows(handle, "DELETE FROM users WHERE id IN (<keys>)", snapshot.userIds());
+        for (List<String> loan : snapshot.loans()) {
+            handle.createUpdate("DELETE FROM loans WHERE user_id = :user_id AND book_isbn = :book_isbn")
+                .bind("user_id", loan.get(0))
+                .bind("book_isbn", loan.get(1))
+                .execute();
+        }
+
+        for (Table table : Table.values()) {
+            ReplicaShipper.insertRows(handle, table, snapshot.rows().getOrDefault(table, List.of()));
+        }
+
+        this.savePosition(handle, snapshot.position());
+    }
+
+    private void savePosition(Handle handle, long position) {
+        handle.createUpdate("INSERT INTO replica_state(id, replica, applied_seq) VALUES (1, :replica, :position) "
+                    + "ON CONFLICT(id) DO UPDATE SET applied_seq = excluded.applied_seq")
+            .bind("replica", this.replicaId)
+            .bind("position", position)
+            .execute();
+    }
+
+    private static void insertRows(Handle handle, Table table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        String values = table.columns.stream()
+            .map(column -> ":" + column)
+            .collect(Collectors.joining(", "));
+        PreparedBatch batch = handle.prepareBatch("INSERT INTO " + table.name + " (" + table.columnList() + ") "
+                + "VALUES (" + values + ")");
+        for (Map<String, Object> row : rows) {
+            batch.bindMap(row).add();
+        }
+        batch.execute();
+    }
+
+    private static void deleteRows(Handle handle, String sql, Collection<String> keys) {
+        if (!keys.isEmpty()) {
+            handle.createUpdate(sql)
+                .bindList("keys", List.copyOf(keys))
+                .execute();
+        }
+    }
+
+    /**
+     * @brief Comunica al primario la posizione della replica ed elimina le voci gia'
+     *  applicate da tutte le repliche che hanno comunicato la propria posizione entro
+     *  positionRetention; le posizioni piu' vecchie vengono eliminate. L'ultima voce viene
+     *  conservata, cosi' una replica rimasta indietro puo' accorgersi delle voci eliminate.
+     */
+    private void register() {
+        long registeredAt = System.nanoTime();
+        // Millisecondi epoch: l'istante viene confrontato con quelli scritti dalle altre sedi
+        long now = System.currentTimeMillis();
+
+        this.primary.getJdbi().useTransaction(handle -> {
+            handle.createUpdate("INSERT INTO replica_positions(replica, applied_seq, updated_at) "
+                        + "VALUES (:replica, :position, :now) "
+                        + "ON CONFLICT(replica) DO UPDATE SET applied_seq = excluded.applied_seq, "
+                        + "updated_at = excluded.updated_at")
+                .bind("replica", this.replicaId)
+                .bind("position", this.position)
+                .bind("now", now)
+                .execute();
+
+            handle.createUpdate("DELETE FROM replica_positions WHERE updated_at < :expired")
+                .bind("expired", now - this.positionRetention.toMillis())
+                .execute();
+            handle.execute("DELETE FROM change_log WHERE seq < (SELECT MIN(applied_seq) FROM replica_positions)");
+        });
+
+        this.registeredAt = registeredAt;
+        this.registered = true;
+    }
+
+    /**
+     * @brief Le tabelle copiate sulla replica, con la chiave primaria e le colonne da
+     *  copiare. Le colonne rowid e le tabelle full-text della replica vengono generate
+     *  localmente.
+     */
+    private enum Table {
+        BOOKS("books", "isbn", List.of("isbn", "title", "author", "genre", "release_year", "total_copies",
+                    "remaining_copies", "description")),
+        USERS("users", "id", List.of("id", "email", "name", "surname", "active_loans")),
+        LOANS("loans", "id", List.of("id", "book_isbn", "user_id", "loan_start", "loan_deadline", "loan_end"));
+
+        private final String name;
+        private final String key;
+        private final List<String> columns;
+
+        Table(String name, String key, List<String> columns) {
+            this.name = name;
+            this.key = key;
+            this.columns = columns;
+        }
+
+        private String columnList() {
+            return String.join(", ", this.columns);
+        }
+
+        private Map<String, Object> read(ResultSet rs) throws SQLException {
+            // HashMap: loan_end puo' essere null
+            Map<String, Object> row = new HashMap<>();
+            for (String column : this.columns) {
+                // Le date vengono rilette come LocalDate, come fanno i mapper, perche'
+                // SQLite e PostgreSQL le restituiscono con tipi diversi
+                Object value = column.startsWith("loan_")
+                    ? rs.getObject(column, LocalDate.class)
+                    : rs.getObject(column);
+                row.put(column, value);
+            }
+
+            return row;
+        }
+    }
+
+    private record ReplicaState(String replica, long position) {
+    }
+
+    private record LogEntry(long seq, String origin, EntityChange change) {
+        private static LogEntry read(ResultSet rs) throws SQLException {
+            EntityChange.Type type = EntityChange.Type.valueOf(rs.getString("change_type"));
+            String key = rs.getString("key_one");
+
+            EntityChange change = switch (EntityChange.Entity.valueOf(rs.getString("entity"))) {
+                case BOOK -> EntityChange.book(type, key);
+                case USER -> EntityChange.user(type, key);
+                case LOAN -> EntityChange.loan(type, key, rs.getString("key_two"));
+            };
+
+            return new LogEntry(rs.getLong("seq"), rs.getString("origin"), change);
+        }
+    }
+
+    /**
+     * @brief Cio' che viene letto dal primario in una transazione: le voci del change log e
+     *  le righe che indicano, oppure la posizione di una copia da capo (copy), gia' scritta
+     *  sulla replica durante la lettura.
+     */
+    private record Snapshot(long position, boolean copy, boolean more, List<LogEntry> entries,
+            Map<Table, List<Map<String, Object>>> rows, Set<String> isbns, Set<String> userIds,
+            Set<List<String>> loans) {
+    }
+}
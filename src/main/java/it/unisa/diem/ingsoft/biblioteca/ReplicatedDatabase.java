@@ -0,0 +1,250 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.PreparedBatch;
+
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+import it.unisa.diem.ingsoft.biblioteca.service.BookCache;
+import it.unisa.diem.ingsoft.biblioteca.service.ChangeNotifier;
+import it.unisa.diem.ingsoft.biblioteca.service.SubstringIndex;
+
+/**
+ * @brief Database di una sede della biblioteca che scrive su un database primario condiviso
+ *  da tutte le sedi e legge da una replica locale.
+ *  Le scritture (getJdbi) vanno sempre sul primario, insieme ad una voce nel change log per
+ *  ogni modifica notificata dai service. La replica viene aggiornata leggendo il change
+ *  log (ReplicaShipper), subito dopo le scritture di questa sede e ad intervalli regolari
+ *  dopo start().
+ *  Le letture (getReadJdbi) vanno sulla replica solo se e' stata trovata allineata al
+ *  primario da non piu' di maxStaleness e contiene gia' tutte le scritture confermate da
+ *  questo Database (read-your-writes); altrimenti vanno sul primario. Le letture dentro
+ *  una transazione di scrittura vanno sempre sul primario.
+ *  Le modifiche delle altre sedi, quando arrivano alla replica, aggiornano la cache dei
+ *  libri e gli indici per sottostringa di questo Database e vengono notificate ai suoi
+ *  ChangeListener.
+ *  Primario e replica devono essere dello stesso tipo di database, perche' i service
+ *  scelgono la sintassi delle query prima di sapere dove verranno eseguite. Tutte le sedi
+ *  che scrivono sul primario devono usare un ReplicatedDatabase, altrimenti le loro
+ *  modifiche non arrivano alle repliche.
+ */
+public class ReplicatedDatabase extends Database {
+    /**
+     * @brief Ritardo massimo predefinito della replica rispetto al primario.
+     */
+    public static final Duration DEFAULT_MAX_STALENESS = Duration.ofSeconds(2);
+
+    /**
+     * @brief Tempo predefinito dopo il quale una replica che non comunica la propria
+     *  posizione smette di trattenere il change log del primario.
+     */
+    public static final Duration DEFAULT_POSITION_RETENTION = Duration.ofDays(1);
+
+    // Chiave del lock advisory che ordina le voci del change log come i COMMIT su PostgreSQL
+    private static final long POSTGRES_CHANGE_LOG_LOCK = 0x4249424CL;
+
+    private final Database primary;
+    private final Database replica;
+    private final Duration maxStaleness;
+    // Origine delle voci scritte da questo Database
+    private final String session = UUID.randomUUID().toString();
+    // Numero di sequenza dell'ultima voce confermata da questo Database
+    private final AtomicLong lastWrite = new AtomicLong();
+    private final ReplicaShipper shipper;
+
+    /**
+     * @brief Crea il Database di una sede e allinea subito la replica, ricopiandola da capo
+     *  se non e' mai stata sincronizzata. Il Database diventa proprietario di primary e
+     *  replica, che vengono chiusi da close().
+     * @param primary Il database condiviso su cui scrivono tutte le sedi.
+     * @param replica Il database locale da cui leggere.
+     * @param maxStaleness Il ritardo massimo della replica per potervi leggere.
+     * @throws IllegalArgumentException Se maxStaleness non e' positivo o se primario e
+     *  replica non sono dello stesso tipo.
+     */
+    public ReplicatedDatabase(Database primary, Database replica, Duration maxStaleness) {
+        this(primary, replica, maxStaleness, DEFAULT_POSITION_RETENTION);
+    }
+
+    /**
+     * @brief Crea il Database di una sede come ReplicatedDatabase(primary, replica,
+     *  maxStaleness), indicando anche dopo quanto tempo una replica che non comunica la
+     *  propria posizione, ad esempio perche' dismessa, smette di trattenere il change log.
+     *  Se torna in funzione, quella replica viene ricopiata da capo.
+     * @param positionRetention Il tempo dopo cui la posizione di una replica scade.
+     * @throws IllegalArgumentException Se maxStaleness o positionRetention non sono positivi
+     *  o se primario e replica non sono dello stesso tipo.
+     */
+    public ReplicatedDatabase(Database primary, Database replica, Duration maxStaleness,
+            Duration positionRetention) {
+        super(primary);
+
+        if (maxStaleness.isNegative() || maxStaleness.isZero()) {
+            throw new IllegalArgumentException("Ritardo massimo della replica non valido: " + maxStaleness);
+        }
+
+        if (positionRetention.isNegative() || positionRetention.isZero()) {
+            throw new IllegalArgumentException("Conservazione delle posizioni non valida: " + positionRetention);
+        }
+
+        if (primary.getDialect() != replica.getDialect()) {
+            throw new IllegalArgumentException("Primario e replica devono essere dello stesso tipo: "
+                    + primary.getDialect() + ", " + replica.getDialect());
+        }
+
+        this.primary = primary;
+        this.replica = replica;
+        this.maxStaleness = maxStaleness;
+        this.shipper = new ReplicaShipper(primary, replica, this.session, this::onRemoteChanges,
+                this::onCopy, positionRetention);
+        this.shipper.sync();
+    }
+
+    /**
+     * @brief Avvia l'allineamento periodico della replica, ogni quarto di maxStaleness.
+     *  Non ha effetto se e' gia' avviato.
+     */
+    public void start() {
+        this.shipper.start(this.maxStaleness.dividedBy(4));
+    }
+
+    /**
+     * @brief Allinea subito la replica al primario, attendendo la fine dell'allineamento.
+     */
+    public void sync() {
+        this.shipper.sync();
+    }
+
+    /**
+     * @brief Getter per la replica locale.
+     */
+    public Database getReplica() {
+        return this.replica;
+    }
+
+    /**
+     * @brief Getter per il database primario.
+     */
+    public Database getPrimary() {
+        return this.primary;
+    }
+
+    /**
+     * @brief Restituisce la replica se e' abbastanza aggiornata, altrimenti il primario.
+     * @see ReplicatedDatabase
+     */
+    @Override
+    public Jdbi getReadJdbi() {
+        boolean inWrite = this.getJdbi().getHandleScope().get() != null;
+
+        if (!inWrite && this.shipper.getPosition() >= this.lastWrite.get()
+                && this.shipper.getStalenessNanos() <= this.maxStaleness.toNanos()) {
+            return this.replica.getReadJdbi();
+        }
+
+        return super.getReadJdbi();
+    }
+
+    /**
+     * @brief Registra le modifiche nel change log del primario, con lo stesso handle: la
+     *  voce viene confermata insieme alle modifiche, nella stessa transazione.
+     * @throws IllegalStateException Se l'handle non e' in una transazione: le modifiche
+     *  sarebbero gia' confermate e la voce potrebbe andare persa.
+     */
+    @Override
+    public void recordChanges(Handle handle, List<EntityChange> changes) {
+        if (!handle.isInTransaction()) {
+            throw new IllegalStateException("Le modifiche vanno registrate nella transazione che le esegue");
+        }
+
+        if (this.getDialect() == Dialect.POSTGRES) {
+            // Il lock resta fino al COMMIT: una voce con numero di sequenza piu' alto non puo'
+            // essere confermata prima di una con numero piu' basso, che una replica salterebbe
+            handle.createQuery("SELECT 1 FROM (SELECT pg_advisory_xact_lock(:key)) AS change_log_lock")
+                .bind("key", POSTGRES_CHANGE_LOG_LOCK)
+                .mapTo(Integer.class)
+                .one();
+        }
+
+        PreparedBatch batch = handle.prepareBatch("INSERT INTO change_log(origin, entity, change_type, "
+                + "key_one, key_two) VALUES (:origin, :entity, :change_type, :key_one, :key_two)");
+        for (EntityChange change : changes) {
+            List<String> key = change.getKey();
+
+            batch.bind("origin", this.session)
+                .bind("entity", change.getEntity().name())
+                .bind("change_type", change.getType().name())
+                .bind("key_one", key.get(0))
+                .bind("key_two", key.size() > 1 ? key.get(1) : null)
+                .add();
+        }
+        batch.execute();
+
+        long seq = handle.createQuery("SELECT MAX(seq) FROM change_log")
+            .mapTo(Long.class)
+            .one();
+        handle.afterCommit(() -> {
+            this.lastWrite.accumulateAndGet(seq, Math::max);
+            this.shipper.requestSync();
+        });
+    }
+
+    /**
+     * @brief Ferma l'allineamento e chiude replica e primario.
+     */
+    @Override
+    public void close() {
+        this.shipper.close();
+        this.replica.close();
+        this.primary.close();
+    }
+
+    private void onRemoteChanges(List<EntityChange> changes) {
+        SubstringIndex isbnIndex = SubstringIndex.ofBookIsbns(this);
+        SubstringIndex idIndex = SubstringIndex.ofUserIds(this);
+        List<String> books = new ArrayList<>();
+
+        for (EntityChange change : changes) {
+            List<String> key = change.getKey();
+
+            switch (change.getEntity()) {
+                case BOOK -> {
+                    books.add(key.get(0));
+                    if (change.getType() == EntityChange.Type.ADDED) {
+                        isbnIndex.add(key.get(0));
+                    } else if (change.getType() == EntityChange.Type.REMOVED) {
+                        isbnIndex.remove(key.get(0));
+                    }
+                }
+                case USER -> {
+                    if (change.getType() == EntityChange.Type.ADDED) {
+                        idIndex.add(key.get(0));
+                    } else if (change.getType() == EntityChange.Type.REMOVED) {
+                        idIndex.remove(key.get(0));
+                    }
+                }
+                // Le copie rimanenti del libro cambiano con il prestito
+                case LOAN -> books.add(key.get(1));
+            }
+        }
+
+        BookCache.of(this).invalidate(books);
+        ChangeNotifier.of(this).publishConfirmed(changes);
+    }
+
+    private void onCopy() {
+        BookCache.of(this).clear();
+        SubstringIndex.ofBookIsbns(this).reload(this);
+        SubstringIndex.ofUserIds(this).reload(this);
+    }
+}
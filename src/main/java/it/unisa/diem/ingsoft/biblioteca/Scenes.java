@@ -19,16 +19,38 @@ public class Scenes {
      * @throws RuntimeException Se il controller della view non e' un GuiController.
      */
     public static FXMLLoader setupLoader(String viewPath, ServiceRepository serviceRepository) {
-        URL loginUrl = Scenes.class.getResource(viewPath);
-        FXMLLoader loader = new FXMLLoader(loginUrl);
+        FXMLLoader loader = Scenes.load(viewPath);
+        Scenes.setServices(loader, serviceRepository);
 
-		try {
-			loader.load();
-		} catch (IOException e) {
+        return loader;
+    }
+
+    /**
+     * @brief Legge una view senza passare i servizi al suo controller.
+     *  I nodi non ancora mostrati possono essere creati su qualsiasi thread: la view puo'
+     *  essere letta in background e collegata ai servizi in seguito con setServices.
+     * @return L'FXMLLoader della view letta.
+     * @throws RuntimeException Se la view non puo' essere letta.
+     */
+    public static FXMLLoader load(String viewPath) {
+        URL viewUrl = Scenes.class.getResource(viewPath);
+        FXMLLoader loader = new FXMLLoader(viewUrl);
+
+        try {
+            loader.load();
+        } catch (IOException e) {
             throw new RuntimeException("Errore durante la lettura della view: "
                     + loader.getLocation(), e);
-		}
+        }
 
+        return loader;
+    }
+
+    /**
+     * @brief Passa ad un {@link ServiceRepository} il GuiController di una view gia' letta.
+     * @throws RuntimeException Se il controller della view non e' un GuiController.
+     */
+    public static void setServices(FXMLLoader loader, ServiceRepository serviceRepository) {
         Object controller = loader.getController();
         if (!(controller instanceof GuiController)) {
             throw new RuntimeException("Il controller non estende la classe GuiController");
@@ -36,7 +58,5 @@ public class Scenes {
 
         GuiController guiController = (GuiController) controller;
         guiController.setServices(serviceRepository);
-
-        return loader;
     }
 }
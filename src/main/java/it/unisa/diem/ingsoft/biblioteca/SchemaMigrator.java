@@ -0,0 +1,374 @@
+/**
+ * @brief Migrazioni dello schema del database
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+
+/**
+ * @brief Aggiorna lo schema del database alla versione piu' recente.
+ *  Ogni migrazione e' una lista di istruzioni SQL: la migrazione in posizione i porta lo
+ *  schema alla versione i + 1. La versione corrente e' salvata in PRAGMA user_version
+ *  (SQLite) o nella tabella schema_version (altri database), quindi un file gia' esistente
+ *  viene aggiornato sul posto eseguendo solo le migrazioni mancanti.
+ *  Su PostgreSQL le versioni che usano costrutti propri di SQLite (rowid, tabelle virtuali
+ *  FTS5) sono sostituite da quelle di POSTGRES_MIGRATIONS; le altre sono comuni.
+ *  Le nuove migrazioni vanno sempre aggiunte in fondo alla lista.
+ */
+public class SchemaMigrator {
+    /**
+     * @brief Documento full-text di un libro su PostgreSQL, con il titolo che pesa piu'
+     *  dell'autore, l'autore piu' del genere e il genere piu' della descrizione.
+     *  Le query devono usare la stessa espressione dell'indice idx_books_fts.
+     */
+    public static final String POSTGRES_BOOKS_DOCUMENT = "("
+        + "setweight(to_tsvector('simple', title), 'A') || "
+        + "setweight(to_tsvector('simple', author), 'B') || "
+        + "setweight(to_tsvector('simple', genre), 'C') || "
+        + "setweight(to_tsvector('simple', description), 'D'))";
+
+    // Chiave del lock advisory che serializza le migrazioni di piu' sedi sullo stesso server
+    private static final long POSTGRES_MIGRATION_LOCK = 0x42494242L;
+
+    private static final List<List<String>> MIGRATIONS = List.of(
+        // Versione 1: tabelle iniziali
+        List.of(
+            "CREATE TABLE IF NOT EXISTS users ("
+                + "id TEXT NOT NULL UNIQUE PRIMARY KEY,"
+                + "email TEXT NOT NULL UNIQUE,"
+                + "name TEXT NOT NULL,"
+                + "surname TEXT NOT NULL"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS loans ("
+                + "id INTEGER PRIMARY KEY,"
+                + "book_isbn TEXT NOT NULL,"
+                + "user_id TEXT NOT NULL,"
+                + "loan_start DATE NOT NULL,"
+                + "loan_deadline DATE NOT NULL,"
+                + "loan_end DATE"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS books ("
+                + "isbn TEXT NOT NULL PRIMARY KEY,"
+                + "title TEXT NOT NULL,"
+                + "author TEXT NOT NULL,"
+                + "release_year INTEGER NOT NULL,"
+                + "total_copies INTEGER NOT NULL,"
+                + "remaining_copies INTEGER NOT NULL,"
+                + "genre TEXT NOT NULL,"
+                + "description TEXT NOT NULL"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS auth ("
+                + "password_hash TEXT NOT NULL PRIMARY KEY,"
+                + "question_one TEXT NOT NULL,"
+                + "question_two TEXT NOT NULL,"
+                + "question_three TEXT NOT NULL"
+                + ")"
+        ),
+        // Versione 2: indici secondari su prestiti e catalogo
+        List.of(
+            // isActive, complete: al piu' un prestito attivo per coppia utente/libro
+            "CREATE INDEX IF NOT EXISTS idx_loans_active_user_book "
+                + "ON loans(user_id, book_isbn) WHERE loan_end IS NULL",
+            // countById, getActiveByUserId, getByUserIdContaining
+            "CREATE INDEX IF NOT EXISTS idx_loans_user ON loans(user_id)",
+            // prestiti di un libro
+            "CREATE INDEX IF NOT EXISTS idx_loans_book ON loans(book_isbn)",
+            "CREATE INDEX IF NOT EXISTS idx_books_author ON books(author)",
+            "CREATE INDEX IF NOT EXISTS idx_books_genre ON books(genre)",
+            "CREATE INDEX IF NOT EXISTS idx_books_release_year ON books(release_year)"
+        ),
+        // Versione 3: indici full-text FTS5 sul catalogo, sincronizzati con triggers
+        List.of(
+            // Ricerca per parole con prefisso e ranking bm25 (BookService.search)
+            "CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5("
+                + "title, author, genre, description, "
+                + "content='books', content_rowid='rowid', "
+                + "tokenize='unicode61 remove_diacritics 2', prefix='2 3')",
+            // Ricerca per sottostringa (LIKE '%x%') sui metodi ...Containing
+            "CREATE VIRTUAL TABLE IF NOT EXISTS books_trigram USING fts5("
+                + "title, author, genre, "
+                + "content='books', content_rowid='rowid', "
+                + "tokenize='trigram')",
+            "CREATE TRIGGER IF NOT EXISTS books_fts_insert AFTER INSERT ON books BEGIN "
+                + "INSERT INTO books_fts(rowid, title, author, genre, description) "
+                + "VALUES (new.rowid, new.title, new.author, new.genre, new.description); "
+                + "INSERT INTO books_trigram(rowid, title, author, genre) "
+                + "VALUES (new.rowid, new.title, new.author, new.genre); "
+                + "END",
+            "CREATE TRIGGER IF NOT EXISTS books_fts_delete AFTER DELETE ON books BEGIN "
+                + "INSERT INTO books_fts(books_fts, rowid, title, author, genre, description) "
+                + "VALUES ('delete', old.rowid, old.title, old.author, old.genre, old.description); "
+                + "INSERT INTO books_trigram(books_trigram, rowid, title, author, genre) "
+                + "VALUES ('delete', old.rowid, old.title, old.author, old.genre); "
+                + "END",
+            // Le sole copie rimanenti cambiano ad ogni prestito: non serve reindicizzare
+            "CREATE TRIGGER IF NOT EXISTS books_fts_update "
+                + "AFTER UPDATE OF title, author, genre, description ON books BEGIN "
+                + "INSERT INTO books_fts(books_fts, rowid, title, author, genre, description) "
+                + "VALUES ('delete', old.rowid, old.title, old.author, old.genre, old.description); "
+                + "INSERT INTO books_fts(rowid, title, author, genre, description) "
+                + "VALUES (new.rowid, new.title, new.author, new.genre, new.description); "
+                + "INSERT INTO books_trigram(books_trigram, rowid, title, author, genre) "
+                + "VALUES ('delete', old.rowid, old.title, old.author, old.genre); "
+                + "INSERT INTO books_trigram(rowid, title, author, genre) "
+                + "VALUES (new.rowid, new.title, new.author, new.genre); "
+                + "END",
+            // Indicizza i libri gia' presenti nei database esistenti
+            "INSERT INTO books_fts(books_fts) VALUES ('rebuild')",
+            "INSERT INTO books_trigram(books_trigram) VALUES ('rebuild')"
+        ),
+        // Versione 4: indici per la lettura paginata keyset (getPage, getActivePage)
+        List.of(
+            // L'ISBN rende univoca la chiave; gli indici sostituiscono quelli su author e release_year
+            "CREATE INDEX IF NOT EXISTS idx_books_title_isbn ON books(title, isbn)",
+            "CREATE INDEX IF NOT EXISTS idx_books_author_isbn ON books(author, isbn)",
+            "CREATE INDEX IF NOT EXISTS idx_books_release_year_isbn ON books(release_year, isbn)",
+            "DROP INDEX IF EXISTS idx_books_author",
+            "DROP INDEX IF EXISTS idx_books_release_year",
+            "CREATE INDEX IF NOT EXISTS idx_users_surname_name_id ON users(surname, name, id)",
+            // Prestiti attivi per scadenza; per utente basta idx_loans_active_user_book
+            "CREATE INDEX IF NOT EXISTS idx_loans_active_deadline "
+                + "ON loans(loan_deadline, user_id, book_isbn) WHERE loan_end IS NULL"
+        ),
+        // Versione 5: avanzamento delle importazioni del catalogo (CatalogueImporter)
+        List.of(
+            "CREATE TABLE IF NOT EXISTS import_checkpoints ("
+                + "name TEXT NOT NULL PRIMARY KEY,"
+                + "row_count INTEGER NOT NULL"
+                + ")"
+        ),
+        // Versione 6: prestiti attivi per utente, aggiornati da DatabaseLoanService (countById)
+        List.of(
+            "ALTER TABLE users ADD COLUMN active_loans INTEGER NOT NULL DEFAULT 0",
+            "UPDATE users SET active_loans = (SELECT COUNT(*) FROM loans "
+                + "WHERE loans.user_id = users.id AND loans.loan_end IS NULL)"
+        ),
+        // Versione 7: change log delle modifiche e posizione delle repliche (ReplicatedDatabase)
+        List.of(
+            // Sul primario: le modifiche di tutte le sedi, nell'ordine in cui sono confermate
+            "CREATE TABLE IF NOT EXISTS change_log ("
+                + "seq INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + "origin TEXT NOT NULL,"
+                + "entity TEXT NOT NULL,"
+                + "change_type TEXT NOT NULL,"
+                + "key_one TEXT NOT NULL,"
+                + "key_two TEXT"
+                + ")",
+            // Sul primario: l'ultima voce applicata da ogni replica
+            "CREATE TABLE IF NOT EXISTS replica_positions ("
+                + "replica TEXT NOT NULL PRIMARY KEY,"
+                + "applied_seq BIGINT NOT NULL"
+                + ")",
+            // Sulla replica: la propria identita' e l'ultima voce applicata
+            "CREATE TABLE IF NOT EXISTS replica_state ("
+                + "id INTEGER NOT NULL PRIMARY KEY CHECK (id = 1),"
+                + "replica TEXT NOT NULL,"
+                + "applied_seq BIGINT NOT NULL"
+                + ")"
+        ),
+        // Versione 8: al piu' un prestito attivo per coppia utente/libro anche con piu' sedi
+        // che registrano in concorrenza (DatabaseLoanService.register)
+        List.of(
+            "DROP INDEX IF EXISTS idx_loans_active_user_book",
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_loans_active_user_book "
+                + "ON loans(user_id, book_isbn) WHERE loan_end IS NULL"
+        ),
+        // Versione 9: istante, in millisecondi epoch, dell'ultima posizione comunicata da
+        // ogni replica; le repliche silenziose da troppo tempo non trattengono il change log
+        List.of(
+            "ALTER TABLE replica_positions ADD COLUMN updated_at BIGINT NOT NULL DEFAULT 0",
+            "UPDATE replica_positions SET updated_at = CAST(strftime('%s', 'now') AS INTEGER) * 1000"
+        )
+    );
+
+    // Versioni di MIGRATIONS che su PostgreSQL vengono sostituite, per numero di versione
+    private static final Map<Integer, List<String>> POSTGRES_MIGRATIONS = Map.of(
+        // Versione 1: rowid esplicito su users e books (ordine di inserimento), id dei
+        // prestiti generato dal database
+        1, List.of(
+            "CREATE TABLE IF NOT EXISTS users ("
+                + "id TEXT NOT NULL PRIMARY KEY,"
+                + "email TEXT NOT NULL UNIQUE,"
+                + "name TEXT NOT NULL,"
+                + "surname TEXT NOT NULL,"
+                + "rowid BIGINT GENERATED ALWAYS AS IDENTITY"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS loans ("
+                + "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + "book_isbn TEXT NOT NULL,"
+                + "user_id TEXT NOT NULL,"
+                + "loan_start DATE NOT NULL,"
+                + "loan_deadline DATE NOT NULL,"
+                + "loan_end DATE"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS books ("
+                + "isbn TEXT NOT NULL PRIMARY KEY,"
+                + "title TEXT NOT NULL,"
+                + "author TEXT NOT NULL,"
+                + "release_year INTEGER NOT NULL,"
+                + "total_copies INTEGER NOT NULL,"
+                + "remaining_copies INTEGER NOT NULL,"
+                + "genre TEXT NOT NULL,"
+                + "description TEXT NOT NULL,"
+                + "rowid BIGINT GENERATED ALWAYS AS IDENTITY"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS auth ("
+                + "password_hash TEXT NOT NULL PRIMARY KEY,"
+                + "question_one TEXT NOT NULL,"
+                + "question_two TEXT NOT NULL,"
+                + "question_three TEXT NOT NULL"
+                + ")"
+        ),
+        // Versione 3: indice full-text e indici trigram GIN (pg_trgm) per le LIKE/ILIKE
+        // dei metodi ...Containing. Su SQLite ISBN e matricole usano SubstringIndex, che
+        // su un server condiviso tra piu' sedi non vedrebbe le modifiche delle altre
+        3, List.of(
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+            // Un'espressione diversa da una chiamata di funzione va racchiusa tra parentesi
+            "CREATE INDEX IF NOT EXISTS idx_books_fts ON books USING GIN ("
+                + POSTGRES_BOOKS_DOCUMENT + ")",
+            "CREATE INDEX IF NOT EXISTS idx_books_title_trgm ON books USING GIN (title gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_books_author_trgm ON books USING GIN (author gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_books_genre_trgm ON books USING GIN (genre gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_books_isbn_trgm ON books USING GIN (isbn gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_users_id_trgm ON users USING GIN (id gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_users_email_trgm ON users USING GIN (email gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_users_name_trgm ON users USING GIN (name gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_users_surname_trgm ON users USING GIN (surname gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_loans_user_trgm ON loans USING GIN (user_id gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_loans_book_trgm ON loans USING GIN (book_isbn gin_trgm_ops)"
+        ),
+        // Versione 7: numero di sequenza del change log generato come identity
+        7, List.of(
+            "CREATE TABLE IF NOT EXISTS change_log ("
+                + "seq BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,"
+                + "origin TEXT NOT NULL,"
+                + "entity TEXT NOT NULL,"
+                + "change_type TEXT NOT NULL,"
+                + "key_one TEXT NOT NULL,"
+                + "key_two TEXT"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS replica_positions ("
+                + "replica TEXT NOT NULL PRIMARY KEY,"
+                + "applied_seq BIGINT NOT NULL"
+                + ")",
+            "CREATE TABLE IF NOT EXISTS replica_state ("
+                + "id INTEGER NOT NULL PRIMARY KEY CHECK (id = 1),"
+                + "replica TEXT NOT NULL,"
+                + "applied_seq BIGINT NOT NULL"
+                + ")"
+        ),
+        // Versione 9: come su SQLite, con l'istante corrente di PostgreSQL
+        9, List.of(
+            "ALTER TABLE replica_positions ADD COLUMN updated_at BIGINT NOT NULL DEFAULT 0",
+            "UPDATE replica_positions SET updated_at = CAST(EXTRACT(EPOCH FROM now()) * 1000 AS BIGINT)"
+        )
+    );
+
+    /**
+     * @brief Restituisce la versione piu' recente dello schema.
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.size();
+    }
+
+    /**
+     * @brief Esegue tutte le migrazioni non ancora applicate al database.
+     *  Ogni migrazione viene eseguita in una transazione insieme all'aggiornamento della
+     *  versione: se fallisce, il database resta alla versione precedente.
+     *  Su PostgreSQL le migrazioni avvengono sotto un lock advisory, cosi' piu' sedi che
+     *  si avviano insieme sullo stesso server non applicano due volte la stessa versione.
+     * @param jdbi L'istanza JDBI con cui scrivere sul database.
+     * @return La versione dello schema dopo la migrazione.
+     * @throws IllegalStateException Se il database ha una versione piu' recente di quella
+     *  supportata dal software.
+     */
+    public static int migrate(Jdbi jdbi) {
+        return jdbi.withHandle(handle -> {
+            Dialect dialect = Dialect.of(handle.getConnection());
+
+            if (dialect == Dialect.POSTGRES) {
+                // pg_advisory_lock restituisce void: si legge una costante per attendere il lock
+                handle.createQuery("SELECT 1 FROM (SELECT pg_advisory_lock(:key)) AS migration_lock")
+                    .bind("key", POSTGRES_MIGRATION_LOCK)
+                    .mapTo(Integer.class)
+                    .one();
+            }
+
+            try {
+                return SchemaMigrator.migrate(handle, dialect);
+            } finally {
+                if (dialect == Dialect.POSTGRES) {
+                    handle.createQuery("SELECT pg_advisory_unlock(:key)")
+                        .bind("key", POSTGRES_MIGRATION_LOCK)
+                        .mapTo(Boolean.class)
+                        .one();
+                }
+            }
+        });
+    }
+
+    private static int migrate(Handle handle, Dialect dialect) {
+        int version = SchemaMigrator.getVersion(handle, dialect);
+
+        if (version > MIGRATIONS.size()) {
+            throw new IllegalStateException("Versione dello schema non supportata: " + version);
+        }
+
+        for (int i = version; i < MIGRATIONS.size(); i++) {
+            int next = i + 1;
+            List<String> statements = dialect == Dialect.POSTGRES
+                ? POSTGRES_MIGRATIONS.getOrDefault(next, MIGRATIONS.get(i))
+                : MIGRATIONS.get(i);
+
+            handle.useTransaction(transaction -> {
+                for (String sql : statements) {
+                    transaction.execute(sql);
+                }
+
+                SchemaMigrator.setVersion(transaction, dialect, next);
+            });
+        }
+
+        return MIGRATIONS.size();
+    }
+
+    /**
+     * @brief Legge la versione corrente dello schema.
+     */
+    public static int getVersion(Jdbi jdbi) {
+        return jdbi.withHandle(handle -> SchemaMigrator.getVersion(handle,
+                    Dialect.of(handle.getConnection())));
+    }
+
+    private static int getVersion(Handle handle, Dialect dialect) {
+        if (dialect == Dialect.SQLITE) {
+            return handle.createQuery("PRAGMA user_version")
+                .mapTo(Integer.class)
+                .one();
+        }
+
+        handle.execute("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER NOT NULL)");
+        return handle.createQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")
+            .mapTo(Integer.class)
+            .one();
+    }
+
+    private static void setVersion(Handle handle, Dialect dialect, int version) {
+        // PRAGMA non accetta parametri: la versione e' un intero generato internamente
+        if (dialect == Dialect.SQLITE) {
+            handle.execute("PRAGMA user_version = " + version);
+            return;
+        }
+
+        handle.execute("DELETE FROM schema_version");
+        handle.createUpdate("INSERT INTO schema_version(version) VALUES (:version)")
+            .bind("version", version)
+            .execute();
+    }
+}
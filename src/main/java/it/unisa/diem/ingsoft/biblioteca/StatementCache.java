@@ -0,0 +1,285 @@
+/**
+ * @brief Database utilizzato per salvare i dati
+ * @package it.unisa.diem.ingsoft.biblioteca
+ */
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdbi.v3.core.statement.DefaultStatementBuilder;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.jdbi.v3.core.statement.StatementBuilder;
+import org.jdbi.v3.core.statement.StatementBuilderFactory;
+import org.jdbi.v3.core.statement.StatementContext;
+
+/**
+ * @brief Riusa le istruzioni preparate tra un handle JDBI e il successivo sulla stessa
+ *  connessione, invece di prepararle ad ogni chiamata di un service.
+ *  Le istruzioni vengono preparate sulla connessione fisica, non su quella restituita dal
+ *  pool (che le chiuderebbe alla restituzione), e conservate per testo SQL: alla chiusura
+ *  dello statement JDBI l'istruzione viene ripulita dei parametri e torna disponibile.
+ *  Per ogni connessione restano al piu' maxSize istruzioni inutilizzate, oltre alle
+ *  NamedQuery, che vengono preparate alla prima richiesta sulla connessione e non vengono
+ *  mai scartate; quando il limite e' superato viene chiusa l'istruzione usata meno di
+ *  recente. Con maxSize pari a 0 nessuna istruzione viene riusata.
+ *  Le istruzioni che restituiscono chiavi generate non vengono riusate.
+ */
+public class StatementCache implements StatementBuilderFactory {
+    /**
+     * @brief Numero massimo predefinito di istruzioni inutilizzate per connessione.
+     */
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final StatementBuilder fallback = new DefaultStatementBuilder();
+    // Le connessioni fisiche chiuse vengono rimosse quando se ne incontra una nuova
+    private final Map<Connection, ConnectionStatements> connections = new IdentityHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile int maxSize;
+
+    /**
+     * @param maxSize Il numero massimo di istruzioni inutilizzate per connessione.
+     * @throws IllegalArgumentException Se maxSize e' negativo.
+     */
+    public StatementCache(int maxSize) {
+        this.setMaxSize(maxSize);
+    }
+
+    /**
+     * @brief Cambia il numero massimo di istruzioni inutilizzate per connessione. Le
+     *  istruzioni in eccesso vengono chiuse alla successiva restituzione.
+     * @param maxSize Il nuovo limite, 0 per non riusare le istruzioni.
+     * @throws IllegalArgumentException Se maxSize e' negativo.
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Dimensione della cache non valida: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @brief Restituisce il numero massimo di istruzioni inutilizzate per connessione.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @brief Restituisce il numero di istruzioni riusate senza prepararle.
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @brief Restituisce il numero di istruzioni che e' stato necessario preparare.
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    @Override
+    public StatementBuilder createStatementBuilder(Connection connection) {
+        return new Builder();
+    }
+
+    private ConnectionStatements statementsOf(Connection physical, StatementContext ctx) {
+        ConnectionStatements statements;
+
+        synchronized (this.connections) {
+            statements = this.connections.get(physical);
+            if (statements == null) {
+                this.connections.keySet().removeIf(StatementCache::isClosed);
+                statements = new ConnectionStatements();
+                this.connections.put(physical, statements);
+            }
+        }
+
+        if (!statements.ready) {
+            statements.prepareNamedQueries(physical, ctx);
+        }
+
+        return statements;
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @brief Lo StatementBuilder di un handle: crea e restituisce le istruzioni usando le
+     *  istruzioni conservate per la connessione fisica dell'handle.
+     */
+    private class Builder implements StatementBuilder {
+        @Override
+        public Statement create(Connection connection, StatementContext ctx) throws SQLException {
+            return StatementCache.this.fallback.create(connection, ctx);
+        }
+
+        @Override
+        public PreparedStatement create(Connection connection, String sql, StatementContext ctx)
+                throws SQLException {
+            if (StatementCache.this.maxSize == 0 || ctx.isReturningGeneratedKeys() || ctx.isConcurrentUpdatable()) {
+                return StatementCache.this.fallback.create(connection, sql, ctx);
+            }
+
+            Connection physical = connection.unwrap(Connection.class);
+            ConnectionStatements statements = StatementCache.this.statementsOf(physical, ctx);
+
+            PreparedStatement statement = statements.take(sql);
+            if (statement != null) {
+                StatementCache.this.hits.incrementAndGet();
+                return statement;
+            }
+
+            StatementCache.this.misses.incrementAndGet();
+            statement = physical.prepareStatement(sql);
+            statements.lend(sql, statement);
+            return statement;
+        }
+
+        @Override
+        public CallableStatement createCall(Connection connection, String sql, StatementContext ctx)
+                throws SQLException {
+            return StatementCache.this.fallback.createCall(connection, sql, ctx);
+        }
+
+        @Override
+        public void close(Connection connection, String sql, Statement statement) throws SQLException {
+            if (statement == null) {
+                return;
+            }
+
+            ConnectionStatements statements;
+            synchronized (StatementCache.this.connections) {
+                statements = StatementCache.this.connections.get(connection.unwrap(Connection.class));
+            }
+
+            if (statements == null || !statements.release(statement)) {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * @brief Le istruzioni di una connessione fisica: quelle inutilizzate, per testo SQL in
+     *  ordine di utilizzo, e quelle in uso da uno statement JDBI.
+     */
+    private class ConnectionStatements {
+        private final Map<String, PreparedStatement> idle = new LinkedHashMap<>(16, 0.75f, true);
+        // Testo SQL delle istruzioni in uso, per restituirle alla chiusura
+        private final Map<Statement, String> borrowed = new IdentityHashMap<>();
+        // Testo SQL, gia' convertito da JDBI, delle NamedQuery preparate
+        private final Set<String> pinned = new HashSet<>();
+        private volatile boolean ready;
+
+        /**
+         * @brief Prepara le NamedQuery non ancora preparate. Quelle che non si possono
+         *  preparare, perche' lo schema non e' ancora stato creato, vengono riprovate alla
+         *  richiesta successiva.
+         */
+        private void prepareNamedQueries(Connection physical, StatementContext ctx) {
+            boolean ready = true;
+
+            for (NamedQuery query : NamedQuery.values()) {
+                String sql = ctx.getConfig(SqlStatements.class)
+                    .getSqlParser()
+                    .parse(query.getSql(), ctx)
+                    .getSql();
+
+                synchronized (this) {
+                    if (this.pinned.contains(sql)) {
+                        continue;
+                    }
+                }
+
+                try {
+                    PreparedStatement statement = physical.prepareStatement(sql);
+                    synchronized (this) {
+                        this.pinned.add(sql);
+                        if (this.idle.putIfAbsent(sql, statement) != null) {
+                            statement.close();
+                        }
+                    }
+                } catch (SQLException e) {
+                    ready = false;
+                }
+            }
+
+            this.ready = ready;
+        }
+
+        private synchronized PreparedStatement take(String sql) throws SQLException {
+            PreparedStatement statement = this.idle.remove(sql);
+            // La connessione fisica puo' essere stata chiusa dal pool
+            if (statement == null || statement.isClosed()) {
+                return null;
+            }
+
+            this.borrowed.put(statement, sql);
+            return statement;
+        }
+
+        private synchronized void lend(String sql, PreparedStatement statement) {
+            this.borrowed.put(statement, sql);
+        }
+
+        /**
+         * @return false se l'istruzione non e' stata creata dalla cache o non puo' essere
+         *  conservata, e va quindi chiusa.
+         */
+        private synchronized boolean release(Statement statement) throws SQLException {
+            String sql = this.borrowed.remove(statement);
+            if (sql == null) {
+                return false;
+            }
+
+            if (statement.isClosed() || this.idle.containsKey(sql)) {
+                return false;
+            }
+
+            PreparedStatement prepared = (PreparedStatement) statement;
+            prepared.clearParameters();
+            prepared.clearBatch();
+            this.idle.put(sql, prepared);
+
+            int excess = -StatementCache.this.maxSize;
+            for (String key : this.idle.keySet()) {
+                if (!this.pinned.contains(key)) {
+                    excess++;
+                }
+            }
+
+            // L'iterazione parte dall'istruzione usata meno di recente
+            Iterator<Map.Entry<String, PreparedStatement>> entries = this.idle.entrySet().iterator();
+            while (excess > 0 && entries.hasNext()) {
+                Map.Entry<String, PreparedStatement> entry = entries.next();
+                if (!this.pinned.contains(entry.getKey())) {
+                    entry.getValue().close();
+                    entries.remove();
+                    excess--;
+                }
+            }
+
+            return true;
+        }
+    }
+}
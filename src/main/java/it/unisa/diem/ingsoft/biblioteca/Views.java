@@ -14,4 +14,5 @@ public class Views {
     public static final String USER_PATH = "/it/unisa/diem/ingsoft/biblioteca/view/UserScene.fxml";
     public static final String EDIT_USER_PATH = "/it/unisa/diem/ingsoft/biblioteca/view/EditUserScene.fxml";
     public static final String ACCOUNT_USER_PATH = "/it/unisa/diem/ingsoft/biblioteca/view/AccountUserScene.fxml";
+    public static final String DIAGNOSTICS_PATH = "/it/unisa/diem/ingsoft/biblioteca/view/DiagnosticsScene.fxml";
 }
@@ -9,9 +9,8 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.ResourceBundle;
 
-import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanDetails;
 import it.unisa.diem.ingsoft.biblioteca.model.User;
-import it.unisa.diem.ingsoft.biblioteca.service.BookService;
 import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import javafx.beans.property.SimpleStringProperty;
@@ -47,20 +46,19 @@ public class AccountUserSceneController extends GuiController implements Initial
     private Label labelEmail;
 
     @FXML
-    private TableView<Loan> loansTable;
+    private TableView<LoanDetails> loansTable;
 
     @FXML
-    private TableColumn<Loan, String> columnIsbn;
+    private TableColumn<LoanDetails, String> columnIsbn;
     @FXML
-    private TableColumn<Loan, String> columnTitle;
+    private TableColumn<LoanDetails, String> columnTitle;
     @FXML
-    private TableColumn<Loan, LocalDate> columnStartDate;
+    private TableColumn<LoanDetails, LocalDate> columnStartDate;
     @FXML
-    private TableColumn<Loan, LocalDate> columnDeadline;
+    private TableColumn<LoanDetails, LocalDate> columnDeadline;
 
 
     private LoanService loanService;
-    private BookService bookService;
 
     private User user;
 
@@ -74,7 +72,6 @@ public class AccountUserSceneController extends GuiController implements Initial
     public void setServices(ServiceRepository serviceRepository){
         super.setServices(serviceRepository);
         this.loanService= serviceRepository.getLoanService();
-        this.bookService= serviceRepository.getBookService();
     }
 
 
@@ -92,16 +89,10 @@ public class AccountUserSceneController extends GuiController implements Initial
         this.columnDeadline.setCellValueFactory(new PropertyValueFactory<>("loanDeadline"));
 
 
-        //Configurazione della colonna TITOLO (dato derivato tramite BookService)
-        this.columnTitle.setCellValueFactory(cellData -> {
-            Loan loan = cellData.getValue();
-            String isbn = loan.getBookIsbn();
-
-            // Recupera il titolo usando il servizio bookService
-            return this.bookService.getByIsbn(isbn)
-                                    .map(book -> new SimpleStringProperty(book.getTitle()))
-                                    .orElse(new SimpleStringProperty("Titolo non trovato"));
-        });
+        //Configurazione della colonna TITOLO (letto insieme al prestito)
+        this.columnTitle.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue()
+                    .getBookTitle()
+                    .orElse("Titolo non trovato")));
 
 
     }
@@ -124,19 +115,19 @@ public class AccountUserSceneController extends GuiController implements Initial
             this.labelEmail.setText(user.getEmail());
         }
 
-        //ottengo la lista dei prestiti di un singolo utente
-        List<Loan> userLoans = this.loanService.getActiveByUserId(this.user.getId());
+        //ottengo la lista dei prestiti di un singolo utente, con i titoli dei libri
+        List<LoanDetails> userLoans = this.loanService.getActiveDetailsByUserId(this.user.getId());
 
         // Converto la lista in ObservableList
-        ObservableList<Loan> observableLoans = FXCollections.observableArrayList(userLoans);
+        ObservableList<LoanDetails> observableLoans = FXCollections.observableArrayList(userLoans);
 
         //popolo la tabella
         this.loansTable.setItems(observableLoans);
 
         // Codice per visualizzare in rosso i prestiti "scaduti"
-        this.loansTable.setRowFactory(tv -> new javafx.scene.control.TableRow<Loan>() {
+        this.loansTable.setRowFactory(tv -> new javafx.scene.control.TableRow<LoanDetails>() {
             @Override
-            protected void updateItem(Loan loan, boolean empty) {
+            protected void updateItem(LoanDetails loan, boolean empty) {
                 super.updateItem(loan, empty);
 
                 if (loan == null || empty) {
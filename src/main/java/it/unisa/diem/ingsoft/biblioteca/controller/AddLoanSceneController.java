@@ -46,6 +46,9 @@ public class AddLoanSceneController extends GuiController {
     private UserService userService;
     private BookService bookService;
 
+    private DebouncedSearch<List<User>> userSearch;
+    private DebouncedSearch<List<Book>> bookSearch;
+
     /**
      * @brief Costruttore vuoto del controller.
      * Viene invocato dal FXMLLoader per caricare la nuova scena
@@ -65,6 +68,11 @@ public class AddLoanSceneController extends GuiController {
         this.userService = serviceRepository.getUserService();
         this.bookService = serviceRepository.getBookService();
 
+        this.userSearch = new DebouncedSearch<>(serviceRepository.getAsyncServices(), this::showUserSuggestions,
+                this::showReadError);
+        this.bookSearch = new DebouncedSearch<>(serviceRepository.getAsyncServices(), this::showBookSuggestions,
+                this::showReadError);
+
         this.setupUserAutocomplete();
         this.setupBookAutocomplete();
     }
@@ -106,6 +114,7 @@ public class AddLoanSceneController extends GuiController {
 
     /**
      * @brief Gestisce la logica di autocompletamento per gli utenti.
+     *  La ricerca parte in background al termine della digitazione.
      */
     private void setupUserAutocomplete() {
         this.userMatricolaField.textProperty().addListener((observable, oldValue, newValue) -> {
@@ -113,49 +122,60 @@ public class AddLoanSceneController extends GuiController {
             if (this.userMatricolaField.isDisabled()) return;
 
             if (newValue == null || newValue.isEmpty()) {
+                this.userSearch.cancel();
                 this.userSuggestions.hide();
                 return;
             }
 
-            List<User> results = this.userService.getAllByIdContaining(newValue);
+            this.userSearch.request(services -> services.getUserService().getAllByIdContaining(newValue));
+        });
 
-            this.userSuggestions.getItems().clear();
+        //Nasconde la tendina se interagisco con altro
+        this.userMatricolaField.focusedProperty().addListener((obs, oldVal, newVal) -> {
+            if (!newVal) this.userSuggestions.hide();
+        });
+    }
 
-            if (!results.isEmpty()) {
-                //Seleziona i primi 7 risultati
-                for (User user : results.stream().limit(7).toList()) {
+    /**
+     * @brief Mostra nella tendina i primi utenti trovati dalla ricerca.
+     */
+    private void showUserSuggestions(List<User> results) {
+        // Utente gia' selezionato mentre la ricerca era in corso
+        if (this.userMatricolaField.isDisabled()) return;
 
-                    //Associa la matricola al nome e al cognome
-                    String label = user.getId() + " - " + user.getName() + " " + user.getSurname();
-                    MenuItem item = new MenuItem(label);
+        this.userSuggestions.getItems().clear();
 
-                    item.setOnAction(e -> {
-                        this.userMatricolaField.setText(user.getId());
-                        this.userMatricolaField.setDisable(true);
-                        this.btnResetUser.setDisable(false);
-                        this.userSuggestions.hide();
-                    });
+        if (!results.isEmpty()) {
+            //Seleziona i primi 7 risultati
+            for (User user : results.stream().limit(7).toList()) {
 
-                    this.userSuggestions.getItems().add(item);
-                }
+                //Associa la matricola al nome e al cognome
+                String label = user.getId() + " - " + user.getName() + " " + user.getSurname();
+                MenuItem item = new MenuItem(label);
 
-                //Mostra la tendina sotto il campo di testo
-                if (!this.userSuggestions.isShowing()) {
-                    this.userSuggestions.show(this.userMatricolaField, Side.BOTTOM, 0, 0);
-                }
-            } else {
-                this.userSuggestions.hide();
+                item.setOnAction(e -> {
+                    this.userMatricolaField.setText(user.getId());
+                    this.userMatricolaField.setDisable(true);
+                    this.btnResetUser.setDisable(false);
+                    this.userSearch.cancel();
+                    this.userSuggestions.hide();
+                });
+
+                this.userSuggestions.getItems().add(item);
             }
-        });
 
-        //Nasconde la tendina se interagisco con altro
-        this.userMatricolaField.focusedProperty().addListener((obs, oldVal, newVal) -> {
-            if (!newVal) this.userSuggestions.hide();
-        });
+            //Mostra la tendina sotto il campo di testo
+            if (!this.userSuggestions.isShowing()) {
+                this.userSuggestions.show(this.userMatricolaField, Side.BOTTOM, 0, 0);
+            }
+        } else {
+            this.userSuggestions.hide();
+        }
     }
 
     /**
      * @brief Gestisce la logica di autocompletamento per i libri.
+     *  La ricerca parte in background al termine della digitazione.
      */
     private void setupBookAutocomplete() {
         this.isbnField.textProperty().addListener((observable, oldValue, newValue) -> {
@@ -163,44 +183,54 @@ public class AddLoanSceneController extends GuiController {
             if (this.isbnField.isDisabled()) return;
 
             if (newValue == null || newValue.isEmpty()) {
+                this.bookSearch.cancel();
                 this.bookSuggestions.hide();
                 return;
             }
 
-            List<Book> results = this.bookService.getAllByIsbnContaining(newValue);
+            this.bookSearch.request(services -> services.getBookService().getAllByIsbnContaining(newValue));
+        });
 
-            this.bookSuggestions.getItems().clear();
+        this.isbnField.focusedProperty().addListener((obs, oldVal, newVal) -> {
+            if (!newVal) this.bookSuggestions.hide();
+        });
+    }
 
-            if (!results.isEmpty()) {
-                //Seleziona i primi 7 risultati
-                for (Book book : results.stream().limit(7).toList()) {
+    /**
+     * @brief Mostra nella tendina i primi libri trovati dalla ricerca.
+     */
+    private void showBookSuggestions(List<Book> results) {
+        // Libro gia' selezionato mentre la ricerca era in corso
+        if (this.isbnField.isDisabled()) return;
 
-                    //Associa l'ISBN al titolo
-                    String label = book.getIsbn() + " - " + book.getTitle();
-                    MenuItem item = new MenuItem(label);
+        this.bookSuggestions.getItems().clear();
 
-                    item.setOnAction(e -> {
-                        this.isbnField.setText(book.getIsbn());
-                        this.isbnField.setDisable(true);
-                        this.btnResetBook.setDisable(false);
-                        this.bookSuggestions.hide();
-                    });
+        if (!results.isEmpty()) {
+            //Seleziona i primi 7 risultati
+            for (Book book : results.stream().limit(7).toList()) {
 
-                    this.bookSuggestions.getItems().add(item);
-                }
+                //Associa l'ISBN al titolo
+                String label = book.getIsbn() + " - " + book.getTitle();
+                MenuItem item = new MenuItem(label);
 
-                //Mostra la tendina sotto il campo di testo
-                if (!this.bookSuggestions.isShowing()) {
-                    this.bookSuggestions.show(this.isbnField, Side.BOTTOM, 0, 0);
-                }
-            } else {
-                this.bookSuggestions.hide();
+                item.setOnAction(e -> {
+                    this.isbnField.setText(book.getIsbn());
+                    this.isbnField.setDisable(true);
+                    this.btnResetBook.setDisable(false);
+                    this.bookSearch.cancel();
+                    this.bookSuggestions.hide();
+                });
+
+                this.bookSuggestions.getItems().add(item);
             }
-        });
 
-        this.isbnField.focusedProperty().addListener((obs, oldVal, newVal) -> {
-            if (!newVal) this.bookSuggestions.hide();
-        });
+            //Mostra la tendina sotto il campo di testo
+            if (!this.bookSuggestions.isShowing()) {
+                this.bookSuggestions.show(this.isbnField, Side.BOTTOM, 0, 0);
+            }
+        } else {
+            this.bookSuggestions.hide();
+        }
     }
 
     /**
@@ -8,14 +8,19 @@ import static it.unisa.diem.ingsoft.biblioteca.Views.EDIT_BOOK_PATH;
 import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
 
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Comparator;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.function.Function;
 
 import it.unisa.diem.ingsoft.biblioteca.exception.BookException;
 import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.BookQuery;
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
 import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.ChangeListener;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -37,6 +42,7 @@ public class BookSceneController extends GuiController implements Initializable
 
     @FXML private ComboBox<String> searchType;
     @FXML private TextField searchField;
+    @FXML private CheckBox availableOnly;
 
     @FXML private TableView<Book> bookCatalog;
     @FXML private TableColumn<Book, String> columnTitle;
@@ -54,8 +60,13 @@ public class BookSceneController extends GuiController implements Initializable
     @FXML private Button btnRemove;
 
     private BookService bookService;
+    private DebouncedSearch<List<Book>> search;
+    private PagedTableLoader<Book> pages;
     private ObservableList<Book> books;
 
+    // Conservato in un campo: il service mantiene i listener con riferimenti deboli
+    private final ChangeListener changeListener = this::onChange;
+
     /**
      * @brief Costruttore vuoto del controller.
      * Viene invocato dal FXMLLoader per caricare la nuova scena
@@ -72,6 +83,11 @@ public class BookSceneController extends GuiController implements Initializable
     public void setServices(ServiceRepository serviceRepository) {
         super.setServices(serviceRepository);
         this.bookService = serviceRepository.getBookService();
+        this.search = new DebouncedSearch<>(serviceRepository.getAsyncServices(), this::showBooks,
+                this::showReadError);
+        this.pages = new PagedTableLoader<>(this.bookCatalog, serviceRepository.getAsyncServices(),
+                this::showReadError);
+        this.bookService.addChangeListener(this.changeListener);
 
         this.updateTable();
     }
@@ -146,26 +162,57 @@ public class BookSceneController extends GuiController implements Initializable
             this.updateTable();
         });
 
+        this.availableOnly.selectedProperty().addListener((obs, oldVal, newVal) ->
+                this.filterBooks(this.searchField.getText()));
+
         this.searchType.setValue("Titolo ");
 
 
     }
 
     /**
-     * @brief Aggiorna la TableView recuperando tutti i libri del catalogo.
+     * @brief Aggiorna la TableView con il catalogo ordinato per titolo.
+     *  I libri vengono letti in background a pagine, man mano che l'utente scorre.
      */
     private void updateTable() {
-        if (this.bookService == null) {
+        if (this.search == null) {
+            return;
+        }
+
+        this.search.cancel();
+        this.pages.load((services, after) -> services.getBookService()
+                .getPage(after, PagedTableLoader.PAGE_SIZE, BookSort.TITLE),
+                Comparator.comparing(Book::getTitle).thenComparing(Book::getIsbn));
+    }
+
+    /**
+     * @brief Aggiorna la riga del libro modificato, senza ricaricare il catalogo.
+     *  Riceve anche le variazioni delle copie rimanenti dovute a prestiti e restituzioni.
+     */
+    private void onChange(EntityChange change) {
+        if (change.getEntity() != EntityChange.Entity.BOOK) {
             return;
         }
 
-        List<Book> list = this.bookService.getAll();
+        String isbn = change.getKey().get(0);
+        this.pages.patch(book -> book.getIsbn().equals(isbn),
+                services -> services.getBookService().getByIsbn(isbn));
+    }
+
+    /**
+     * @brief Mostra nella TableView il risultato di una ricerca.
+     */
+    private void showBooks(List<Book> list) {
+        this.pages.stop();
         this.books = FXCollections.observableArrayList(list);
         this.bookCatalog.setItems(this.books);
     }
 
     /**
      * @brief Filtra i libri nella tabella in base alla query e al tipo di ricerca selezionato.
+     *  Titolo, autore, genere e anno completo vengono cercati con un'unica BookQuery, insieme
+     *  al filtro sulle copie disponibili se selezionato.
+     *  La ricerca parte in background al termine della digitazione.
      */
     @FXML
     private void filterBooks(String query) {
@@ -174,26 +221,43 @@ public class BookSceneController extends GuiController implements Initializable
             return;
         }
 
+        if (this.search == null) {
+            return;
+        }
+
         String type = this.searchType.getValue();
-        List<Book> result = new ArrayList<>();
+        boolean available = this.availableOnly.isSelected();
+        BookQuery.Builder bookQuery = BookQuery.builder();
+        Function<ServiceRepository, List<Book>> result;
+
+        if (available) {
+            bookQuery.availableOnly();
+        }
 
         switch (type) {
             case "Titolo ":
-                result = this.bookService.getAllByTitleContaining(query);
+                result = this.find(bookQuery.titleContaining(query));
                 break;
             case "Autore ":
-                result = this.bookService.getAllByAuthorContaining(query);
+                result = this.find(bookQuery.authorContaining(query).sortBy(BookSort.AUTHOR));
                 break;
             case "Genere ":
-                result = this.bookService.getAllByGenreContaining(query);
+                result = this.find(bookQuery.genreContaining(query));
                 break;
             case "ISBN ":
-                result = this.bookService.getAllByIsbnContaining(query);
+                result = services -> this.filterAvailable(
+                        services.getBookService().getAllByIsbnContaining(query), available);
                 break;
             case "Anno ":
                 try {
                     int year = Integer.parseInt(query);
-                    result = this.bookService.getAllByReleaseYear(year);
+                    if (query.length() == 4) {
+                        result = this.find(bookQuery.releasedBetween(year, year));
+                    } else {
+                        // Anno incompleto: si cercano gli anni che contengono le cifre inserite
+                        result = services -> this.filterAvailable(
+                                services.getBookService().getAllByReleaseYear(year), available);
+                    }
                 } catch (NumberFormatException e) {
                     super.popUp(Alert.AlertType.WARNING , "Errore validazione","L'anno deve essere un numero intero.");
                     return;
@@ -204,8 +268,22 @@ public class BookSceneController extends GuiController implements Initializable
                 return;
         }
 
-        this.books = FXCollections.observableArrayList(result);
-        this.bookCatalog.setItems(this.books);
+        this.search.request(result);
+    }
+
+    private Function<ServiceRepository, List<Book>> find(BookQuery.Builder bookQuery) {
+        BookQuery built = bookQuery.build();
+        return services -> services.getBookService().find(built);
+    }
+
+    private List<Book> filterAvailable(List<Book> books, boolean available) {
+        if (!available) {
+            return books;
+        }
+
+        return books.stream()
+                .filter(book -> book.getRemainingCopies() > 0)
+                .toList();
     }
 
     /**
@@ -227,16 +305,12 @@ public class BookSceneController extends GuiController implements Initializable
             boolean success = false;
             try {
                 success = this.bookService.removeByIsbn(selectedBook.getIsbn());
-                if (success) {
-                    this.updateTable();
-                } else {
+                if (!success) {
                     super.popUp(Alert.AlertType.ERROR, "Errore validazione", "Libro specificato inesistente.");
                 }
             } catch (BookException e) {
                 super.popUp(Alert.AlertType.ERROR, "Errore selezione", e.getMessage());
             }
-
-            this.updateTable();
         }
     }
 
@@ -255,8 +329,6 @@ public class BookSceneController extends GuiController implements Initializable
         super.modalScene(EDIT_BOOK_PATH, "Modifica Libro", (EditBookSceneController controller) -> {
             controller.setBookToEdit(selectedBook);
         });
-
-        this.updateTable();
     }
 
     /**
@@ -273,7 +345,5 @@ public class BookSceneController extends GuiController implements Initializable
     @FXML
     private void handleAddBook(ActionEvent event) {
         super.modalScene(EDIT_BOOK_PATH, "Aggiungi Libro", null);
-
-        this.updateTable();
     }
 }
@@ -0,0 +1,116 @@
+/**
+ * @brief Package dei controller
+ * @package it.unisa.diem.ingsoft.biblioteca.controller
+ */
+package it.unisa.diem.ingsoft.biblioteca.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unisa.diem.ingsoft.biblioteca.service.AsyncServices;
+import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+/**
+ * @brief Esegue le ricerche di un controller fuori dal thread JavaFX.
+ *  Le richieste fatte durante la digitazione vengono raggruppate: la ricerca parte solo
+ *  dopo una pausa senza nuove richieste. Una nuova richiesta annulla quella precedente,
+ *  il cui risultato viene scartato anche se la query era gia' in esecuzione.
+ *  Il risultato, o l'errore della ricerca, viene pubblicato sul thread JavaFX con
+ *  Platform.runLater; gli errori vengono anche registrati nel log.
+ *  Tutti i metodi vanno chiamati dal thread JavaFX.
+ * @param <T> Il tipo del risultato della ricerca.
+ */
+class DebouncedSearch<T> {
+    /**
+     * @brief Pausa di digitazione dopo la quale parte la ricerca.
+     */
+    static final Duration DEFAULT_DELAY = Duration.millis(150);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DebouncedSearch.class);
+
+    private final AsyncServices services;
+    private final Consumer<T> onResult;
+    private final Consumer<Throwable> onError;
+    private final PauseTransition delay;
+
+    private Function<ServiceRepository, T> pending;
+    private CompletableFuture<T> running;
+    private long generation;
+
+    /**
+     * @param services La facciata asincrona su cui eseguire le ricerche.
+     * @param onResult Riceve sul thread JavaFX il risultato dell'ultima ricerca richiesta.
+     * @param onError Riceve sul thread JavaFX l'errore dell'ultima ricerca richiesta.
+     */
+    DebouncedSearch(AsyncServices services, Consumer<T> onResult, Consumer<Throwable> onError) {
+        this.services = services;
+        this.onResult = onResult;
+        this.onError = onError;
+        this.delay = new PauseTransition(DEFAULT_DELAY);
+        this.delay.setOnFinished(event -> this.start(this.pending));
+    }
+
+    /**
+     * @brief Richiede una ricerca, eseguita al termine della pausa di digitazione.
+     */
+    void request(Function<ServiceRepository, T> query) {
+        this.supersede();
+        this.pending = query;
+        this.delay.playFromStart();
+    }
+
+    /**
+     * @brief Richiede una ricerca da eseguire subito, ad esempio al caricamento della scena.
+     */
+    void requestNow(Function<ServiceRepository, T> query) {
+        this.supersede();
+        this.start(query);
+    }
+
+    /**
+     * @brief Annulla la ricerca in attesa o in esecuzione: il suo risultato viene scartato.
+     */
+    void cancel() {
+        this.supersede();
+    }
+
+    private void supersede() {
+        this.generation++;
+        this.delay.stop();
+
+        if (this.running != null) {
+            this.running.cancel(false);
+            this.running = null;
+        }
+    }
+
+    private void start(Function<ServiceRepository, T> query) {
+        long current = this.generation;
+
+        this.running = this.services.supply(query);
+        this.running.whenComplete((result, error) -> Platform.runLater(() -> {
+            // Una richiesta piu' recente ha reso obsoleto questo risultato
+            if (current != this.generation) {
+                return;
+            }
+
+            this.running = null;
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                LOGGER.warn("Ricerca non riuscita", cause);
+                this.onError.accept(cause);
+                return;
+            }
+
+            this.onResult.accept(result);
+        }));
+    }
+}
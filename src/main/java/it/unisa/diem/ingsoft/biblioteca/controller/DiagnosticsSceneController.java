@@ -0,0 +1,114 @@
+/**
+ * @brief Package dei controller
+ * @package it.unisa.diem.ingsoft.biblioteca.controller
+ */
+package it.unisa.diem.ingsoft.biblioteca.controller;
+
+import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+
+import it.unisa.diem.ingsoft.biblioteca.QueryMetrics;
+import it.unisa.diem.ingsoft.biblioteca.QueryStats;
+import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+
+/**
+ * @brief Controller per la view di diagnostica.
+ *
+ * Mostra le statistiche delle query eseguite sul database dall'avvio (o dall'ultimo
+ * azzeramento), dalla query con il tempo totale piu' alto. Le stesse statistiche sono
+ * disponibili via JMX (QueryMetrics#OBJECT_NAME).
+ */
+public class DiagnosticsSceneController extends GuiController implements Initializable {
+    @FXML private TableView<QueryStats> queryTable;
+    @FXML private TableColumn<QueryStats, String> columnName;
+    @FXML private TableColumn<QueryStats, Long> columnCalls;
+    @FXML private TableColumn<QueryStats, Long> columnRows;
+    @FXML private TableColumn<QueryStats, Long> columnErrors;
+    @FXML private TableColumn<QueryStats, Long> columnP50;
+    @FXML private TableColumn<QueryStats, Long> columnP99;
+    @FXML private TableColumn<QueryStats, Long> columnMax;
+    @FXML private TableColumn<QueryStats, Long> columnTotal;
+
+    @FXML private Label slowQueryLabel;
+    @FXML private Button btnHome;
+    @FXML private Button btnRefresh;
+    @FXML private Button btnReset;
+
+    private QueryMetrics queryMetrics;
+
+    /**
+     * @brief Imposta il repository dei servizi e mostra le statistiche correnti.
+     *
+     * @param serviceRepository Il contenitore dei servizi.
+     */
+    @Override
+    public void setServices(ServiceRepository serviceRepository) {
+        super.setServices(serviceRepository);
+        this.queryMetrics = serviceRepository.getQueryMetrics();
+
+        this.updateTable();
+    }
+
+    /**
+     * @brief Inizializza il controller configurando le colonne della tabella.
+     *
+     * @param location La location utilizzata per risolvere i percorsi relativi all'oggetto root, o null se non nota.
+     * @param resources Le risorse utilizzate per localizzare l'oggetto root, o null se non localizzato.
+     */
+    @Override
+    public void initialize(URL location, ResourceBundle resources) {
+        this.columnName.setCellValueFactory(new PropertyValueFactory<>("name"));
+        this.columnCalls.setCellValueFactory(new PropertyValueFactory<>("calls"));
+        this.columnRows.setCellValueFactory(new PropertyValueFactory<>("rows"));
+        this.columnErrors.setCellValueFactory(new PropertyValueFactory<>("errors"));
+        this.columnP50.setCellValueFactory(new PropertyValueFactory<>("p50Micros"));
+        this.columnP99.setCellValueFactory(new PropertyValueFactory<>("p99Micros"));
+        this.columnMax.setCellValueFactory(new PropertyValueFactory<>("maxMicros"));
+        this.columnTotal.setCellValueFactory(new PropertyValueFactory<>("totalMicros"));
+    }
+
+    /**
+     * @brief Rilegge le statistiche delle query.
+     */
+    private void updateTable() {
+        this.queryTable.setItems(FXCollections.observableArrayList(this.queryMetrics.getQueries()));
+        this.slowQueryLabel.setText("Query lente: " + this.queryMetrics.getSlowQueryCount()
+                + " (oltre " + this.queryMetrics.getSlowQueryThresholdMillis() + " ms)");
+    }
+
+    /**
+     * @brief Aggiorna la tabella con le statistiche correnti.
+     */
+    @FXML
+    private void handleRefresh(ActionEvent event) {
+        this.updateTable();
+    }
+
+    /**
+     * @brief Azzera le statistiche e la tabella.
+     */
+    @FXML
+    private void handleReset(ActionEvent event) {
+        this.queryMetrics.reset();
+        this.updateTable();
+    }
+
+    /**
+     * @brief Torna alla homepage.
+     */
+    @FXML
+    private void handleBackToHome(ActionEvent event) {
+        super.changeScene(event, HOMEPAGE_PATH);
+    }
+}
@@ -7,7 +7,6 @@ package it.unisa.diem.ingsoft.biblioteca.controller;
 import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
 import static it.unisa.diem.ingsoft.biblioteca.Views.UPDATE_ANSWERS_PATH;
 
-import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -31,7 +30,6 @@ public class EditPasswordSceneController extends GuiController {
     @FXML private PasswordField newPassword;
     @FXML private PasswordField newPasswordConfirm;
 
-    private AuthService passwordService;
 
     /**
      * @brief Setter per i servizi di gestione della password.
@@ -40,7 +38,6 @@ public class EditPasswordSceneController extends GuiController {
     @Override
     public void setServices(ServiceRepository serviceRepository) {
         super.setServices(serviceRepository);
-        this.passwordService = serviceRepository.getAuthService();
     }
 
     /**
@@ -54,24 +51,29 @@ public class EditPasswordSceneController extends GuiController {
         String newPass = this.newPassword.getText();
         String confirmPass = this.newPasswordConfirm.getText();
 
-        if (!this.passwordService.checkPassword(oldPass)) {
-            this.popUp(Alert.AlertType.ERROR, "Errore password", "La password vecchia inserita non è corretta.");
-            return;
-        }
+        // Verifica della vecchia password e hash della nuova avvengono in background
+        super.runAuth(this.btnUpdate, auth -> auth.checkPassword(oldPass), correct -> {
+            if (!correct) {
+                this.popUp(Alert.AlertType.ERROR, "Errore password", "La password vecchia inserita non è corretta.");
+                return;
+            }
 
-        if (!newPass.equals(confirmPass)) {
-            this.popUp(Alert.AlertType.WARNING, "Valutazione password", "Le due password non coincidono.");
-            return;
-        }
+            if (!newPass.equals(confirmPass)) {
+                this.popUp(Alert.AlertType.WARNING, "Valutazione password", "Le due password non coincidono.");
+                return;
+            }
 
-        if (newPass.length() < 6 || newPass.length() > 10) {
-            this.popUp(Alert.AlertType.WARNING, "Valutazione password", "La nuova password deve essere da 6 a 10 caratteri.");
-            return;
-        }
+            if (newPass.length() < 6 || newPass.length() > 10) {
+                this.popUp(Alert.AlertType.WARNING, "Valutazione password", "La nuova password deve essere da 6 a 10 caratteri.");
+                return;
+            }
 
-        this.passwordService.changePassword(newPass);
-
-        this.changeScene(event, HOMEPAGE_PATH);
+            super.runAuth(this.btnUpdate, auth -> {
+                auth.changePassword(newPass);
+                return newPass;
+            }, changed -> this.changeScene(event, HOMEPAGE_PATH),
+                error -> this.popUp(Alert.AlertType.ERROR, "Errore password", error.getMessage()));
+        }, error -> this.popUp(Alert.AlertType.ERROR, "Errore password", error.getMessage()));
     }
 
     /**
@@ -9,8 +9,6 @@ package it.unisa.diem.ingsoft.biblioteca.controller;
 import static it.unisa.diem.ingsoft.biblioteca.Views.LOGIN_PATH;
 import static it.unisa.diem.ingsoft.biblioteca.Views.NEW_PASSWORD_PATH;
 
-import it.unisa.diem.ingsoft.biblioteca.exception.UnsetAnswerException;
-import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -29,8 +27,6 @@ import javafx.scene.control.TextField;
  */
 public class ForgottenPasswordSceneController extends GuiController {
 
-    private  AuthService authService;
-
     /**
      * @brief Setter per i servizi di gestione della password.
      * @param serviceRepository Contenitore dei servizi da cui recuperare il Service
@@ -39,7 +35,6 @@ public class ForgottenPasswordSceneController extends GuiController {
     @Override
     public void setServices(ServiceRepository serviceRepository) {
         super.setServices(serviceRepository);
-        this.authService = serviceRepository.getAuthService();
     }
 
     @FXML
@@ -70,31 +65,25 @@ public class ForgottenPasswordSceneController extends GuiController {
     @FXML
     public void handleVerify(ActionEvent event){
 
-        try {
-            String tf1 = this.answer1Field.getText().trim();
-            String tf2 = this.answer2Field.getText().trim();
-            String tf3 = this.answer3Field.getText().trim();
-
-            if(tf1.isEmpty() && tf2.isEmpty() && tf3.isEmpty()) {
-                this.popUp(Alert.AlertType.WARNING, "Valutazione password", "Completa tutti i campi obligatori");
-                return;
-            }
-
-            boolean a1 = this.authService.checkAnswer(tf1, 1);
-            boolean a2 = this.authService.checkAnswer(tf2, 2);
-            boolean a3 = this.authService.checkAnswer(tf3, 3);
+        String tf1 = this.answer1Field.getText().trim();
+        String tf2 = this.answer2Field.getText().trim();
+        String tf3 = this.answer3Field.getText().trim();
 
+        if(tf1.isEmpty() && tf2.isEmpty() && tf3.isEmpty()) {
+            this.popUp(Alert.AlertType.WARNING, "Valutazione password", "Completa tutti i campi obligatori");
+            return;
+        }
 
-            if (a1 && a2 && a3) {
+        // Le risposte vengono verificate in background, fermandosi alla prima errata
+        super.runAuth(this.btnVerify, auth -> auth.checkAnswer(tf1, 1)
+                && auth.checkAnswer(tf2, 2)
+                && auth.checkAnswer(tf3, 3), correct -> {
+            if (correct) {
                 this.changeScene(event, NEW_PASSWORD_PATH);
-            }else {
+            } else {
                 this.popUp(Alert.AlertType.WARNING, "Valutazione password", "I campi non sono corretti");
-                return;
             }
-        }catch (UnsetAnswerException e){
-            this.popUp(Alert.AlertType.ERROR, "Errore Dati", e.getMessage());
-        }
-
+        }, error -> this.popUp(Alert.AlertType.ERROR, "Errore Dati", error.getMessage()));
     }
 
     /**
@@ -5,15 +5,24 @@
 package it.unisa.diem.ingsoft.biblioteca.controller;
 
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import it.unisa.diem.ingsoft.biblioteca.Scenes;
+import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -27,6 +36,8 @@ import javafx.stage.Stage;
  */
 
 public abstract class GuiController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GuiController.class);
+
     private ServiceRepository serviceRepository;
 
     /**
@@ -38,6 +49,38 @@ public abstract class GuiController {
         this.serviceRepository = serviceRepository;
     }
 
+    /**
+     * @brief Esegue un'operazione dell'AuthService in background, senza bloccare
+     *  l'interfaccia durante il calcolo degli hash BCrypt.
+     *  Il pulsante che ha avviato l'operazione resta disabilitato fino al suo termine;
+     *  l'esito viene consegnato sul thread JavaFX.
+     * @param button Il pulsante che ha avviato l'operazione.
+     * @param operation L'operazione da eseguire.
+     * @param onResult Riceve il risultato dell'operazione.
+     * @param onError Riceve l'eccezione lanciata dall'operazione; un errore che non e' una
+     *  RuntimeException viene registrato nel log e consegnato avvolto in una RuntimeException.
+     */
+    protected <T> void runAuth(Button button, Function<AuthService, T> operation,
+            Consumer<T> onResult, Consumer<RuntimeException> onError) {
+        button.setDisable(true);
+
+        this.serviceRepository.getAsyncServices()
+            .supplyAuth(operation)
+            .whenComplete((result, error) -> Platform.runLater(() -> {
+                button.setDisable(false);
+
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause == null) {
+                    onResult.accept(result);
+                } else if (cause instanceof RuntimeException exception) {
+                    onError.accept(exception);
+                } else {
+                    LOGGER.warn("Operazione di autenticazione non riuscita", cause);
+                    onError.accept(new RuntimeException("Operazione non riuscita: " + cause.getMessage(), cause));
+                }
+            }));
+    }
+
     /**
      * @brief Cambia la visualizzazione della scena corrente caricando un nuovo file FXML.
      *
@@ -95,6 +138,17 @@ public abstract class GuiController {
         stage.close();
     }
 
+    /**
+     * @brief Mostra l'errore di una lettura eseguita in background, ad esempio una ricerca
+     *  o una pagina di una tabella. Va chiamato dal thread JavaFX.
+     *
+     * @param error L'errore della lettura.
+     */
+    protected void showReadError(Throwable error) {
+        this.popUp(Alert.AlertType.ERROR, "Errore di lettura",
+                "Impossibile leggere i dati dal database: " + error.getMessage());
+    }
+
     /**
      * @brief Mostra una finestra di pop-up (Alert).
      *
@@ -14,11 +14,12 @@ import static it.unisa.diem.ingsoft.biblioteca.Views.*;
  * @brief Controller per la view della homepage.
  *
  * Gestisce la navigazione verso le diverse sezioni dell'applicazione:
- * Modifica Password, Gestione Libri, Gestione Utenti e Prestiti.
+ * Modifica Password, Gestione Libri, Gestione Utenti, Prestiti e Diagnostica.
  *
  */
 public class HomepageSceneController extends GuiController {
     @FXML private Button btnProfile;
+    @FXML private Button btnDiagnostics;
     @FXML private Button btnBook;
     @FXML private Button btnUser;
     @FXML private Button btnLoan;
@@ -31,6 +32,14 @@ public class HomepageSceneController extends GuiController {
         changeScene(event, EDIT_PASSWORD_PATH);
     }
 
+    /**
+     * @brief Mostra la scena con le statistiche delle query sul database.
+     */
+    @FXML
+    private void handleGoToViewDiagnostics(ActionEvent event) {
+        changeScene(event, DIAGNOSTICS_PATH);
+    }
+
     /**
      * @brief Mostra la scena per la visualizzazione del catalogo dei libri.
      */
@@ -9,16 +9,24 @@ import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
 
 import java.net.URL;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import it.unisa.diem.ingsoft.biblioteca.exception.BookException;
 import it.unisa.diem.ingsoft.biblioteca.exception.LoanException;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
 import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanSort;
+import it.unisa.diem.ingsoft.biblioteca.model.OverdueSummary;
+import it.unisa.diem.ingsoft.biblioteca.service.ChangeListener;
 import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.OverdueMonitor;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -48,10 +56,21 @@ public class LoanSceneController extends GuiController implements Initializable
     @FXML private Button btnHome;
     @FXML private Button btnAdd;
     @FXML private Button btnReturn;
+    @FXML private Label overdueLabel;
 
     private LoanService loanService;
+    private DebouncedSearch<List<Loan>> search;
+    private PagedTableLoader<Loan> pages;
     private ObservableList<Loan> loans;
 
+    // Conservati in un campo: service e monitor mantengono i listener con riferimenti deboli
+    private final ChangeListener changeListener = this::onChange;
+    private final Consumer<OverdueSummary> overdueListener =
+        summary -> Platform.runLater(() -> this.showOverdue(summary));
+
+    // Data rispetto a cui evidenziare i prestiti scaduti, la stessa del riepilogo mostrato
+    private LocalDate today = LocalDate.now();
+
     /**
      * @brief Costruttore vuoto del controller.
      * Viene invocato dal FXMLLoader per caricare la nuova scena
@@ -69,6 +88,15 @@ public class LoanSceneController extends GuiController implements Initializable
     public void setServices(ServiceRepository serviceRepository) {
         super.setServices(serviceRepository);
         this.loanService = serviceRepository.getLoanService();
+        this.search = new DebouncedSearch<>(serviceRepository.getAsyncServices(), this::showLoans,
+                this::showReadError);
+        this.pages = new PagedTableLoader<>(this.loanTable, serviceRepository.getAsyncServices(),
+                this::showReadError);
+        this.loanService.addChangeListener(this.changeListener);
+
+        OverdueMonitor overdueMonitor = serviceRepository.getOverdueMonitor();
+        overdueMonitor.addSummaryListener(this.overdueListener);
+        overdueMonitor.getSummary().ifPresent(this::showOverdue);
 
         this.updateTable();
     }
@@ -148,7 +176,7 @@ public class LoanSceneController extends GuiController implements Initializable
                     this.setStyle("");
                 } else {
 
-                    if (loan.getLoanDeadline().isBefore(LocalDate.now())) {
+                    if (loan.getLoanDeadline().isBefore(LoanSceneController.this.today)) {
                         this.setStyle("-fx-background-color: #fc3737; -fx-text-fill: #990000;");
                     } else {
                         this.setStyle("");
@@ -159,20 +187,63 @@ public class LoanSceneController extends GuiController implements Initializable
     }
 
     /**
-     * @brief Aggiorna la TableView recuperando tutti i prestiti attivi.
+     * @brief Aggiorna la TableView con i prestiti attivi ordinati per scadenza.
+     *  I prestiti vengono letti in background a pagine, man mano che l'utente scorre.
      */
     private void updateTable() {
-        if (this.loanService == null) {
+        if (this.search == null) {
+            return;
+        }
+
+        this.search.cancel();
+        this.pages.load((services, after) -> services.getLoanService()
+                .getActivePage(after, PagedTableLoader.PAGE_SIZE, LoanSort.DEADLINE),
+                Comparator.comparing(Loan::getLoanDeadline)
+                        .thenComparing(Loan::getUserId)
+                        .thenComparing(Loan::getBookIsbn));
+    }
+
+    /**
+     * @brief Aggiorna la riga del prestito modificato, senza ricaricare la tabella.
+     *  Un prestito restituito non e' piu' attivo e viene rimosso.
+     */
+    private void onChange(EntityChange change) {
+        if (change.getEntity() != EntityChange.Entity.LOAN) {
             return;
         }
 
-        List<Loan> list = this.loanService.getActive();
+        String userId = change.getKey().get(0);
+        String bookIsbn = change.getKey().get(1);
+        this.pages.patch(loan -> loan.getUserId().equals(userId) && loan.getBookIsbn().equals(bookIsbn),
+                services -> services.getLoanService().getActiveByUserId(userId).stream()
+                        .filter(loan -> loan.getBookIsbn().equals(bookIsbn))
+                        .findFirst());
+    }
+
+    /**
+     * @brief Mostra il numero di prestiti scaduti calcolato dall'OverdueMonitor.
+     */
+    private void showOverdue(OverdueSummary summary) {
+        this.overdueLabel.setText("Prestiti scaduti: " + summary.getCount());
+
+        if (!summary.getAsOf().equals(this.today)) {
+            this.today = summary.getAsOf();
+            this.loanTable.refresh();
+        }
+    }
+
+    /**
+     * @brief Mostra nella TableView il risultato di una ricerca.
+     */
+    private void showLoans(List<Loan> list) {
+        this.pages.stop();
         this.loans = FXCollections.observableArrayList(list);
         this.loanTable.setItems(this.loans);
     }
 
     /**
      * @brief Filtra i prestiti nella tabella in base alla query e al tipo di ricerca selezionato.
+     *  La ricerca parte in background al termine della digitazione.
      */
     @FXML
     private void filterLoans(String query) {
@@ -181,20 +252,23 @@ public class LoanSceneController extends GuiController implements Initializable
             return;
         }
 
+        if (this.search == null) {
+            return;
+        }
+
         String type = this.searchType.getValue();
-        List<Loan> result = new ArrayList<>();
+        Function<ServiceRepository, List<Loan>> result;
 
         switch (type) {
-            case "Matricola " -> result = this.loanService.getActiveByUserIdContaining(query);
-            case "ISBN " -> result = this.loanService.getActiveByBookIsbnContaining(query);
+            case "Matricola " -> result = services -> services.getLoanService().getActiveByUserIdContaining(query);
+            case "ISBN " -> result = services -> services.getLoanService().getActiveByBookIsbnContaining(query);
             default -> {
                 this.updateTable();
                 return;
             }
         }
 
-        this.loans = FXCollections.observableArrayList(result);
-        this.loanTable.setItems(this.loans);
+        this.search.request(result);
     }
 
     /**
@@ -211,8 +285,6 @@ public class LoanSceneController extends GuiController implements Initializable
     @FXML
     private void handleAddLoan(ActionEvent event) {
         super.modalScene(ADD_LOAN_PATH, "Aggiungi Prestito", null);
-
-        this.updateTable();
     }
 
     /**
@@ -233,7 +305,6 @@ public class LoanSceneController extends GuiController implements Initializable
         if (result.isPresent() && result.get() == ButtonType.OK) {
             try {
                 this.loanService.complete(selectedLoan.getUserId(), selectedLoan.getBookIsbn(), selectedLoan.getLoanDeadline());
-                this.updateTable();
             } catch (LoanException | BookException e) {
                 super.popUp(Alert.AlertType.ERROR, "Errore durante la restituzione", e.getMessage());
             }
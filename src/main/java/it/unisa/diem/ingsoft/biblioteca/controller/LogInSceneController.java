@@ -8,8 +8,6 @@ package it.unisa.diem.ingsoft.biblioteca.controller;
 import static it.unisa.diem.ingsoft.biblioteca.Views.FORGOTTEN_PASSWORD_PATH;
 import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
 
-import it.unisa.diem.ingsoft.biblioteca.exception.UnsetPasswordException;
-import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -28,18 +26,18 @@ import javafx.scene.control.PasswordField;
  */
 public class LogInSceneController extends GuiController {
 
-    private AuthService authService;
-
-
     /**
      * @brief Setter per i servizi di gestione della password.
+     *  All'avvio la view viene mostrata prima che i servizi siano pronti: i pulsanti
+     *  vengono abilitati solo quando il controller li riceve.
      * @param serviceRepository Contenitore dei servizi da cui recuperare i Service
      *
      */
     @Override
     public void setServices(ServiceRepository serviceRepository){
         super.setServices(serviceRepository);
-        this.authService= serviceRepository.getAuthService();
+        this.btnLogin.setDisable(false);
+        this.btnForgottenPassword.setDisable(false);
     }
 
 
@@ -54,26 +52,31 @@ public class LogInSceneController extends GuiController {
     private Button btnForgottenPassword;
 
 
+    /**
+     * @brief Disabilita i pulsanti finche' non vengono passati i servizi.
+     */
+    @FXML
+    public void initialize() {
+        this.btnLogin.setDisable(true);
+        this.btnForgottenPassword.setDisable(true);
+    }
+
+
     /**
      * @brief Gestisce il tentativo di accesso al sistema.
-     *
+     *  La password viene verificata in background.
      */
     @FXML
     private void handleLogin(ActionEvent event){
         // Password inserita dall'utente da verificare
         String pass = this.insertedPassword.getText();
 
-        try {
-            if (this.authService.checkPassword(pass))
+        super.runAuth(this.btnLogin, auth -> auth.checkPassword(pass), correct -> {
+            if (correct)
                 this.changeScene(event, HOMEPAGE_PATH );
             else
                 this.popUp(Alert.AlertType.ERROR, "Errore password", "La password inserita non è corretta.");
-
-        }catch (UnsetPasswordException e){
-            this.popUp(Alert.AlertType.ERROR, "Errore password", e.getMessage());
-        }
-
-
+        }, error -> this.popUp(Alert.AlertType.ERROR, "Errore password", error.getMessage()));
     }
 
 
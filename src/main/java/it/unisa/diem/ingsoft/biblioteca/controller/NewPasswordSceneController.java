@@ -7,7 +7,6 @@ package it.unisa.diem.ingsoft.biblioteca.controller;
 
 import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
 
-import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -26,9 +25,6 @@ import javafx.scene.control.PasswordField;
  */
 public class NewPasswordSceneController extends GuiController {
 
-
-    private AuthService authService;
-
     /**
      * @brief Setter per i servizi di gestione della password.
      * @param serviceRepository Contenitore dei servizi da cui recuperare il Service
@@ -37,7 +33,6 @@ public class NewPasswordSceneController extends GuiController {
     @Override
     public void setServices(ServiceRepository serviceRepository) {
         super.setServices(serviceRepository);
-        this.authService = serviceRepository.getAuthService();
     }
 
 
@@ -84,12 +79,15 @@ public class NewPasswordSceneController extends GuiController {
             return;
         }
 
-        //cambio effettivamente la password
-        this.authService.changePassword(newPass);
-
-        this.popUp(Alert.AlertType.CONFIRMATION, "Password aggiornata", "La password è stata inserita con successo.");
+        //cambio effettivamente la password, calcolando l'hash in background
+        super.runAuth(this.btnUpdate, auth -> {
+            auth.changePassword(newPass);
+            return newPass;
+        }, changed -> {
+            this.popUp(Alert.AlertType.CONFIRMATION, "Password aggiornata", "La password è stata inserita con successo.");
 
-        this.changeScene(event, HOMEPAGE_PATH);
+            this.changeScene(event, HOMEPAGE_PATH);
+        }, error -> this.popUp(Alert.AlertType.ERROR, "Errore password", error.getMessage()));
     }
 
 }
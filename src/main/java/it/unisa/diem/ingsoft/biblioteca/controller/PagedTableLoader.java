@@ -0,0 +1,213 @@
+/**
+ * @brief Package dei controller
+ * @package it.unisa.diem.ingsoft.biblioteca.controller
+ */
+package it.unisa.diem.ingsoft.biblioteca.controller;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.service.AsyncServices;
+import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.util.Callback;
+
+/**
+ * @brief Carica il contenuto di una TableView a pagine, man mano che l'utente scorre.
+ *  La TableView crea righe solo per gli elementi visibili: quando una riga mostra uno degli
+ *  ultimi elementi caricati viene letta in background la pagina successiva, che viene
+ *  aggiunta in coda alla lista della tabella sul thread JavaFX.
+ *  Il row factory gia' impostato sulla tabella viene mantenuto.
+ *  Le modifiche ad un singolo elemento vengono applicate con patch, senza ricaricare le
+ *  pagine gia' lette.
+ *  Gli errori di lettura vengono registrati nel log e consegnati sul thread JavaFX al
+ *  controller della tabella.
+ *  Tutti i metodi, tranne patch, vanno chiamati dal thread JavaFX.
+ * @param <T> Il tipo degli elementi della tabella.
+ */
+class PagedTableLoader<T> {
+    /**
+     * @brief Numero di elementi letti per pagina.
+     */
+    static final int PAGE_SIZE = 200;
+
+    // Elementi dalla fine della lista entro cui parte la lettura della pagina successiva
+    private static final int PREFETCH = 50;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PagedTableLoader.class);
+
+    private final TableView<T> table;
+    private final AsyncServices services;
+    private final Consumer<Throwable> onError;
+
+    private BiFunction<ServiceRepository, PageKey, Page<T>> pageQuery;
+    private Comparator<T> order;
+    private ObservableList<T> items;
+    private PageKey nextKey;
+    private boolean loading;
+    private long generation;
+
+    /**
+     * @param table La tabella da popolare.
+     * @param services La facciata asincrona su cui leggere le pagine.
+     * @param onError Riceve sul thread JavaFX gli errori di lettura delle pagine e degli
+     *  elementi modificati.
+     */
+    PagedTableLoader(TableView<T> table, AsyncServices services, Consumer<Throwable> onError) {
+        this.table = table;
+        this.services = services;
+        this.onError = onError;
+
+        Callback<TableView<T>, TableRow<T>> rowFactory = table.getRowFactory();
+        table.setRowFactory(view -> {
+            TableRow<T> row = rowFactory == null ? new TableRow<>() : rowFactory.call(view);
+            row.indexProperty().addListener((obs, oldIndex, newIndex) -> this.onRowShown(newIndex.intValue()));
+            return row;
+        });
+    }
+
+    /**
+     * @brief Svuota la tabella e inizia a caricarla dalla prima pagina.
+     * @param pageQuery Legge la pagina che segue la chiave ricevuta, ad esempio
+     *  (services, after) -> services.getBookService().getPage(after, PAGE_SIZE, BookSort.TITLE).
+     * @param order L'ordinamento delle pagine, usato da patch per inserire i nuovi elementi.
+     */
+    void load(BiFunction<ServiceRepository, PageKey, Page<T>> pageQuery, Comparator<T> order) {
+        this.stop();
+
+        this.pageQuery = pageQuery;
+        this.order = order;
+        this.items = FXCollections.observableArrayList();
+        this.nextKey = PageKey.first();
+        this.table.setItems(this.items);
+
+        this.loadNext();
+    }
+
+    /**
+     * @brief Interrompe il caricamento: le pagine in lettura vengono scartate.
+     *  Va chiamato prima di sostituire il contenuto della tabella, ad esempio con il
+     *  risultato di una ricerca.
+     */
+    void stop() {
+        this.generation++;
+        this.pageQuery = null;
+        this.order = null;
+        this.nextKey = null;
+        this.loading = false;
+    }
+
+    /**
+     * @brief Rilegge in background un elemento modificato e ne aggiorna la riga, senza
+     *  ricaricare la tabella. Puo' essere chiamato da qualsiasi thread, ad esempio da un
+     *  ChangeListener.
+     *  Se l'elemento non va piu' mostrato la sua riga viene rimossa; altrimenti la riga viene
+     *  sostituita, oppure l'elemento viene inserito nella sua posizione se cade tra quelli
+     *  gia' caricati. Un elemento che segue l'ultimo caricato arrivera' con una delle pagine
+     *  successive, quindi non viene inserito. Il risultato di una ricerca viene aggiornato e
+     *  ridotto, ma non riceve nuovi elementi.
+     * @param matches Riconosce la riga dell'elemento modificato.
+     * @param reload Rilegge l'elemento, oppure restituisce Optional.empty() se non va mostrato.
+     */
+    void patch(Predicate<T> matches, Function<ServiceRepository, Optional<T>> reload) {
+        this.services.supply(reload)
+            .whenComplete((item, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    this.fail("Aggiornamento della riga non riuscito", error);
+                    return;
+                }
+
+                this.apply(matches, item);
+            }));
+    }
+
+    private void apply(Predicate<T> matches, Optional<T> item) {
+        ObservableList<T> rows = this.table.getItems();
+        if (rows == null) {
+            return;
+        }
+
+        boolean paged = rows == this.items && this.order != null;
+        for (int i = 0; i < rows.size(); i++) {
+            if (!matches.test(rows.get(i))) {
+                continue;
+            }
+
+            if (item.isPresent() && !paged) {
+                rows.set(i, item.get());
+                return;
+            }
+
+            // Nella lista paginata l'elemento viene riposizionato: la modifica puo' averne
+            // cambiato la chiave di ordinamento
+            rows.remove(i);
+            break;
+        }
+
+        if (item.isEmpty() || !paged) {
+            return;
+        }
+
+        int position = Collections.binarySearch(rows, item.get(), this.order);
+        int index = position < 0 ? -position - 1 : position;
+        if (index < rows.size() || (this.nextKey == null && !this.loading)) {
+            rows.add(index, item.get());
+        }
+    }
+
+    private void onRowShown(int index) {
+        if (this.items != null && index >= this.items.size() - PREFETCH) {
+            this.loadNext();
+        }
+    }
+
+    private void loadNext() {
+        if (this.loading || this.nextKey == null || this.pageQuery == null) {
+            return;
+        }
+
+        long current = this.generation;
+        PageKey after = this.nextKey;
+        BiFunction<ServiceRepository, PageKey, Page<T>> query = this.pageQuery;
+
+        this.loading = true;
+        this.services.supply(services -> query.apply(services, after))
+            .whenComplete((page, error) -> Platform.runLater(() -> {
+                // La tabella e' stata ricaricata o sostituita nel frattempo
+                if (current != this.generation) {
+                    return;
+                }
+
+                this.loading = false;
+                if (error != null) {
+                    this.nextKey = null;
+                    this.fail("Lettura della pagina non riuscita", error);
+                    return;
+                }
+
+                this.items.addAll(page.getItems());
+                this.nextKey = page.getNextKey().orElse(null);
+            }));
+    }
+
+    private void fail(String message, Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        LOGGER.warn(message, cause);
+        this.onError.accept(cause);
+    }
+}
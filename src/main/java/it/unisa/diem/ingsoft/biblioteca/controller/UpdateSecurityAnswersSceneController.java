@@ -7,7 +7,9 @@ package it.unisa.diem.ingsoft.biblioteca.controller;
 import static it.unisa.diem.ingsoft.biblioteca.Views.EDIT_PASSWORD_PATH;
 import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
 
-import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
+import java.util.HashMap;
+import java.util.Map;
+
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -32,8 +34,6 @@ public class UpdateSecurityAnswersSceneController extends GuiController {
     @FXML private Button btnCancel;
     @FXML private Button btnSave;
 
-    private AuthService authService;
-
     /**
      * @brief Costruttore vuoto del controller.
      */
@@ -46,7 +46,6 @@ public class UpdateSecurityAnswersSceneController extends GuiController {
     @Override
     public void setServices(ServiceRepository serviceRepository) {
         super.setServices(serviceRepository);
-        this.authService = serviceRepository.getAuthService();
     }
 
     /**
@@ -68,26 +67,28 @@ public class UpdateSecurityAnswersSceneController extends GuiController {
             return;
         }
 
-        try {
-            if(!ans1.isEmpty()) {
-                this.authService.changeAnswer(ans1, 1);
-            }
+        Map<Integer, String> answers = new HashMap<>();
+        if (!ans1.isEmpty()) {
+            answers.put(1, ans1);
+        }
 
-            if(!ans2.isEmpty()) {
-                this.authService.changeAnswer(ans2, 2);
-            }
+        if (!ans2.isEmpty()) {
+            answers.put(2, ans2);
+        }
 
-            if(!ans3.isEmpty()) {
-                this.authService.changeAnswer(ans3, 3);
-            }
+        if (!ans3.isEmpty()) {
+            answers.put(3, ans3);
+        }
 
+        // Gli hash delle risposte vengono calcolati in parallelo, in background
+        super.runAuth(this.btnSave, auth -> {
+            auth.changeAnswers(answers);
+            return answers.size();
+        }, changed -> {
             super.popUp(Alert.AlertType.INFORMATION, "Operazione completata", "Le domande di sicurezza sono state aggiornate con successo.");
 
             super.changeScene(event, HOMEPAGE_PATH);
-
-        } catch (Exception e) {
-            super.popUp(Alert.AlertType.ERROR, "Errore salvataggio", e.getMessage());
-        }
+        }, error -> super.popUp(Alert.AlertType.ERROR, "Errore salvataggio", error.getMessage()));
     }
 
     /**
@@ -10,14 +10,18 @@ import static it.unisa.diem.ingsoft.biblioteca.Views.EDIT_USER_PATH;
 import static it.unisa.diem.ingsoft.biblioteca.Views.HOMEPAGE_PATH;
 
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.function.Function;
 
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
 import it.unisa.diem.ingsoft.biblioteca.model.Loan;
 import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.model.UserSort;
 import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.ChangeListener;
 import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
 import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
 import it.unisa.diem.ingsoft.biblioteca.service.UserService;
@@ -65,9 +69,14 @@ public class UserSceneController extends GuiController implements Initializable{
     private UserService userService;
     private LoanService loanService;
     private BookService bookService;
+    private DebouncedSearch<List<User>> search;
+    private PagedTableLoader<User> pages;
 
     private ObservableList<User> users;
 
+    // Conservato in un campo: il service mantiene i listener con riferimenti deboli
+    private final ChangeListener changeListener = this::onChange;
+
 
     /**
      * @brief Setter per lo userService.
@@ -80,6 +89,11 @@ public class UserSceneController extends GuiController implements Initializable{
         this.userService= serviceRepository.getUserService();
         this.loanService = serviceRepository.getLoanService();
         this.bookService = serviceRepository.getBookService();
+        this.search = new DebouncedSearch<>(serviceRepository.getAsyncServices(), this::showUsers,
+                this::showReadError);
+        this.pages = new PagedTableLoader<>(this.userTable, serviceRepository.getAsyncServices(),
+                this::showReadError);
+        this.userService.addChangeListener(this.changeListener);
 
         this.updateTable();
     }
@@ -136,10 +150,36 @@ public class UserSceneController extends GuiController implements Initializable{
 
 
     /**
-     * @brief Aggiorna la tabella recuperando tutti gli utenti registrati.
+     * @brief Aggiorna la tabella con gli utenti registrati, ordinati per cognome.
+     *  Gli utenti vengono letti in background a pagine, man mano che l'utente scorre.
      */
     public void updateTable(){
-        List<User> listUsers= this.userService.getAll();
+        this.search.cancel();
+        this.pages.load((services, after) -> services.getUserService()
+                .getPage(after, PagedTableLoader.PAGE_SIZE, UserSort.SURNAME),
+                Comparator.comparing(User::getSurname)
+                        .thenComparing(User::getName)
+                        .thenComparing(User::getId));
+    }
+
+    /**
+     * @brief Aggiorna la riga dell'utente modificato, senza ricaricare la tabella.
+     */
+    private void onChange(EntityChange change) {
+        if (change.getEntity() != EntityChange.Entity.USER) {
+            return;
+        }
+
+        String id = change.getKey().get(0);
+        this.pages.patch(user -> user.getId().equals(id),
+                services -> services.getUserService().getById(id));
+    }
+
+    /**
+     * @brief Mostra nella tabella il risultato di una ricerca.
+     */
+    private void showUsers(List<User> listUsers) {
+        this.pages.stop();
         this.users = FXCollections.observableArrayList(listUsers);
         this.userTable.setItems(this.users);
     }
@@ -148,7 +188,7 @@ public class UserSceneController extends GuiController implements Initializable{
 
     /**
      * @brief Filtra la lista degli utenti in base ai criteri specificati.
-     *
+     *  La ricerca parte in background al termine della digitazione.
      */
     private void filterUsers() {
         String type = this.searchType.getValue();
@@ -157,9 +197,9 @@ public class UserSceneController extends GuiController implements Initializable{
         String val1 = this.searchField.getText() == null ? "" : this.searchField.getText().trim();
         String val2 = this.searchFieldSecondary.getText() == null ? "" : this.searchFieldSecondary.getText().trim();
 
-        if (this.userService == null) return;
+        if (this.search == null) return;
 
-        List<User> result = new ArrayList<>();
+        Function<ServiceRepository, List<User>> result;
 
 
 
@@ -172,7 +212,7 @@ public class UserSceneController extends GuiController implements Initializable{
             }
 
             // val2 = Nome, val1 = Cognome
-            result = this.userService.getAllByFullNameContaining(val2, val1);
+            result = services -> services.getUserService().getAllByFullNameContaining(val2, val1);
 
         } else {
             if (val1.isEmpty()) {
@@ -182,20 +222,19 @@ public class UserSceneController extends GuiController implements Initializable{
 
             switch (type) {
                 case "Matricola ":
-                    result = this.userService.getAllByIdContaining(val1);
+                    result = services -> services.getUserService().getAllByIdContaining(val1);
                     break;
                 case "Email ":
-                    result = this.userService.getAllByEmailContaining(val1);
+                    result = services -> services.getUserService().getAllByEmailContaining(val1);
                     break;
                 default:
-                    result = this.userService.getAll();
+                    result = services -> services.getUserService().getAll();
                     break;
             }
         }
 
 
-        this.users = FXCollections.observableArrayList(result);
-        this.userTable.setItems(this.users);
+        this.search.request(result);
     }
 
 
@@ -221,7 +260,6 @@ public class UserSceneController extends GuiController implements Initializable{
 
             if (loanList.isEmpty()) {
                 this.userService.removeById(selectedUser.getId());
-                this.updateTable();
             } else
                 this.popUp(Alert.AlertType.WARNING, "Errore selezione", "Non puoi rimuovere un utente che ha ancora prestiti attivi");
         }
@@ -244,8 +282,6 @@ public class UserSceneController extends GuiController implements Initializable{
         //Specifico il metodo da chiamare e gli passo l'utente selezionato
         this.modalScene(EDIT_USER_PATH , "Modifica Utente", (EditUserSceneController controller) -> {controller.editUser(selectedUser); });
 
-        this.updateTable();
-
     }
 
     /**
@@ -256,8 +292,6 @@ public class UserSceneController extends GuiController implements Initializable{
     private void handleAddUser() {
 
         this.modalScene(EDIT_USER_PATH , "Aggiungi Nuovo Utente", null);
-
-        this.updateTable();
     }
 
 
@@ -287,7 +321,5 @@ public class UserSceneController extends GuiController implements Initializable{
         this.modalScene(ACCOUNT_USER_PATH, "Account Utente", (AccountUserSceneController controller) -> {
             controller.setUserProfile(selectedUser, this.loanService);
         });
-
-        this.updateTable();
     }
 }
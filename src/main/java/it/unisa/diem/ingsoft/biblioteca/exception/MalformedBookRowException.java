@@ -0,0 +1,20 @@
+/**
+ * @brief Package delle eccezionie
+ * @package it.unisa.diem.ingsoft.biblioteca.exception
+ */
+package it.unisa.diem.ingsoft.biblioteca.exception;
+
+/**
+ * @brief Eccezione lanciata quando una riga di un file di importazione del catalogo
+ *  non descrive un libro: un campo obbligatorio manca o non ha il formato atteso.
+ */
+public class MalformedBookRowException extends BookException {
+
+    /**
+     * @brief Costruttore con messaggio.
+     * @param message Il campo o il valore che rende la riga non valida.
+     */
+    public MalformedBookRowException(String message) {
+        super(message);
+    }
+}
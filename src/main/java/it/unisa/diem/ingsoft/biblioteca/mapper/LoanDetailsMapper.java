@@ -0,0 +1,38 @@
+/**
+ * @brief Package dei mapper
+ * @package it.unisa.diem.ingsoft.biblioteca.mapper
+ */
+package it.unisa.diem.ingsoft.biblioteca.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import it.unisa.diem.ingsoft.biblioteca.model.LoanDetails;
+
+/**
+ * @brief Mapper che realizza la corrispondenza tra le colonne della tabella 'loans', unite
+ * a book_title e book_author della tabella 'books', e un oggetto del modello {@link LoanDetails}.
+ */
+public class LoanDetailsMapper implements RowMapper<LoanDetails> {
+    /**
+     * @brief Esegue la mappatura di una singola riga del ResultSet su un oggetto LoanDetails
+     */
+	@Override
+	public LoanDetails map(ResultSet rs, StatementContext ctx) throws SQLException {
+        LoanDetails loan = new LoanDetails();
+
+        loan.setBookIsbn(rs.getString("book_isbn"));
+        loan.setUserId(rs.getString("user_id"));
+        loan.setLoanStart(rs.getObject("loan_start", LocalDate.class));
+        loan.setLoanEnd(rs.getObject("loan_end", LocalDate.class));
+        loan.setLoanDeadline(rs.getObject("loan_deadline", LocalDate.class));
+        loan.setBookTitle(rs.getString("book_title"));
+        loan.setBookAuthor(rs.getString("book_author"));
+
+        return loan;
+	}
+}
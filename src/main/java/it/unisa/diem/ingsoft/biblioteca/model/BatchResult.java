@@ -0,0 +1,59 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @brief Esito di un'operazione su piu' elementi: gli elementi rifiutati non interrompono
+ *  l'operazione, ma vengono riportati insieme all'eccezione che ne descrive il motivo.
+ *  Gli elementi sono confrontati per identita': due richieste uguali restano distinte.
+ * @param <T> Il tipo degli elementi elaborati.
+ */
+public class BatchResult<T> {
+    private final List<T> succeeded = new ArrayList<>();
+    private final Map<T, Exception> failures = new LinkedHashMap<>();
+
+    /**
+     * @brief Registra un elemento elaborato con successo.
+     */
+    public void addSuccess(T item) {
+        this.succeeded.add(item);
+    }
+
+    /**
+     * @brief Registra un elemento rifiutato.
+     * @param item L'elemento rifiutato.
+     * @param reason L'eccezione che ne descrive il motivo.
+     */
+    public void addFailure(T item, Exception reason) {
+        this.failures.put(item, reason);
+    }
+
+    /**
+     * @brief Restituisce gli elementi elaborati con successo, nell'ordine di richiesta.
+     */
+    public List<T> getSucceeded() {
+        return Collections.unmodifiableList(this.succeeded);
+    }
+
+    /**
+     * @brief Restituisce gli elementi rifiutati, nell'ordine di richiesta, con il motivo.
+     */
+    public Map<T, Exception> getFailures() {
+        return Collections.unmodifiableMap(this.failures);
+    }
+
+    /**
+     * @brief Indica se tutti gli elementi sono stati elaborati con successo.
+     */
+    public boolean isSuccessful() {
+        return this.failures.isEmpty();
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * @brief Rappresenta una ricerca nel catalogo su piu' criteri, eseguita con BookService#find.
+ *  Un libro viene restituito solo se rispetta tutti i criteri impostati; i criteri non
+ *  impostati non filtrano. Si costruisce con BookQuery.builder():
+ *  BookQuery.builder().authorContaining("Tolkien").genreContaining("fantasy")
+ *      .releasedFrom(2015).availableOnly().build()
+ */
+public class BookQuery {
+    private final String titleContaining;
+    private final String authorContaining;
+    private final String genreContaining;
+    private final Integer releasedFrom;
+    private final Integer releasedTo;
+    private final boolean availableOnly;
+    private final BookSort sort;
+    private final Integer limit;
+
+    private BookQuery(Builder builder) {
+        this.titleContaining = builder.titleContaining;
+        this.authorContaining = builder.authorContaining;
+        this.genreContaining = builder.genreContaining;
+        this.releasedFrom = builder.releasedFrom;
+        this.releasedTo = builder.releasedTo;
+        this.availableOnly = builder.availableOnly;
+        this.sort = builder.sort;
+        this.limit = builder.limit;
+    }
+
+    /**
+     * @brief Crea un builder senza criteri, ordinato per titolo e senza limite.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @brief Restituisce la stringa che il titolo deve contenere, se impostata.
+     */
+    public Optional<String> getTitleContaining() {
+        return Optional.ofNullable(this.titleContaining);
+    }
+
+    /**
+     * @brief Restituisce la stringa che l'autore deve contenere, se impostata.
+     */
+    public Optional<String> getAuthorContaining() {
+        return Optional.ofNullable(this.authorContaining);
+    }
+
+    /**
+     * @brief Restituisce la stringa che il genere deve contenere, se impostata.
+     */
+    public Optional<String> getGenreContaining() {
+        return Optional.ofNullable(this.genreContaining);
+    }
+
+    /**
+     * @brief Restituisce il primo anno di pubblicazione accettato, se impostato.
+     */
+    public OptionalInt getReleasedFrom() {
+        return this.releasedFrom == null ? OptionalInt.empty() : OptionalInt.of(this.releasedFrom);
+    }
+
+    /**
+     * @brief Restituisce l'ultimo anno di pubblicazione accettato, se impostato.
+     */
+    public OptionalInt getReleasedTo() {
+        return this.releasedTo == null ? OptionalInt.empty() : OptionalInt.of(this.releasedTo);
+    }
+
+    /**
+     * @brief Indica se vanno restituiti solo i libri con almeno una copia disponibile.
+     */
+    public boolean isAvailableOnly() {
+        return this.availableOnly;
+    }
+
+    /**
+     * @brief Restituisce l'ordinamento dei risultati; a parita' di valore per ISBN.
+     */
+    public BookSort getSort() {
+        return this.sort;
+    }
+
+    /**
+     * @brief Restituisce il numero massimo di risultati, se impostato.
+     */
+    public OptionalInt getLimit() {
+        return this.limit == null ? OptionalInt.empty() : OptionalInt.of(this.limit);
+    }
+
+    /**
+     * @brief Indica se la ricerca filtra per titolo, autore o genere.
+     */
+    public boolean hasTextCriteria() {
+        return this.titleContaining != null || this.authorContaining != null
+            || this.genreContaining != null;
+    }
+
+    @Override
+    public String toString() {
+        return "BookQuery[title=" + this.titleContaining + ", author=" + this.authorContaining
+            + ", genre=" + this.genreContaining + ", released=" + this.releasedFrom + ".."
+            + this.releasedTo + ", availableOnly=" + this.availableOnly + ", sort=" + this.sort
+            + ", limit=" + this.limit + "]";
+    }
+
+    /**
+     * @brief Costruisce una BookQuery impostando un criterio alla volta.
+     *  Le stringhe vuote o null non impostano il criterio corrispondente, cosi' un campo di
+     *  ricerca lasciato vuoto non filtra.
+     */
+    public static class Builder {
+        private String titleContaining;
+        private String authorContaining;
+        private String genreContaining;
+        private Integer releasedFrom;
+        private Integer releasedTo;
+        private boolean availableOnly;
+        private BookSort sort = BookSort.TITLE;
+        private Integer limit;
+
+        private Builder() {
+        }
+
+        /**
+         * @brief Accetta solo i libri il cui titolo contiene la stringa in qualsiasi posizione.
+         */
+        public Builder titleContaining(String title) {
+            this.titleContaining = Builder.criterion(title);
+            return this;
+        }
+
+        /**
+         * @brief Accetta solo i libri il cui autore contiene la stringa in qualsiasi posizione.
+         */
+        public Builder authorContaining(String author) {
+            this.authorContaining = Builder.criterion(author);
+            return this;
+        }
+
+        /**
+         * @brief Accetta solo i libri il cui genere contiene la stringa in qualsiasi posizione.
+         */
+        public Builder genreContaining(String genre) {
+            this.genreContaining = Builder.criterion(genre);
+            return this;
+        }
+
+        /**
+         * @brief Accetta solo i libri pubblicati a partire dall'anno specificato, incluso.
+         */
+        public Builder releasedFrom(int year) {
+            this.releasedFrom = year;
+            return this;
+        }
+
+        /**
+         * @brief Accetta solo i libri pubblicati fino all'anno specificato, incluso.
+         */
+        public Builder releasedTo(int year) {
+            this.releasedTo = year;
+            return this;
+        }
+
+        /**
+         * @brief Accetta solo i libri pubblicati tra i due anni specificati, inclusi.
+         */
+        public Builder releasedBetween(int from, int to) {
+            return this.releasedFrom(from).releasedTo(to);
+        }
+
+        /**
+         * @brief Accetta solo i libri con almeno una copia disponibile per il prestito.
+         */
+        public Builder availableOnly() {
+            this.availableOnly = true;
+            return this;
+        }
+
+        /**
+         * @brief Imposta l'ordinamento dei risultati.
+         * @throws IllegalArgumentException Se sort e' null.
+         */
+        public Builder sortBy(BookSort sort) {
+            if (sort == null) {
+                throw new IllegalArgumentException("Ordinamento non specificato");
+            }
+
+            this.sort = sort;
+            return this;
+        }
+
+        /**
+         * @brief Imposta il numero massimo di risultati.
+         * @throws IllegalArgumentException Se limit non e' positivo.
+         */
+        public Builder limit(int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("Numero massimo di risultati non valido: " + limit);
+            }
+
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @brief Crea la ricerca con i criteri impostati.
+         * @throws IllegalArgumentException Se il primo anno accettato segue l'ultimo.
+         */
+        public BookQuery build() {
+            if (this.releasedFrom != null && this.releasedTo != null
+                    && this.releasedFrom > this.releasedTo) {
+                throw new IllegalArgumentException("Intervallo di anni non valido: "
+                        + this.releasedFrom + " > " + this.releasedTo);
+            }
+
+            return new BookQuery(this);
+        }
+
+        private static String criterion(String value) {
+            return value == null || value.isBlank() ? null : value.trim();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+/**
+ * @brief Ordinamenti disponibili per la lettura paginata del catalogo.
+ *  A parita' di valore i libri sono ordinati per ISBN.
+ */
+public enum BookSort {
+    TITLE,
+    AUTHOR,
+    RELEASE_YEAR,
+    ISBN
+}
@@ -0,0 +1,111 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.util.List;
+
+/**
+ * @brief Rappresenta una modifica confermata ad un libro, un utente o un prestito.
+ *  La chiave identifica l'elemento modificato: l'ISBN per un libro, la matricola per un
+ *  utente, la coppia matricola/ISBN per un prestito attivo.
+ */
+public class EntityChange {
+    /**
+     * @brief Tipo dell'elemento modificato.
+     */
+    public enum Entity {
+        BOOK,
+        USER,
+        LOAN
+    }
+
+    /**
+     * @brief Tipo di modifica.
+     *  Un prestito restituito e' UPDATED; un libro di cui cambiano le copie rimanenti
+     *  per un prestito o una restituzione e' UPDATED.
+     */
+    public enum Type {
+        ADDED,
+        UPDATED,
+        REMOVED
+    }
+
+    private final Entity entity;
+    private final Type type;
+    private final List<String> key;
+
+    private EntityChange(Entity entity, Type type, List<String> key) {
+        this.entity = entity;
+        this.type = type;
+        this.key = key;
+    }
+
+    /**
+     * @brief Crea la modifica di un libro.
+     * @param type Il tipo di modifica.
+     * @param isbn L'ISBN del libro.
+     */
+    public static EntityChange book(Type type, String isbn) {
+        return new EntityChange(Entity.BOOK, type, List.of(isbn));
+    }
+
+    /**
+     * @brief Crea la modifica di un utente.
+     * @param type Il tipo di modifica.
+     * @param id La matricola dell'utente.
+     */
+    public static EntityChange user(Type type, String id) {
+        return new EntityChange(Entity.USER, type, List.of(id));
+    }
+
+    /**
+     * @brief Crea la modifica di un prestito.
+     * @param type Il tipo di modifica.
+     * @param userId La matricola dell'utente.
+     * @param bookIsbn L'ISBN del libro.
+     */
+    public static EntityChange loan(Type type, String userId, String bookIsbn) {
+        return new EntityChange(Entity.LOAN, type, List.of(userId, bookIsbn));
+    }
+
+    /**
+     * @brief Restituisce il tipo dell'elemento modificato.
+     */
+    public Entity getEntity() {
+        return this.entity;
+    }
+
+    /**
+     * @brief Restituisce il tipo di modifica.
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @brief Restituisce la chiave dell'elemento modificato.
+     */
+    public List<String> getKey() {
+        return this.key;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof EntityChange change
+            && this.entity == change.entity
+            && this.type == change.type
+            && this.key.equals(change.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * this.entity.hashCode() + this.type.hashCode()) + this.key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.entity + " " + this.type + " " + this.key;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @brief Esito dell'importazione di un file del catalogo.
+ *  Le righe rifiutate non interrompono l'importazione: vengono contate e riportate con il
+ *  loro numero e il motivo. Per mantenere costante la memoria usata, vengono conservate
+ *  solo le prime MAX_REPORTED_FAILURES righe rifiutate.
+ */
+public class ImportReport {
+    /**
+     * @brief Numero massimo di righe rifiutate conservate nel report.
+     */
+    public static final int MAX_REPORTED_FAILURES = 1000;
+
+    private final long skippedRows;
+    private long importedRows;
+    private long failedRows;
+    private final List<RowFailure> failures = new ArrayList<>();
+
+    /**
+     * @param skippedRows Le righe gia' importate da un'esecuzione precedente e quindi saltate.
+     */
+    public ImportReport(long skippedRows) {
+        this.skippedRows = skippedRows;
+    }
+
+    /**
+     * @brief Registra le righe importate di un blocco.
+     */
+    public void addImported(int rows) {
+        this.importedRows += rows;
+    }
+
+    /**
+     * @brief Registra una riga rifiutata.
+     */
+    public void addFailure(RowFailure failure) {
+        this.failedRows++;
+        if (this.failures.size() < MAX_REPORTED_FAILURES) {
+            this.failures.add(failure);
+        }
+    }
+
+    /**
+     * @brief Restituisce il numero di righe saltate perche' gia' importate in precedenza.
+     */
+    public long getSkippedRows() {
+        return this.skippedRows;
+    }
+
+    /**
+     * @brief Restituisce il numero di libri aggiunti al catalogo.
+     */
+    public long getImportedRows() {
+        return this.importedRows;
+    }
+
+    /**
+     * @brief Restituisce il numero di righe rifiutate.
+     */
+    public long getFailedRows() {
+        return this.failedRows;
+    }
+
+    /**
+     * @brief Restituisce le prime righe rifiutate, nell'ordine del file.
+     */
+    public List<RowFailure> getFailures() {
+        return Collections.unmodifiableList(this.failures);
+    }
+
+    /**
+     * @brief Una riga rifiutata del file importato.
+     */
+    public static class RowFailure {
+        private final long row;
+        private final String isbn;
+        private final Exception reason;
+
+        /**
+         * @param row Il numero della riga di dati, a partire da 1 (l'intestazione CSV non
+         *  viene contata).
+         * @param isbn L'ISBN letto dalla riga, oppure null se assente.
+         * @param reason L'eccezione che descrive il motivo del rifiuto.
+         */
+        public RowFailure(long row, String isbn, Exception reason) {
+            this.row = row;
+            this.isbn = isbn;
+            this.reason = reason;
+        }
+
+        /**
+         * @brief Restituisce il numero della riga di dati, a partire da 1.
+         */
+        public long getRow() {
+            return this.row;
+        }
+
+        /**
+         * @brief Restituisce l'ISBN letto dalla riga, se presente.
+         */
+        public Optional<String> getIsbn() {
+            return Optional.ofNullable(this.isbn);
+        }
+
+        /**
+         * @brief Restituisce l'eccezione che descrive il motivo del rifiuto.
+         */
+        public Exception getReason() {
+            return this.reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Riga " + this.row + " (" + this.isbn + "): " + this.reason.getMessage();
+        }
+    }
+}
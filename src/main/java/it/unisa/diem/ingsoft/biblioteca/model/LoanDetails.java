@@ -0,0 +1,54 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.util.Optional;
+
+/**
+ * @brief Rappresenta un prestito insieme ai dati del libro prestato, letti con la stessa
+ *  query del prestito.
+ */
+public class LoanDetails extends Loan {
+    private String bookTitle;
+    private String bookAuthor;
+
+    /**
+     * @brief Costruttore di default.
+     * Necessario per alcune operazioni.
+     */
+    public LoanDetails() {}
+
+    /**
+     * @brief Restituisce il titolo del libro prestato, se il libro e' nel catalogo.
+     * @return Un Optional<String> contenente il titolo, altrimenti un Optional vuoto.
+     */
+    public Optional<String> getBookTitle() {
+        return Optional.ofNullable(this.bookTitle);
+    }
+
+    /**
+     * @brief Restituisce l'autore del libro prestato, se il libro e' nel catalogo.
+     * @return Un Optional<String> contenente l'autore, altrimenti un Optional vuoto.
+     */
+    public Optional<String> getBookAuthor() {
+        return Optional.ofNullable(this.bookAuthor);
+    }
+
+    /**
+     * @brief Imposta il titolo del libro prestato.
+     * @param bookTitle Il titolo del libro.
+     */
+    public void setBookTitle(String bookTitle) {
+        this.bookTitle = bookTitle;
+    }
+
+    /**
+     * @brief Imposta l'autore del libro prestato.
+     * @param bookAuthor L'autore del libro.
+     */
+    public void setBookAuthor(String bookAuthor) {
+        this.bookAuthor = bookAuthor;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.time.LocalDate;
+
+/**
+ * @brief Rappresenta la richiesta di un prestito da registrare con LoanService#registerAll.
+ */
+public class LoanRequest {
+    private final String userId;
+    private final String bookIsbn;
+    private final LocalDate loanStart;
+    private final LocalDate loanDeadline;
+
+    /**
+     * @brief Costruttore completo della richiesta di prestito.
+     *
+     * @param userId Matricola dell'utente che chiede il prestito.
+     * @param bookIsbn Codice ISBN del libro da prestare.
+     * @param loanStart Data di inizio del prestito.
+     * @param loanDeadline Data di fine prestito.
+     */
+    public LoanRequest(String userId, String bookIsbn, LocalDate loanStart, LocalDate loanDeadline) {
+        this.userId = userId;
+        this.bookIsbn = bookIsbn;
+        this.loanStart = loanStart;
+        this.loanDeadline = loanDeadline;
+    }
+
+    /**
+     * @brief Restituisce la matricola dell'utente che chiede il prestito.
+     */
+    public String getUserId() {
+        return this.userId;
+    }
+
+    /**
+     * @brief Restituisce il codice ISBN del libro da prestare.
+     */
+    public String getBookIsbn() {
+        return this.bookIsbn;
+    }
+
+    /**
+     * @brief Restituisce la data di inizio del prestito.
+     */
+    public LocalDate getLoanStart() {
+        return this.loanStart;
+    }
+
+    /**
+     * @brief Restituisce la data di fine prestito.
+     */
+    public LocalDate getLoanDeadline() {
+        return this.loanDeadline;
+    }
+}
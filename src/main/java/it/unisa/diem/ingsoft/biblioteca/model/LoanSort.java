@@ -0,0 +1,14 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+/**
+ * @brief Ordinamenti disponibili per la lettura paginata dei prestiti attivi.
+ *  Un prestito attivo e' identificato dalla coppia utente/libro, usata per gli spareggi.
+ */
+public enum LoanSort {
+    DEADLINE,
+    USER_ID
+}
@@ -0,0 +1,69 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * @brief Riepilogo dei prestiti scaduti ad una certa data.
+ */
+public class OverdueSummary {
+    private final LocalDate asOf;
+    private final int count;
+    private final LocalDate oldestDeadline;
+
+    /**
+     * @param asOf La data rispetto a cui sono stati contati i prestiti scaduti.
+     * @param count Il numero di prestiti scaduti.
+     * @param oldestDeadline La scadenza del prestito scaduto piu' vecchio, oppure null se
+     *  non ci sono prestiti scaduti.
+     */
+    public OverdueSummary(LocalDate asOf, int count, LocalDate oldestDeadline) {
+        this.asOf = asOf;
+        this.count = count;
+        this.oldestDeadline = oldestDeadline;
+    }
+
+    /**
+     * @brief Restituisce la data rispetto a cui sono stati contati i prestiti scaduti.
+     */
+    public LocalDate getAsOf() {
+        return this.asOf;
+    }
+
+    /**
+     * @brief Restituisce il numero di prestiti scaduti.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @brief Restituisce la scadenza del prestito scaduto piu' vecchio, se presente.
+     */
+    public Optional<LocalDate> getOldestDeadline() {
+        return Optional.ofNullable(this.oldestDeadline);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof OverdueSummary other
+            && this.asOf.equals(other.asOf)
+            && this.count == other.count
+            && Objects.equals(this.oldestDeadline, other.oldestDeadline);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.asOf, this.count, this.oldestDeadline);
+    }
+
+    @Override
+    public String toString() {
+        return "OverdueSummary[" + this.asOf + ": " + this.count + ", " + this.oldestDeadline + "]";
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @brief Una pagina di risultati di una lettura paginata.
+ * @param <T> Il tipo degli elementi della pagina.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final Optional<PageKey> nextKey;
+
+    /**
+     * @param items Gli elementi della pagina, nell'ordine richiesto.
+     * @param nextKey La chiave della pagina successiva, Optional.empty() se questa e' l'ultima.
+     */
+    public Page(List<T> items, Optional<PageKey> nextKey) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * @brief Restituisce gli elementi della pagina.
+     */
+    public List<T> getItems() {
+        return this.items;
+    }
+
+    /**
+     * @brief Restituisce la chiave da passare a getPage per leggere la pagina successiva.
+     * @return La chiave, oppure Optional.empty() se non ci sono altri elementi.
+     */
+    public Optional<PageKey> getNextKey() {
+        return this.nextKey;
+    }
+
+    /**
+     * @brief Verifica se esistono altri elementi dopo questa pagina.
+     */
+    public boolean hasNext() {
+        return this.nextKey.isPresent();
+    }
+}
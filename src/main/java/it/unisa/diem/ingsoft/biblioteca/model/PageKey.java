@@ -0,0 +1,68 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @brief Posizione da cui riprendere la lettura paginata di una tabella (paginazione keyset).
+ *  Contiene i valori delle colonne di ordinamento dell'ultimo elemento della pagina
+ *  precedente: la pagina successiva parte dal primo elemento che li segue, senza OFFSET.
+ *  Va trattata come opaca: si ottiene da {@link Page#getNextKey()} oppure da {@link #first()}.
+ */
+public class PageKey {
+    private static final PageKey FIRST = new PageKey(new Object[0]);
+
+    private final Object[] values;
+
+    private PageKey(Object[] values) {
+        this.values = values;
+    }
+
+    /**
+     * @brief Restituisce la chiave che indica la prima pagina.
+     */
+    public static PageKey first() {
+        return FIRST;
+    }
+
+    /**
+     * @brief Costruisce la chiave a partire dai valori di ordinamento di un elemento.
+     * @param values I valori delle colonne di ordinamento, nell'ordine delle colonne.
+     */
+    public static PageKey of(Object... values) {
+        return new PageKey(values.clone());
+    }
+
+    /**
+     * @brief Verifica se la chiave indica la prima pagina.
+     */
+    public boolean isFirst() {
+        return this.values.length == 0;
+    }
+
+    /**
+     * @brief Restituisce i valori delle colonne di ordinamento.
+     */
+    public List<Object> getValues() {
+        return Arrays.asList(this.values.clone());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PageKey other && Arrays.equals(this.values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.values);
+    }
+
+    @Override
+    public String toString() {
+        return "PageKey" + Arrays.toString(this.values);
+    }
+}
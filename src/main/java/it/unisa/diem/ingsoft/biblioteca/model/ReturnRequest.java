@@ -0,0 +1,38 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+/**
+ * @brief Rappresenta la restituzione di un libro da registrare con LoanService#completeAll.
+ */
+public class ReturnRequest {
+    private final String userId;
+    private final String bookIsbn;
+
+    /**
+     * @brief Costruttore completo della restituzione.
+     *
+     * @param userId Matricola dell'utente che restituisce il libro.
+     * @param bookIsbn Codice ISBN del libro restituito.
+     */
+    public ReturnRequest(String userId, String bookIsbn) {
+        this.userId = userId;
+        this.bookIsbn = bookIsbn;
+    }
+
+    /**
+     * @brief Restituisce la matricola dell'utente che restituisce il libro.
+     */
+    public String getUserId() {
+        return this.userId;
+    }
+
+    /**
+     * @brief Restituisce il codice ISBN del libro restituito.
+     */
+    public String getBookIsbn() {
+        return this.bookIsbn;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * @brief Package dei model
+ * @package it.unisa.diem.ingsoft.biblioteca.model
+ */
+package it.unisa.diem.ingsoft.biblioteca.model;
+
+/**
+ * @brief Ordinamenti disponibili per la lettura paginata degli utenti.
+ *  A parita' di cognome gli utenti sono ordinati per nome e matricola.
+ */
+public enum UserSort {
+    ID,
+    SURNAME,
+    EMAIL
+}
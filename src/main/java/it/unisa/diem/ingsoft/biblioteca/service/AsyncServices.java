@@ -0,0 +1,80 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * @brief Facciata asincrona sui servizi di un {@link ServiceRepository}.
+ *  Ogni operazione viene eseguita su un executor a virtual thread e restituisce un
+ *  CompletableFuture: il thread dell'interfaccia grafica non attende mai il database.
+ *  Le operazioni dell'AuthService, che calcolano hash BCrypt e occupano un core per
+ *  centinaia di millisecondi, girano invece su un pool limitato al numero di core.
+ */
+public class AsyncServices {
+    private final ServiceRepository services;
+    private final Executor executor;
+    private final Executor authExecutor;
+
+    /**
+     * @brief Costruisce la facciata usando un virtual thread per ogni operazione e un
+     *  thread per core per le operazioni di autenticazione.
+     * @param services Il contenitore dei servizi da usare.
+     */
+    public AsyncServices(ServiceRepository services) {
+        this(services, Executors.newVirtualThreadPerTaskExecutor(),
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, "auth");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    /**
+     * @brief Costruisce la facciata usando l'executor specificato per tutte le operazioni.
+     * @param services Il contenitore dei servizi da usare.
+     * @param executor L'executor su cui eseguire le operazioni.
+     */
+    public AsyncServices(ServiceRepository services, Executor executor) {
+        this(services, executor, executor);
+    }
+
+    /**
+     * @brief Costruisce la facciata usando gli executor specificati.
+     * @param services Il contenitore dei servizi da usare.
+     * @param executor L'executor su cui eseguire le operazioni.
+     * @param authExecutor L'executor su cui eseguire le operazioni dell'AuthService.
+     */
+    public AsyncServices(ServiceRepository services, Executor executor, Executor authExecutor) {
+        this.services = services;
+        this.executor = executor;
+        this.authExecutor = authExecutor;
+    }
+
+    /**
+     * @brief Esegue un'operazione sui servizi in background.
+     * @param operation L'operazione da eseguire, ad esempio una ricerca.
+     * @return Un CompletableFuture completato con il risultato dell'operazione, o
+     *  eccezionalmente se l'operazione lancia un'eccezione.
+     */
+    public <T> CompletableFuture<T> supply(Function<ServiceRepository, T> operation) {
+        return CompletableFuture.supplyAsync(() -> operation.apply(this.services), this.executor);
+    }
+
+    /**
+     * @brief Esegue un'operazione dell'AuthService in background, sul pool riservato
+     *  all'autenticazione.
+     * @param operation L'operazione da eseguire, ad esempio il controllo della password.
+     * @return Un CompletableFuture completato con il risultato dell'operazione, o
+     *  eccezionalmente se l'operazione lancia un'eccezione.
+     */
+    public <T> CompletableFuture<T> supplyAuth(Function<AuthService, T> operation) {
+        return CompletableFuture.supplyAsync(() -> operation.apply(this.services.getAuthService()),
+                this.authExecutor);
+    }
+}
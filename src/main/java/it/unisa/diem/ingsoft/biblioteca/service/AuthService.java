@@ -4,6 +4,8 @@
  */
 package it.unisa.diem.ingsoft.biblioteca.service;
 
+import java.util.Map;
+
 import it.unisa.diem.ingsoft.biblioteca.exception.UnsetAnswerException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnsetPasswordException;
 
@@ -58,4 +60,12 @@ public interface AuthService {
      * @param number Il numero della risposta da modificare.
      */
     void changeAnswer(String answer, int number);
+
+    /**
+     * @brief Cambia piu' risposte alle domande di accesso al software insieme.
+     * @param answers Le nuove risposte, per numero di domanda (1, 2 o 3).
+     * @throws UnsetAnswerException Se password e risposte non sono ancora state impostate.
+     * @throws IllegalArgumentException Se il numero di una domanda non e' valido.
+     */
+    void changeAnswers(Map<Integer, String> answers);
 }
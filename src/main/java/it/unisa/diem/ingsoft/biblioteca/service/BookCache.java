@@ -0,0 +1,227 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.jdbi.v3.core.Handle;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.Dialect;
+import it.unisa.diem.ingsoft.biblioteca.ReplicatedDatabase;
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+
+/**
+ * @brief Cache read-through dei libri per ISBN, condivisa da tutti i service dello stesso
+ *  database.
+ *  Contiene al piu' maxSize libri: quando e' piena viene scartato il libro letto meno di
+ *  recente; ogni libro scade comunque dopo il tempo indicato. Vengono memorizzati anche gli
+ *  ISBN non presenti nel catalogo. Book e' modificabile: la cache conserva e restituisce
+ *  sempre delle copie.
+ *  Chi modifica una riga di books deve chiamare invalidate con l'handle della modifica: il
+ *  libro viene scartato subito e, se l'handle e' in una transazione, di nuovo dopo il
+ *  COMMIT, cosi' una lettura concorrente non puo' rimettere in cache la versione precedente.
+ *  Un server PostgreSQL e' condiviso con altre sedi, le cui modifiche non invalidano la
+ *  cache: su PostgreSQL la cache e' quindi disattivata e ogni lettura va al database,
+ *  tranne che per un ReplicatedDatabase, che la invalida con il change log delle altre sedi.
+ */
+public class BookCache {
+    /**
+     * @brief Numero massimo predefinito di libri in cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * @brief Durata predefinita di un libro in cache.
+     */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    // Incrementata ad ogni invalidazione: una lettura iniziata prima non viene memorizzata
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize Il numero massimo di libri in cache.
+     * @param ttl Il tempo dopo cui un libro in cache viene riletto dal database.
+     * @throws IllegalArgumentException Se maxSize non e' positivo o ttl non e' positivo.
+     */
+    public BookCache(int maxSize, Duration ttl) {
+        this(true, maxSize, ttl);
+    }
+
+    private BookCache(boolean enabled, int maxSize, Duration ttl) {
+        if (maxSize < 1 || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Parametri della cache non validi");
+        }
+
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (this.size() > BookCache.this.maxSize) {
+                    BookCache.this.evictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @brief Restituisce la cache dei libri del database, creandola alla prima richiesta con
+     *  i parametri predefiniti. Su PostgreSQL la cache e' disattivata, a meno che il
+     *  database non sia un ReplicatedDatabase.
+     */
+    public static BookCache of(Database database) {
+        return database.getShared("cache.books", db -> new BookCache(
+                    db.getDialect() != Dialect.POSTGRES || db instanceof ReplicatedDatabase,
+                    DEFAULT_MAX_SIZE, DEFAULT_TTL));
+    }
+
+    /**
+     * @brief Indica se la cache memorizza i libri letti.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @brief Restituisce il libro in cache, leggendolo con loader se assente o scaduto.
+     * @param isbn L'ISBN del libro.
+     * @param loader La funzione che legge il libro dal database.
+     * @return Il libro, oppure Optional.empty() se non e' presente nel catalogo.
+     */
+    public Optional<Book> get(String isbn, Function<String, Optional<Book>> loader) {
+        if (!this.enabled) {
+            synchronized (this) {
+                this.misses++;
+            }
+
+            return loader.apply(isbn);
+        }
+
+        long loadVersion;
+
+        synchronized (this) {
+            Entry entry = this.entries.get(isbn);
+            if (entry != null && System.nanoTime() - entry.loadedAt < this.ttlNanos) {
+                this.hits++;
+                return entry.book.map(BookCache::copy);
+            }
+
+            this.misses++;
+            loadVersion = this.version;
+        }
+
+        Optional<Book> book = loader.apply(isbn);
+
+        synchronized (this) {
+            if (this.version == loadVersion) {
+                this.entries.put(isbn, new Entry(book.map(BookCache::copy), System.nanoTime()));
+            }
+        }
+
+        return book;
+    }
+
+    /**
+     * @brief Scarta il libro dalla cache dopo una modifica eseguita con l'handle specificato.
+     * @param handle L'handle con cui e' stata modificata la riga del libro.
+     * @param isbn L'ISBN del libro modificato.
+     */
+    public void invalidate(Handle handle, String isbn) {
+        this.invalidate(handle, List.of(isbn));
+    }
+
+    /**
+     * @brief Scarta i libri dalla cache dopo una modifica eseguita con l'handle specificato.
+     * @param handle L'handle con cui sono state modificate le righe dei libri.
+     * @param isbns Gli ISBN dei libri modificati.
+     */
+    public void invalidate(Handle handle, Collection<String> isbns) {
+        List<String> keys = List.copyOf(isbns);
+        this.remove(keys);
+
+        if (handle.isInTransaction()) {
+            handle.afterCommit(() -> this.remove(keys));
+        }
+    }
+
+    /**
+     * @brief Scarta i libri dalla cache dopo modifiche gia' confermate, ad esempio quelle
+     *  di un'altra sede lette dal change log di un ReplicatedDatabase.
+     * @param isbns Gli ISBN dei libri modificati.
+     */
+    public void invalidate(Collection<String> isbns) {
+        this.remove(List.copyOf(isbns));
+    }
+
+    /**
+     * @brief Svuota la cache.
+     */
+    public synchronized void clear() {
+        this.version++;
+        this.entries.clear();
+    }
+
+    /**
+     * @brief Restituisce il numero di libri in cache.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @brief Restituisce il numero di letture servite dalla cache.
+     */
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    /**
+     * @brief Restituisce il numero di letture che hanno richiesto il database.
+     */
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    /**
+     * @brief Restituisce il numero di libri scartati perche' la cache era piena.
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    private synchronized void remove(Collection<String> isbns) {
+        this.version++;
+        for (String isbn : isbns) {
+            this.entries.remove(isbn);
+        }
+    }
+
+    private static Book copy(Book book) {
+        return new Book(book.getIsbn(), book.getTitle(), book.getAuthor(), book.getReleaseYear(),
+                book.getTotalCopies(), book.getRemainingCopies(), book.getGenre(), book.getDescription());
+    }
+
+    private record Entry(Optional<Book> book, long loadedAt) {
+    }
+}
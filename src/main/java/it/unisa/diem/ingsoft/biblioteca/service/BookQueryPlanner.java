@@ -0,0 +1,141 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import it.unisa.diem.ingsoft.biblioteca.Dialect;
+import it.unisa.diem.ingsoft.biblioteca.model.BookQuery;
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+
+/**
+ * @brief Traduce una BookQuery in un'unica query SQL parametrizzata.
+ *  Il planner sceglie la tabella da cui partire in base agli indici disponibili:
+ *  - se almeno un criterio testuale ha tre o piu' caratteri si parte dall'indice trigram
+ *    books_trigram, che restringe i candidati prima di leggere la tabella books;
+ *  - altrimenti, se e' impostato un intervallo di anni, dall'indice idx_books_release_year_isbn;
+ *  - altrimenti dall'indice dell'ordinamento, che con un limite permette di fermarsi
+ *    dopo i primi libri senza ordinare l'intero catalogo.
+ *  I criteri testuali piu' corti di tre caratteri non possono usare l'indice trigram e
+ *  vengono verificati sulla riga di books. Gli altri criteri filtrano le righe lette.
+ *  Su PostgreSQL gli indici trigram GIN (pg_trgm) sono definiti direttamente sulle colonne
+ *  di books: la query legge sempre books e i criteri testuali usano ILIKE.
+ */
+class BookQueryPlanner {
+    /**
+     * @brief Il percorso di accesso scelto per una ricerca.
+     */
+    enum Access {
+        TRIGRAM,
+        RELEASE_YEAR_INDEX,
+        SORT_INDEX
+    }
+
+    // Lunghezza minima di una sottostringa perche' l'indice trigram possa usarla
+    private static final int TRIGRAM_MIN_LENGTH = 3;
+
+    private static final Map<BookSort, String> ORDER_BY = Map.of(
+        BookSort.TITLE, "books.title, books.isbn",
+        BookSort.AUTHOR, "books.author, books.isbn",
+        BookSort.RELEASE_YEAR, "books.release_year, books.isbn",
+        BookSort.ISBN, "books.isbn"
+    );
+
+    /**
+     * @brief La query SQL prodotta dal planner, con i valori dei suoi parametri.
+     */
+    static class Plan {
+        private final Access access;
+        private final String sql;
+        private final Map<String, Object> bindings;
+
+        private Plan(Access access, String sql, Map<String, Object> bindings) {
+            this.access = access;
+            this.sql = sql;
+            this.bindings = bindings;
+        }
+
+        Access getAccess() {
+            return this.access;
+        }
+
+        String getSql() {
+            return this.sql;
+        }
+
+        Map<String, Object> getBindings() {
+            return this.bindings;
+        }
+    }
+
+    private BookQueryPlanner() {
+    }
+
+    /**
+     * @brief Produce la query SQL per la ricerca specificata.
+     * @param dialect Il tipo di database su cui verra' eseguita la query.
+     */
+    static Plan plan(BookQuery query, Dialect dialect) {
+        Map<String, Optional<String>> text = new LinkedHashMap<>();
+        text.put("title", query.getTitleContaining());
+        text.put("author", query.getAuthorContaining());
+        text.put("genre", query.getGenreContaining());
+
+        boolean trigram = text.values().stream()
+            .anyMatch(value -> value.isPresent() && value.get().length() >= TRIGRAM_MIN_LENGTH);
+        boolean years = query.getReleasedFrom().isPresent() || query.getReleasedTo().isPresent();
+
+        Access access = trigram ? Access.TRIGRAM
+            : years ? Access.RELEASE_YEAR_INDEX
+            : Access.SORT_INDEX;
+
+        boolean sqliteTrigram = access == Access.TRIGRAM && dialect == Dialect.SQLITE;
+        StringBuilder sql = new StringBuilder("SELECT books.* FROM ");
+        sql.append(sqliteTrigram
+                ? "books_trigram JOIN books ON books.rowid = books_trigram.rowid"
+                : "books");
+
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> bindings = new LinkedHashMap<>();
+
+        text.forEach((column, value) -> value.ifPresent(substring -> {
+            String table = sqliteTrigram && substring.length() >= TRIGRAM_MIN_LENGTH
+                ? "books_trigram"
+                : "books";
+            conditions.add(table + "." + column + " " + dialect.like() + " :" + column);
+            bindings.put(column, "%" + substring + "%");
+        }));
+
+        query.getReleasedFrom().ifPresent(year -> {
+            conditions.add("books.release_year >= :releasedFrom");
+            bindings.put("releasedFrom", year);
+        });
+        query.getReleasedTo().ifPresent(year -> {
+            conditions.add("books.release_year <= :releasedTo");
+            bindings.put("releasedTo", year);
+        });
+
+        if (query.isAvailableOnly()) {
+            conditions.add("books.remaining_copies > 0");
+        }
+
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        sql.append(" ORDER BY ").append(ORDER_BY.get(query.getSort()));
+
+        query.getLimit().ifPresent(limit -> {
+            sql.append(" LIMIT :limit");
+            bindings.put("limit", limit);
+        });
+
+        return new Plan(access, sql.toString(), bindings);
+    }
+}
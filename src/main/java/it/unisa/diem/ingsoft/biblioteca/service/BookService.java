@@ -14,18 +14,36 @@ import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.MissingBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
 import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.BookQuery;
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
 
 /**
  * @brief Interfaccia per la gestione dei libri
  */
-public interface BookService {
+public interface BookService extends ChangeSource {
     /**
      * @brief Recupera tutti i libri presenti nel catalogo.
      * @return Una lista di libri contenente tutti i libri del catalogo.
      */
     List<Book> getAll();
 
+    /**
+     * @brief Recupera una pagina dei libri del catalogo ordinati secondo il criterio specificato.
+     *  Le pagine vanno lette in sequenza passando ogni volta la chiave restituita dalla
+     *  pagina precedente: il costo di ogni pagina non dipende dalla sua posizione.
+     * @param after La chiave restituita dalla pagina precedente, oppure PageKey.first().
+     * @param limit Il numero massimo di elementi della pagina.
+     * @param sort Il criterio di ordinamento.
+     * @return La pagina, con la chiave per leggere la successiva.
+     * @throws IllegalArgumentException Se limit non e' positivo o se la chiave non
+     *  corrisponde al criterio di ordinamento.
+     */
+    Page<Book> getPage(PageKey after, int limit, BookSort sort);
+
     /**
      * @brief Recupera un libro tramite il suo codice ISBN.
      * @param isbn Il codice isbn del libro da cercare.
@@ -78,6 +96,24 @@ public interface BookService {
      */
     List<Book> getAllByTitleContaining(String title);
 
+    /**
+     * @brief Cerca i libri in cui titolo, autore, genere o descrizione contengono parole che
+     *  iniziano con i termini specificati, ordinati per rilevanza.
+     * @param query I termini da cercare, separati da spazi. Tutti i termini devono essere
+     *  presenti nel libro.
+     * @param limit Il numero massimo di libri da restituire.
+     * @return Una lista di {@link Book} ordinata dal piu' rilevante, vuota se la query non
+     *  contiene termini.
+     */
+    List<Book> search(String query, int limit);
+
+    /**
+     * @brief Cerca i libri che rispettano tutti i criteri della ricerca specificata.
+     * @param query I criteri, l'ordinamento e il numero massimo di risultati.
+     * @return Una lista di {@link Book} ordinata come richiesto dalla ricerca.
+     */
+    List<Book> find(BookQuery query);
+
     /**
      * @brief Rimuove un libro dal catalogo basandosi sul suo codice ISBN.
      * @param isbn Il codice ISBN del libro da rimuovere.
@@ -107,6 +143,18 @@ public interface BookService {
     void addAll(List<Book> books) throws DuplicateBookByIsbnException, DuplicateBooksByIsbnException,
          InvalidIsbnException, NegativeBookCopiesException;
 
+    /**
+     * @brief Aggiunge piu' libri in un'unica transazione, rifiutando singolarmente quelli
+     *  non validi senza interrompere l'aggiunta degli altri.
+     *  Un libro con un ISBN gia' presente nel catalogo, o ripetuto nella stessa lista, viene
+     *  rifiutato come duplicato.
+     * @param books I libri da aggiungere, elaborati nell'ordine della lista.
+     * @return L'esito per ogni libro; quelli rifiutati sono associati ad una tra
+     *  InvalidIsbnException, NegativeBookCopiesException, InvalidBookCopiesException e
+     *  DuplicateBookByIsbnException.
+     */
+    BatchResult<Book> importAll(List<Book> books);
+
     /**
      * @brief Aggiorna le informazioni di un libro già registrato.
      * @param book L'oggetto Book contenente l'ISBN del libro da modificare e
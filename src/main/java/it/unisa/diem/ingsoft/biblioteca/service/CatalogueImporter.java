@@ -0,0 +1,309 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.exception.MalformedBookRowException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.ImportReport;
+
+/**
+ * @brief Importa nel catalogo un file CSV o JSON di libri, anche di centinaia di migliaia
+ *  di righe, leggendolo una riga alla volta.
+ *  Le righe vengono aggiunte a blocchi con BookService#importAll: ogni blocco viene
+ *  confermato in una transazione insieme al numero di righe lette finora, salvato nella
+ *  tabella import_checkpoints con il nome dell'importazione. Se l'importazione si
+ *  interrompe, una nuova esecuzione con lo stesso nome riparte dalla prima riga non
+ *  confermata. Al termine il checkpoint viene rimosso.
+ *  Le righe non valide, con ISBN non valido o gia' presente nel catalogo vengono riportate
+ *  nell'ImportReport senza interrompere l'importazione.
+ *  I campi riconosciuti sono isbn, title, author, genre, release_year, total_copies,
+ *  remaining_copies e description; sono accettati anche in camelCase (releaseYear).
+ *  Se remaining_copies manca tutte le copie sono disponibili.
+ */
+public class CatalogueImporter {
+    /**
+     * @brief Formato del file da importare.
+     */
+    public enum Format {
+        CSV,
+        JSON;
+
+        /**
+         * @brief Ricava il formato dall'estensione del file.
+         * @throws IllegalArgumentException Se l'estensione non e' .csv o .json.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+
+            if (name.endsWith(".json")) {
+                return JSON;
+            }
+
+            throw new IllegalArgumentException("Formato del file non supportato: " + file);
+        }
+    }
+
+    /**
+     * @brief Numero di righe predefinito per ogni blocco confermato.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final BookService bookService;
+    private final Database database;
+    private final int chunkSize;
+
+    /**
+     * @param bookService Il service con cui aggiungere i libri, che deve usare lo stesso database.
+     * @param database Il database in cui salvare l'avanzamento dell'importazione.
+     */
+    public CatalogueImporter(BookService bookService, Database database) {
+        this(bookService, database, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param bookService Il service con cui aggiungere i libri, che deve usare lo stesso database.
+     * @param database Il database in cui salvare l'avanzamento dell'importazione.
+     * @param chunkSize Il numero di righe per ogni blocco confermato.
+     * @throws IllegalArgumentException Se chunkSize non e' positivo.
+     */
+    public CatalogueImporter(BookService bookService, Database database, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Dimensione del blocco non valida: " + chunkSize);
+        }
+
+        this.bookService = bookService;
+        this.database = database;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @brief Importa un file UTF-8, ricavando il formato dall'estensione.
+     *  L'importazione prende il nome dal percorso assoluto del file.
+     * @see #importFrom(String, Reader, Format)
+     */
+    public ImportReport importFile(Path file) throws IOException {
+        Format format = Format.of(file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return this.importFrom(file.toAbsolutePath().toString(), reader, format);
+        }
+    }
+
+    /**
+     * @brief Importa i libri letti dal reader, riprendendo dall'ultimo blocco confermato
+     *  di un'importazione interrotta con lo stesso nome.
+     * @param name Il nome dell'importazione, che identifica il suo checkpoint.
+     * @param reader Il contenuto del file; non viene chiuso.
+     * @param format Il formato del file.
+     * @return L'esito dell'importazione, con le righe saltate, importate e rifiutate.
+     * @throws IOException Se il file non puo' essere letto o non rispetta il formato: le
+     *  righe dei blocchi gia' confermati restano importate e il checkpoint permette di
+     *  riprendere.
+     */
+    public ImportReport importFrom(String name, Reader reader, Format format) throws IOException {
+        long committed = this.getCheckpoint(name).orElse(0);
+        CatalogueRowReader rows = CatalogueRowReader.of(reader, format);
+        ImportReport report = new ImportReport(committed);
+
+        long row = 0;
+        while (row < committed && this.skip(rows)) {
+            row++;
+        }
+
+        List<Book> books = new ArrayList<>();
+        Map<Book, Long> rowOf = new IdentityHashMap<>();
+        List<ImportReport.RowFailure> malformed = new ArrayList<>();
+
+        while (true) {
+            Map<String, String> fields;
+            try {
+                fields = rows.next();
+            } catch (MalformedBookRowException e) {
+                malformed.add(new ImportReport.RowFailure(++row, null, e));
+                fields = Map.of();
+            }
+
+            if (fields == null) {
+                break;
+            }
+
+            if (!fields.isEmpty()) {
+                row++;
+                Map<String, String> normalized = CatalogueImporter.normalize(fields);
+                try {
+                    Book book = CatalogueImporter.toBook(normalized);
+                    books.add(book);
+                    rowOf.put(book, row);
+                } catch (MalformedBookRowException e) {
+                    malformed.add(new ImportReport.RowFailure(row, normalized.get("isbn"), e));
+                }
+            }
+
+            if (books.size() + malformed.size() >= this.chunkSize) {
+                this.commit(name, row, books, rowOf, malformed, report);
+            }
+        }
+
+        if (!books.isEmpty() || !malformed.isEmpty()) {
+            this.commit(name, row, books, rowOf, malformed, report);
+        }
+
+        this.resetCheckpoint(name);
+        return report;
+    }
+
+    /**
+     * @brief Restituisce il numero di righe gia' confermate di un'importazione interrotta.
+     * @param name Il nome dell'importazione.
+     * @return Il numero di righe, oppure OptionalLong.empty() se non c'e' un'importazione
+     *  da riprendere.
+     */
+    public OptionalLong getCheckpoint(String name) {
+        return this.database.getJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT row_count FROM import_checkpoints "
+                                + "WHERE name = :name")
+                        .bind("name", name)
+                        .mapTo(Long.class)
+                        .findOne())
+                .map(OptionalLong::of)
+                .orElse(OptionalLong.empty());
+    }
+
+    /**
+     * @brief Rimuove il checkpoint di un'importazione, che alla prossima esecuzione
+     *  ripartira' dalla prima riga.
+     * @param name Il nome dell'importazione.
+     */
+    public void resetCheckpoint(String name) {
+        this.database.getJdbi()
+                .useHandle(handle -> handle.createUpdate("DELETE FROM import_checkpoints WHERE name = :name")
+                        .bind("name", name)
+                        .execute());
+    }
+
+    /**
+     * @brief Conferma un blocco di righe insieme al numero di righe lette, poi svuota il blocco.
+     */
+    private void commit(String name, long row, List<Book> books, Map<Book, Long> rowOf,
+            List<ImportReport.RowFailure> malformed, ImportReport report) {
+        BatchResult<Book> result = this.database.getJdbi()
+                .inTransaction(handle -> {
+                    BatchResult<Book> added = this.bookService.importAll(books);
+
+                    handle.createUpdate("INSERT INTO import_checkpoints(name, row_count) "
+                                + "VALUES (:name, :row_count) "
+                                + "ON CONFLICT(name) DO UPDATE SET row_count = excluded.row_count")
+                        .bind("name", name)
+                        .bind("row_count", row)
+                        .execute();
+                    return added;
+                });
+
+        report.addImported(result.getSucceeded().size());
+
+        List<ImportReport.RowFailure> failures = new ArrayList<>(malformed);
+        result.getFailures().forEach((book, reason) ->
+                failures.add(new ImportReport.RowFailure(rowOf.get(book), book.getIsbn(), reason)));
+        failures.sort(Comparator.comparingLong(ImportReport.RowFailure::getRow));
+        failures.forEach(report::addFailure);
+
+        books.clear();
+        rowOf.clear();
+        malformed.clear();
+    }
+
+    /**
+     * @brief Consuma una riga gia' importata.
+     * @return false se il file e' terminato.
+     */
+    private boolean skip(CatalogueRowReader rows) throws IOException {
+        while (true) {
+            try {
+                Map<String, String> fields = rows.next();
+                if (fields == null) {
+                    return false;
+                }
+
+                if (!fields.isEmpty()) {
+                    return true;
+                }
+            } catch (MalformedBookRowException e) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @brief Riporta i nomi dei campi alla forma release_year, accettando releaseYear,
+     *  RELEASE_YEAR o "release year".
+     */
+    private static Map<String, String> normalize(Map<String, String> fields) {
+        Map<String, String> normalized = new HashMap<>();
+        fields.forEach((field, value) -> {
+            String name = field.trim()
+                .replaceAll("([a-z])([A-Z])", "$1_$2")
+                .replace(' ', '_')
+                .toLowerCase(Locale.ROOT);
+            String trimmed = value.trim();
+            if (!trimmed.isEmpty()) {
+                normalized.put(name, trimmed);
+            }
+        });
+        return normalized;
+    }
+
+    private static Book toBook(Map<String, String> fields) throws MalformedBookRowException {
+        int totalCopies = CatalogueImporter.integer(fields, "total_copies");
+        int remainingCopies = fields.containsKey("remaining_copies")
+            ? CatalogueImporter.integer(fields, "remaining_copies")
+            : totalCopies;
+
+        return new Book(CatalogueImporter.required(fields, "isbn"),
+                CatalogueImporter.required(fields, "title"),
+                CatalogueImporter.required(fields, "author"),
+                CatalogueImporter.integer(fields, "release_year"),
+                totalCopies,
+                remainingCopies,
+                fields.getOrDefault("genre", ""),
+                fields.getOrDefault("description", ""));
+    }
+
+    private static String required(Map<String, String> fields, String name)
+            throws MalformedBookRowException {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new MalformedBookRowException("Campo obbligatorio mancante: " + name);
+        }
+        return value;
+    }
+
+    private static int integer(Map<String, String> fields, String name)
+            throws MalformedBookRowException {
+        String value = CatalogueImporter.required(fields, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new MalformedBookRowException("Valore non intero per il campo " + name + ": " + value);
+        }
+    }
+}
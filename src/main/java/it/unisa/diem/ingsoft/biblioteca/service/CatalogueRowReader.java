@@ -0,0 +1,74 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+import it.unisa.diem.ingsoft.biblioteca.exception.MalformedBookRowException;
+
+/**
+ * @brief Legge un file del catalogo una riga alla volta, come coppie campo/valore.
+ *  Il file viene letto a blocchi di dimensione fissa: la memoria usata non dipende dalla
+ *  sua lunghezza, ma solo da quella della riga piu' lunga.
+ */
+abstract class CatalogueRowReader {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int length;
+
+    CatalogueRowReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @brief Crea il lettore per il formato specificato.
+     */
+    static CatalogueRowReader of(Reader reader, CatalogueImporter.Format format) {
+        return format == CatalogueImporter.Format.CSV
+            ? new CsvRowReader(reader)
+            : new JsonRowReader(reader);
+    }
+
+    /**
+     * @brief Legge la riga successiva.
+     * @return I valori della riga per nome del campo, oppure null se il file e' terminato.
+     *  I campi senza valore non sono presenti.
+     * @throws MalformedBookRowException Se la riga non e' valida ma il file puo' essere
+     *  letto dalla riga successiva; la riga viene comunque consumata.
+     * @throws IOException Se il file non puo' essere letto o non rispetta il formato.
+     */
+    abstract Map<String, String> next() throws IOException, MalformedBookRowException;
+
+    /**
+     * @brief Legge il carattere successivo, oppure -1 alla fine del file.
+     */
+    int read() throws IOException {
+        int c = this.peek();
+        if (c >= 0) {
+            this.position++;
+        }
+        return c;
+    }
+
+    /**
+     * @brief Restituisce il carattere successivo senza consumarlo, oppure -1 alla fine del file.
+     */
+    int peek() throws IOException {
+        if (this.position == this.length) {
+            this.length = this.reader.read(this.buffer);
+            this.position = 0;
+
+            if (this.length <= 0) {
+                this.length = 0;
+                return -1;
+            }
+        }
+
+        return this.buffer[this.position];
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+
+/**
+ * @brief Riceve le modifiche confermate a libri, utenti e prestiti.
+ */
+@FunctionalInterface
+public interface ChangeListener {
+    /**
+     * @brief Chiamato dopo il COMMIT della modifica, sul thread che l'ha eseguita.
+     * @param change La modifica.
+     */
+    void onChange(EntityChange change);
+}
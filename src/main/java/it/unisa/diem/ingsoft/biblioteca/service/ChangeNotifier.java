@@ -0,0 +1,121 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jdbi.v3.core.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+
+/**
+ * @brief Notifica ai listener le modifiche eseguite dai service di un database.
+ *  Le modifiche eseguite dentro una transazione vengono notificate solo dopo il COMMIT e
+ *  scartate in caso di ROLLBACK, quindi un listener non vede mai dati non confermati.
+ *  I listener sono mantenuti con riferimenti deboli, cosi' un controller che non e' piu'
+ *  visualizzato non resta registrato.
+ */
+public class ChangeNotifier implements ChangeSource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeNotifier.class);
+
+    private final List<WeakReference<ChangeListener>> listeners = new CopyOnWriteArrayList<>();
+    private final Database database;
+
+    private ChangeNotifier(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * @brief Restituisce il notificatore condiviso dai service del database, creandolo alla
+     *  prima richiesta.
+     */
+    public static ChangeNotifier of(Database database) {
+        return database.getShared("events.changes", ChangeNotifier::new);
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        this.listeners.add(new WeakReference<>(listener));
+    }
+
+    @Override
+    public void removeChangeListener(ChangeListener listener) {
+        this.listeners.removeIf(reference -> {
+            ChangeListener registered = reference.get();
+            return registered == null || registered == listener;
+        });
+    }
+
+    /**
+     * @brief Notifica le modifiche eseguite con l'handle specificato: subito se l'handle non
+     *  e' in una transazione, altrimenti dopo il COMMIT.
+     *  Le modifiche vengono prima passate al database (Database.recordChanges) con lo
+     *  stesso handle.
+     * @param handle L'handle con cui sono state eseguite le modifiche.
+     * @param changes Le modifiche, notificate nell'ordine della lista.
+     */
+    public void publish(Handle handle, List<EntityChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<EntityChange> copy = List.copyOf(changes);
+        this.database.recordChanges(handle, copy);
+        if (handle.isInTransaction()) {
+            handle.afterCommit(() -> this.dispatch(copy));
+        } else {
+            this.dispatch(copy);
+        }
+    }
+
+    /**
+     * @brief Notifica le modifiche eseguite con l'handle specificato.
+     * @see #publish(Handle, List)
+     */
+    public void publish(Handle handle, EntityChange... changes) {
+        this.publish(handle, List.of(changes));
+    }
+
+    /**
+     * @brief Notifica modifiche gia' confermate da un'altra sede, lette dal change log di
+     *  un ReplicatedDatabase. Non vengono registrate di nuovo.
+     * @param changes Le modifiche, notificate nell'ordine della lista.
+     */
+    public void publishConfirmed(List<EntityChange> changes) {
+        if (!changes.isEmpty()) {
+            this.dispatch(List.copyOf(changes));
+        }
+    }
+
+    private void dispatch(List<EntityChange> changes) {
+        boolean collected = false;
+
+        for (WeakReference<ChangeListener> reference : this.listeners) {
+            ChangeListener listener = reference.get();
+            if (listener == null) {
+                collected = true;
+                continue;
+            }
+
+            for (EntityChange change : changes) {
+                try {
+                    listener.onChange(change);
+                } catch (RuntimeException e) {
+                    // Un listener difettoso non deve far fallire la modifica gia' confermata
+                    LOGGER.warn("Listener delle modifiche non riuscito", e);
+                }
+            }
+        }
+
+        if (collected) {
+            this.listeners.removeIf(reference -> reference.get() == null);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+/**
+ * @brief Service che notifica le modifiche confermate ai dati che gestisce.
+ *  I service che usano lo stesso database condividono le notifiche: un listener riceve
+ *  le modifiche a libri, utenti e prestiti, qualunque service le abbia eseguite.
+ */
+public interface ChangeSource {
+    /**
+     * @brief Registra un listener per le modifiche.
+     *  Il listener e' mantenuto con un riferimento debole: chi lo registra deve conservarlo
+     *  (ad esempio in un campo del controller) finche' vuole ricevere le modifiche.
+     * @param listener Il listener da registrare.
+     */
+    void addChangeListener(ChangeListener listener);
+
+    /**
+     * @brief Rimuove un listener registrato con addChangeListener.
+     * @param listener Il listener da rimuovere.
+     */
+    void removeChangeListener(ChangeListener listener);
+}
@@ -0,0 +1,140 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.unisa.diem.ingsoft.biblioteca.exception.MalformedBookRowException;
+
+/**
+ * @brief Legge un file CSV (RFC 4180) la cui prima riga contiene i nomi dei campi.
+ *  I valori tra virgolette possono contenere separatori, a capo e virgolette raddoppiate.
+ *  Il separatore e' la virgola, oppure il punto e virgola se l'intestazione ne contiene di
+ *  piu' (file esportati da fogli di calcolo in italiano). Le righe vuote vengono ignorate.
+ */
+class CsvRowReader extends CatalogueRowReader {
+    private List<String> header;
+    private char separator = ',';
+
+    CsvRowReader(Reader reader) {
+        super(reader);
+    }
+
+    @Override
+    Map<String, String> next() throws IOException, MalformedBookRowException {
+        if (this.header == null) {
+            this.readHeader();
+        }
+
+        List<String> values = this.readRecord();
+        if (values == null) {
+            return null;
+        }
+
+        if (values.size() != this.header.size()) {
+            throw new MalformedBookRowException("La riga ha " + values.size()
+                    + " campi invece di " + this.header.size());
+        }
+
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (!values.get(i).isEmpty()) {
+                row.put(this.header.get(i), values.get(i));
+            }
+        }
+        return row;
+    }
+
+    private void readHeader() throws IOException {
+        if (this.peek() == '\uFEFF') {
+            this.read();
+        }
+
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = this.read()) >= 0 && c != '\n') {
+            line.append((char) c);
+        }
+
+        long commas = line.chars().filter(ch -> ch == ',').count();
+        long semicolons = line.chars().filter(ch -> ch == ';').count();
+        this.separator = semicolons > commas ? ';' : ',';
+
+        CsvRowReader headerReader = new CsvRowReader(new StringReader(line.toString()));
+        headerReader.separator = this.separator;
+        List<String> names = headerReader.readRecord();
+        if (names == null) {
+            throw new IOException("Intestazione CSV mancante");
+        }
+
+        this.header = names.stream()
+            .map(String::trim)
+            .toList();
+    }
+
+    /**
+     * @brief Legge il record successivo, saltando le righe vuote.
+     * @return I valori del record, oppure null alla fine del file.
+     */
+    private List<String> readRecord() throws IOException {
+        while (true) {
+            int c = this.peek();
+            if (c < 0) {
+                return null;
+            }
+
+            if (c == '\r' || c == '\n') {
+                this.read();
+                continue;
+            }
+
+            break;
+        }
+
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        while (true) {
+            int c = this.read();
+
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Virgolette non chiuse alla fine del file CSV");
+                }
+
+                if (c == '"') {
+                    if (this.peek() == '"') {
+                        this.read();
+                        value.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append((char) c);
+                }
+                continue;
+            }
+
+            if (c == '"' && value.isEmpty()) {
+                quoted = true;
+            } else if (c == this.separator) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else if (c < 0 || c == '\n') {
+                values.add(value.toString());
+                return values;
+            } else if (c != '\r') {
+                value.append((char) c);
+            }
+        }
+    }
+}
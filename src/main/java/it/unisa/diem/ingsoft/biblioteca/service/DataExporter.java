@@ -0,0 +1,398 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.result.ResultIterator;
+import org.jdbi.v3.core.transaction.TransactionIsolationLevel;
+import org.sqlite.SQLiteConnection;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.Dialect;
+
+/**
+ * @brief Esporta libri, utenti e prestiti in CSV, JSON Lines o in un formato binario
+ *  compatto, e crea copie di backup del database.
+ *  Le righe vengono lette dal cursore della query e scritte una alla volta, senza
+ *  caricare la tabella in memoria. Le letture usano Database#getReadJdbi: con un database
+ *  in modalita' WAL un'esportazione o un backup vedono lo stato del database al momento
+ *  in cui iniziano e non bloccano le operazioni dello sportello.
+ */
+public class DataExporter {
+    /**
+     * @brief Tabella da esportare, con le colonne nell'ordine in cui vengono scritte.
+     *  Le colonne dei libri coincidono con i campi letti da CatalogueImporter.
+     */
+    public enum Table {
+        BOOKS("books", "isbn", List.of("isbn", "title", "author", "genre", "release_year",
+                    "total_copies", "remaining_copies", "description")),
+        USERS("users", "id", List.of("id", "email", "name", "surname")),
+        LOANS("loans", "id", List.of("id", "book_isbn", "user_id", "loan_start",
+                    "loan_deadline", "loan_end"));
+
+        private final String name;
+        private final String key;
+        private final List<String> columns;
+
+        Table(String name, String key, List<String> columns) {
+            this.name = name;
+            this.key = key;
+            this.columns = columns;
+        }
+
+        /**
+         * @brief Restituisce il nome della tabella nel database.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @brief Restituisce le colonne esportate.
+         */
+        public List<String> getColumns() {
+            return this.columns;
+        }
+
+        private String selectAll() {
+            return "SELECT " + String.join(", ", this.columns) + " FROM " + this.name
+                + " ORDER BY " + this.key;
+        }
+    }
+
+    /**
+     * @brief Formato del file esportato.
+     *  - CSV: intestazione con i nomi delle colonne, valori secondo RFC 4180; i valori
+     *    null diventano campi vuoti.
+     *  - JSON_LINES: un oggetto JSON per riga; i numeri non sono tra virgolette.
+     *  - BINARY: il magic number BINARY_MAGIC, il numero di colonne e i loro nomi
+     *    (DataOutput#writeUTF), poi per ogni riga il byte 1 seguito dai valori. Ogni valore
+     *    e' un tag (0 null, 1 intero a 64 bit, 2 double, 3 stringa UTF-8 preceduta dalla
+     *    lunghezza in byte) seguito dal dato. Il byte 0 chiude il file.
+     */
+    public enum Format {
+        CSV("csv"),
+        JSON_LINES("jsonl"),
+        BINARY("bin");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @brief Restituisce l'estensione dei file in questo formato, senza il punto.
+         */
+        public String getExtension() {
+            return this.extension;
+        }
+    }
+
+    /**
+     * @brief Intestazione dei file esportati nel formato BINARY ("BIBX").
+     */
+    public static final int BINARY_MAGIC = 0x42494258;
+
+    private final Database database;
+
+    /**
+     * @param database Il database da esportare.
+     */
+    public DataExporter(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * @brief Esporta tutte le righe di una tabella, ordinate per chiave primaria.
+     * @param table La tabella da esportare.
+     * @param format Il formato in cui scriverla.
+     * @param out Lo stream su cui scrivere; non viene chiuso.
+     * @return Il numero di righe esportate.
+     * @throws IOException Se la scrittura sullo stream fallisce.
+     */
+    public long export(Table table, Format format, OutputStream out) throws IOException {
+        try {
+            return this.database.getReadJdbi()
+                    .withHandle(handle -> DataExporter.stream(handle, table, format, out));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @brief Esporta libri, utenti e prestiti nella cartella indicata, in file chiamati
+     *  come la tabella (books.csv, users.csv, loans.csv).
+     *  Le tre tabelle vengono lette nella stessa transazione di lettura, quindi i file
+     *  sono coerenti tra loro anche se nel frattempo vengono registrati nuovi prestiti.
+     *  Su PostgreSQL la transazione e' REPEATABLE READ, perche' con il livello predefinito
+     *  ogni query vedrebbe le modifiche confermate nel frattempo.
+     * @param directory La cartella in cui scrivere i file, che deve esistere.
+     * @param format Il formato dei file.
+     * @return Il numero di righe esportate per ogni tabella.
+     * @throws IOException Se la scrittura di un file fallisce.
+     */
+    public Map<Table, Long> exportSnapshot(Path directory, Format format) throws IOException {
+        TransactionIsolationLevel isolation = this.database.getDialect() == Dialect.POSTGRES
+            ? TransactionIsolationLevel.REPEATABLE_READ
+            : TransactionIsolationLevel.UNKNOWN;
+
+        try {
+            return this.database.getReadJdbi()
+                    .inTransaction(isolation, handle -> {
+                        Map<Table, Long> rows = new EnumMap<>(Table.class);
+                        for (Table table : Table.values()) {
+                            Path file = directory.resolve(table.getName() + "." + format.getExtension());
+                            try (OutputStream out = Files.newOutputStream(file)) {
+                                rows.put(table, DataExporter.stream(handle, table, format, out));
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                        return rows;
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @brief Copia l'intero database nel file indicato con l'API di backup online di SQLite.
+     *  La copia avviene in un solo passo su una connessione di lettura: il file ottenuto e'
+     *  un database completo e coerente, apribile con Database#at, e durante la copia le
+     *  scritture degli altri thread non vengono bloccate.
+     * @param target Il file di destinazione; se esiste viene sovrascritto.
+     * @throws IOException Se la copia non puo' essere completata.
+     * @throws UnsupportedOperationException Se il database e' PostgreSQL, di cui si esegue
+     *  il backup sul server (pg_dump).
+     */
+    public void backup(Path target) throws IOException {
+        if (this.database.getDialect() != Dialect.SQLITE) {
+            throw new UnsupportedOperationException("Backup online disponibile solo per SQLite");
+        }
+
+        int result;
+        try {
+            result = this.database.getReadJdbi()
+                    .withHandle(handle -> {
+                        try {
+                            return handle.getConnection()
+                                .unwrap(SQLiteConnection.class)
+                                .getDatabase()
+                                .backup("main", target.toAbsolutePath().toString(),
+                                        (remaining, pageCount) -> { }, 100, 3, -1);
+                        } catch (SQLException e) {
+                            throw new UncheckedIOException(new IOException("Backup del database non riuscito", e));
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (result != 0) {
+            throw new IOException("Backup del database non riuscito, codice SQLite " + result);
+        }
+    }
+
+    private static long stream(Handle handle, Table table, Format format, OutputStream out) {
+        try {
+            RowWriter writer = DataExporter.writer(format, out, table.getColumns());
+            long rows = 0;
+            try (ResultIterator<Object[]> values = handle.createQuery(table.selectAll())
+                    .map((rs, ctx) -> {
+                        Object[] row = new Object[table.getColumns().size()];
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        return row;
+                    })
+                    .iterator()) {
+                while (values.hasNext()) {
+                    writer.row(values.next());
+                    rows++;
+                }
+            }
+
+            writer.finish();
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static RowWriter writer(Format format, OutputStream out, List<String> columns) throws IOException {
+        return switch (format) {
+            case CSV -> new CsvWriter(out, columns);
+            case JSON_LINES -> new JsonLinesWriter(out, columns);
+            case BINARY -> new BinaryWriter(out, columns);
+        };
+    }
+
+    /**
+     * @brief Scrive le righe di una tabella in uno dei formati supportati.
+     */
+    private interface RowWriter {
+        void row(Object[] values) throws IOException;
+
+        /**
+         * @brief Completa il file e svuota i buffer senza chiudere lo stream.
+         */
+        void finish() throws IOException;
+    }
+
+    private static class CsvWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvWriter(OutputStream out, List<String> columns) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.row(columns.toArray());
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    this.writer.write(',');
+                }
+
+                if (values[i] == null) {
+                    continue;
+                }
+
+                String value = values[i].toString();
+                if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                        || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                    this.writer.write('"');
+                    this.writer.write(value.replace("\"", "\"\""));
+                    this.writer.write('"');
+                } else {
+                    this.writer.write(value);
+                }
+            }
+            this.writer.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            this.writer.flush();
+        }
+    }
+
+    private static class JsonLinesWriter implements RowWriter {
+        private final Writer writer;
+        private final List<String> columns;
+
+        JsonLinesWriter(OutputStream out, List<String> columns) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.columns = columns;
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            this.writer.write('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    this.writer.write(',');
+                }
+
+                this.string(this.columns.get(i));
+                this.writer.write(':');
+
+                Object value = values[i];
+                if (value == null) {
+                    this.writer.write("null");
+                } else if (value instanceof Number) {
+                    this.writer.write(value.toString());
+                } else {
+                    this.string(value.toString());
+                }
+            }
+            this.writer.write("}\n");
+        }
+
+        private void string(String value) throws IOException {
+            this.writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> this.writer.write("\\\"");
+                    case '\\' -> this.writer.write("\\\\");
+                    case '\n' -> this.writer.write("\\n");
+                    case '\r' -> this.writer.write("\\r");
+                    case '\t' -> this.writer.write("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            this.writer.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            this.writer.write(c);
+                        }
+                    }
+                }
+            }
+            this.writer.write('"');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            this.writer.flush();
+        }
+    }
+
+    private static class BinaryWriter implements RowWriter {
+        private final DataOutputStream out;
+
+        BinaryWriter(OutputStream out, List<String> columns) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.out.writeInt(BINARY_MAGIC);
+            this.out.writeShort(columns.size());
+            for (String column : columns) {
+                this.out.writeUTF(column);
+            }
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            this.out.writeByte(1);
+            for (Object value : values) {
+                if (value == null) {
+                    this.out.writeByte(0);
+                } else if (value instanceof Integer || value instanceof Long) {
+                    this.out.writeByte(1);
+                    this.out.writeLong(((Number) value).longValue());
+                } else if (value instanceof Number number) {
+                    this.out.writeByte(2);
+                    this.out.writeDouble(number.doubleValue());
+                } else {
+                    byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                    this.out.writeByte(3);
+                    this.out.writeInt(bytes.length);
+                    this.out.write(bytes);
+                }
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            this.out.writeByte(0);
+            this.out.flush();
+        }
+    }
+}
@@ -4,25 +4,69 @@
  */
 package it.unisa.diem.ingsoft.biblioteca.service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.jdbi.v3.core.statement.Update;
 import org.mindrot.jbcrypt.BCrypt;
 
 import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.NamedQuery;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnsetAnswerException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnsetPasswordException;
 
 /**
  * @brief Implementazione del AuthService usando un Database per la persistenza
+ *  Password e risposte sono salvate come hash BCrypt con il costo (log2 delle iterazioni)
+ *  scelto alla costruzione. Un hash con un costo diverso, creato prima di una modifica
+ *  del costo, viene ricalcolato al primo controllo riuscito del valore in chiaro.
+ *  Piu' hash richiesti insieme (setup, changeAnswers) vengono calcolati in parallelo su
+ *  un pool con un thread per core.
  */
 public class DatabaseAuthService implements AuthService {
+    /**
+     * @brief Costo BCrypt predefinito, lo stesso di BCrypt.gensalt().
+     */
+    public static final int DEFAULT_LOG_ROUNDS = 10;
+
+    // Il calcolo di un hash occupa un core: piu' thread dei core non lo renderebbero piu' veloce
+    private static final ExecutorService HASHING = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "bcrypt");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private final Database database;
+    private final int logRounds;
 
     /**
      * @brief Costruisce un oggetto che implementa l'AuthService usando un database
      */
     public DatabaseAuthService(Database database) {
+        this(database, DEFAULT_LOG_ROUNDS);
+    }
+
+    /**
+     * @brief Costruisce un oggetto che implementa l'AuthService usando un database e il
+     *  costo BCrypt specificato.
+     * @param logRounds Il costo degli hash: ogni unita' in piu' raddoppia il tempo di calcolo.
+     * @throws IllegalArgumentException Se il costo non e' compreso tra 4 e 30.
+     */
+    public DatabaseAuthService(Database database, int logRounds) {
+        if (logRounds < 4 || logRounds > 30) {
+            throw new IllegalArgumentException("Costo BCrypt non valido: " + logRounds);
+        }
+
         this.database = database;
+        this.logRounds = logRounds;
     }
 
     /**
@@ -35,10 +79,11 @@ public class DatabaseAuthService implements AuthService {
      */
     @Override
     public void setup(String password, String answer1, String answer2, String answer3) {
-        String passHash = BCrypt.hashpw(password, BCrypt.gensalt());
-        String ans1Hash = BCrypt.hashpw(answer1, BCrypt.gensalt());
-        String ans2Hash = BCrypt.hashpw(answer2, BCrypt.gensalt());
-        String ans3Hash = BCrypt.hashpw(answer3, BCrypt.gensalt());
+        List<String> hashes = this.hashAll(List.of(password, answer1, answer2, answer3));
+        String passHash = hashes.get(0);
+        String ans1Hash = hashes.get(1);
+        String ans2Hash = hashes.get(2);
+        String ans3Hash = hashes.get(3);
 
         this.database.getJdbi().useTransaction(handle -> {
             handle.execute("DELETE FROM auth");
@@ -55,28 +100,30 @@ public class DatabaseAuthService implements AuthService {
 
 /**
      * @brief Cambia la password di accesso al software.
-     *  Esegue un updare SQL per aggiornare l'hash nel database.
+     *  Esegue un update SQL per aggiornare l'hash nel database, o un insert se la
+     *  configurazione non e' ancora stata creata.
      * @param password La nuova password.
      */
 	@Override
 	public void changePassword(String password) {
-        String hash = BCrypt.hashpw(password, BCrypt.gensalt());
+        String hash = this.hash(password);
 
-        if (!this.isPresent()) {
-            this.insertPassword(hash);
-            return;
-        }
-
-        this.database.getJdbi()
-            .useHandle(handle -> handle.createUpdate("UPDATE auth "
+        int updated = this.database.getJdbi()
+            .withHandle(handle -> handle.createUpdate("UPDATE auth "
                         + "SET password_hash = :password_hash")
                     .bind("password_hash", hash)
                     .execute());
+
+        // Nessuna riga aggiornata: la configurazione non e' ancora stata creata
+        if (updated == 0) {
+            this.insertPassword(hash);
+        }
 	}
 
     /**
      * @brief Controlla se la password inserita è corretta.
-     *  Esegue una select SQL per ottenere l'hash da confrontare.
+     *  Esegue una select SQL per ottenere l'hash da confrontare; se la password e' corretta
+     *  e l'hash ha un costo diverso da quello configurato, lo ricalcola.
      * @param password La password da controllare.
      * @return true se la password è corretta, false altrimenti.
      * @throws UnsetPasswordException Se non c'è alcuna password salvata nel database.
@@ -89,8 +136,7 @@ public class DatabaseAuthService implements AuthService {
             throw new UnsetPasswordException();
         }
 
-        String hash = hashOpt.get();
-        return BCrypt.checkpw(password, hash);
+        return this.verify(password, hashOpt.get(), "password_hash");
 	}
 
     private Optional<String> getPasswordHash() {
@@ -108,14 +154,15 @@ public class DatabaseAuthService implements AuthService {
     @Override
     public boolean isPresent() {
         return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT count(*) FROM auth")
+                .withHandle(handle -> handle.createQuery(NamedQuery.AUTH_IS_PRESENT.getSql())
                         .mapTo(Integer.class)
                         .one()) > 0;
     }
 
     /**
      * @brief Controlla se la risposta inserita è corretta.
-     * Esegue una select SQL per ottenere l'hash della risposta specifica da confrontare.
+     * Esegue una select SQL per ottenere l'hash della risposta specifica da confrontare;
+     * se la risposta e' corretta e l'hash ha un costo diverso da quello configurato, lo ricalcola.
      * @param answer La risposta da controllare.
      * @param number Il numero della risposta da controllare (1, 2 o 3).
      * @return true se la risposta è corretta, false altrimenti.
@@ -135,9 +182,7 @@ public class DatabaseAuthService implements AuthService {
             throw new UnsetAnswerException(number);
         }
 
-        String hash = hashOpt.get();
-
-        return BCrypt.checkpw(answer, hash);
+        return this.verify(answer, hashOpt.get(), column);
     }
 
     /**
@@ -147,18 +192,105 @@ public class DatabaseAuthService implements AuthService {
      */
     @Override
     public void changeAnswer(String answer, int number) {
-        String hash = BCrypt.hashpw(answer, BCrypt.gensalt());
-        String column = this.getSecretAnswer(number);
+        this.changeAnswers(Map.of(number, answer));
+    }
+
+    /**
+     * @brief Cambia piu' risposte alle domande di accesso al software.
+     *  Gli hash vengono calcolati in parallelo e salvati con un solo update SQL.
+     * @param answers Le nuove risposte, per numero di domanda (1, 2 o 3).
+     * @throws UnsetAnswerException Se password e risposte non sono ancora state impostate.
+     * @throws IllegalArgumentException Se il numero di una domanda non e' valido.
+     */
+    @Override
+    public void changeAnswers(Map<Integer, String> answers) {
+        if (answers.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> columns = new LinkedHashMap<>();
+        answers.forEach((number, answer) -> columns.put(this.getSecretAnswer(number), answer));
 
         if (!this.isPresent()) {
-            throw new UnsetAnswerException(number);
+            throw new UnsetAnswerException(answers.keySet().iterator().next());
+        }
+
+        List<String> hashes = this.hashAll(new ArrayList<>(columns.values()));
+        List<String> assignments = new ArrayList<>();
+        for (String column : columns.keySet()) {
+            assignments.add(column + " = :" + column);
         }
 
         this.database.getJdbi()
-                .useHandle(handle -> handle.createUpdate("UPDATE auth "
-                                + "SET " + column + " = :answer_hash")
-                        .bind("answer_hash", hash)
+                .useHandle(handle -> {
+                    Update update = handle.createUpdate("UPDATE auth SET " + String.join(", ", assignments));
+                    int i = 0;
+                    for (String column : columns.keySet()) {
+                        update.bind(column, hashes.get(i++));
+                    }
+                    update.execute();
+                });
+    }
+
+    /**
+     * @brief Verifica un valore in chiaro e, se e' corretto ma l'hash ha un costo diverso
+     *  da quello configurato, sostituisce l'hash nella colonna specificata.
+     *  L'update e' condizionato al vecchio hash, cosi' non sovrascrive una modifica
+     *  concorrente.
+     */
+    private boolean verify(String secret, String hash, String column) {
+        if (!BCrypt.checkpw(secret, hash)) {
+            return false;
+        }
+
+        if (DatabaseAuthService.getLogRounds(hash) != this.logRounds) {
+            String rehashed = this.hash(secret);
+            this.database.getJdbi()
+                .useHandle(handle -> handle.createUpdate("UPDATE auth SET " + column + " = :new_hash "
+                            + "WHERE " + column + " = :old_hash")
+                        .bind("new_hash", rehashed)
+                        .bind("old_hash", hash)
                         .execute());
+        }
+
+        return true;
+    }
+
+    private String hash(String secret) {
+        return BCrypt.hashpw(secret, BCrypt.gensalt(this.logRounds));
+    }
+
+    /**
+     * @brief Calcola in parallelo gli hash dei valori specificati.
+     * @return Gli hash, nell'ordine dei valori.
+     */
+    private List<String> hashAll(List<String> secrets) {
+        List<CompletableFuture<String>> hashes = secrets.stream()
+            .map(secret -> CompletableFuture.supplyAsync(() -> this.hash(secret), HASHING))
+            .toList();
+
+        try {
+            return hashes.stream()
+                .map(CompletableFuture::join)
+                .toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @brief Legge il costo da un hash BCrypt ($2a$10$...).
+     * @return Il costo, oppure -1 se l'hash non ha il formato atteso.
+     */
+    static int getLogRounds(String hash) {
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (RuntimeException e) {
+            return -1;
+        }
     }
 
     //Funzione di utilità
@@ -4,11 +4,19 @@
  */
 package it.unisa.diem.ingsoft.biblioteca.service;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
 
+import org.jdbi.v3.core.statement.PreparedBatch;
+
 import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.Dialect;
+import it.unisa.diem.ingsoft.biblioteca.NamedQuery;
+import it.unisa.diem.ingsoft.biblioteca.SchemaMigrator;
 import it.unisa.diem.ingsoft.biblioteca.exception.DuplicateBookByIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.DuplicateBooksByIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidBookCopiesException;
@@ -16,20 +24,65 @@ import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.MissingBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
 import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.BookQuery;
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
 
 /**
  * @brief Implementazione del BookService usando un Database per la persistenza
  */
 public class DatabaseBookService implements BookService {
+    // Numero massimo di chiavi per ogni IN (<isbns>)
+    private static final int MAX_BOUND_KEYS = 500;
+
+    // Ogni ordinamento e' servito da un indice sulle stesse colonne (schema versione 4)
+    private static final Map<BookSort, PageQuery<Book>> PAGE_QUERIES = Map.of(
+        BookSort.TITLE, new PageQuery<>("books", List.of("title", "isbn"), Book.class,
+                book -> PageKey.of(book.getTitle(), book.getIsbn())),
+        BookSort.AUTHOR, new PageQuery<>("books", List.of("author", "isbn"), Book.class,
+                book -> PageKey.of(book.getAuthor(), book.getIsbn())),
+        BookSort.RELEASE_YEAR, new PageQuery<>("books", List.of("release_year", "isbn"), Book.class,
+                book -> PageKey.of(book.getReleaseYear(), book.getIsbn())),
+        BookSort.ISBN, new PageQuery<>("books", List.of("isbn"), Book.class,
+                book -> PageKey.of(book.getIsbn()))
+    );
+
     private final Pattern isbnPattern = Pattern.compile("\\d+");
     private final Database database;
+    private final SubstringIndex isbnIndex;
+    private final BookCache cache;
+    private final ChangeNotifier changes;
 
     /**
      * @brief Costruisce un oggetto che implementa il BookService usando un database
      */
     public DatabaseBookService(Database database) {
         this.database = database;
+        this.isbnIndex = SubstringIndex.ofBookIsbns(database);
+        this.cache = BookCache.of(database);
+        this.changes = ChangeNotifier.of(database);
+    }
+
+    /**
+     * @brief Restituisce la cache dei libri letti per ISBN, con i contatori di letture
+     *  servite dalla cache e dal database.
+     */
+    public BookCache getCache() {
+        return this.cache;
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        this.changes.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(ChangeListener listener) {
+        this.changes.removeChangeListener(listener);
     }
 
     /**
@@ -39,24 +92,43 @@ public class DatabaseBookService implements BookService {
      */
     @Override
     public List<Book> getAll() {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM books")
                         .mapTo(Book.class)
                         .list());
     }
 
+    /**
+     * @brief Recupera una pagina dei libri del catalogo ordinati secondo il criterio specificato.
+     *  Esegue una query SQL keyset: la pagina parte dal primo libro successivo alla chiave.
+     * @see BookService#getPage(PageKey, int, BookSort)
+     */
+    @Override
+    public Page<Book> getPage(PageKey after, int limit, BookSort sort) {
+        return PAGE_QUERIES.get(sort).fetch(this.database.getReadJdbi(), after, limit);
+    }
+
     /**
      * @brief Recupera un libro tramite il suo codice ISBN.
-     *  Esegue una query SQL per ottenere il libro dal database.
+     *  Restituisce il libro dalla cache se presente, altrimenti esegue una query SQL per
+     *  ottenerlo dal database. Dentro una transazione il libro viene sempre letto dal
+     *  database, perche' potrebbe contenere modifiche non ancora confermate.
      * @param isbn Il codice isbn del libro da cercare.
      * @return Un Optional<Book> che contiene il libro se trovato,
      * altrimenti Optional.empty().
      */
     @Override
     public Optional<Book> getByIsbn(String isbn) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT * FROM books "
-                                + "WHERE isbn = :isbn")
+        if (this.database.getJdbi().getHandleScope().get() != null) {
+            return this.loadByIsbn(isbn);
+        }
+
+        return this.cache.get(isbn, this::loadByIsbn);
+    }
+
+    private Optional<Book> loadByIsbn(String isbn) {
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery(NamedQuery.BOOK_BY_ISBN.getSql())
                         .bind("isbn", isbn)
                         .mapTo(Book.class)
                         .findFirst());
@@ -65,37 +137,31 @@ public class DatabaseBookService implements BookService {
     /**
      * @brief Recupera una lista di libri il cui autore contiene la stringa specificata
      *  in qualsiasi posizione.
-     *  Esegue una query SQL per ottenere la lista dei libri dal database.
+     *  Esegue una query SQL sull'indice trigram books_trigram (su PostgreSQL sull'indice
+     *  GIN pg_trgm della colonna), che accelera la LIKE per sottostringhe di almeno tre
+     *  caratteri.
      * @param author Il nome dell'autore da cercare.
      * @return Una lista contenente i libri che rispettano questo
      * criterio.
      */
     @Override
     public List<Book> getAllByAuthorContaining(String author) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT * FROM books "
-                                + "WHERE author LIKE :author")
-                        .bind("author", "%" + author + "%")
-                        .mapTo(Book.class)
-                        .list());
+        return this.getAllByTextContaining("author", author);
     }
 
     /**
      * @brief Recupera una lista di libri il cui genere contiene la stringa specificata
      *  in qualsiasi posizione.
-     *  Esegue una query SQL per ottenere la lista dei libri dal database.
+     *  Esegue una query SQL sull'indice trigram books_trigram (su PostgreSQL sull'indice
+     *  GIN pg_trgm della colonna), che accelera la LIKE per sottostringhe di almeno tre
+     *  caratteri.
      * @param genre Il genere dei libri da cercare.
      * @return Una lista contenente i libri che rispettano questo
      * criterio.
      */
     @Override
     public List<Book> getAllByGenreContaining(String genre) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT * FROM books "
-                                + "WHERE genre LIKE :genre")
-                        .bind("genre", "%" + genre + "%")
-                        .mapTo(Book.class)
-                        .list());
+        return this.getAllByTextContaining("genre", genre);
     }
 
     /**
@@ -107,9 +173,10 @@ public class DatabaseBookService implements BookService {
      */
     @Override
     public List<Book> getAllByReleaseYear(int releaseYear) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM books "
-                                + "WHERE release_year LIKE :release_year")
+                                + "WHERE " + this.database.getDialect().asText("release_year")
+                                + " LIKE :release_year")
                         .bind("release_year", "%" + releaseYear + "%")
                         .mapTo(Book.class)
                         .list());
@@ -118,52 +185,226 @@ public class DatabaseBookService implements BookService {
     /**
      * @brief Recupera una lista di libri il cui titolo contiene la stringa specificata
      *  in qualsiasi posizione.
-     *  Esegue una query SQL per ottenere la lista dei libri dal database.
+     *  Esegue una query SQL sull'indice trigram books_trigram (su PostgreSQL sull'indice
+     *  GIN pg_trgm della colonna), che accelera la LIKE per sottostringhe di almeno tre
+     *  caratteri.
      * @param title Il titolo dei libri da cercare.
      * @return Una lista contenente i libri che rispettano questo
      * criterio.
      */
     @Override
     public List<Book> getAllByTitleContaining(String title) {
-        return this.database.getJdbi()
+        return this.getAllByTextContaining("title", title);
+    }
+
+    /**
+     * @brief Cerca i libri in cui titolo, autore, genere o descrizione contengono parole che
+     *  iniziano con i termini specificati, ordinati per rilevanza.
+     *  Esegue una query SQL sull'indice full-text books_fts, ordinando con bm25 e pesando
+     *  il titolo piu' dell'autore, l'autore piu' del genere e il genere piu' della descrizione.
+     *  Su PostgreSQL usa l'indice idx_books_fts, ordinando con ts_rank sugli stessi pesi.
+     * @param query I termini da cercare, separati da spazi.
+     * @param limit Il numero massimo di libri da restituire.
+     * @return Una lista di libri ordinata dal piu' rilevante, vuota se la query non
+     *  contiene termini.
+     */
+    @Override
+    public List<Book> search(String query, int limit) {
+        if (this.database.getDialect() == Dialect.POSTGRES) {
+            return this.searchPostgres(query, limit);
+        }
+
+        String match = this.toFtsQuery(query);
+        if (match.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT books.* FROM books_fts "
+                                + "JOIN books ON books.rowid = books_fts.rowid "
+                                + "WHERE books_fts MATCH :match "
+                                + "ORDER BY bm25(books_fts, 10.0, 5.0, 2.0, 1.0) "
+                                + "LIMIT :limit")
+                        .bind("match", match)
+                        .bind("limit", limit)
+                        .mapTo(Book.class)
+                        .list());
+    }
+
+    private List<Book> searchPostgres(String query, int limit) {
+        String match = this.toTsQuery(query);
+        if (match.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        String document = SchemaMigrator.POSTGRES_BOOKS_DOCUMENT;
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM books "
-                                + "WHERE title LIKE :title")
-                        .bind("title", "%" + title + "%")
+                                + "WHERE " + document + " @@ to_tsquery('simple', :match) "
+                                + "ORDER BY ts_rank(" + document + ", to_tsquery('simple', :match)) DESC, isbn "
+                                + "LIMIT :limit")
+                        .bind("match", match)
+                        .bind("limit", limit)
                         .mapTo(Book.class)
                         .list());
     }
 
+    /**
+     * @brief Cerca i libri che rispettano tutti i criteri della ricerca specificata.
+     *  Esegue un'unica query SQL prodotta da BookQueryPlanner, che parte dall'indice trigram
+     *  o da un indice B-tree a seconda dei criteri impostati.
+     * @see BookService#find(BookQuery)
+     */
+    @Override
+    public List<Book> find(BookQuery query) {
+        BookQueryPlanner.Plan plan = BookQueryPlanner.plan(query, this.database.getDialect());
+
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery(plan.getSql())
+                        .bindMap(plan.getBindings())
+                        .mapTo(Book.class)
+                        .list());
+    }
+
+    /**
+     * @brief Restituisce il piano di esecuzione della query usata da find per la
+     *  ricerca specificata, una riga per ogni passo (EXPLAIN QUERY PLAN su SQLite,
+     *  EXPLAIN su PostgreSQL).
+     *  Serve a verificare quali indici vengono usati.
+     */
+    public List<String> explain(BookQuery query) {
+        Dialect dialect = this.database.getDialect();
+        BookQueryPlanner.Plan plan = BookQueryPlanner.plan(query, dialect);
+        String explain = dialect == Dialect.POSTGRES ? "EXPLAIN " : "EXPLAIN QUERY PLAN ";
+
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery(explain + plan.getSql())
+                        .bindMap(plan.getBindings())
+                        .map((rs, ctx) -> dialect == Dialect.POSTGRES
+                                ? rs.getString(1)
+                                : rs.getString("detail"))
+                        .list());
+    }
+
+    /**
+     * @brief Recupera i libri in cui la colonna testuale specificata contiene la stringa,
+     *  senza distinguere maiuscole e minuscole.
+     */
+    private List<Book> getAllByTextContaining(String column, String value) {
+        Dialect dialect = this.database.getDialect();
+        String sql = dialect == Dialect.POSTGRES
+            ? "SELECT * FROM books WHERE " + column + " " + dialect.like() + " :value"
+            : "SELECT books.* FROM books_trigram "
+                + "JOIN books ON books.rowid = books_trigram.rowid "
+                + "WHERE books_trigram." + column + " LIKE :value";
+
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery(sql)
+                        .bind("value", "%" + value + "%")
+                        .mapTo(Book.class)
+                        .list());
+    }
+
+    /**
+     * @brief Converte il testo inserito dall'utente in una query FTS5: ogni parola diventa
+     *  una stringa tra virgolette con ricerca per prefisso, cosi' che caratteri speciali
+     *  come '-' o ':' non vengano interpretati come operatori.
+     */
+    private String toFtsQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+
+            match.append('"')
+                .append(term.replace("\"", "\"\""))
+                .append("\"*");
+        }
+
+        return match.toString();
+    }
+
+    /**
+     * @brief Converte il testo inserito dall'utente in una query to_tsquery di PostgreSQL,
+     *  con la stessa semantica di toFtsQuery: tutte le parole devono comparire, ognuna
+     *  come prefisso, e ogni parola e' racchiusa tra apici per non essere interpretata
+     *  come operatore.
+     */
+    private String toTsQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+
+            if (match.length() > 0) {
+                match.append(" & ");
+            }
+
+            match.append('\'')
+                .append(term.replace("\\", "\\\\").replace("'", "''"))
+                .append("':*");
+        }
+
+        return match.toString();
+    }
+
     /**
      * @brief Rimuove un libro dal catalogo basandosi sul suo codice ISBN.
-     *  Esegue una delete SQL per rimuovere il libro se presente nel database.
+     *  Esegue una delete SQL condizionata alle copie: il libro viene rimosso solo se tutte
+     *  le sue copie sono disponibili.
      * @param isbn Il codice ISBN del libro da rimuovere.
      * @return true se il libro è stato rimosso, false altrimenti.
      * @throws MissingBookCopiesException Se il libro specificato e' parte di un prestito attivo.
      */
     @Override
     public boolean removeByIsbn(String isbn) throws MissingBookCopiesException {
-        if(!this.existsByIsbn(isbn)) {
-            return false;
+        boolean removed = this.database.getJdbi()
+                            .inTransaction(handle -> {
+                                int deleted = handle.createUpdate("DELETE FROM books "
+                                            + "WHERE isbn = :isbn AND remaining_copies = total_copies")
+                                    .bind("isbn", isbn)
+                                    .execute();
+
+                                if (deleted > 0) {
+                                    this.cache.invalidate(handle, isbn);
+                                    this.isbnIndex.remove(handle, isbn);
+                                    this.changes.publish(handle, EntityChange.book(EntityChange.Type.REMOVED, isbn));
+                                }
+                                return deleted > 0;
+                            });
+
+        if (removed) {
+            return true;
         }
 
-        Book book = this.getByIsbn(isbn)
-            .get();
-
-        if (book.getRemainingCopies() != book.getTotalCopies()) {
+        // Nessuna riga eliminata: il libro non esiste oppure ha copie in prestito
+        if (this.loadByIsbn(isbn).isPresent()) {
             throw new MissingBookCopiesException();
         }
 
-        return this.database.getJdbi()
-                            .withHandle(handle -> handle.createUpdate("DELETE FROM books "
-                                        + "WHERE isbn = :isbn")
-                            .bind("isbn", isbn)
-                            .execute()) > 0;
+        return false;
     }
 
     /**
      * @brief Aggiunge un libro al catalogo.
      *  Esegue un insert SQL per l'inserimento del libro nel database, controllando che
-     *  l'isbn inserito sia corretto.
+     *  l'isbn inserito sia corretto. Il duplicato non viene cercato prima: l'insert usa
+     *  ON CONFLICT(isbn) DO NOTHING e un inserimento senza effetto indica che l'ISBN e'
+     *  gia' presente.
      * @param book Il libro da aggiungere.
      * @throws DuplicateBookByIsbnException Se esiste già un libro con lo stesso ISBN.
      * @throws InvalidIsbnException Se l'ISBN del libro non è valido.
@@ -175,22 +416,27 @@ public class DatabaseBookService implements BookService {
            NegativeBookCopiesException {
         String isbn = book.getIsbn();
 
-        if (this.existsByIsbn(isbn)) {
-            throw new DuplicateBookByIsbnException();
-        }
+        boolean valid = this.isIsbnValid(isbn);
+        boolean negative = book.getRemainingCopies() < 0 || book.getTotalCopies() < 0;
+        if (!valid || negative) {
+            // Il duplicato ha la precedenza sugli altri errori, come prima dell'insert
+            if (this.existsByIsbn(isbn)) {
+                throw new DuplicateBookByIsbnException();
+            }
 
-        if (!this.isIsbnValid(isbn)) {
-            throw new InvalidIsbnException();
-        }
+            if (!valid) {
+                throw new InvalidIsbnException();
+            }
 
-        if (book.getRemainingCopies() < 0 || book.getTotalCopies() < 0) {
             throw new NegativeBookCopiesException();
         }
 
-        this.database.getJdbi()
-                .withHandle(handle -> handle.createUpdate(
+        boolean inserted = this.database.getJdbi()
+                .inTransaction(handle -> {
+                    int rows = handle.createUpdate(
                                 "INSERT INTO books (isbn, title, author, genre, release_year, total_copies, remaining_copies, description) " +
-                                        "VALUES (:isbn, :title, :author, :genre, :release_year, :total_copies, :remaining_copies, :description)"
+                                        "VALUES (:isbn, :title, :author, :genre, :release_year, :total_copies, :remaining_copies, :description) " +
+                                        "ON CONFLICT(isbn) DO NOTHING"
                         )
                         .bind("isbn", book.getIsbn())
                         .bind("title", book.getTitle())
@@ -200,16 +446,33 @@ public class DatabaseBookService implements BookService {
                         .bind("total_copies", book.getTotalCopies())
                         .bind("remaining_copies", book.getRemainingCopies())
                         .bind("description", book.getDescription())
-                        .execute());
+                        .execute();
+
+                    if (rows > 0) {
+                        // La cache puo' contenere l'ISBN come non presente
+                        this.cache.invalidate(handle, isbn);
+                        this.isbnIndex.add(handle, List.of(isbn));
+                        this.changes.publish(handle, EntityChange.book(EntityChange.Type.ADDED, isbn));
+                    }
+                    return rows > 0;
+                });
+
+        if (!inserted) {
+            throw new DuplicateBookByIsbnException();
+        }
     }
 
     /**
      * @brief Aggiunge una lista di libri al catalogo.
      *  Esegue una insert SQL per l'inserimento dei libri nel database, controllando che
      *  l'isbn sia corretto per ogni libro.
+     *  I duplicati non vengono cercati prima dell'inserimento: ogni libro viene inserito
+     *  con INSERT ... ON CONFLICT(isbn) DO NOTHING nella stessa transazione, e se almeno un
+     *  inserimento resta senza effetto la transazione viene annullata. Il controllo vale
+     *  anche contro le insert concorrenti di un'altra sede sullo stesso server.
      * @param books La lista di libri da aggiungere.
      * @throws DuplicateBooksByIsbnException Se uno o più ISBN nella lista sono già
-     * presenti nel database.
+     * presenti nel database o ripetuti nella lista.
      * @throws InvalidIsbnException Se almeno un libro nella lista ha un ISBN non
      * valido.
      * @throws NegativeBookCopiesException Se almeno un libro ha un numero di copie
@@ -230,24 +493,91 @@ public class DatabaseBookService implements BookService {
             }
         }
 
+        if (books.isEmpty()) {
+            return;
+        }
+
         List<String> newIsbns = books.stream()
                 .map(Book::getIsbn)
                 .toList();
 
-        List<String> existingIsbns = this.existingIsbns(newIsbns);
+        this.database.getJdbi()
+                .useTransaction(handle -> {
+                    PreparedBatch batch = handle.prepareBatch("INSERT INTO books (isbn, title, author, "
+                            + "genre, release_year, total_copies, remaining_copies, description) "
+                            + "VALUES (:isbn, :title, :author, :genre, :release_year, :total_copies, "
+                            + ":remaining_copies, :description) "
+                            + "ON CONFLICT(isbn) DO NOTHING");
 
-        if (!existingIsbns.isEmpty()) {
-            throw new DuplicateBooksByIsbnException(newIsbns);
-        }
+                    for (Book book : books) {
+                        batch.bind("isbn", book.getIsbn())
+                                .bind("title", book.getTitle())
+                                .bind("author", book.getAuthor())
+                                .bind("genre", book.getGenre())
+                                .bind("release_year", book.getReleaseYear())
+                                .bind("total_copies", book.getTotalCopies())
+                                .bind("remaining_copies", book.getRemainingCopies())
+                                .bind("description", book.getDescription())
+                                .add();
+                    }
 
-        this.database.getJdbi()
-                .useHandle(handle -> {
-                    String sql = "INSERT INTO books (isbn, title, author, genre, release_year, total_copies, remaining_copies, description) " +
-                            "VALUES (:isbn, :title, :author, :genre, :release_year, :total_copies, :remaining_copies, :description)";
+                    int[] rows = batch.execute();
+                    List<String> duplicates = new ArrayList<>();
+                    for (int i = 0; i < rows.length; i++) {
+                        if (rows[i] == 0) {
+                            duplicates.add(newIsbns.get(i));
+                        }
+                    }
 
-                    var batch = handle.prepareBatch(sql);
+                    // L'eccezione annulla anche gli inserimenti gia' eseguiti
+                    if (!duplicates.isEmpty()) {
+                        throw new DuplicateBooksByIsbnException(duplicates);
+                    }
 
-                    for (Book book : books) {
+                    this.cache.invalidate(handle, newIsbns);
+                    this.isbnIndex.add(handle, newIsbns);
+                    this.changes.publish(handle, newIsbns.stream()
+                            .map(isbn -> EntityChange.book(EntityChange.Type.ADDED, isbn))
+                            .toList());
+                });
+    }
+
+    /**
+     * @brief Aggiunge piu' libri in un'unica transazione, rifiutando singolarmente quelli
+     *  non validi.
+     *  I duplicati non vengono cercati prima dell'inserimento: ogni libro viene inserito con
+     *  INSERT ... ON CONFLICT(isbn) DO NOTHING in un PreparedBatch, e un inserimento senza
+     *  effetto indica un ISBN gia' presente. Non serve quindi una IN (...) con tutti gli ISBN.
+     * @see BookService#importAll(List)
+     */
+    @Override
+    public BatchResult<Book> importAll(List<Book> books) {
+        Map<Book, Exception> rejected = new IdentityHashMap<>();
+        List<Book> candidates = new ArrayList<>();
+
+        for (Book book : books) {
+            if (book.getIsbn() == null || !this.isIsbnValid(book.getIsbn())) {
+                rejected.put(book, new InvalidIsbnException());
+            } else if (book.getRemainingCopies() < 0 || book.getTotalCopies() < 0) {
+                rejected.put(book, new NegativeBookCopiesException());
+            } else if (book.getRemainingCopies() > book.getTotalCopies()) {
+                rejected.put(book, new InvalidBookCopiesException());
+            } else {
+                candidates.add(book);
+            }
+        }
+
+        List<String> inserted = new ArrayList<>();
+        if (!candidates.isEmpty()) {
+            this.database.getJdbi()
+                .useTransaction(handle -> {
+                    PreparedBatch batch = handle.prepareBatch("INSERT INTO books (isbn, title, author, "
+                            + "genre, release_year, total_copies, remaining_copies, description) "
+                            + "VALUES (:isbn, :title, :author, :genre, :release_year, :total_copies, "
+                            + ":remaining_copies, :description) "
+                            + "ON CONFLICT(isbn) DO NOTHING");
+
+                    for (Book book : candidates) {
                         batch.bind("isbn", book.getIsbn())
                                 .bind("title", book.getTitle())
                                 .bind("author", book.getAuthor())
@@ -259,13 +589,40 @@ public class DatabaseBookService implements BookService {
                                 .add();
                     }
 
-                    batch.execute();
+                    int[] rows = batch.execute();
+                    for (int i = 0; i < rows.length; i++) {
+                        Book book = candidates.get(i);
+                        if (rows[i] == 0) {
+                            rejected.put(book, new DuplicateBookByIsbnException());
+                        } else {
+                            inserted.add(book.getIsbn());
+                        }
+                    }
+
+                    this.cache.invalidate(handle, inserted);
+                    this.isbnIndex.add(handle, inserted);
+                    this.changes.publish(handle, inserted.stream()
+                            .map(isbn -> EntityChange.book(EntityChange.Type.ADDED, isbn))
+                            .toList());
                 });
+        }
+
+        BatchResult<Book> result = new BatchResult<>();
+        for (Book book : books) {
+            if (rejected.containsKey(book)) {
+                result.addFailure(book, rejected.get(book));
+            } else {
+                result.addSuccess(book);
+            }
+        }
+
+        return result;
     }
 
     /**
      * @brief Aggiorna le informazioni di un libro già registrato.
-     *  Esegue un update SQL per la modifica delle informazioni nel database.
+     *  Esegue un update SQL per la modifica delle informazioni nel database; un update
+     *  senza righe modificate indica che il libro non esiste.
      * @param book L'oggetto Book contenente l'ISBN del libro da modificare e
      *  le nuove informazioni da salvare.
      * @invariant L'ISBN del libro è un invariante. Se è necessario modificarlo
@@ -277,19 +634,23 @@ public class DatabaseBookService implements BookService {
     @Override
     public void updateByIsbn(Book book) throws UnknownBookByIsbnException,
            NegativeBookCopiesException, InvalidBookCopiesException {
-        if (!this.existsByIsbn(book.getIsbn())) {
-            throw new UnknownBookByIsbnException();
-        }
+        String isbn = book.getIsbn();
 
-        if (book.getTotalCopies() < 0 || book.getRemainingCopies() < 0) {
-            throw new NegativeBookCopiesException();
-        }
+        boolean negative = book.getTotalCopies() < 0 || book.getRemainingCopies() < 0;
+        boolean invalid = book.getRemainingCopies() > book.getTotalCopies();
+        if (negative || invalid) {
+            // Il libro sconosciuto ha la precedenza sugli errori delle copie
+            if (!this.existsByIsbn(isbn)) {
+                throw new UnknownBookByIsbnException();
+            }
+
+            if (negative) {
+                throw new NegativeBookCopiesException();
+            }
 
-        if (book.getRemainingCopies() > book.getTotalCopies()) {
             throw new InvalidBookCopiesException();
         }
 
-        String isbn = book.getIsbn();
         String title = book.getTitle();
         String author = book.getAuthor();
         String genre = book.getGenre();
@@ -298,8 +659,9 @@ public class DatabaseBookService implements BookService {
         int remainingCopies = book.getRemainingCopies();
         String description = book.getDescription();
 
-        this.database.getJdbi()
-                .withHandle(handle -> handle.createUpdate("UPDATE books SET "
+        int updated = this.database.getJdbi()
+                .inTransaction(handle -> {
+                    int rows = handle.createUpdate("UPDATE books SET "
                                 + "title = :title, "
                                 + "author = :author, "
                                 + "genre = :genre, "
@@ -316,7 +678,18 @@ public class DatabaseBookService implements BookService {
                         .bind("total_copies", totalCopies)
                         .bind("remaining_copies", remainingCopies)
                         .bind("description", description)
-                        .execute());
+                        .execute();
+
+                    if (rows > 0) {
+                        this.cache.invalidate(handle, isbn);
+                        this.changes.publish(handle, EntityChange.book(EntityChange.Type.UPDATED, isbn));
+                    }
+                    return rows;
+                });
+
+        if (updated == 0) {
+            throw new UnknownBookByIsbnException();
+        }
     }
 
     /**
@@ -327,9 +700,8 @@ public class DatabaseBookService implements BookService {
      */
     @Override
     public boolean existsByIsbn(String isbn) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT COUNT(isbn) FROM books "
-                                + "WHERE isbn = :isbn")
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery(NamedQuery.BOOK_EXISTS_BY_ISBN.getSql())
                         .bind("isbn", isbn)
                         .mapTo(Integer.class)
                         .one()) > 0;
@@ -344,11 +716,23 @@ public class DatabaseBookService implements BookService {
      */
     @Override
     public List<String> existingIsbns(List<String> isbns) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT isbn FROM books WHERE isbn IN (<isbns>)")
-                        .bindList("isbns", isbns)
-                        .mapTo(String.class)
-                        .list());
+        if (isbns.isEmpty()) {
+            return List.of();
+        }
+
+        // Gli ISBN vengono suddivisi in gruppi per non superare il numero massimo di
+        // parametri di una query
+        return this.database.getReadJdbi()
+                .withHandle(handle -> {
+                    List<String> existing = new ArrayList<>();
+                    for (int i = 0; i < isbns.size(); i += MAX_BOUND_KEYS) {
+                        existing.addAll(handle.createQuery("SELECT isbn FROM books WHERE isbn IN (<isbns>)")
+                                .bindList("isbns", isbns.subList(i, Math.min(i + MAX_BOUND_KEYS, isbns.size())))
+                                .mapTo(String.class)
+                                .list());
+                    }
+                    return existing;
+                });
     }
 
     /**
@@ -359,7 +743,7 @@ public class DatabaseBookService implements BookService {
      */
 	@Override
 	public int countRemainingCopies(String isbn) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
             .withHandle(handle -> handle.createQuery("SELECT remaining_copies FROM books "
                         + "WHERE isbn = :isbn")
                     .bind("isbn", isbn)
@@ -379,7 +763,8 @@ public class DatabaseBookService implements BookService {
 
     /**
      * @brief Aggiorna il numero di copie rimanenti di un libro.
-     * Somma il valore 'delta' alle copie attuali.
+     * Somma il valore 'delta' alle copie attuali con un unico update SQL condizionale,
+     * quindi due aggiornamenti concorrenti non possono portare le copie fuori dai limiti.
      * @param isbn L'ISBN del libro da aggiornare.
      * @param delta Il numero di copie da aggiungere (positivo) o rimuovere (negativo).
      * @throws UnknownBookByIsbnException Se il libro non esiste.
@@ -389,36 +774,81 @@ public class DatabaseBookService implements BookService {
     @Override
     public void updateRemainingCopies(String isbn, int delta) throws UnknownBookByIsbnException,
            NegativeBookCopiesException, InvalidBookCopiesException {
-        if (!this.existsByIsbn(isbn)) {
-            throw new UnknownBookByIsbnException();
+        int updated = this.database.getJdbi()
+                .inTransaction(handle -> {
+                    int rows = handle.createUpdate("UPDATE books "
+                                + "SET remaining_copies = remaining_copies + :delta "
+                                + "WHERE isbn = :isbn "
+                                + "AND remaining_copies + :delta BETWEEN 0 AND total_copies")
+                        .bind("isbn", isbn)
+                        .bind("delta", delta)
+                        .execute();
+
+                    if (rows > 0) {
+                        this.cache.invalidate(handle, isbn);
+                        this.changes.publish(handle, EntityChange.book(EntityChange.Type.UPDATED, isbn));
+                    }
+                    return rows;
+                });
+
+        if (updated > 0) {
+            return;
         }
 
-        Book book = this.getByIsbn(isbn)
-            .get();
+        // Nessuna riga aggiornata: si determina quale condizione non e' rispettata
+        Optional<Integer> remainingCopies = this.database.getJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT remaining_copies FROM books "
+                                + "WHERE isbn = :isbn")
+                        .bind("isbn", isbn)
+                        .mapTo(Integer.class)
+                        .findOne());
 
-        int currentCopies = book.getRemainingCopies();
-        int newRemainingCopies = currentCopies + delta;
+        if (remainingCopies.isEmpty()) {
+            throw new UnknownBookByIsbnException();
+        }
 
-        book.setRemainingCopies(newRemainingCopies);
-        this.updateByIsbn(book);
+        if (remainingCopies.get() + delta < 0) {
+            throw new NegativeBookCopiesException();
+        }
+
+        throw new InvalidBookCopiesException();
     }
 
 
     /**
      * @brief Recupera una lista di libri il cui ISBN contiene la stringa specificata
      *  in qualsiasi posizione.
-     *  Esegue una select SQL per ottenere i libri dal database.
+     *  Cerca gli ISBN nell'indice trigram in memoria e recupera i libri per chiave
+     *  primaria; se la stringa e' troppo corta o poco selettiva esegue una select SQL.
      * @param isbn L'ISBN da cercare.
      * @return Una lista contenente i libri che rispettano questo
      * criterio.
      */
 	@Override
 	public List<Book> getAllByIsbnContaining(String isbn) {
-        return this.database.getJdbi()
+        Optional<List<String>> isbns = this.isbnIndex.findSelective(isbn);
+        if (isbns.isPresent()) {
+            return this.getAllByIsbns(isbns.get());
+        }
+
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM books "
                                 + "WHERE isbn LIKE :isbn")
                         .bind("isbn", "%" + isbn + "%")
                         .mapTo(Book.class)
                         .list());
 	}
+
+    private List<Book> getAllByIsbns(List<String> isbns) {
+        if (isbns.isEmpty()) {
+            return List.of();
+        }
+
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT * FROM books "
+                                + "WHERE isbn IN (<isbns>) ORDER BY rowid")
+                        .bindList("isbns", isbns)
+                        .mapTo(Book.class)
+                        .list());
+    }
 }
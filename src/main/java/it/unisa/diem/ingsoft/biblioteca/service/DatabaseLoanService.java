@@ -5,10 +5,26 @@
 package it.unisa.diem.ingsoft.biblioteca.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.PreparedBatch;
 
 import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.NamedQuery;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIdException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIsbnException;
@@ -17,15 +33,51 @@ import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownLoanException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
 import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanDetails;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanRequest;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanSort;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.ReturnRequest;
 
 /**
  * @brief Implementazione del LoanService usando un Database per la persistenza
  */
 public class DatabaseLoanService implements LoanService {
+    // Numero massimo di chiavi per ogni IN (<keys>) nelle operazioni su piu' prestiti
+    private static final int MAX_BOUND_KEYS = 500;
+
+    // Ogni ordinamento e' servito da un indice parziale sui prestiti attivi (schema versione 4)
+    private static final Map<LoanSort, PageQuery<Loan>> PAGE_QUERIES = Map.of(
+        LoanSort.DEADLINE, new PageQuery<>("loans WHERE loan_end IS NULL",
+                List.of("loan_deadline", "user_id", "book_isbn"), Loan.class,
+                loan -> PageKey.of(loan.getLoanDeadline(), loan.getUserId(), loan.getBookIsbn())),
+        LoanSort.USER_ID, new PageQuery<>("loans WHERE loan_end IS NULL",
+                List.of("user_id", "book_isbn"), Loan.class,
+                loan -> PageKey.of(loan.getUserId(), loan.getBookIsbn()))
+    );
+
+    // Prestiti attivi dell'utente della riga corrente di users
+    private static final String ACTIVE_LOANS_OF_USER = "(SELECT COUNT(*) FROM loans "
+        + "WHERE loans.user_id = users.id AND loans.loan_end IS NULL)";
+
+    // Intervallo iniziale di idx_loans_active_deadline: i prestiti scaduti sono i primi
+    private static final PageQuery<Loan> OVERDUE_QUERY = new PageQuery<>(
+            "loans WHERE loan_end IS NULL AND loan_deadline < :as_of",
+            List.of("loan_deadline", "user_id", "book_isbn"), Loan.class,
+            loan -> PageKey.of(loan.getLoanDeadline(), loan.getUserId(), loan.getBookIsbn()));
+
     private final UserService userService;
     private final BookService bookService;
     private final Database database;
+    private final SubstringIndex userIdIndex;
+    private final SubstringIndex bookIsbnIndex;
+    // Le copie rimanenti vengono aggiornate qui senza passare dal BookService
+    private final BookCache bookCache;
+    private final ChangeNotifier changes;
 
     /**
      * @brief Costruisce un oggetto che implementa il LoanService usando un database
@@ -35,6 +87,20 @@ public class DatabaseLoanService implements LoanService {
         this.database = database;
         this.bookService = bookService;
         this.userService = userService;
+        this.userIdIndex = SubstringIndex.ofUserIds(database);
+        this.bookIsbnIndex = SubstringIndex.ofBookIsbns(database);
+        this.bookCache = BookCache.of(database);
+        this.changes = ChangeNotifier.of(database);
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        this.changes.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(ChangeListener listener) {
+        this.changes.removeChangeListener(listener);
     }
 
     /**
@@ -46,7 +112,7 @@ public class DatabaseLoanService implements LoanService {
      */
 	@Override
 	public Optional<Loan> getByUserIdAndBookIsbn(String userId, String bookIsbn) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
             .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
                         + "WHERE user_id = :user_id AND book_isbn = :book_isbn")
                     .bind("user_id", userId)
@@ -64,7 +130,7 @@ public class DatabaseLoanService implements LoanService {
      */
     @Override
     public List<Loan> getByUserIdContaining(String userId) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
             .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
                         + "WHERE (user_id = :user_id)")
                     .bind("user_id", userId)
@@ -81,9 +147,9 @@ public class DatabaseLoanService implements LoanService {
      */
     @Override
     public List<Loan> getByBookIsbnContaining(String bookIsbn) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
             .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
-                        + "WHERE book_isbn LIKE :book_isbn")
+                        + "WHERE book_isbn " + this.database.getDialect().like() + " :book_isbn")
                     .bind("book_isbn", "%" + bookIsbn + "%")
                     .mapTo(Loan.class)
                     .list());
@@ -92,7 +158,12 @@ public class DatabaseLoanService implements LoanService {
     /**
      * @brief Registra un prestito chiesto da un utente per un libro.
      *  specificando la data di inizio del prestito e di restituzione
-     *  Esegue una insert SQL per registrare l'utente nel database.
+     *  In una sola transazione esegue un update SQL condizionale, che decrementa le copie
+     *  rimanenti solo se sono maggiori di zero, l'utente esiste e non ha gia' il libro in
+     *  prestito, e poi una insert SQL del prestito. L'update blocca la riga del libro: di due
+     *  prestiti concorrenti dell'ultima copia il secondo non aggiorna nessuna riga e fallisce
+     *  con NegativeBookCopiesException. Due prestiti concorrenti dello stesso libro allo
+     *  stesso utente sono invece esclusi dall'indice univoco idx_loans_active_user_book.
      * @param userId La matricola dell'utente che ha chiesto il prestito.
      * @param bookIsbn L'ISBN del libro dato in prestito.
      * @param start La data di inizio del prestito.
@@ -122,29 +193,76 @@ public class DatabaseLoanService implements LoanService {
             throw new InvalidIsbnException();
         }
 
-        if (!this.userService.existsById(userId)) {
+        boolean registered = this.database.getJdbi()
+            .inTransaction(handle -> {
+                int updated = handle.createUpdate("UPDATE books "
+                            + "SET remaining_copies = remaining_copies - 1 "
+                            + "WHERE isbn = :book_isbn AND remaining_copies > 0 "
+                            + "AND EXISTS (SELECT 1 FROM users WHERE id = :user_id) "
+                            + "AND NOT EXISTS (SELECT 1 FROM loans WHERE user_id = :user_id "
+                            + "AND book_isbn = :book_isbn AND loan_end IS NULL)")
+                        .bind("book_isbn", bookIsbn)
+                        .bind("user_id", userId)
+                        .execute();
+
+                if (updated == 0) {
+                    return false;
+                }
+
+                int inserted = handle.createUpdate("INSERT INTO loans(book_isbn, user_id, "
+                            + "loan_start, loan_deadline) "
+                            + "VALUES (:book_isbn, :user_id, :loan_start, :loan_deadline) "
+                            + "ON CONFLICT (user_id, book_isbn) WHERE loan_end IS NULL DO NOTHING")
+                        .bind("book_isbn", bookIsbn)
+                        .bind("user_id", userId)
+                        .bind("loan_start", start)
+                        .bind("loan_deadline", deadline)
+                        .execute();
+
+                // Prestito registrato da un'altra sede dopo la verifica: l'eccezione annulla l'update
+                if (inserted == 0) {
+                    throw new LoanAlreadyRegisteredException();
+                }
+
+                handle.createUpdate("UPDATE users SET active_loans = active_loans + 1 WHERE id = :user_id")
+                    .bind("user_id", userId)
+                    .execute();
+
+                this.bookCache.invalidate(handle, bookIsbn);
+                this.changes.publish(handle, EntityChange.loan(EntityChange.Type.ADDED, userId, bookIsbn),
+                        EntityChange.book(EntityChange.Type.UPDATED, bookIsbn));
+                return true;
+            });
+
+        if (registered) {
+            return;
+        }
+
+        // Nessun prestito registrato: si determina quale condizione non e' rispettata
+        LoanState state = this.getLoanState(userId, bookIsbn);
+
+        if (!state.userExists()) {
             throw new UnknownUserByIdException();
         }
 
-        if (this.isActive(userId, bookIsbn))
+        if (state.active()) {
             throw new LoanAlreadyRegisteredException();
+        }
 
-        this.bookService.updateRemainingCopies(bookIsbn, -1);
+        if (state.remainingCopies().isEmpty()) {
+            throw new UnknownBookByIsbnException();
+        }
 
-        this.database.getJdbi()
-            .useHandle(handle -> handle.createUpdate("INSERT INTO loans(book_isbn, user_id,"
-                        + "loan_start, loan_deadline) "
-                        + "VALUES (:book_isbn, :user_id, :loan_start, :loan_deadline)")
-                    .bind("book_isbn", bookIsbn)
-                    .bind("user_id", userId)
-                    .bind("loan_start", start)
-                    .bind("loan_deadline", deadline)
-                    .execute());
+        throw new NegativeBookCopiesException();
     }
 
     /**
      * @brief Registra la restituzione di un libro da parte di un utente.
-     *  Esegue un update SQL per modificare le informazioni del prestito.
+     *  In una sola transazione esegue un update SQL che incrementa le copie rimanenti del
+     *  libro solo se non superano le copie totali e il prestito e' ancora attivo, e poi un
+     *  update SQL che chiude il prestito. Come in register la riga del libro viene bloccata
+     *  per prima: di due restituzioni concorrenti dello stesso prestito la seconda non chiude
+     *  nessun prestito e fallisce con UnknownLoanException.
      * @param userId La matricola dell'utente che ha restituito il libro.
      * @param bookIsbn L'ISBN del libro restituito.
      * @param end Data di restituzione del libro.
@@ -153,20 +271,501 @@ public class DatabaseLoanService implements LoanService {
 	@Override
 	public void complete(String userId, String bookIsbn, LocalDate end) throws UnknownLoanException,
             UnknownBookByIsbnException, NegativeBookCopiesException, InvalidBookCopiesException {
-        if (!this.isActive(userId, bookIsbn)) {
+        boolean completed = this.database.getJdbi()
+            .inTransaction(handle -> {
+                int updated = handle.createUpdate("UPDATE books "
+                            + "SET remaining_copies = remaining_copies + 1 "
+                            + "WHERE isbn = :book_isbn AND remaining_copies < total_copies "
+                            + "AND EXISTS (SELECT 1 FROM loans WHERE user_id = :user_id "
+                            + "AND book_isbn = :book_isbn AND loan_end IS NULL)")
+                        .bind("user_id", userId)
+                        .bind("book_isbn", bookIsbn)
+                        .execute();
+
+                if (updated == 0) {
+                    return false;
+                }
+
+                int closed = handle.createUpdate("UPDATE loans SET loan_end = :loan_end "
+                            + "WHERE user_id = :user_id AND book_isbn = :book_isbn "
+                            + "AND loan_end IS NULL")
+                        .bind("user_id", userId)
+                        .bind("book_isbn", bookIsbn)
+                        .bind("loan_end", end)
+                        .execute();
+
+                // Prestito chiuso da un'altra sede dopo la verifica: l'eccezione annulla l'update
+                if (closed == 0) {
+                    throw new UnknownLoanException();
+                }
+
+                // L'utente potrebbe essere stato rimosso con il prestito ancora attivo
+                handle.createUpdate("UPDATE users SET active_loans = active_loans - 1 "
+                            + "WHERE id = :user_id AND active_loans > 0")
+                    .bind("user_id", userId)
+                    .execute();
+
+                this.bookCache.invalidate(handle, bookIsbn);
+                this.changes.publish(handle, EntityChange.loan(EntityChange.Type.UPDATED, userId, bookIsbn),
+                        EntityChange.book(EntityChange.Type.UPDATED, bookIsbn));
+                return true;
+            });
+
+        if (completed) {
+            return;
+        }
+
+        // Nessun prestito chiuso: si determina quale condizione non e' rispettata
+        LoanState state = this.getLoanState(userId, bookIsbn);
+
+        if (!state.active()) {
             throw new UnknownLoanException();
         }
 
-        this.bookService.updateRemainingCopies(bookIsbn, 1);
+        if (state.remainingCopies().isEmpty()) {
+            throw new UnknownBookByIsbnException();
+        }
 
-        this.database.getJdbi()
-            .useHandle(handle -> handle.createUpdate("UPDATE loans SET loan_end = :loan_end "
-                        + "WHERE user_id = :user_id AND book_isbn = :book_isbn")
+        throw new InvalidBookCopiesException();
+	}
+
+    /**
+     * @brief Registra piu' prestiti in un'unica transazione.
+     *  Utenti, libri e prestiti attivi coinvolti vengono letti con poche select SQL
+     *  (IN su gruppi di chiavi); su PostgreSQL le righe dei libri restano bloccate fino alla
+     *  fine della transazione. Le richieste vengono poi verificate in memoria nell'ordine
+     *  della lista. Come in register le copie rimanenti vengono decrementate per prime, con
+     *  un solo update per ISBN condizionato alle copie disponibili, e poi i prestiti accettati
+     *  vengono inseriti con un PreparedBatch. Le richieste che un'altra sede ha reso non piu'
+     *  valide dopo la lettura vengono rifiutate singolarmente.
+     * @param requests Le richieste di prestito, elaborate nell'ordine della lista.
+     * @return L'esito per ogni richiesta.
+     */
+    @Override
+    public BatchResult<LoanRequest> registerAll(List<LoanRequest> requests) {
+        Map<LoanRequest, Exception> rejected = new IdentityHashMap<>();
+        List<LoanRequest> candidates = new ArrayList<>();
+
+        for (LoanRequest request : requests) {
+            if (!this.userService.isIdValid(request.getUserId())) {
+                rejected.put(request, new InvalidIdException());
+            } else if (!this.bookService.isIsbnValid(request.getBookIsbn())) {
+                rejected.put(request, new InvalidIsbnException());
+            } else {
+                candidates.add(request);
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            String forUpdate = this.database.getDialect().forUpdate();
+
+            this.database.getJdbi()
+                .useTransaction(handle -> {
+                    Set<String> userIds = new HashSet<>();
+                    Set<String> bookIsbns = new HashSet<>();
+                    for (LoanRequest request : candidates) {
+                        userIds.add(request.getUserId());
+                        bookIsbns.add(request.getBookIsbn());
+                    }
+
+                    Set<String> knownUsers = new HashSet<>(DatabaseLoanService.queryByKeys(handle,
+                                "SELECT id FROM users WHERE id IN (<keys>)", userIds,
+                                (rs, ctx) -> rs.getString("id")));
+
+                    Map<String, Integer> remainingCopies = new HashMap<>();
+                    DatabaseLoanService.queryByKeys(handle,
+                            "SELECT isbn, remaining_copies FROM books WHERE isbn IN (<keys>) "
+                                + "ORDER BY isbn" + forUpdate, bookIsbns,
+                            (rs, ctx) -> Map.entry(rs.getString("isbn"), rs.getInt("remaining_copies")))
+                        .forEach(entry -> remainingCopies.put(entry.getKey(), entry.getValue()));
+
+                    Set<List<String>> activeLoans = new HashSet<>(DatabaseLoanService.queryByKeys(handle,
+                                "SELECT user_id, book_isbn FROM loans "
+                                    + "WHERE loan_end IS NULL AND user_id IN (<keys>)", userIds,
+                                (rs, ctx) -> List.of(rs.getString("user_id"), rs.getString("book_isbn"))));
+
+                    Map<String, List<LoanRequest>> accepted = new LinkedHashMap<>();
+
+                    for (LoanRequest request : candidates) {
+                        String userId = request.getUserId();
+                        String bookIsbn = request.getBookIsbn();
+                        List<String> loan = List.of(userId, bookIsbn);
+
+                        if (!knownUsers.contains(userId)) {
+                            rejected.put(request, new UnknownUserByIdException());
+                        } else if (activeLoans.contains(loan)) {
+                            rejected.put(request, new LoanAlreadyRegisteredException());
+                        } else if (!remainingCopies.containsKey(bookIsbn)) {
+                            rejected.put(request, new UnknownBookByIsbnException());
+                        } else if (remainingCopies.get(bookIsbn) <= 0) {
+                            rejected.put(request, new NegativeBookCopiesException());
+                        } else {
+                            activeLoans.add(loan);
+                            remainingCopies.merge(bookIsbn, -1, Integer::sum);
+                            accepted.computeIfAbsent(bookIsbn, isbn -> new ArrayList<>()).add(request);
+                        }
+                    }
+
+                    DatabaseLoanService.updateCopies(handle, accepted, "UPDATE books "
+                            + "SET remaining_copies = remaining_copies - :copies "
+                            + "WHERE isbn = :book_isbn AND remaining_copies >= :copies",
+                            "SELECT isbn, remaining_copies AS available FROM books WHERE isbn IN (<keys>)",
+                            rejected, NegativeBookCopiesException::new);
+
+                    if (accepted.isEmpty()) {
+                        return;
+                    }
+
+                    // Un prestito registrato da un'altra sede dopo la lettura non viene inserito
+                    PreparedBatch insert = handle.prepareBatch("INSERT INTO loans(book_isbn, user_id, "
+                            + "loan_start, loan_deadline) "
+                            + "VALUES (:book_isbn, :user_id, :loan_start, :loan_deadline) "
+                            + "ON CONFLICT (user_id, book_isbn) WHERE loan_end IS NULL DO NOTHING");
+                    List<LoanRequest> inserted = new ArrayList<>();
+                    for (List<LoanRequest> list : accepted.values()) {
+                        for (LoanRequest request : list) {
+                            inserted.add(request);
+                            insert.bind("book_isbn", request.getBookIsbn())
+                                .bind("user_id", request.getUserId())
+                                .bind("loan_start", request.getLoanStart())
+                                .bind("loan_deadline", request.getLoanDeadline())
+                                .add();
+                        }
+                    }
+
+                    int[] counts = insert.execute();
+                    Map<String, Integer> restoredCopies = new HashMap<>();
+                    Map<String, Integer> userLoans = new HashMap<>();
+                    Set<String> changedBooks = new LinkedHashSet<>();
+                    List<EntityChange> changes = new ArrayList<>();
+
+                    for (int i = 0; i < counts.length; i++) {
+                        LoanRequest request = inserted.get(i);
+                        if (counts[i] == 0) {
+                            rejected.put(request, new LoanAlreadyRegisteredException());
+                            restoredCopies.merge(request.getBookIsbn(), 1, Integer::sum);
+                        } else {
+                            userLoans.merge(request.getUserId(), 1, Integer::sum);
+                            changedBooks.add(request.getBookIsbn());
+                            changes.add(EntityChange.loan(EntityChange.Type.ADDED, request.getUserId(),
+                                        request.getBookIsbn()));
+                        }
+                    }
+
+                    // Le copie dei prestiti non inseriti erano gia' state decrementate
+                    DatabaseLoanService.executeCountersUpdate(handle, "UPDATE books "
+                            + "SET remaining_copies = remaining_copies + :copies WHERE isbn = :book_isbn",
+                            "book_isbn", "copies", restoredCopies);
+                    this.bookCache.invalidate(handle, accepted.keySet());
+                    DatabaseLoanService.executeCountersUpdate(handle, "UPDATE users "
+                            + "SET active_loans = active_loans + :loans WHERE id = :user_id",
+                            "user_id", "loans", userLoans);
+
+                    changedBooks.forEach(isbn -> changes.add(EntityChange.book(EntityChange.Type.UPDATED, isbn)));
+                    this.changes.publish(handle, changes);
+                });
+        }
+
+        return DatabaseLoanService.toBatchResult(requests, rejected);
+    }
+
+    /**
+     * @brief Registra piu' restituzioni in un'unica transazione.
+     *  Libri e prestiti attivi coinvolti vengono letti con poche select SQL (IN su gruppi di
+     *  chiavi); su PostgreSQL le righe lette restano bloccate fino alla fine della
+     *  transazione. Le restituzioni vengono poi verificate in memoria nell'ordine della
+     *  lista. Come in complete le copie rimanenti vengono incrementate per prime, con un solo
+     *  update per ISBN condizionato alle copie totali, e poi i prestiti vengono chiusi con un
+     *  PreparedBatch. Le restituzioni che un'altra sede ha reso non piu' valide dopo la
+     *  lettura vengono rifiutate singolarmente.
+     * @param requests Le restituzioni, elaborate nell'ordine della lista.
+     * @param end Data di restituzione dei libri.
+     * @return L'esito per ogni restituzione.
+     */
+    @Override
+    public BatchResult<ReturnRequest> completeAll(List<ReturnRequest> requests, LocalDate end) {
+        Map<ReturnRequest, Exception> rejected = new IdentityHashMap<>();
+
+        if (!requests.isEmpty()) {
+            String forUpdate = this.database.getDialect().forUpdate();
+
+            this.database.getJdbi()
+                .useTransaction(handle -> {
+                    Set<String> userIds = new HashSet<>();
+                    Set<String> bookIsbns = new HashSet<>();
+                    for (ReturnRequest request : requests) {
+                        userIds.add(request.getUserId());
+                        bookIsbns.add(request.getBookIsbn());
+                    }
+
+                    // Le righe dei libri vengono bloccate prima dei prestiti, come in complete.
+                    // Copie che possono ancora rientrare prima di superare le copie totali
+                    Map<String, Integer> lentCopies = new HashMap<>();
+                    DatabaseLoanService.queryByKeys(handle,
+                            "SELECT isbn, total_copies - remaining_copies AS lent FROM books "
+                                + "WHERE isbn IN (<keys>) ORDER BY isbn" + forUpdate, bookIsbns,
+                            (rs, ctx) -> Map.entry(rs.getString("isbn"), rs.getInt("lent")))
+                        .forEach(entry -> lentCopies.put(entry.getKey(), entry.getValue()));
+
+                    Set<List<String>> activeLoans = new HashSet<>(DatabaseLoanService.queryByKeys(handle,
+                                "SELECT user_id, book_isbn FROM loans "
+                                    + "WHERE loan_end IS NULL AND user_id IN (<keys>) "
+                                    + "ORDER BY user_id, book_isbn" + forUpdate, userIds,
+                                (rs, ctx) -> List.of(rs.getString("user_id"), rs.getString("book_isbn"))));
+
+                    Map<String, List<ReturnRequest>> accepted = new LinkedHashMap<>();
+
+                    for (ReturnRequest request : requests) {
+                        String userId = request.getUserId();
+                        String bookIsbn = request.getBookIsbn();
+                        List<String> loan = List.of(userId, bookIsbn);
+
+                        if (!activeLoans.contains(loan)) {
+                            rejected.put(request, new UnknownLoanException());
+                        } else if (!lentCopies.containsKey(bookIsbn)) {
+                            rejected.put(request, new UnknownBookByIsbnException());
+                        } else if (lentCopies.get(bookIsbn) <= 0) {
+                            rejected.put(request, new InvalidBookCopiesException());
+                        } else {
+                            activeLoans.remove(loan);
+                            lentCopies.merge(bookIsbn, -1, Integer::sum);
+                            accepted.computeIfAbsent(bookIsbn, isbn -> new ArrayList<>()).add(request);
+                        }
+                    }
+
+                    DatabaseLoanService.updateCopies(handle, accepted, "UPDATE books "
+                            + "SET remaining_copies = remaining_copies + :copies "
+                            + "WHERE isbn = :book_isbn "
+                            + "AND remaining_copies + :copies <= total_copies",
+                            "SELECT isbn, total_copies - remaining_copies AS available FROM books "
+                                + "WHERE isbn IN (<keys>)",
+                            rejected, InvalidBookCopiesException::new);
+
+                    if (accepted.isEmpty()) {
+                        return;
+                    }
+
+                    // Un prestito chiuso da un'altra sede dopo la lettura non viene chiuso di nuovo
+                    PreparedBatch close = handle.prepareBatch("UPDATE loans SET loan_end = :loan_end "
+                            + "WHERE user_id = :user_id AND book_isbn = :book_isbn "
+                            + "AND loan_end IS NULL");
+                    List<ReturnRequest> closed = new ArrayList<>();
+                    for (List<ReturnRequest> list : accepted.values()) {
+                        for (ReturnRequest request : list) {
+                            closed.add(request);
+                            close.bind("user_id", request.getUserId())
+                                .bind("book_isbn", request.getBookIsbn())
+                                .bind("loan_end", end)
+                                .add();
+                        }
+                    }
+
+                    int[] counts = close.execute();
+                    Map<String, Integer> restoredCopies = new HashMap<>();
+                    Map<String, Integer> userLoans = new HashMap<>();
+                    Set<String> changedBooks = new LinkedHashSet<>();
+                    List<EntityChange> changes = new ArrayList<>();
+
+                    for (int i = 0; i < counts.length; i++) {
+                        ReturnRequest request = closed.get(i);
+                        if (counts[i] == 0) {
+                            rejected.put(request, new UnknownLoanException());
+                            restoredCopies.merge(request.getBookIsbn(), 1, Integer::sum);
+                        } else {
+                            userLoans.merge(request.getUserId(), 1, Integer::sum);
+                            changedBooks.add(request.getBookIsbn());
+                            changes.add(EntityChange.loan(EntityChange.Type.UPDATED, request.getUserId(),
+                                        request.getBookIsbn()));
+                        }
+                    }
+
+                    // Le copie dei prestiti non chiusi erano gia' state incrementate
+                    DatabaseLoanService.executeCountersUpdate(handle, "UPDATE books "
+                            + "SET remaining_copies = remaining_copies - :copies WHERE isbn = :book_isbn",
+                            "book_isbn", "copies", restoredCopies);
+                    this.bookCache.invalidate(handle, accepted.keySet());
+                    DatabaseLoanService.executeCountersUpdate(handle, "UPDATE users "
+                            + "SET active_loans = " + this.database.getDialect().greatest()
+                            + "(active_loans - :loans, 0) WHERE id = :user_id",
+                            "user_id", "loans", userLoans);
+
+                    changedBooks.forEach(isbn -> changes.add(EntityChange.book(EntityChange.Type.UPDATED, isbn)));
+                    this.changes.publish(handle, changes);
+                });
+        }
+
+        return DatabaseLoanService.toBatchResult(requests, rejected);
+    }
+
+    /**
+     * @brief Compone l'esito di un'operazione su piu' richieste, nell'ordine della lista.
+     */
+    private static <R> BatchResult<R> toBatchResult(List<R> requests, Map<R, Exception> rejected) {
+        BatchResult<R> result = new BatchResult<>();
+        for (R request : requests) {
+            if (rejected.containsKey(request)) {
+                result.addFailure(request, rejected.get(request));
+            } else {
+                result.addSuccess(request);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @brief Esegue una select SQL con una lista di chiavi in IN (<keys>), suddividendo le
+     *  chiavi in gruppi per non superare il numero massimo di parametri del database.
+     *  Le chiavi vengono ordinate, cosi' le select con FOR UPDATE di piu' sedi bloccano le
+     *  righe nello stesso ordine.
+     */
+    private static <T> List<T> queryByKeys(Handle handle, String sql, Collection<String> keys,
+            RowMapper<T> mapper) {
+        List<String> list = new ArrayList<>(keys);
+        Collections.sort(list);
+        List<T> rows = new ArrayList<>();
+
+        for (int i = 0; i < list.size(); i += MAX_BOUND_KEYS) {
+            rows.addAll(handle.createQuery(sql)
+                    .bindList("keys", list.subList(i, Math.min(i + MAX_BOUND_KEYS, list.size())))
+                    .map(mapper)
+                    .list());
+        }
+
+        return rows;
+    }
+
+    /**
+     * @brief Aggiorna le copie rimanenti dei libri con un PreparedBatch, un update per ISBN
+     *  condizionato alle copie disponibili.
+     *  Se un'altra sede ha modificato le copie di un libro dopo la lettura, l'update di
+     *  quel libro non aggiorna nessuna riga: le copie disponibili vengono rilette e le
+     *  richieste del libro che non possono piu' essere soddisfatte vengono rifiutate, a
+     *  partire dall'ultima, senza annullare le altre.
+     * @param requests Le richieste accettate, per ISBN; quelle rifiutate vengono rimosse.
+     * @param updateSql L'update, con i parametri :book_isbn e :copies.
+     * @param availableSql La select delle copie ancora disponibili, con le colonne isbn e available.
+     * @param failure L'eccezione delle richieste rifiutate per mancanza di copie.
+     */
+    private static <R> void updateCopies(Handle handle, Map<String, List<R>> requests, String updateSql,
+            String availableSql, Map<R, Exception> rejected, Supplier<Exception> failure) {
+        Map<String, Integer> copies = new HashMap<>();
+        requests.forEach((isbn, list) -> copies.put(isbn, list.size()));
+
+        Set<String> contended = DatabaseLoanService.executeCopiesUpdate(handle, updateSql, copies);
+        if (contended.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> available = new HashMap<>();
+        DatabaseLoanService.queryByKeys(handle, availableSql, contended,
+                (rs, ctx) -> Map.entry(rs.getString("isbn"), rs.getInt("available")))
+            .forEach(entry -> available.put(entry.getKey(), entry.getValue()));
+
+        Map<String, Integer> retry = new HashMap<>();
+        for (String isbn : contended) {
+            List<R> list = requests.get(isbn);
+            int kept = Math.max(0, Math.min(list.size(), available.getOrDefault(isbn, 0)));
+            List<R> refused = list.subList(kept, list.size());
+
+            for (R request : refused) {
+                rejected.put(request, available.containsKey(isbn)
+                        ? failure.get()
+                        : new UnknownBookByIsbnException());
+            }
+            refused.clear();
+
+            if (kept > 0) {
+                retry.put(isbn, kept);
+            } else {
+                requests.remove(isbn);
+            }
+        }
+
+        // Il primo update ha gia' acquisito il lock di scrittura: le copie rilette non cambiano
+        if (!DatabaseLoanService.executeCopiesUpdate(handle, updateSql, retry).isEmpty()) {
+            throw new IllegalStateException("Copie del libro modificate durante l'operazione");
+        }
+    }
+
+    /**
+     * @brief Esegue l'update delle copie con un PreparedBatch, una riga per ISBN.
+     * @return Gli ISBN per cui l'update non ha aggiornato nessuna riga.
+     */
+    private static Set<String> executeCopiesUpdate(Handle handle, String sql, Map<String, Integer> copies) {
+        Set<String> contended = new HashSet<>();
+        if (copies.isEmpty()) {
+            return contended;
+        }
+
+        List<String> isbns = new ArrayList<>(copies.keySet());
+        Collections.sort(isbns);
+
+        PreparedBatch update = handle.prepareBatch(sql);
+        for (String isbn : isbns) {
+            update.bind("book_isbn", isbn)
+                .bind("copies", copies.get(isbn))
+                .add();
+        }
+
+        int[] counts = update.execute();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                contended.add(isbns.get(i));
+            }
+        }
+
+        return contended;
+    }
+
+    /**
+     * @brief Aggiunge ad un contatore una quantita' per ogni chiave con un PreparedBatch, una
+     *  riga per chiave. A differenza delle copie non viene verificato il numero di righe
+     *  aggiornate: un utente rimosso puo' avere ancora prestiti attivi.
+     * @param sql L'update SQL, con i parametri keyName e valueName.
+     */
+    private static void executeCountersUpdate(Handle handle, String sql, String keyName, String valueName,
+            Map<String, Integer> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        PreparedBatch update = handle.prepareBatch(sql);
+        for (Map.Entry<String, Integer> entry : values.entrySet()) {
+            update.bind(keyName, entry.getKey())
+                .bind(valueName, entry.getValue())
+                .add();
+        }
+
+        update.execute();
+    }
+
+    /**
+     * @brief Legge in una sola select SQL lo stato di utente, prestito e libro, usato per
+     *  scegliere l'eccezione quando register o complete non modificano nessuna riga.
+     */
+    private LoanState getLoanState(String userId, String bookIsbn) {
+        return this.database.getJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT "
+                        + "EXISTS (SELECT 1 FROM users WHERE id = :user_id) AS user_exists, "
+                        + "EXISTS (SELECT 1 FROM loans WHERE user_id = :user_id "
+                        + "AND book_isbn = :book_isbn AND loan_end IS NULL) AS active, "
+                        + "(SELECT remaining_copies FROM books WHERE isbn = :book_isbn) AS remaining_copies")
                     .bind("user_id", userId)
                     .bind("book_isbn", bookIsbn)
-                    .bind("loan_end", end)
-                    .execute());
-	}
+                    .map((rs, ctx) -> {
+                        boolean userExists = rs.getBoolean("user_exists");
+                        boolean active = rs.getBoolean("active");
+                        int remainingCopies = rs.getInt("remaining_copies");
+
+                        return new LoanState(userExists, active,
+                                rs.wasNull() ? Optional.empty() : Optional.of(remainingCopies));
+                    })
+                    .one());
+    }
+
+    private record LoanState(boolean userExists, boolean active, Optional<Integer> remainingCopies) {
+    }
 
     /**
      * @brief Recupera una lista di tutti i prestiti registrati.
@@ -175,7 +774,7 @@ public class DatabaseLoanService implements LoanService {
      */
 	@Override
 	public List<Loan> getAll() {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
             .withHandle(handle -> handle.createQuery("SELECT * FROM loans")
                     .mapTo(Loan.class)
                     .list());
@@ -189,10 +788,8 @@ public class DatabaseLoanService implements LoanService {
      */
 	@Override
 	public boolean isActive(String userId, String bookIsbn) {
-        return this.database.getJdbi()
-            .withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM loans "
-                        + "WHERE user_id = :user_id AND book_isbn = :book_isbn "
-                        + "AND loan_end IS NULL")
+        return this.database.getReadJdbi()
+            .withHandle(handle -> handle.createQuery(NamedQuery.LOAN_IS_ACTIVE.getSql())
                     .bind("user_id", userId)
                     .bind("book_isbn", bookIsbn)
                     .mapTo(Integer.class)
@@ -200,8 +797,9 @@ public class DatabaseLoanService implements LoanService {
 	}
 
     /**
-     * @brief Conta il numero di prestiti fatti da un utente.
-     *  Esegue una select count SQL per contare il numero di prestiti dell'utente nel database.
+     * @brief Conta il numero di prestiti attivi di un utente.
+     *  Legge il contatore active_loans dell'utente, aggiornato nella stessa transazione da
+     *  register, complete, registerAll e completeAll, senza contare i suoi prestiti.
      * @param userId La matricola dell'utente da controllare.
      * @return Il numero di prestiti attualmente attivi.
      */
@@ -211,14 +809,59 @@ public class DatabaseLoanService implements LoanService {
             throw new InvalidIdException();
         }
 
-        return this.database.getJdbi()
-            .withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM loans "
-                        + "WHERE user_id = :user_id")
+        return this.database.getReadJdbi()
+            .withHandle(handle -> handle.createQuery(NamedQuery.USER_ACTIVE_LOANS.getSql())
                     .bind("user_id", userId)
                     .mapTo(Integer.class)
-                    .one());
+                    .findOne())
+            .orElse(0);
 	}
 
+    /**
+     * @brief Confronta il contatore dei prestiti attivi di ogni utente con i prestiti
+     *  attivi registrati nella tabella loans.
+     *  Ogni conteggio legge solo l'indice parziale idx_loans_active_user_book.
+     * @return Le matricole degli utenti il cui contatore non e' corretto, in ordine.
+     */
+    public List<String> checkActiveLoanCounters() {
+        return this.database.getReadJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT id FROM users "
+                        + "WHERE active_loans <> " + ACTIVE_LOANS_OF_USER + " ORDER BY id")
+                    .mapTo(String.class)
+                    .list());
+    }
+
+    /**
+     * @brief Ricalcola dalla tabella loans i contatori dei prestiti attivi non corretti,
+     *  ad esempio dopo una modifica manuale del database.
+     *  Per ogni utente corretto viene pubblicata una modifica, che porta il nuovo contatore
+     *  anche sulle repliche.
+     * @return Il numero di utenti il cui contatore e' stato corretto.
+     */
+    public int rebuildActiveLoanCounters() {
+        return this.database.getJdbi()
+            .inTransaction(handle -> {
+                List<String> userIds = handle.createQuery("SELECT id FROM users "
+                            + "WHERE active_loans <> " + ACTIVE_LOANS_OF_USER + " ORDER BY id"
+                            + this.database.getDialect().forUpdate())
+                        .mapTo(String.class)
+                        .list();
+                if (userIds.isEmpty()) {
+                    return 0;
+                }
+
+                PreparedBatch update = handle.prepareBatch("UPDATE users "
+                        + "SET active_loans = " + ACTIVE_LOANS_OF_USER + " WHERE id = :id");
+                userIds.forEach(id -> update.bind("id", id).add());
+                update.execute();
+
+                this.changes.publish(handle, userIds.stream()
+                        .map(id -> EntityChange.user(EntityChange.Type.UPDATED, id))
+                        .toList());
+                return userIds.size();
+            });
+    }
+
     /**
      * @brief Recupera una lista di tutti i prestiti registrati attualmente attivi.
      *  Esegue una select SQL per ottenere tutti i prestiti il cui loan_end è nullo.
@@ -226,13 +869,50 @@ public class DatabaseLoanService implements LoanService {
      */
 	@Override
 	public List<Loan> getActive() {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
             .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
                         + "WHERE loan_end IS NULL")
                     .mapTo(Loan.class)
                     .list());
 	}
 
+    /**
+     * @brief Recupera una pagina dei prestiti attivi ordinata secondo il criterio specificato.
+     *  Esegue una query SQL keyset: la pagina parte dal primo prestito successivo alla chiave.
+     * @see LoanService#getActivePage(PageKey, int, LoanSort)
+     */
+    @Override
+    public Page<Loan> getActivePage(PageKey after, int limit, LoanSort sort) {
+        return PAGE_QUERIES.get(sort).fetch(this.database.getReadJdbi(), after, limit);
+    }
+
+    /**
+     * @brief Recupera una pagina dei prestiti scaduti, dal piu' vecchio.
+     *  Legge l'intervallo iniziale dell'indice parziale idx_loans_active_deadline, quindi
+     *  il costo dipende solo dalla dimensione della pagina e non dal numero di prestiti attivi.
+     * @see LoanService#getOverdue(LocalDate, PageKey, int)
+     */
+    @Override
+    public Page<Loan> getOverdue(LocalDate asOf, PageKey after, int limit) {
+        return OVERDUE_QUERY.fetch(this.database.getReadJdbi(), after, limit, Map.of("as_of", asOf));
+    }
+
+    /**
+     * @brief Conta i prestiti scaduti.
+     *  Il conteggio scorre solo le voci scadute dell'indice idx_loans_active_deadline,
+     *  senza leggere la tabella.
+     * @see LoanService#countOverdue(LocalDate)
+     */
+    @Override
+    public int countOverdue(LocalDate asOf) {
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM loans "
+                                + "WHERE loan_end IS NULL AND loan_deadline < :as_of")
+                        .bind("as_of", asOf)
+                        .mapTo(Integer.class)
+                        .one());
+    }
+
     /**
      * @brief Recupera una lista di tutti i prestiti registrati attualmente attivi
      * per l'utente passato.
@@ -241,7 +921,7 @@ public class DatabaseLoanService implements LoanService {
      */
     @Override
     public List<Loan> getActiveByUserId(String userId) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
                                 + "WHERE user_id = :user_id "
                                 + "AND loan_end IS NULL")
@@ -250,18 +930,45 @@ public class DatabaseLoanService implements LoanService {
                         .list());
     }
 
+    /**
+     * @brief Recupera i prestiti attivi dell'utente specificato insieme al titolo e
+     * all'autore dei libri prestati.
+     *  Esegue una sola select SQL con una LEFT JOIN su books, invece di una lettura per
+     *  ogni prestito; i prestiti di libri non presenti nel catalogo restano nel risultato
+     *  senza titolo e autore.
+     * @return Una lista contenente i prestiti attivi dell'utente, con i dati dei libri.
+     */
+    @Override
+    public List<LoanDetails> getActiveDetailsByUserId(String userId) {
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT loans.*, "
+                                + "books.title AS book_title, books.author AS book_author "
+                                + "FROM loans LEFT JOIN books ON books.isbn = loans.book_isbn "
+                                + "WHERE loans.user_id = :user_id "
+                                + "AND loans.loan_end IS NULL")
+                        .bind("user_id", userId)
+                        .mapTo(LoanDetails.class)
+                        .list());
+    }
+
     /**
      * @brief Recupera una lista di prestiti attivi filtrati per matricola utente (ricerca parziale).
-     * Esegue una select SQL usando LIKE per trovare le matricole che contengono la
-     * stringa o carattere passato.
+     * Cerca le matricole nell'indice trigram in memoria e recupera i prestiti attivi
+     * di quegli utenti; se la stringa e' troppo corta o poco selettiva esegue una
+     * select SQL usando LIKE.
      * @param userId La stringa (o carattere) contenuta nella matricola da cercare.
      * @return Una lista di prestiti attivi che corrispondono al criterio.
      */
     @Override
     public List<Loan> getActiveByUserIdContaining(String userId) {
-        return this.database.getJdbi()
+        Optional<List<String>> userIds = this.userIdIndex.findSelective(userId);
+        if (userIds.isPresent()) {
+            return this.getActiveByKeys("user_id", userIds.get());
+        }
+
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
-                                + "WHERE user_id LIKE :user_id "
+                                + "WHERE user_id " + this.database.getDialect().like() + " :user_id "
                                 + "AND loan_end IS NULL")
                         .bind("user_id", "%" + userId + "%")
                         .mapTo(Loan.class)
@@ -270,18 +977,43 @@ public class DatabaseLoanService implements LoanService {
 
     /**
      * @brief Recupera una lista di prestiti attivi filtrati per Isbn (ricerca parziale).
-     * Esegue una select SQL usando LIKE per trovare gli Isbn che contengono la
-     * stringa o carattere passato.
+     * Cerca gli Isbn nell'indice trigram in memoria e recupera i prestiti attivi
+     * di quei libri; se la stringa e' troppo corta o poco selettiva esegue una
+     * select SQL usando LIKE.
      * @param bookIsbn La stringa (o carattere) contenuta nel Isbn da cercare.
      * @return Una lista di prestiti attivi che corrispondono al criterio.
      */
     @Override
     public List<Loan> getActiveByBookIsbnContaining(String bookIsbn) {
-        return this.database.getJdbi()
+        Optional<List<String>> bookIsbns = this.bookIsbnIndex.findSelective(bookIsbn);
+        if (bookIsbns.isPresent()) {
+            return this.getActiveByKeys("book_isbn", bookIsbns.get());
+        }
+
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
-                                + "WHERE book_isbn LIKE :book_isbn "                                + "AND loan_end IS NULL")
+                                + "WHERE book_isbn " + this.database.getDialect().like() + " :book_isbn "
+                                + "AND loan_end IS NULL")
                         .bind("book_isbn", "%" + bookIsbn + "%")
                         .mapTo(Loan.class)
                         .list());
     }
+
+    /**
+     * @brief Recupera i prestiti attivi il cui valore della colonna specificata e' tra le chiavi.
+     *  La colonna e' sempre una costante interna (user_id o book_isbn).
+     */
+    private List<Loan> getActiveByKeys(String column, List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT * FROM loans "
+                                + "WHERE " + column + " IN (<keys>) "
+                                + "AND loan_end IS NULL ORDER BY id")
+                        .bindList("keys", keys)
+                        .mapTo(Loan.class)
+                        .list());
+    }
 }
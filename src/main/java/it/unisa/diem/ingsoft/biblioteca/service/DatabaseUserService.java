@@ -5,33 +5,65 @@
 package it.unisa.diem.ingsoft.biblioteca.service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.NamedQuery;
 import it.unisa.diem.ingsoft.biblioteca.exception.DuplicateUserByEmailException;
 import it.unisa.diem.ingsoft.biblioteca.exception.DuplicateUserByIdException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidEmailException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIdException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
 import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.model.UserSort;
 
 /**
  * @brief Implementazione dello UserService usando un Database per la
  *        persistenza
  */
 public class DatabaseUserService implements UserService {
+    // Ogni ordinamento e' servito da un indice sulle stesse colonne (schema versione 4)
+    private static final Map<UserSort, PageQuery<User>> PAGE_QUERIES = Map.of(
+        UserSort.ID, new PageQuery<>("users", List.of("id"), User.class,
+                user -> PageKey.of(user.getId())),
+        UserSort.SURNAME, new PageQuery<>("users", List.of("surname", "name", "id"), User.class,
+                user -> PageKey.of(user.getSurname(), user.getName(), user.getId())),
+        UserSort.EMAIL, new PageQuery<>("users", List.of("email"), User.class,
+                user -> PageKey.of(user.getEmail()))
+    );
+
     private final Database database;
+    private final SubstringIndex idIndex;
+    private final ChangeNotifier changes;
 
     /**
      * @brief Costruisce un oggetto che implementa lo UserService usando un database
      */
     public DatabaseUserService(Database database) {
         this.database = database;
+        this.idIndex = SubstringIndex.ofUserIds(database);
+        this.changes = ChangeNotifier.of(database);
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        this.changes.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(ChangeListener listener) {
+        this.changes.removeChangeListener(listener);
     }
 
     /**
      * @brief Registra un nuovo utente.
-     *        Esegue una insert SQL per inserire l'utente nel database.
+     *        Esegue una insert SQL per inserire l'utente nel database. I duplicati non
+     *        vengono cercati prima: l'insert usa ON CONFLICT DO NOTHING e, solo se resta
+     *        senza effetto, una select determina se la matricola o la mail sono gia' in uso.
      * @param user L'utente da registrare.
      * @throws DuplicateUserByEmailException Esiste già un utente con la mail
      *                                       specificata.
@@ -42,27 +74,64 @@ public class DatabaseUserService implements UserService {
     public void register(User user) throws InvalidIdException, InvalidEmailException,
             DuplicateUserByEmailException, DuplicateUserByIdException {
         String email = user.getEmail();
-        if (this.existsByEmail(email))
-            throw new DuplicateUserByEmailException();
-
         String id = user.getId();
-        if (this.existsById(id))
-            throw new DuplicateUserByIdException();
 
-        if (!this.isEmailValid(email))
-            throw new InvalidEmailException();
+        if (!this.isEmailValid(email) || !this.isIdValid(id)) {
+            // I duplicati hanno la precedenza sugli errori di formato
+            this.checkDuplicates(id, email);
+
+            if (!this.isEmailValid(email))
+                throw new InvalidEmailException();
 
-        if (!this.isIdValid(id))
             throw new InvalidIdException();
+        }
 
-        this.database.getJdbi()
-                .useHandle(handle -> handle.createUpdate("INSERT INTO users(id, email, name, surname) "
-                        + "VALUES (:id, :email, :name, :surname)")
+        boolean inserted = this.database.getJdbi()
+                .inTransaction(handle -> {
+                    // I prestiti di un utente rimosso restano: vengono contati se la matricola torna
+                    int rows = handle.createUpdate("INSERT INTO users(id, email, name, surname, active_loans) "
+                        + "VALUES (:id, :email, :name, :surname, (SELECT COUNT(*) FROM loans "
+                        + "WHERE user_id = :id AND loan_end IS NULL)) "
+                        + "ON CONFLICT DO NOTHING")
                         .bind("id", user.getId())
                         .bind("email", user.getEmail())
                         .bind("name", user.getName())
                         .bind("surname", user.getSurname())
-                        .execute());
+                        .execute();
+
+                    if (rows > 0) {
+                        this.idIndex.add(handle, List.of(id));
+                        this.changes.publish(handle, EntityChange.user(EntityChange.Type.ADDED, id));
+                    }
+                    return rows > 0;
+                });
+
+        if (!inserted) {
+            this.checkDuplicates(id, email);
+            // La riga in conflitto e' stata rimossa dopo l'insert
+            throw new DuplicateUserByIdException();
+        }
+    }
+
+    /**
+     * @brief Lancia l'eccezione del duplicato, se esiste un utente con la stessa mail o la
+     *  stessa matricola, con una sola select SQL.
+     */
+    private void checkDuplicates(String id, String email) throws DuplicateUserByEmailException,
+            DuplicateUserByIdException {
+        List<User> existing = this.database.getJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT * FROM users "
+                        + "WHERE email = :email OR id = :id")
+                        .bind("id", id)
+                        .bind("email", email)
+                        .mapTo(User.class)
+                        .list());
+
+        if (existing.stream().anyMatch(user -> user.getEmail().equals(email)))
+            throw new DuplicateUserByEmailException();
+
+        if (!existing.isEmpty())
+            throw new DuplicateUserByIdException();
     }
 
     /**
@@ -72,12 +141,22 @@ public class DatabaseUserService implements UserService {
      */
     @Override
     public List<User> getAll() {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM users")
                         .mapTo(User.class)
                         .list());
     }
 
+    /**
+     * @brief Recupera una pagina degli utenti ordinati secondo il criterio specificato.
+     *  Esegue una query SQL keyset: la pagina parte dal primo utente successivo alla chiave.
+     * @see UserService#getPage(PageKey, int, UserSort)
+     */
+    @Override
+    public Page<User> getPage(PageKey after, int limit, UserSort sort) {
+        return PAGE_QUERIES.get(sort).fetch(this.database.getReadJdbi(), after, limit);
+    }
+
     /**
      * @brief Cerca un utente usando la sua matricola.
      *        Esegue una select SQL per ottenere l'utente dal database.
@@ -87,9 +166,9 @@ public class DatabaseUserService implements UserService {
      */
     @Override
     public Optional<User> getById(String id) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM users "
-                        + "WHERE id LIKE :id")
+                        + "WHERE id " + this.database.getDialect().like() + " :id")
                         .bind("id", "%" + id + "%")
                         .mapTo(User.class)
                         .findFirst());
@@ -103,16 +182,26 @@ public class DatabaseUserService implements UserService {
      */
     @Override
     public boolean removeById(String id) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createUpdate("DELETE FROM users WHERE id = :id")
+        boolean removed = this.database.getJdbi()
+                .inTransaction(handle -> {
+                    int deleted = handle.createUpdate("DELETE FROM users WHERE id = :id")
                         .bind("id", id)
-                        .execute()) > 0;
+                        .execute();
+
+                    if (deleted > 0) {
+                        this.idIndex.remove(handle, id);
+                        this.changes.publish(handle, EntityChange.user(EntityChange.Type.REMOVED, id));
+                    }
+                    return deleted > 0;
+                });
+
+        return removed;
     }
 
     /**
      * @brief Aggiorna le informazioni di un utente già registrato.
      *        Esegue un update SQL per modificare le informazioni dell'utente nel
-     *        database.
+     *        database; un update senza righe modificate indica che l'utente non esiste.
      * @param user L'oggetto User contenente la matricola dell'utente da modificare
      *             e
      *             le nuove informazioni da salvare.
@@ -130,23 +219,30 @@ public class DatabaseUserService implements UserService {
             throw new InvalidIdException();
         }
 
-        if (!this.existsById(id)) {
-            throw new UnknownUserByIdException();
-        }
-
         String email = user.getEmail();
         String name = user.getName();
         String surname = user.getSurname();
 
-        this.database.getJdbi()
-                .withHandle(handle -> handle.createUpdate("UPDATE users "
+        int updated = this.database.getJdbi()
+                .inTransaction(handle -> {
+                    int rows = handle.createUpdate("UPDATE users "
                         + "SET email = :email, name = :name, surname = :surname "
                         + "WHERE id = :id")
                         .bind("id", id)
                         .bind("email", email)
                         .bind("name", name)
                         .bind("surname", surname)
-                        .execute());
+                        .execute();
+
+                    if (rows > 0) {
+                        this.changes.publish(handle, EntityChange.user(EntityChange.Type.UPDATED, id));
+                    }
+                    return rows;
+                });
+
+        if (updated == 0) {
+            throw new UnknownUserByIdException();
+        }
     }
 
     /**
@@ -158,9 +254,8 @@ public class DatabaseUserService implements UserService {
      */
     @Override
     public boolean existsById(String id) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT COUNT(id) FROM users "
-                        + "WHERE id = :id")
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery(NamedQuery.USER_EXISTS_BY_ID.getSql())
                         .bind("id", id)
                         .mapTo(Integer.class)
                         .one()) > 0;
@@ -174,9 +269,8 @@ public class DatabaseUserService implements UserService {
      */
     @Override
     public boolean existsByEmail(String email) {
-        return this.database.getJdbi()
-                .withHandle(handle -> handle.createQuery("SELECT COUNT(email) FROM users "
-                        + "WHERE email = :email")
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery(NamedQuery.USER_EXISTS_BY_EMAIL.getSql())
                         .bind("email", email)
                         .mapTo(Integer.class)
                         .one()) > 0;
@@ -186,16 +280,23 @@ public class DatabaseUserService implements UserService {
      * @brief Recupera una lista di tutti gli utenti registrati la cui matricola
      *        contiene la stringa
      *        specificata in qualsiasi posizione.
-     *        Esegue una select SQL per ottenere la lista degli utenti dal database.
+     *        Cerca le matricole nell'indice trigram in memoria e recupera gli utenti
+     *        per chiave primaria; se la stringa e' troppo corta o poco selettiva
+     *        esegue una select SQL.
      * @param id La matricola da cercare.
      * @return Una lista di {@link User} contenente tutti gli utenti che rispettano
      *         questo criterio.
      */
     @Override
     public List<User> getAllByIdContaining(String id) {
-        return this.database.getJdbi()
+        Optional<List<String>> ids = this.idIndex.findSelective(id);
+        if (ids.isPresent()) {
+            return this.getAllByIds(ids.get());
+        }
+
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM users "
-                        + "WHERE id LIKE :id")
+                        + "WHERE id " + this.database.getDialect().like() + " :id")
                         .bind("id", "%" + id + "%")
                         .mapTo(User.class)
                         .list());
@@ -212,9 +313,9 @@ public class DatabaseUserService implements UserService {
      */
     @Override
     public List<User> getAllByEmailContaining(String email) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM users "
-                        + "WHERE email LIKE :email")
+                        + "WHERE email " + this.database.getDialect().like() + " :email")
                         .bind("email", "%" + email + "%")
                         .mapTo(User.class)
                         .list());
@@ -232,15 +333,29 @@ public class DatabaseUserService implements UserService {
      */
     @Override
     public List<User> getAllByFullNameContaining(String name, String surname) {
-        return this.database.getJdbi()
+        return this.database.getReadJdbi()
                 .withHandle(handle -> handle.createQuery("SELECT * FROM users "
-                        + "WHERE name LIKE :name AND surname LIKE :surname")
+                        + "WHERE name " + this.database.getDialect().like() + " :name "
+                        + "AND surname " + this.database.getDialect().like() + " :surname")
                         .bind("name", "%" + name + "%")
                         .bind("surname", "%" + surname + "%")
                         .mapTo(User.class)
                         .list());
     }
 
+    private List<User> getAllByIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        return this.database.getReadJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT * FROM users "
+                        + "WHERE id IN (<ids>) ORDER BY rowid")
+                        .bindList("ids", ids)
+                        .mapTo(User.class)
+                        .list());
+    }
+
     @Override
     public boolean isEmailValid(String email) {
         if (!email.contains("@")) {
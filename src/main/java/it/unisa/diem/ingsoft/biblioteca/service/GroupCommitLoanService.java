@@ -0,0 +1,392 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jdbi.v3.core.Handle;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidBookCopiesException;
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIdException;
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.exception.LoanAlreadyRegisteredException;
+import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
+import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.exception.UnknownLoanException;
+import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
+import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanDetails;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanRequest;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanSort;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.ReturnRequest;
+
+/**
+ * @brief LoanService che raggruppa le scritture di piu' sportelli in un'unica transazione
+ *  (group commit).
+ *  Le operazioni che modificano i prestiti vengono accodate ad un thread di scrittura, che
+ *  le esegue in blocchi: ogni operazione gira in un proprio SAVEPOINT, cosi' un prestito
+ *  rifiutato non annulla gli altri, e il blocco viene confermato con un solo COMMIT (e
+ *  quindi un solo fsync). Il chiamante riceve l'esito solo dopo il COMMIT: un'operazione
+ *  confermata e' gia' durevole nel database, quindi dopo un crash non c'e' nulla da
+ *  recuperare.
+ *  Quando il carico e' basso ogni blocco contiene una sola operazione e non viene aggiunta
+ *  latenza; durante un COMMIT le nuove richieste si accumulano e formano il blocco successivo.
+ *  Le letture vengono delegate direttamente.
+ *  Se un'operazione lancia un Error l'intero blocco viene annullato e tutte le sue
+ *  operazioni ricevono l'errore; il thread di scrittura continua con il blocco successivo.
+ */
+public class GroupCommitLoanService implements LoanService, AutoCloseable {
+    /**
+     * @brief Numero massimo predefinito di operazioni per transazione.
+     */
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    private static final PendingWrite STOP = new PendingWrite(handle -> null);
+
+    private final LoanService delegate;
+    private final Database database;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @brief Costruisce il service con i parametri predefiniti: blocchi di al piu'
+     *  DEFAULT_MAX_BATCH operazioni, senza attesa aggiuntiva.
+     * @param delegate Il service che esegue le operazioni sul database.
+     * @param database Il database usato dal delegate.
+     */
+    public GroupCommitLoanService(LoanService delegate, Database database) {
+        this(delegate, database, DEFAULT_MAX_BATCH, Duration.ZERO);
+    }
+
+    /**
+     * @param delegate Il service che esegue le operazioni sul database.
+     * @param database Il database usato dal delegate.
+     * @param maxBatch Il numero massimo di operazioni confermate con un solo COMMIT.
+     * @param linger Il tempo per cui attendere altre operazioni prima di confermare un
+     *  blocco non pieno: aumenta le operazioni per COMMIT a scapito della latenza.
+     * @throws IllegalArgumentException Se maxBatch non e' positivo o linger e' negativo.
+     */
+    public GroupCommitLoanService(LoanService delegate, Database database, int maxBatch, Duration linger) {
+        if (maxBatch < 1 || linger.isNegative()) {
+            throw new IllegalArgumentException("Parametri del group commit non validi");
+        }
+
+        this.delegate = delegate;
+        this.database = database;
+        this.maxBatch = maxBatch;
+        this.lingerNanos = linger.toNanos();
+
+        this.writer = new Thread(this::runWriter, "biblioteca-loan-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void register(String userId, String bookIsbn, LocalDate start, LocalDate deadline)
+            throws LoanAlreadyRegisteredException, InvalidIdException, InvalidIsbnException,
+                              UnknownBookByIsbnException, UnknownUserByIdException,
+                              NegativeBookCopiesException, InvalidBookCopiesException {
+        try {
+            this.submit(handle -> {
+                this.delegate.register(userId, bookIsbn, start, deadline);
+                return null;
+            });
+        } catch (LoanAlreadyRegisteredException | InvalidIdException | InvalidIsbnException
+                | UnknownBookByIsbnException | UnknownUserByIdException
+                | NegativeBookCopiesException | InvalidBookCopiesException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void complete(String userId, String bookIsbn, LocalDate end) throws UnknownLoanException,
+         UnknownBookByIsbnException, NegativeBookCopiesException, InvalidBookCopiesException {
+        try {
+            this.submit(handle -> {
+                this.delegate.complete(userId, bookIsbn, end);
+                return null;
+            });
+        } catch (UnknownLoanException | UnknownBookByIsbnException | NegativeBookCopiesException
+                | InvalidBookCopiesException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public BatchResult<LoanRequest> registerAll(List<LoanRequest> requests) {
+        try {
+            return this.submit(handle -> this.delegate.registerAll(requests));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public BatchResult<ReturnRequest> completeAll(List<ReturnRequest> requests, LocalDate end) {
+        try {
+            return this.submit(handle -> this.delegate.completeAll(requests, end));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @brief Conferma le operazioni gia' accodate e arresta il thread di scrittura.
+     *  Le operazioni richieste dopo la chiusura lanciano IllegalStateException.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        this.queue.add(STOP);
+
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        this.delegate.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(ChangeListener listener) {
+        this.delegate.removeChangeListener(listener);
+    }
+
+    @Override
+    public List<Loan> getAll() {
+        return this.delegate.getAll();
+    }
+
+    @Override
+    public List<Loan> getActive() {
+        return this.delegate.getActive();
+    }
+
+    @Override
+    public Page<Loan> getActivePage(PageKey after, int limit, LoanSort sort) {
+        return this.delegate.getActivePage(after, limit, sort);
+    }
+
+    @Override
+    public Page<Loan> getOverdue(LocalDate asOf, PageKey after, int limit) {
+        return this.delegate.getOverdue(asOf, after, limit);
+    }
+
+    @Override
+    public int countOverdue(LocalDate asOf) {
+        return this.delegate.countOverdue(asOf);
+    }
+
+    @Override
+    public Optional<Loan> getByUserIdAndBookIsbn(String userId, String bookIsbn) {
+        return this.delegate.getByUserIdAndBookIsbn(userId, bookIsbn);
+    }
+
+    @Override
+    public List<Loan> getByUserIdContaining(String userId) {
+        return this.delegate.getByUserIdContaining(userId);
+    }
+
+    @Override
+    public List<Loan> getByBookIsbnContaining(String bookIsbn) {
+        return this.delegate.getByBookIsbnContaining(bookIsbn);
+    }
+
+    @Override
+    public boolean isActive(String userId, String bookIsbn) {
+        return this.delegate.isActive(userId, bookIsbn);
+    }
+
+    @Override
+    public int countById(String userId) throws InvalidIdException {
+        return this.delegate.countById(userId);
+    }
+
+    @Override
+    public List<Loan> getActiveByUserId(String userId) {
+        return this.delegate.getActiveByUserId(userId);
+    }
+
+    @Override
+    public List<LoanDetails> getActiveDetailsByUserId(String userId) {
+        return this.delegate.getActiveDetailsByUserId(userId);
+    }
+
+    @Override
+    public List<Loan> getActiveByUserIdContaining(String userId) {
+        return this.delegate.getActiveByUserIdContaining(userId);
+    }
+
+    @Override
+    public List<Loan> getActiveByBookIsbnContaining(String bookIsbn) {
+        return this.delegate.getActiveByBookIsbnContaining(bookIsbn);
+    }
+
+    /**
+     * @brief Accoda un'operazione e ne attende la conferma.
+     * @return Il risultato dell'operazione.
+     * @throws Exception L'eccezione lanciata dall'operazione, oppure quella del COMMIT.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T submit(Write write) throws Exception {
+        // Dentro una transazione del chiamante la connessione di scrittura e' gia' occupata:
+        // l'operazione fa parte di quella transazione
+        if (this.database.getJdbi().getHandleScope().get() != null) {
+            return (T) write.run(null);
+        }
+
+        if (this.closed) {
+            throw new IllegalStateException("Servizio prestiti chiuso");
+        }
+
+        PendingWrite pending = new PendingWrite(write);
+        this.queue.add(pending);
+
+        try {
+            return (T) pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>();
+        boolean running = true;
+
+        while (running) {
+            try {
+                batch.add(this.queue.take());
+
+                // Le richieste arrivate durante il COMMIT precedente formano il blocco
+                this.queue.drainTo(batch, this.maxBatch - 1);
+
+                long deadline = System.nanoTime() + this.lingerNanos;
+                while (batch.size() < this.maxBatch && this.lingerNanos > 0) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0
+                        ? this.queue.poll(remaining, TimeUnit.NANOSECONDS)
+                        : null;
+
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            if (batch.remove(STOP)) {
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                this.commit(batch);
+                batch.clear();
+            }
+        }
+
+        // Operazioni accodate in concorrenza con la chiusura
+        List<PendingWrite> left = new ArrayList<>();
+        this.queue.drainTo(left);
+        left.remove(STOP);
+        if (!left.isEmpty()) {
+            this.commit(left);
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        List<Object> results = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+
+        try {
+            this.database.getJdbi().useTransaction(handle -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    String savepoint = "loan_write_" + i;
+                    handle.savepoint(savepoint);
+
+                    try {
+                        results.add(batch.get(i).write.run(handle));
+                        failures.add(null);
+                        handle.releaseSavepoint(savepoint);
+                    } catch (Exception e) {
+                        handle.rollbackToSavepoint(savepoint);
+                        results.add(null);
+                        failures.add(e);
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            // COMMIT fallito, oppure un Error durante il blocco: nessuna operazione del blocco
+            // e' stata salvata. Il thread di scrittura resta attivo per i blocchi successivi
+            for (PendingWrite pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures.get(i) != null) {
+                batch.get(i).result.completeExceptionally(failures.get(i));
+            } else {
+                batch.get(i).result.complete(results.get(i));
+            }
+        }
+    }
+
+    /**
+     * @brief Operazione di scrittura eseguita dal thread di scrittura dentro la transazione
+     *  del blocco.
+     */
+    @FunctionalInterface
+    private interface Write {
+        Object run(Handle handle) throws Exception;
+    }
+
+    private static class PendingWrite {
+        private final Write write;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        PendingWrite(Write write) {
+            this.write = write;
+        }
+    }
+}
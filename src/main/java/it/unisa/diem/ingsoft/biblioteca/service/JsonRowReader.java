@@ -0,0 +1,212 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import it.unisa.diem.ingsoft.biblioteca.exception.MalformedBookRowException;
+
+/**
+ * @brief Legge un file JSON che contiene un array di oggetti, uno per libro.
+ *  Gli oggetti vengono letti uno alla volta senza caricare l'intero array. I valori
+ *  stringa, numerici e booleani diventano stringhe; i valori null equivalgono ad un campo
+ *  assente. Un oggetto con un valore annidato (oggetto o array) viene rifiutato.
+ */
+class JsonRowReader extends CatalogueRowReader {
+    private boolean started;
+    private boolean finished;
+
+    JsonRowReader(Reader reader) {
+        super(reader);
+    }
+
+    @Override
+    Map<String, String> next() throws IOException, MalformedBookRowException {
+        if (this.finished) {
+            return null;
+        }
+
+        this.skipWhitespace();
+        if (!this.started) {
+            this.expect('[');
+            this.started = true;
+            this.skipWhitespace();
+
+            if (this.peek() == ']') {
+                this.read();
+                this.finished = true;
+                return null;
+            }
+        } else {
+            int c = this.read();
+            if (c == ']') {
+                this.finished = true;
+                return null;
+            }
+
+            if (c != ',') {
+                throw this.unexpected(c, "',' o ']'");
+            }
+            this.skipWhitespace();
+        }
+
+        return this.readObject();
+    }
+
+    private Map<String, String> readObject() throws IOException, MalformedBookRowException {
+        this.expect('{');
+        this.skipWhitespace();
+
+        Map<String, String> row = new HashMap<>();
+        String nested = null;
+
+        if (this.peek() == '}') {
+            this.read();
+            return row;
+        }
+
+        while (true) {
+            this.skipWhitespace();
+            String name = this.readString();
+            this.skipWhitespace();
+            this.expect(':');
+            this.skipWhitespace();
+
+            int c = this.peek();
+            if (c == '{' || c == '[') {
+                this.skipNested();
+                nested = nested == null ? name : nested;
+            } else {
+                String value = this.readScalar();
+                if (value != null) {
+                    row.put(name, value);
+                }
+            }
+
+            this.skipWhitespace();
+            c = this.read();
+            if (c == '}') {
+                break;
+            }
+
+            if (c != ',') {
+                throw this.unexpected(c, "',' o '}'");
+            }
+        }
+
+        if (nested != null) {
+            throw new MalformedBookRowException("Valore annidato non supportato per il campo " + nested);
+        }
+        return row;
+    }
+
+    private String readScalar() throws IOException {
+        int c = this.peek();
+        if (c == '"') {
+            return this.readString();
+        }
+
+        StringBuilder literal = new StringBuilder();
+        while ((c = this.peek()) >= 0 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+            literal.append((char) this.read());
+        }
+
+        String value = literal.toString();
+        if (value.isEmpty()) {
+            throw this.unexpected(this.read(), "un valore");
+        }
+        return value.equals("null") ? null : value;
+    }
+
+    private String readString() throws IOException {
+        this.expect('"');
+
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            int c = this.read();
+            if (c < 0) {
+                throw new IOException("Stringa non chiusa alla fine del file JSON");
+            }
+
+            if (c == '"') {
+                return value.toString();
+            }
+
+            if (c != '\\') {
+                value.append((char) c);
+                continue;
+            }
+
+            int escape = this.read();
+            switch (escape) {
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(this.read(), 16);
+                        if (digit < 0) {
+                            throw new IOException("Sequenza \\u non valida nel file JSON");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    value.append((char) code);
+                }
+                case '"', '\\', '/' -> value.append((char) escape);
+                default -> throw this.unexpected(escape, "una sequenza di escape");
+            }
+        }
+    }
+
+    /**
+     * @brief Salta un oggetto o un array annidato, comprese le stringhe che contiene.
+     */
+    private void skipNested() throws IOException {
+        int depth = 0;
+        do {
+            int c = this.peek();
+            if (c < 0) {
+                throw new IOException("Valore non chiuso alla fine del file JSON");
+            }
+
+            if (c == '"') {
+                this.readString();
+                continue;
+            }
+
+            this.read();
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = this.peek()) == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF') {
+            this.read();
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = this.read();
+        if (c != expected) {
+            throw this.unexpected(c, "'" + expected + "'");
+        }
+    }
+
+    private IOException unexpected(int c, String expected) {
+        String found = c < 0 ? "la fine del file" : "'" + (char) c + "'";
+        return new IOException("File JSON non valido: atteso " + expected + ", trovato " + found);
+    }
+}
@@ -16,12 +16,19 @@ import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownLoanException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
 import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanDetails;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanRequest;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanSort;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.ReturnRequest;
 
 /**
  * @brief Interfaccia per la gestione dei prestiti
  */
-public interface LoanService {
+public interface LoanService extends ChangeSource {
     /**
      * @brief Recupera una lista di tutti i prestiti registrati.
      * @return Una lista contenente tutti i prestiti.
@@ -34,6 +41,38 @@ public interface LoanService {
      */
     List<Loan> getActive();
 
+    /**
+     * @brief Recupera una pagina dei prestiti attivi ordinati secondo il criterio specificato.
+     *  Le pagine vanno lette in sequenza passando ogni volta la chiave restituita dalla
+     *  pagina precedente: il costo di ogni pagina non dipende dalla sua posizione.
+     * @param after La chiave restituita dalla pagina precedente, oppure PageKey.first().
+     * @param limit Il numero massimo di elementi della pagina.
+     * @param sort Il criterio di ordinamento.
+     * @return La pagina, con la chiave per leggere la successiva.
+     * @throws IllegalArgumentException Se limit non e' positivo o se la chiave non
+     *  corrisponde al criterio di ordinamento.
+     */
+    Page<Loan> getActivePage(PageKey after, int limit, LoanSort sort);
+
+    /**
+     * @brief Recupera una pagina dei prestiti scaduti, cioe' attivi con la scadenza
+     *  precedente alla data specificata, dal piu' vecchio.
+     *  Le pagine vanno lette in sequenza come in getActivePage.
+     * @param asOf La data rispetto a cui un prestito e' scaduto, di solito la data odierna.
+     * @param after La chiave restituita dalla pagina precedente, oppure PageKey.first().
+     * @param limit Il numero massimo di elementi della pagina.
+     * @return La pagina, con la chiave per leggere la successiva.
+     * @throws IllegalArgumentException Se limit non e' positivo o se la chiave non e' valida.
+     */
+    Page<Loan> getOverdue(LocalDate asOf, PageKey after, int limit);
+
+    /**
+     * @brief Conta i prestiti attivi con la scadenza precedente alla data specificata.
+     * @param asOf La data rispetto a cui un prestito e' scaduto, di solito la data odierna.
+     * @return Il numero di prestiti scaduti.
+     */
+    int countOverdue(LocalDate asOf);
+
     /**
      * @brief Cerca un prestito chiesto da un utente per un libro.
      * @param userId La matricola dell'utente che ha chiesto il prestito.
@@ -93,6 +132,28 @@ public interface LoanService {
     void complete(String userId, String bookIsbn, LocalDate end) throws UnknownLoanException,
          UnknownBookByIsbnException, NegativeBookCopiesException, InvalidBookCopiesException;
 
+    /**
+     * @brief Registra piu' prestiti in un'unica transazione.
+     *  Ogni richiesta viene verificata come in register: le richieste non valide vengono
+     *  rifiutate singolarmente senza interrompere la registrazione delle altre.
+     * @param requests Le richieste di prestito, elaborate nell'ordine della lista.
+     * @return L'esito per ogni richiesta; le richieste rifiutate sono associate ad una tra
+     *  InvalidIdException, InvalidIsbnException, UnknownUserByIdException,
+     *  LoanAlreadyRegisteredException, UnknownBookByIsbnException e NegativeBookCopiesException.
+     */
+    BatchResult<LoanRequest> registerAll(List<LoanRequest> requests);
+
+    /**
+     * @brief Registra piu' restituzioni in un'unica transazione.
+     *  Ogni restituzione viene verificata come in complete: quelle non valide vengono
+     *  rifiutate singolarmente senza interrompere la registrazione delle altre.
+     * @param requests Le restituzioni, elaborate nell'ordine della lista.
+     * @param end Data di restituzione dei libri.
+     * @return L'esito per ogni restituzione; quelle rifiutate sono associate ad una tra
+     *  UnknownLoanException, UnknownBookByIsbnException e InvalidBookCopiesException.
+     */
+    BatchResult<ReturnRequest> completeAll(List<ReturnRequest> requests, LocalDate end);
+
     /**
      * @brief Verifica se un utente ha preso in prestito un libro che non
      *  ha ancora restituito.
@@ -103,9 +164,9 @@ public interface LoanService {
     boolean isActive(String userId, String bookIsbn);
 
     /**
-     * @brief Conta il numero di prestiti fatti da un utente.
+     * @brief Conta il numero di prestiti attivi di un utente.
      * @param userId La matricola dell'utente da controllare.
-     * @return Il numero di prestiti attualmente attivi.
+     * @return Il numero di prestiti attualmente attivi, 0 se l'utente non esiste.
      */
     int countById(String userId) throws InvalidIdException;
 
@@ -118,6 +179,15 @@ public interface LoanService {
      */
     List<Loan> getActiveByUserId(String userId);
 
+    /**
+     * @brief Recupera i prestiti attivi dell'utente specificato insieme al titolo e
+     * all'autore dei libri prestati.
+     * @param userId La matricola dell'utente di cui si vogliono conoscere i prestiti
+     *               attivi.
+     * @return Una lista contenente i prestiti attivi per l'utente, con i dati dei libri.
+     */
+    List<LoanDetails> getActiveDetailsByUserId(String userId);
+
     /**
      * @brief Recupera una lista di prestiti attivi cercando parzialmente la matricola
      * utente.
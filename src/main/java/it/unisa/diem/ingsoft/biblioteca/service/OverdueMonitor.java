@@ -0,0 +1,215 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.lang.ref.WeakReference;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.OverdueSummary;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+
+/**
+ * @brief Mantiene aggiornato in background il riepilogo dei prestiti scaduti, cosi' le
+ *  view possono mostrarlo senza interrogare il database.
+ *  Dopo start() il riepilogo viene ricalcolato su un thread dedicato ad intervalli
+ *  regolari, per seguire il cambio di data, e dopo ogni modifica confermata di un
+ *  prestito; piu' modifiche ravvicinate producono un solo ricalcolo. Il ricalcolo legge
+ *  solo le voci scadute dell'indice idx_loans_active_deadline.
+ *  I listener del riepilogo sono mantenuti con riferimenti deboli, come i ChangeListener,
+ *  e vengono chiamati sul thread del monitor solo quando il riepilogo cambia.
+ */
+public class OverdueMonitor implements AutoCloseable {
+    /**
+     * @brief Intervallo predefinito tra due ricalcoli periodici.
+     */
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(5);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OverdueMonitor.class);
+
+    private final LoanService loanService;
+    private final Clock clock;
+    private final Duration interval;
+    private final List<WeakReference<Consumer<OverdueSummary>>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    // Conservato in un campo: il service mantiene i listener con riferimenti deboli
+    private final ChangeListener changeListener = this::onChange;
+
+    private volatile OverdueSummary summary;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param loanService Il service dei prestiti da monitorare.
+     */
+    public OverdueMonitor(LoanService loanService) {
+        this(loanService, Clock.systemDefaultZone(), DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param loanService Il service dei prestiti da monitorare.
+     * @param clock L'orologio da cui ricavare la data odierna.
+     * @param interval L'intervallo tra due ricalcoli periodici.
+     * @throws IllegalArgumentException Se l'intervallo non e' positivo.
+     */
+    public OverdueMonitor(LoanService loanService, Clock clock, Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Intervallo di aggiornamento non valido: " + interval);
+        }
+
+        this.loanService = loanService;
+        this.clock = clock;
+        this.interval = interval;
+    }
+
+    /**
+     * @brief Avvia il ricalcolo periodico, a partire da subito, e l'ascolto delle
+     *  modifiche ai prestiti. Non ha effetto se il monitor e' gia' avviato.
+     */
+    public synchronized void start() {
+        if (this.scheduler != null) {
+            return;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overdue-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loanService.addChangeListener(this.changeListener);
+        this.scheduler.scheduleAtFixedRate(this::refreshQuietly, 0,
+                this.interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @brief Ferma il ricalcolo periodico. L'ultimo riepilogo resta disponibile.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.scheduler == null) {
+            return;
+        }
+
+        this.loanService.removeChangeListener(this.changeListener);
+        this.scheduler.shutdownNow();
+        this.scheduler = null;
+    }
+
+    /**
+     * @brief Restituisce l'ultimo riepilogo calcolato.
+     * @return Il riepilogo, oppure Optional.empty() se non e' ancora stato calcolato.
+     */
+    public Optional<OverdueSummary> getSummary() {
+        return Optional.ofNullable(this.summary);
+    }
+
+    /**
+     * @brief Ricalcola subito il riepilogo rispetto alla data odierna e lo notifica ai
+     *  listener se e' cambiato.
+     * @return Il nuovo riepilogo.
+     */
+    public OverdueSummary refresh() {
+        LocalDate today = LocalDate.now(this.clock);
+        int count = this.loanService.countOverdue(today);
+        LocalDate oldest = count == 0 ? null : this.loanService.getOverdue(today, PageKey.first(), 1)
+            .getItems().stream()
+            .findFirst()
+            .map(Loan::getLoanDeadline)
+            .orElse(null);
+
+        OverdueSummary updated = new OverdueSummary(today, count, oldest);
+        OverdueSummary previous;
+        synchronized (this.listeners) {
+            previous = this.summary;
+            this.summary = updated;
+        }
+
+        if (!updated.equals(previous)) {
+            this.dispatch(updated);
+        }
+        return updated;
+    }
+
+    /**
+     * @brief Registra un listener chiamato ad ogni variazione del riepilogo.
+     *  Il listener e' mantenuto con un riferimento debole: chi lo registra deve
+     *  conservarlo in un campo.
+     */
+    public void addSummaryListener(Consumer<OverdueSummary> listener) {
+        this.listeners.add(new WeakReference<>(listener));
+    }
+
+    /**
+     * @brief Rimuove un listener registrato con addSummaryListener.
+     */
+    public void removeSummaryListener(Consumer<OverdueSummary> listener) {
+        this.listeners.removeIf(reference -> {
+            Consumer<OverdueSummary> registered = reference.get();
+            return registered == null || registered == listener;
+        });
+    }
+
+    private void onChange(EntityChange change) {
+        if (change.getEntity() != EntityChange.Entity.LOAN) {
+            return;
+        }
+
+        synchronized (this) {
+            if (this.scheduler != null && this.refreshPending.compareAndSet(false, true)) {
+                this.scheduler.execute(() -> {
+                    this.refreshPending.set(false);
+                    this.refreshQuietly();
+                });
+            }
+        }
+    }
+
+    /**
+     * @brief Ricalcola il riepilogo senza propagare gli errori, che fermerebbero il
+     *  ricalcolo periodico.
+     */
+    private void refreshQuietly() {
+        try {
+            this.refresh();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Ricalcolo dei prestiti scaduti non riuscito", e);
+        }
+    }
+
+    private void dispatch(OverdueSummary updated) {
+        boolean collected = false;
+
+        for (WeakReference<Consumer<OverdueSummary>> reference : this.listeners) {
+            Consumer<OverdueSummary> listener = reference.get();
+            if (listener == null) {
+                collected = true;
+                continue;
+            }
+
+            try {
+                listener.accept(updated);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Listener dei prestiti scaduti non riuscito", e);
+            }
+        }
+
+        if (collected) {
+            this.listeners.removeIf(reference -> reference.get() == null);
+        }
+    }
+}
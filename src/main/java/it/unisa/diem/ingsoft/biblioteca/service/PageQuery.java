@@ -0,0 +1,108 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.Query;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+
+/**
+ * @brief Lettura paginata keyset di una tabella, condivisa dai service.
+ *  La pagina successiva e' selezionata con un confronto tra row value
+ *  (col1, col2) > (:k0, :k1) sulle colonne di ordinamento, che devono identificare
+ *  univocamente una riga: con un indice su quelle colonne ogni pagina costa O(limit)
+ *  indipendentemente dalla sua posizione, a differenza di LIMIT/OFFSET.
+ *  Viene letto un elemento in piu' del limite per sapere se esiste una pagina successiva.
+ * @param <T> Il tipo degli elementi letti.
+ */
+class PageQuery<T> {
+    private final String from;
+    private final List<String> columns;
+    private final Class<T> type;
+    private final Function<T, PageKey> keyOf;
+
+    /**
+     * @param from La tabella da leggere, eventualmente seguita da una condizione
+     *  ("loans WHERE loan_end IS NULL") che puo' contenere parametri con nome, legati
+     *  in #fetch(Jdbi, PageKey, int, Map).
+     * @param columns Le colonne di ordinamento, l'ultima delle quali rende la chiave univoca.
+     * @param type La classe degli elementi, mappata dai RowMapper registrati.
+     * @param keyOf Estrae da un elemento i valori delle colonne di ordinamento.
+     */
+    PageQuery(String from, List<String> columns, Class<T> type, Function<T, PageKey> keyOf) {
+        this.from = from;
+        this.columns = columns;
+        this.type = type;
+        this.keyOf = keyOf;
+    }
+
+    /**
+     * @brief Legge la pagina che segue la chiave specificata.
+     * @throws IllegalArgumentException Se il limite non e' positivo o se la chiave non
+     *  appartiene a questo ordinamento.
+     */
+    Page<T> fetch(Jdbi jdbi, PageKey after, int limit) {
+        return this.fetch(jdbi, after, limit, Map.of());
+    }
+
+    /**
+     * @brief Legge la pagina che segue la chiave specificata, legando i parametri della
+     *  condizione passata al costruttore.
+     * @param bindings I valori dei parametri della condizione, per nome.
+     * @throws IllegalArgumentException Se il limite non e' positivo o se la chiave non
+     *  appartiene a questo ordinamento.
+     */
+    Page<T> fetch(Jdbi jdbi, PageKey after, int limit, Map<String, Object> bindings) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Dimensione della pagina non valida: " + limit);
+        }
+
+        List<Object> values = after.getValues();
+        if (!after.isFirst() && values.size() != this.columns.size()) {
+            throw new IllegalArgumentException("Chiave di pagina non valida per l'ordinamento: " + after);
+        }
+
+        String orderBy = String.join(", ", this.columns);
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(this.from);
+
+        if (!after.isFirst()) {
+            sql.append(this.from.contains(" WHERE ") ? " AND " : " WHERE ")
+                .append("(").append(orderBy).append(") > (");
+
+            for (int i = 0; i < values.size(); i++) {
+                sql.append(i == 0 ? ":k" : ", :k").append(i);
+            }
+            sql.append(")");
+        }
+
+        sql.append(" ORDER BY ").append(orderBy).append(" LIMIT :limit");
+
+        List<T> items = jdbi.withHandle(handle -> {
+            Query query = handle.createQuery(sql.toString())
+                .bind("limit", limit + 1)
+                .bindMap(bindings);
+
+            for (int i = 0; i < values.size(); i++) {
+                query.bind("k" + i, values.get(i));
+            }
+
+            return query.mapTo(this.type).list();
+        });
+
+        if (items.size() <= limit) {
+            return new Page<>(items, Optional.empty());
+        }
+
+        List<T> page = items.subList(0, limit);
+        return new Page<>(page, Optional.of(this.keyOf.apply(page.get(limit - 1))));
+    }
+}
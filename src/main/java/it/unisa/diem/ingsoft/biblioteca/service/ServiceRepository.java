@@ -4,18 +4,36 @@
  */
 package it.unisa.diem.ingsoft.biblioteca.service;
 
+import it.unisa.diem.ingsoft.biblioteca.QueryMetrics;
+
 public class ServiceRepository {
     private final AuthService authService;
     private final UserService userService;
     private final BookService bookService;
     private final LoanService loanService;
+    private final AsyncServices asyncServices;
+    private final OverdueMonitor overdueMonitor;
+    private final QueryMetrics queryMetrics;
 
     public ServiceRepository(AuthService authService, UserService userService,
                              BookService bookService, LoanService loanService) {
+        this(authService, userService, bookService, loanService, new QueryMetrics());
+    }
+
+    /**
+     * @param queryMetrics Le statistiche delle query del database usato dai service,
+     *  mostrate dalla vista di diagnostica.
+     */
+    public ServiceRepository(AuthService authService, UserService userService,
+                             BookService bookService, LoanService loanService,
+                             QueryMetrics queryMetrics) {
         this.userService = userService;
         this.bookService = bookService;
         this.loanService = loanService;
         this.authService = authService;
+        this.asyncServices = new AsyncServices(this);
+        this.overdueMonitor = new OverdueMonitor(loanService);
+        this.queryMetrics = queryMetrics;
     }
 
     public AuthService getAuthService() {
@@ -33,4 +51,16 @@ public class ServiceRepository {
     public UserService getUserService() {
         return this.userService;
     }
+
+    public AsyncServices getAsyncServices() {
+        return this.asyncServices;
+    }
+
+    public OverdueMonitor getOverdueMonitor() {
+        return this.overdueMonitor;
+    }
+
+    public QueryMetrics getQueryMetrics() {
+        return this.queryMetrics;
+    }
 }
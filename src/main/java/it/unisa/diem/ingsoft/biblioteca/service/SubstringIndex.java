@@ -0,0 +1,407 @@
+/**
+ * @brief Package dei service
+ * @package it.unisa.diem.ingsoft.biblioteca.service
+ */
+package it.unisa.diem.ingsoft.biblioteca.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jdbi.v3.core.Handle;
+
+import it.unisa.diem.ingsoft.biblioteca.Database;
+import it.unisa.diem.ingsoft.biblioteca.Dialect;
+
+/**
+ * @brief Indice in memoria per la ricerca per sottostringa su chiavi brevi (ISBN e matricole).
+ *  Per ogni trigramma di caratteri viene mantenuta la lista ordinata delle chiavi che lo
+ *  contengono, compressa con codifica delta a lunghezza variabile. Una ricerca interseca le
+ *  liste dei trigrammi della sottostringa e verifica i candidati.
+ *  Le chiavi rimosse vengono marcate come cancellate; l'indice viene ricompattato quando le
+ *  chiavi cancellate superano quelle attive.
+ *  Il confronto non distingue maiuscole e minuscole, come la LIKE di SQLite.
+ *  Su PostgreSQL l'indice e' disabilitato: il server puo' essere condiviso da piu' sedi,
+ *  di cui l'indice non vedrebbe le modifiche, e le ricerche usano gli indici trigram GIN.
+ *  Con ReplicatedDatabase le chiavi aggiunte o rimosse dalle altre sedi vengono applicate
+ *  all'indice quando arrivano alla replica locale.
+ */
+public class SubstringIndex {
+    /**
+     * @brief Numero massimo di chiavi trovate per cui conviene interrogare il database per
+     *  chiave primaria: oltre questa soglia e' piu' efficiente la scansione SQL.
+     */
+    public static final int MAX_LOOKUP_KEYS = 1000;
+
+    private static final int GRAM = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private Map<Long, Postings> postings = new HashMap<>();
+    private final boolean enabled;
+    // La query che legge le chiavi, per reload
+    private final String source;
+
+    private SubstringIndex(boolean enabled, String source) {
+        this.enabled = enabled;
+        this.source = source;
+    }
+
+    /**
+     * @brief Restituisce l'indice degli ISBN dei libri condiviso dai service del database,
+     *  costruendolo alla prima richiesta.
+     */
+    public static SubstringIndex ofBookIsbns(Database database) {
+        return database.getShared("index.books.isbn", db -> SubstringIndex.build(db,
+                    "SELECT isbn FROM books ORDER BY rowid"));
+    }
+
+    /**
+     * @brief Restituisce l'indice delle matricole degli utenti condiviso dai service del
+     *  database, costruendolo alla prima richiesta.
+     */
+    public static SubstringIndex ofUserIds(Database database) {
+        return database.getShared("index.users.id", db -> SubstringIndex.build(db,
+                    "SELECT id FROM users ORDER BY rowid"));
+    }
+
+    private static SubstringIndex build(Database database, String sql) {
+        if (database.getDialect() == Dialect.POSTGRES) {
+            return new SubstringIndex(false, sql);
+        }
+
+        SubstringIndex index = new SubstringIndex(true, sql);
+
+        database.getReadJdbi()
+            .useHandle(handle -> handle.createQuery(sql)
+                    .mapTo(String.class)
+                    .useStream(stream -> stream.forEach(index::add)));
+
+        return index;
+    }
+
+    /**
+     * @brief Ricostruisce l'indice rileggendo tutte le chiavi dal database, ad esempio dopo
+     *  che la replica di un ReplicatedDatabase e' stata ricopiata da capo.
+     * @param database Il database da cui leggere le chiavi.
+     */
+    public void reload(Database database) {
+        if (!this.enabled) {
+            return;
+        }
+
+        List<String> keys = database.getReadJdbi()
+            .withHandle(handle -> handle.createQuery(this.source)
+                    .mapTo(String.class)
+                    .list());
+
+        this.lock.writeLock().lock();
+        try {
+            this.keys.clear();
+            this.ids.clear();
+            this.deleted.clear();
+            this.postings = new HashMap<>();
+
+            for (String key : keys) {
+                if (!this.ids.containsKey(key)) {
+                    int id = this.keys.size();
+                    this.keys.add(key);
+                    this.ids.put(key, id);
+                    this.indexKey(key, id);
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @brief Aggiunge una chiave all'indice. Non fa nulla se la chiave e' gia' presente.
+     */
+    public void add(String key) {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.ids.containsKey(key)) {
+                return;
+            }
+
+            int id = this.keys.size();
+            this.keys.add(key);
+            this.ids.put(key, id);
+            this.indexKey(key, id);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @brief Rimuove una chiave dall'indice. Non fa nulla se la chiave non e' presente.
+     */
+    public void remove(String key) {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            Integer id = this.ids.remove(key);
+            if (id == null) {
+                return;
+            }
+
+            this.deleted.set(id);
+            if (this.deleted.cardinality() > this.ids.size()) {
+                this.compact();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @brief Aggiunge le chiavi all'indice dopo il commit della transazione dell'handle, o
+     *  subito se l'handle non e' in una transazione: le chiavi inserite da una transazione
+     *  annullata non entrano nell'indice.
+     * @param handle L'handle con cui sono state inserite le righe.
+     * @param keys Le chiavi inserite.
+     */
+    public void add(Handle handle, Collection<String> keys) {
+        List<String> added = List.copyOf(keys);
+        this.afterCommit(handle, () -> added.forEach(this::add));
+    }
+
+    /**
+     * @brief Rimuove una chiave dall'indice dopo il commit della transazione dell'handle, o
+     *  subito se l'handle non e' in una transazione.
+     * @param handle L'handle con cui e' stata eliminata la riga.
+     * @param key La chiave eliminata.
+     */
+    public void remove(Handle handle, String key) {
+        this.afterCommit(handle, () -> this.remove(key));
+    }
+
+    private void afterCommit(Handle handle, Runnable update) {
+        if (handle.isInTransaction()) {
+            handle.afterCommit(update);
+        } else {
+            update.run();
+        }
+    }
+
+    /**
+     * @brief Cerca le chiavi che contengono la stringa specificata in qualsiasi posizione.
+     * @param substring La stringa da cercare.
+     * @return Le chiavi trovate, nell'ordine di inserimento, oppure Optional.empty() se la
+     *  stringa e' piu' corta di un trigramma o l'indice e' disabilitato e non puo' rispondere.
+     */
+    public Optional<List<String>> find(String substring) {
+        String normalized = SubstringIndex.normalize(substring);
+        if (!this.enabled || normalized.length() < GRAM) {
+            return Optional.empty();
+        }
+
+        this.lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            for (int i = 0; i + GRAM <= normalized.length(); i++) {
+                Postings list = this.postings.get(SubstringIndex.gram(normalized, i));
+                if (list == null) {
+                    return Optional.of(List.of());
+                }
+
+                lists.add(list);
+            }
+
+            // Si parte dalla lista piu' corta per ridurre il lavoro dell'intersezione
+            lists.sort((a, b) -> Integer.compare(a.count, b.count));
+            int[] candidates = lists.get(0).decode();
+            int size = candidates.length;
+            for (int i = 1; i < lists.size() && size > 0; i++) {
+                size = lists.get(i).intersect(candidates, size);
+            }
+
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int id = candidates[i];
+                String key = this.keys.get(id);
+
+                if (!this.deleted.get(id) && SubstringIndex.normalize(key).contains(normalized)) {
+                    result.add(key);
+                }
+            }
+
+            return Optional.of(result);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @brief Cerca le chiavi che contengono la stringa specificata, solo se sono abbastanza
+     *  poche da poter essere recuperate dal database per chiave primaria.
+     * @param substring La stringa da cercare.
+     * @return Le chiavi trovate, oppure Optional.empty() se la ricerca va eseguita con una
+     *  scansione SQL.
+     * @see SubstringIndex#MAX_LOOKUP_KEYS
+     */
+    public Optional<List<String>> findSelective(String substring) {
+        return this.find(substring)
+            .filter(found -> found.size() <= MAX_LOOKUP_KEYS);
+    }
+
+    /**
+     * @brief Restituisce il numero di chiavi presenti nell'indice.
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.ids.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void indexKey(String key, int id) {
+        String normalized = SubstringIndex.normalize(key);
+
+        for (int i = 0; i + GRAM <= normalized.length(); i++) {
+            // Un trigramma ripetuto nella stessa chiave va inserito una sola volta
+            if (normalized.lastIndexOf(normalized.substring(i, i + GRAM), i - 1) >= 0) {
+                continue;
+            }
+
+            long gram = SubstringIndex.gram(normalized, i);
+            this.postings.computeIfAbsent(gram, g -> new Postings()).append(id);
+        }
+    }
+
+    private void compact() {
+        List<String> live = new ArrayList<>();
+        for (int id = 0; id < this.keys.size(); id++) {
+            if (!this.deleted.get(id)) {
+                live.add(this.keys.get(id));
+            }
+        }
+
+        this.keys.clear();
+        this.ids.clear();
+        this.deleted.clear();
+        this.postings = new HashMap<>();
+
+        for (String key : live) {
+            int id = this.keys.size();
+            this.keys.add(key);
+            this.ids.put(key, id);
+            this.indexKey(key, id);
+        }
+    }
+
+    private static String normalize(String key) {
+        return key.toLowerCase(Locale.ROOT);
+    }
+
+    private static long gram(String key, int start) {
+        return ((long) key.charAt(start) << 32)
+            | ((long) key.charAt(start + 1) << 16)
+            | key.charAt(start + 2);
+    }
+
+    /**
+     * @brief Lista crescente di identificativi, salvata come differenze tra elementi
+     *  consecutivi in varint (7 bit per byte).
+     */
+    private static class Postings {
+        private byte[] bytes = new byte[4];
+        private int length;
+        private int count;
+        private int last = -1;
+
+        void append(int id) {
+            int delta = id - this.last;
+            this.last = id;
+            this.count++;
+
+            if (this.length + 5 > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+
+            while ((delta & ~0x7F) != 0) {
+                this.bytes[this.length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            this.bytes[this.length++] = (byte) delta;
+        }
+
+        int[] decode() {
+            int[] ids = new int[this.count];
+            int position = 0;
+            int value = -1;
+
+            for (int i = 0; i < this.count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = this.bytes[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+
+                value += delta;
+                ids[i] = value;
+            }
+
+            return ids;
+        }
+
+        /**
+         * @brief Mantiene nei primi elementi di candidates solo quelli presenti anche in
+         *  questa lista, decodificandola una sola volta in parallelo ai candidati.
+         * @return Il numero di candidati rimasti.
+         */
+        int intersect(int[] candidates, int size) {
+            int kept = 0;
+            int next = 0;
+            int position = 0;
+            int value = -1;
+
+            for (int i = 0; i < this.count && next < size; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = this.bytes[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+
+                value += delta;
+
+                while (next < size && candidates[next] < value) {
+                    next++;
+                }
+
+                if (next < size && candidates[next] == value) {
+                    candidates[kept++] = value;
+                    next++;
+                }
+            }
+
+            return kept;
+        }
+    }
+}
@@ -12,18 +12,34 @@ import it.unisa.diem.ingsoft.biblioteca.exception.DuplicateUserByIdException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidEmailException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIdException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
 import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.model.UserSort;
 
 /**
  * @brief Interfaccia per la gestione degli utenti
  */
-public interface UserService {
+public interface UserService extends ChangeSource {
     /**
      * @brief Recupera una lista di tutti gli utenti registrati.
      * @return Una lista contenente tutti gli utenti.
      */
     List<User> getAll();
 
+    /**
+     * @brief Recupera una pagina degli utenti registrati ordinati secondo il criterio specificato.
+     *  Le pagine vanno lette in sequenza passando ogni volta la chiave restituita dalla
+     *  pagina precedente: il costo di ogni pagina non dipende dalla sua posizione.
+     * @param after La chiave restituita dalla pagina precedente, oppure PageKey.first().
+     * @param limit Il numero massimo di elementi della pagina.
+     * @param sort Il criterio di ordinamento.
+     * @return La pagina, con la chiave per leggere la successiva.
+     * @throws IllegalArgumentException Se limit non e' positivo o se la chiave non
+     *  corrisponde al criterio di ordinamento.
+     */
+    Page<User> getPage(PageKey after, int limit, UserSort sort);
+
     /**
      * @brief Recupera una lista di tutti gli utenti registrati la cui matricola contiene la stringa
      *  specificata in qualsiasi posizione.
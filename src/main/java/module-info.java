@@ -5,6 +5,8 @@ module it.unisa.diem.ingsoft.biblioteca {
     requires transitive java.sql;
     requires transitive org.jdbi.v3.core;
     requires transitive org.xerial.sqlitejdbc;
+    requires org.postgresql.jdbc;
+    requires com.zaxxer.hikari;
 
     requires transitive jbcrypt;
     requires javafx.graphics;
@@ -21,6 +23,7 @@ module it.unisa.diem.ingsoft.biblioteca {
     exports it.unisa.diem.ingsoft.biblioteca.exception;
 
     requires org.slf4j;
+    requires java.management;
     requires jdk.jshell;
     requires java.desktop;
 
@@ -0,0 +1,95 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.service.AsyncServices;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseAuthService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
+import it.unisa.diem.ingsoft.biblioteca.service.ServiceRepository;
+import it.unisa.diem.ingsoft.biblioteca.service.UserService;
+
+public class DatabaseAsyncServicesTest {
+    @TempDir
+    private Path tempDir;
+
+    private Database database;
+    private AsyncServices asyncServices;
+
+    @BeforeEach
+    public void setup() {
+        this.database = Database.pooled(this.tempDir.resolve("async.db"), 2, Duration.ofSeconds(5));
+
+        UserService userService = new DatabaseUserService(this.database);
+        BookService bookService = new DatabaseBookService(this.database);
+        ServiceRepository services = new ServiceRepository(new DatabaseAuthService(this.database),
+                userService, bookService, new DatabaseLoanService(userService, bookService, this.database));
+
+        assertDoesNotThrow(() -> bookService.add(new Book("1234567890123", "TITOLO", "AUTORE",
+                        1990, 3, 3, "DRAMMATICO", "DESC")));
+        this.asyncServices = services.getAsyncServices();
+    }
+
+    @AfterEach
+    public void teardown() {
+        this.database.close();
+    }
+
+    @Test
+    public void supply_RunsOffCallerThread() {
+        Thread caller = Thread.currentThread();
+
+        CompletableFuture<Thread> future = this.asyncServices.supply(services -> Thread.currentThread());
+
+        Thread worker = assertDoesNotThrow(() -> future.get());
+        assertNotSame(caller, worker);
+    }
+
+    @Test
+    public void supply_ReturnsResult() {
+        CompletableFuture<List<Book>> future = this.asyncServices
+            .supply(services -> services.getBookService().getAllByTitleContaining("TITOLO"));
+
+        List<Book> books = assertDoesNotThrow(() -> future.get());
+        assertEquals(1, books.size());
+    }
+
+    @Test
+    public void supply_PropagatesException() {
+        CompletableFuture<Object> future = this.asyncServices.supply(services -> {
+            throw new IllegalStateException("ERRORE");
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get());
+        assertEquals(IllegalStateException.class, e.getCause().getClass());
+    }
+
+    @Test
+    public void supplyAuth_RunsOnAuthExecutor() {
+        CompletableFuture<String> future = this.asyncServices.supplyAuth(auth -> {
+            auth.setup("Pass", "A1", "A2", "A3");
+            return Thread.currentThread().getName();
+        });
+
+        assertEquals("auth", assertDoesNotThrow(() -> future.get()));
+        assertTrue(assertDoesNotThrow(() -> this.asyncServices.supplyAuth(auth -> auth.checkPassword("Pass")).get()));
+    }
+}
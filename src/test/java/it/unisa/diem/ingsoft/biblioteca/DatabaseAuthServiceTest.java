@@ -5,6 +5,8 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Map;
+
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,6 +17,7 @@ import it.unisa.diem.ingsoft.biblioteca.service.AuthService;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseAuthService;
 
 public class DatabaseAuthServiceTest {
+    private Database database;
     private AuthService authService;
 
     @BeforeAll
@@ -26,8 +29,8 @@ public class DatabaseAuthServiceTest {
 
     @BeforeEach
     public void setup() {
-        Database database = Database.inMemory();
-        this.authService = new DatabaseAuthService(database);
+        this.database = TestDatabases.create();
+        this.authService = new DatabaseAuthService(this.database);
     }
 
     @Test
@@ -61,6 +64,16 @@ public class DatabaseAuthServiceTest {
         assertTrue(this.authService.checkPassword(newPass));
     }
 
+    @Test
+    public void changePassword_SingleUpdate() throws Exception {
+        this.authService.setup("OldPass", "A1", "A2", "A3");
+        QueryCounter queries = QueryCounter.attach(this.database);
+
+        // L'update non controlla prima la presenza della configurazione
+        queries.assertQueries(1, () -> this.authService.changePassword("NewPass123"));
+        assertTrue(this.authService.checkPassword("NewPass123"));
+    }
+
     @Test
     public void changeAnswer_UpdatesSpecificAnswer() {
         this.authService.setup("Pass", "OldAns1", "Ans2", "Ans3");
@@ -98,6 +111,45 @@ public class DatabaseAuthServiceTest {
         });
     }
 
+    @Test
+    public void changeAnswers_UpdatesOnlyGivenAnswers() {
+        this.authService.setup("Pass", "Ans1", "Ans2", "Ans3");
+
+        this.authService.changeAnswers(Map.of(1, "Nuova1", 3, "Nuova3"));
+
+        assertTrue(this.authService.checkAnswer("Nuova1", 1));
+        assertTrue(this.authService.checkAnswer("Ans2", 2));
+        assertTrue(this.authService.checkAnswer("Nuova3", 3));
+        assertThrows(IllegalArgumentException.class, () -> this.authService.changeAnswers(Map.of(4, "X")));
+    }
+
+    @Test
+    public void checkPassword_RehashesWhenCostChanges() {
+        new DatabaseAuthService(this.database, 4).setup("Pass", "A1", "A2", "A3");
+        AuthService stronger = new DatabaseAuthService(this.database, 5);
+
+        // Un controllo fallito non modifica l'hash
+        assertFalse(stronger.checkPassword("Sbagliata"));
+        assertTrue(this.readHash("password_hash").startsWith("$2a$04$"));
+
+        assertTrue(stronger.checkPassword("Pass"));
+        assertTrue(this.readHash("password_hash").startsWith("$2a$05$"));
+        assertTrue(stronger.checkPassword("Pass"));
+
+        assertTrue(stronger.checkAnswer("A2", 2));
+        assertTrue(this.readHash("question_two").startsWith("$2a$05$"));
+        assertTrue(this.readHash("question_one").startsWith("$2a$04$"));
+
+        assertThrows(IllegalArgumentException.class, () -> new DatabaseAuthService(this.database, 3));
+    }
+
+    private String readHash(String column) {
+        return this.database.getJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT " + column + " FROM auth")
+                    .mapTo(String.class)
+                    .one());
+    }
+
     @AfterAll
     public static void teardown() {
         System.out.println("--- FINE TEST AUTH ---");
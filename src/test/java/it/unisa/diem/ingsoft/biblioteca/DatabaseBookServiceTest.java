@@ -3,10 +3,16 @@ package it.unisa.diem.ingsoft.biblioteca;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,8 +24,16 @@ import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.MissingBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
 import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.BookQuery;
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.service.BookCache;
 import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.ChangeListener;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
 
 public class DatabaseBookServiceTest {
@@ -32,12 +46,17 @@ public class DatabaseBookServiceTest {
     private final String invalidIsbn = "123456789";
     private final String nonExistentIsbn = "NON-ESISTE";
 
+    private Database database;
     private BookService bookService;
+    private BookCache cache;
+    private QueryCounter queries;
 
     @BeforeEach
     public void setup() {
-        Database database = Database.inMemory();
-        this.bookService = new DatabaseBookService(database);
+        this.database = TestDatabases.create();
+        this.bookService = new DatabaseBookService(this.database);
+        this.cache = BookCache.of(this.database);
+        this.queries = QueryCounter.attach(this.database);
     }
 
     private void addBook(String isbn, int copies, int remainingCopies) {
@@ -62,6 +81,26 @@ public class DatabaseBookServiceTest {
         });
     }
 
+    @Test
+    public void add_SingleInsert() throws Exception {
+        Book book = new Book(this.validIsbn, "1984", "George Orwell", 1948, 50, 3, "Distopico", "Un romanzo cupo");
+        this.queries.assertQueries(1, () -> this.bookService.add(book));
+
+        // Il duplicato viene riconosciuto dall'insert stesso
+        assertThrows(DuplicateBookByIsbnException.class,
+                () -> this.queries.assertQueries(1, () -> this.bookService.add(book)));
+    }
+
+    @Test
+    public void add_DuplicateIsbnBeforeNegativeCopies() {
+        this.addBook(this.validIsbn, 50, 5);
+
+        assertThrows(DuplicateBookByIsbnException.class, () -> {
+            Book duplicateBook = new Book(this.validIsbn, "1984", "George Orwell", 1948, -4, 3, "Distopico", "Un romanzo cupo");
+            this.bookService.add(duplicateBook);
+        });
+    }
+
     @Test
     public void add_InvalidIsbn() {
         assertThrows(InvalidIsbnException.class, () -> {
@@ -141,6 +180,20 @@ public class DatabaseBookServiceTest {
         });
     }
 
+    @Test
+    public void addAll_RepeatedIsbnRollsBackWholeList() {
+        DuplicateBooksByIsbnException e = assertThrows(DuplicateBooksByIsbnException.class, () ->
+                this.bookService.addAll(List.of(
+                    new Book(this.validIsbn, "Jojo", "Hirohiko Araki", 1987, 50, 9, "Fantasy", "Parte 7"),
+                    new Book(this.secondValidIsbn, "One piece", "Oda", 1999, 10, 1, "Adv", "Peak"),
+                    new Book(this.validIsbn, "Jojo", "Hirohiko Araki", 1987, 50, 9, "Fantasy", "Ripetuto"))));
+
+        assertEquals(List.of(this.validIsbn), e.getIsbns());
+        assertFalse(this.bookService.existsByIsbn(this.validIsbn));
+        assertFalse(this.bookService.existsByIsbn(this.secondValidIsbn));
+        assertTrue(this.bookService.getAllByIsbnContaining("123456").isEmpty());
+    }
+
     @Test
     public void getByIsbn_ExistingIsbn() {
         this.addBook(this.searchIsn, 50, 19);
@@ -199,6 +252,30 @@ public class DatabaseBookServiceTest {
         assertFalse(this.bookService.getAllByIsbnContaining("789").isEmpty());
     }
 
+    @Test
+    public void getAllByIsbn_FollowsAddAndRemove() {
+        this.addBook(this.validIsbn, 50, 50);
+
+        assertEquals(1, this.bookService.getAllByIsbnContaining("56789").size());
+        assertEquals(1, this.bookService.getAllByIsbnContaining("9").size());
+        assertTrue(this.bookService.getAllByIsbnContaining("000000").isEmpty());
+
+        assertDoesNotThrow(() -> this.bookService.removeByIsbn(this.validIsbn));
+        assertTrue(this.bookService.getAllByIsbnContaining("56789").isEmpty());
+    }
+
+    @Test
+    public void getAllByIsbn_IgnoresRolledBackRemove() {
+        this.addBook(this.validIsbn, 50, 50);
+
+        assertThrows(IllegalStateException.class, () -> this.database.getJdbi().useTransaction(handle -> {
+            this.bookService.removeByIsbn(this.validIsbn);
+            throw new IllegalStateException("rollback");
+        }));
+
+        assertEquals(1, this.bookService.getAllByIsbnContaining("56789").size());
+    }
+
     @Test
     public void getAllByTitle_MatchingString() {
         this.addBook(this.validIsbn, 50, 5);
@@ -206,6 +283,49 @@ public class DatabaseBookServiceTest {
         assertFalse(this.bookService.getAllByTitleContaining("Titolo").isEmpty());
     }
 
+    @Test
+    public void getAllByTitle_ShortAndCaseInsensitive() {
+        this.addBook(this.validIsbn, 50, 5);
+
+        assertEquals(1, this.bookService.getAllByTitleContaining("it").size());
+        assertEquals(1, this.bookService.getAllByTitleContaining("TOLO te").size());
+        assertTrue(this.bookService.getAllByTitleContaining("Assente").isEmpty());
+    }
+
+    @Test
+    public void getAllByTitle_FollowsUpdatesAndRemovals() {
+        this.addBook(this.updateIsbn, 10, 10);
+
+        assertDoesNotThrow(() -> {
+            Book book = new Book(this.updateIsbn, "Il nome della rosa", "Umberto Eco", 1980, 10, 10, "Giallo", "Desc");
+            this.bookService.updateByIsbn(book);
+        });
+
+        assertTrue(this.bookService.getAllByTitleContaining("Titolo").isEmpty());
+        assertEquals(1, this.bookService.getAllByTitleContaining("della ro").size());
+        assertEquals(1, this.bookService.getAllByAuthorContaining("eco").size());
+
+        assertDoesNotThrow(() -> this.bookService.removeByIsbn(this.updateIsbn));
+        assertTrue(this.bookService.getAllByTitleContaining("della ro").isEmpty());
+    }
+
+    @Test
+    public void search_RankedByField() {
+        assertDoesNotThrow(() -> {
+            this.bookService.add(new Book(this.validIsbn, "Storia di Roma", "Autore", 2000, 1, 1, "Storico", "Impero"));
+            this.bookService.add(new Book(this.secondValidIsbn, "Impero", "Autore", 2001, 1, 1, "Storico", "Roma antica"));
+        });
+
+        List<Book> results = this.bookService.search("rom", 10);
+        assertEquals(2, results.size());
+        assertEquals(this.validIsbn, results.get(0).getIsbn());
+
+        assertEquals(1, this.bookService.search("impero antica", 10).size());
+        assertEquals(1, this.bookService.search("rom", 1).size());
+        assertTrue(this.bookService.search("  ", 10).isEmpty());
+        assertTrue(this.bookService.search("\"roma\" AND", 10).isEmpty());
+    }
+
     @Test
     public void existsByIsbn_ExistingIsbn() {
         this.addBook(this.removeIsbn, 50, 40);
@@ -263,6 +383,34 @@ public class DatabaseBookServiceTest {
         });
     }
 
+    @Test
+    public void updateByIsbn_SingleUpdate() throws Exception {
+        this.addBook(this.updateIsbn, 1, 0);
+
+        Book updatedBook = new Book(this.updateIsbn, "Titolo", "Autore", 2025, 4, 4, "Politica", "Desc");
+        this.queries.assertQueries(1, () -> this.bookService.updateByIsbn(updatedBook));
+
+        Book unknownBook = new Book(this.validIsbn, "Titolo", "Autore", 2025, 4, 4, "Politica", "Desc");
+        assertThrows(UnknownBookByIsbnException.class,
+                () -> this.queries.assertQueries(1, () -> this.bookService.updateByIsbn(unknownBook)));
+    }
+
+    @Test
+    public void updateByIsbn_UnknownBeforeNegativeCopies() {
+        Book invalidUpdate = new Book(this.validIsbn, "Titolo", "Autore", 2025, -4, 3, "Politica", "Desc");
+        assertThrows(UnknownBookByIsbnException.class, () -> {
+            this.bookService.updateByIsbn(invalidUpdate);
+        });
+    }
+
+    @Test
+    public void removeAndUpdateCopies_SingleStatement() throws Exception {
+        this.addBook(this.removeIsbn, 5, 4);
+
+        this.queries.assertQueries(1, () -> this.bookService.updateRemainingCopies(this.removeIsbn, 1));
+        this.queries.assertQueries(1, () -> assertTrue(this.bookService.removeByIsbn(this.removeIsbn)));
+    }
+
     @Test
     public void updateByIsbn_NegativeCopies() {
         this.addBook(this.validIsbn, 4, 4);
@@ -297,6 +445,68 @@ public class DatabaseBookServiceTest {
         });
     }
 
+    @Test
+    public void getPage_WalksCatalogueInOrder() {
+        // Titoli ripetuti: l'ISBN separa i libri con lo stesso titolo tra una pagina e l'altra
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            books.add(new Book(String.format("97800000000%02d", 9 - i), "TITOLO " + (i % 3),
+                        "AUTORE", 2000 + i, 1, 1, "GENERE", "DESC"));
+        }
+        assertDoesNotThrow(() -> this.bookService.addAll(books));
+
+        List<Book> walked = new ArrayList<>();
+        PageKey after = PageKey.first();
+        int pages = 0;
+        while (true) {
+            Page<Book> page = this.bookService.getPage(after, 3, BookSort.TITLE);
+            walked.addAll(page.getItems());
+            pages++;
+
+            if (!page.hasNext()) {
+                break;
+            }
+            after = page.getNextKey().get();
+        }
+
+        List<String> expected = books.stream()
+            .sorted(Comparator.comparing(Book::getTitle).thenComparing(Book::getIsbn))
+            .map(Book::getIsbn)
+            .toList();
+        assertEquals(expected, walked.stream().map(Book::getIsbn).toList());
+        assertEquals(4, pages);
+    }
+
+    @Test
+    public void getPage_LastPageHasNoNextKey() {
+        this.addBook(this.validIsbn, 5, 5);
+        this.addBook(this.secondValidIsbn, 5, 5);
+
+        Page<Book> page = this.bookService.getPage(PageKey.first(), 2, BookSort.RELEASE_YEAR);
+        assertEquals(2, page.getItems().size());
+        assertFalse(page.hasNext());
+
+        assertTrue(this.bookService.getPage(PageKey.first(), 1, BookSort.ISBN).hasNext());
+    }
+
+    @Test
+    public void getPage_InvalidArguments() {
+        this.addBook(this.validIsbn, 5, 5);
+        this.addBook(this.secondValidIsbn, 5, 5);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            this.bookService.getPage(PageKey.first(), 0, BookSort.TITLE);
+        });
+
+        // Una chiave ottenuta con un ordinamento non vale per un altro
+        PageKey isbnKey = this.bookService.getPage(PageKey.first(), 1, BookSort.ISBN)
+            .getNextKey()
+            .get();
+        assertThrows(IllegalArgumentException.class, () -> {
+            this.bookService.getPage(isbnKey, 1, BookSort.TITLE);
+        });
+    }
+
     @Test
     public void updateRemainingCopies_NegativeCopies() {
         String isbn = this.copiesIsbn;
@@ -314,4 +524,228 @@ public class DatabaseBookServiceTest {
             this.bookService.updateRemainingCopies(this.nonExistentIsbn, 1);
         });
     }
+
+    @Test
+    public void getByIsbn_RepeatedReadIsCached() {
+        assumeTrue(this.cache.isEnabled(), "Cache disattivata su PostgreSQL");
+        this.addBook(this.validIsbn, 5, 5);
+
+        this.bookService.getByIsbn(this.validIsbn);
+        long misses = this.cache.getMissCount();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(this.validIsbn, this.bookService.getByIsbn(this.validIsbn).get().getIsbn());
+        }
+
+        assertEquals(misses, this.cache.getMissCount());
+        assertEquals(10, this.cache.getHitCount());
+    }
+
+    @Test
+    public void getByIsbn_ReturnsCopyOfCachedBook() {
+        this.addBook(this.validIsbn, 5, 5);
+
+        this.bookService.getByIsbn(this.validIsbn).get().setTitle("MODIFICATO");
+
+        assertEquals("Titolo Test", this.bookService.getByIsbn(this.validIsbn).get().getTitle());
+    }
+
+    @Test
+    public void getByIsbn_InvalidatedByWrites() {
+        assertTrue(this.bookService.getByIsbn(this.validIsbn).isEmpty());
+
+        // L'ISBN assente e' in cache: l'inserimento lo invalida
+        this.addBook(this.validIsbn, 5, 5);
+        assertEquals(5, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+
+        assertDoesNotThrow(() -> this.bookService.updateRemainingCopies(this.validIsbn, -2));
+        assertEquals(3, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+
+        assertDoesNotThrow(() -> this.bookService.updateByIsbn(new Book(this.validIsbn, "NUOVO TITOLO",
+                        "Autore Test", 2020, 5, 5, "Genre", "Desc")));
+        assertEquals("NUOVO TITOLO", this.bookService.getByIsbn(this.validIsbn).get().getTitle());
+
+        assertDoesNotThrow(() -> this.bookService.removeByIsbn(this.validIsbn));
+        assertTrue(this.bookService.getByIsbn(this.validIsbn).isEmpty());
+
+        assertTrue(this.bookService.getByIsbn(this.secondValidIsbn).isEmpty());
+        assertDoesNotThrow(() -> this.bookService.addAll(List.of(new Book(this.secondValidIsbn, "Titolo",
+                        "Autore", 2020, 1, 1, "Genre", "Desc"))));
+        assertTrue(this.bookService.getByIsbn(this.secondValidIsbn).isPresent());
+    }
+
+    @Test
+    public void getByIsbn_SeesWritesFromOtherSites() {
+        assumeTrue(this.database.getDialect() == Dialect.POSTGRES, "Sedi condivise solo su PostgreSQL");
+        assertFalse(this.cache.isEnabled());
+        this.addBook(this.validIsbn, 5, 5);
+        assertEquals(5, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+
+        Database site = TestDatabases.openSite();
+        try {
+            assertDoesNotThrow(() -> new DatabaseBookService(site).updateRemainingCopies(this.validIsbn, -2));
+        } finally {
+            site.close();
+        }
+
+        assertEquals(3, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+    }
+
+    @Test
+    public void bookCache_EvictsLeastRecentlyRead() {
+        BookCache cache = new BookCache(2, Duration.ofMinutes(1));
+        Book book = new Book(this.validIsbn, "Titolo", "Autore", 2020, 1, 1, "Genre", "Desc");
+
+        cache.get("A", isbn -> Optional.of(book));
+        cache.get("B", isbn -> Optional.of(book));
+        cache.get("A", isbn -> Optional.of(book));
+        cache.get("C", isbn -> Optional.of(book));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // B era il meno recente: viene riletto, A resta in cache
+        long misses = cache.getMissCount();
+        cache.get("A", isbn -> Optional.of(book));
+        assertEquals(misses, cache.getMissCount());
+        cache.get("B", isbn -> Optional.of(book));
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void bookCache_ExpiresAfterTtl() {
+        BookCache cache = new BookCache(10, Duration.ofMillis(20));
+
+        cache.get(this.validIsbn, isbn -> Optional.empty());
+        assertDoesNotThrow(() -> Thread.sleep(40));
+        cache.get(this.validIsbn, isbn -> Optional.empty());
+
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void changes_PublishedForEveryWrite() {
+        List<EntityChange> changes = new ArrayList<>();
+        ChangeListener listener = changes::add;
+        this.bookService.addChangeListener(listener);
+
+        this.addBook(this.validIsbn, 5, 5);
+        assertDoesNotThrow(() -> this.bookService.updateByIsbn(
+                    new Book(this.validIsbn, "Nuovo Titolo", "Autore Test", 2020, 5, 5, "Genre", "Desc")));
+        assertDoesNotThrow(() -> this.bookService.removeByIsbn(this.validIsbn));
+
+        assertEquals(List.of(
+                EntityChange.book(EntityChange.Type.ADDED, this.validIsbn),
+                EntityChange.book(EntityChange.Type.UPDATED, this.validIsbn),
+                EntityChange.book(EntityChange.Type.REMOVED, this.validIsbn)), changes);
+    }
+
+    private void addCatalogue() {
+        assertDoesNotThrow(() -> this.bookService.addAll(List.of(
+                new Book("9780000000001", "Il Signore degli Anelli", "J. R. R. Tolkien", 1954, 3, 0, "Fantasy", "Desc"),
+                new Book("9780000000002", "Lo Hobbit", "J. R. R. Tolkien", 2016, 3, 2, "Fantasy", "Desc"),
+                new Book("9780000000003", "Il Silmarillion", "J. R. R. Tolkien", 2017, 2, 0, "Fantasy", "Desc"),
+                new Book("9780000000004", "Racconti Incompiuti", "J. R. R. Tolkien", 2018, 1, 1, "Saggio", "Desc"),
+                new Book("9780000000005", "Il Nome del Vento", "Patrick Rothfuss", 2020, 4, 4, "Fantasy", "Desc"))));
+    }
+
+    @Test
+    public void find_CombinesAllCriteria() {
+        this.addCatalogue();
+
+        List<Book> books = this.bookService.find(BookQuery.builder()
+                .authorContaining("tolkien")
+                .genreContaining("fantasy")
+                .releasedFrom(2015)
+                .availableOnly()
+                .build());
+
+        assertEquals(List.of("9780000000002"), books.stream().map(Book::getIsbn).toList());
+    }
+
+    @Test
+    public void find_SortsAndLimits() {
+        this.addCatalogue();
+
+        List<Book> byYear = this.bookService.find(BookQuery.builder()
+                .releasedBetween(2016, 2020)
+                .sortBy(BookSort.RELEASE_YEAR)
+                .limit(3)
+                .build());
+        assertEquals(List.of("9780000000002", "9780000000003", "9780000000004"),
+                byYear.stream().map(Book::getIsbn).toList());
+
+        List<Book> byTitle = this.bookService.find(BookQuery.builder()
+                .titleContaining("Il")
+                .build());
+        assertEquals(List.of("9780000000005", "9780000000001", "9780000000003"),
+                byTitle.stream().map(Book::getIsbn).toList());
+
+        assertEquals(5, this.bookService.find(BookQuery.builder().titleContaining(" ").build()).size());
+    }
+
+    @Test
+    public void find_UsesBestAvailableIndex() {
+        assumeTrue(this.database.getDialect() == Dialect.SQLITE, "Piano di esecuzione di SQLite");
+        DatabaseBookService service = (DatabaseBookService) this.bookService;
+
+        String trigram = String.join("\n", service.explain(BookQuery.builder()
+                .authorContaining("Tolkien").releasedFrom(2015).availableOnly().build()));
+        assertTrue(trigram.contains("books_trigram"), trigram);
+
+        String years = String.join("\n", service.explain(BookQuery.builder()
+                .titleContaining("Il").releasedBetween(2015, 2020).sortBy(BookSort.RELEASE_YEAR).build()));
+        assertTrue(years.contains("idx_books_release_year_isbn"), years);
+        assertFalse(years.contains("books_trigram"), years);
+
+        String sorted = String.join("\n", service.explain(BookQuery.builder()
+                .availableOnly().sortBy(BookSort.AUTHOR).limit(20).build()));
+        assertTrue(sorted.contains("idx_books_author_isbn"), sorted);
+        assertFalse(sorted.contains("TEMP B-TREE"), sorted);
+    }
+
+    @Test
+    public void bookQuery_RejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> BookQuery.builder().releasedBetween(2020, 2010).build());
+        assertThrows(IllegalArgumentException.class, () -> BookQuery.builder().limit(0));
+        assertThrows(IllegalArgumentException.class, () -> BookQuery.builder().sortBy(null));
+    }
+
+    @Test
+    public void importAll_ReportsEachRejectedBook() {
+        this.addBook(this.validIsbn, 5, 5);
+
+        Book duplicate = new Book(this.validIsbn, "Titolo", "Autore", 2020, 1, 1, "Genre", "Desc");
+        Book invalid = new Book(this.invalidIsbn, "Titolo", "Autore", 2020, 1, 1, "Genre", "Desc");
+        Book negative = new Book(this.secondValidIsbn, "Titolo", "Autore", 2020, -1, 0, "Genre", "Desc");
+        Book valid = new Book(this.secondValidIsbn, "Titolo", "Autore", 2020, 2, 2, "Genre", "Desc");
+        Book repeated = new Book(this.secondValidIsbn, "Altro", "Autore", 2020, 2, 2, "Genre", "Desc");
+
+        BatchResult<Book> result = this.bookService.importAll(List.of(duplicate, invalid, negative, valid, repeated));
+
+        assertEquals(List.of(valid), result.getSucceeded());
+        assertEquals(List.of(duplicate, invalid, negative, repeated), List.copyOf(result.getFailures().keySet()));
+        assertInstanceOf(DuplicateBookByIsbnException.class, result.getFailures().get(duplicate));
+        assertInstanceOf(InvalidIsbnException.class, result.getFailures().get(invalid));
+        assertInstanceOf(NegativeBookCopiesException.class, result.getFailures().get(negative));
+        assertInstanceOf(DuplicateBookByIsbnException.class, result.getFailures().get(repeated));
+        assertEquals("Titolo", this.bookService.getByIsbn(this.secondValidIsbn).get().getTitle());
+    }
+
+    @Test
+    public void existingIsbns_MoreKeysThanOneQuery() {
+        this.addBook(this.validIsbn, 1, 1);
+        this.addBook(this.secondValidIsbn, 1, 1);
+
+        List<String> isbns = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            isbns.add(String.format("9%012d", i));
+        }
+        isbns.add(this.validIsbn);
+        isbns.add(this.secondValidIsbn);
+
+        assertEquals(List.of(this.validIsbn, this.secondValidIsbn),
+                this.bookService.existingIsbns(isbns).stream().sorted(Comparator.reverseOrder()).toList());
+    }
 }
@@ -0,0 +1,132 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.ingsoft.biblioteca.exception.DuplicateBookByIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidBookCopiesException;
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.exception.MalformedBookRowException;
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.ImportReport;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.CatalogueImporter;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+
+public class DatabaseCatalogueImporterTest {
+    private Database database;
+    private BookService bookService;
+    private CatalogueImporter importer;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    public void setup() {
+        this.database = TestDatabases.create();
+        this.bookService = new DatabaseBookService(this.database);
+        this.importer = new CatalogueImporter(this.bookService, this.database, 2);
+    }
+
+    @Test
+    public void importFrom_CsvReportsRejectedRows() throws IOException {
+        this.bookService.importAll(List.of(
+                new Book("9780000000009", "Presente", "Autore", 2000, 1, 1, "Genere", "Desc")));
+
+        String csv = "isbn,title,author,release_year,total_copies,remaining_copies,genre,description\n"
+            + "9780000000001,\"Guerra e pace, volume 1\",Tolstoj,1869,3,3,Romanzo,\"Una \"\"lunga\"\"\nstoria\"\n"
+            + "\n"
+            + "12345,Corto,Autore,2000,1,1,Genere,Desc\n"
+            + "9780000000009,Duplicato,Autore,2000,1,1,Genere,Desc\n"
+            + "9780000000002,Anno,Autore,duemila,1,1,Genere,Desc\n"
+            + "9780000000003,Troppi campi,Autore,2000,1,1,Genere,Desc,extra\n"
+            + "9780000000004,Copie,Autore,2000,1,2,Genere,Desc\n"
+            + "9780000000005,Senza rimanenti,Autore,2001,4,,Genere,Desc\n";
+
+        ImportReport report = this.importer.importFrom("catalogo.csv", new StringReader(csv),
+                CatalogueImporter.Format.CSV);
+
+        assertEquals(2, report.getImportedRows());
+        assertEquals(5, report.getFailedRows());
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L), report.getFailures().stream()
+                .map(ImportReport.RowFailure::getRow).toList());
+        assertInstanceOf(InvalidIsbnException.class, report.getFailures().get(0).getReason());
+        assertInstanceOf(DuplicateBookByIsbnException.class, report.getFailures().get(1).getReason());
+        assertInstanceOf(MalformedBookRowException.class, report.getFailures().get(2).getReason());
+        assertInstanceOf(MalformedBookRowException.class, report.getFailures().get(3).getReason());
+        assertInstanceOf(InvalidBookCopiesException.class, report.getFailures().get(4).getReason());
+
+        Book book = this.bookService.getByIsbn("9780000000001").get();
+        assertEquals("Guerra e pace, volume 1", book.getTitle());
+        assertEquals("Una \"lunga\"\nstoria", book.getDescription());
+        assertEquals(4, this.bookService.getByIsbn("9780000000005").get().getRemainingCopies());
+        assertTrue(this.importer.getCheckpoint("catalogo.csv").isEmpty());
+    }
+
+    @Test
+    public void importFile_DetectsFormatAndFieldNames() throws IOException {
+        Path json = this.tempDir.resolve("catalogo.json");
+        Files.writeString(json, "[\n"
+            + "  {\"isbn\": \"9780000000001\", \"title\": \"Lo Hobbit\", \"author\": \"Tolkien\","
+            + " \"releaseYear\": 1937, \"totalCopies\": 2, \"genre\": \"Fantasy\", \"description\": null},\n"
+            + "  {\"isbn\": \"9780000000002\", \"title\": \"Caff\\u00e8\", \"author\": \"Autore\","
+            + " \"releaseYear\": 2020, \"totalCopies\": 1, \"tags\": [\"a\", \"b\"]}\n"
+            + "]");
+
+        Path csv = this.tempDir.resolve("catalogo.csv");
+        Files.writeString(csv, "ISBN;Title;Author;Release Year;Total Copies\n"
+            + "9780000000003;Il Silmarillion;Tolkien;1977;1\n");
+
+        ImportReport jsonReport = this.importer.importFile(json);
+        ImportReport csvReport = this.importer.importFile(csv);
+
+        assertEquals(1, jsonReport.getImportedRows());
+        assertEquals(1, jsonReport.getFailedRows());
+        assertInstanceOf(MalformedBookRowException.class, jsonReport.getFailures().get(0).getReason());
+        assertEquals(1937, this.bookService.getByIsbn("9780000000001").get().getReleaseYear());
+
+        assertEquals(1, csvReport.getImportedRows());
+        assertEquals("Il Silmarillion", this.bookService.getByIsbn("9780000000003").get().getTitle());
+        assertThrows(IllegalArgumentException.class, () -> this.importer.importFile(this.tempDir.resolve("catalogo.xml")));
+    }
+
+    @Test
+    public void importFrom_ResumesAfterInterruption() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 7; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append(String.format("{\"isbn\": \"978000000000%d\", \"title\": \"Titolo %d\", "
+                            + "\"author\": \"Autore\", \"release_year\": 2000, \"total_copies\": 1}", i, i));
+        }
+        String complete = json.append("]").toString();
+
+        // Il file si interrompe nel mezzo del sesto libro: i primi due blocchi sono confermati
+        String truncated = complete.substring(0, complete.indexOf("9780000000005") + 5);
+        assertThrows(IOException.class, () -> this.importer.importFrom("migrazione",
+                    new StringReader(truncated), CatalogueImporter.Format.JSON));
+
+        assertEquals(4, this.importer.getCheckpoint("migrazione").getAsLong());
+        assertEquals(4, this.bookService.getAll().size());
+
+        ImportReport report = this.importer.importFrom("migrazione", new StringReader(complete),
+                CatalogueImporter.Format.JSON);
+
+        assertEquals(4, report.getSkippedRows());
+        assertEquals(3, report.getImportedRows());
+        assertEquals(0, report.getFailedRows());
+        assertEquals(7, this.bookService.getAll().size());
+        assertTrue(this.importer.getCheckpoint("migrazione").isEmpty());
+    }
+}
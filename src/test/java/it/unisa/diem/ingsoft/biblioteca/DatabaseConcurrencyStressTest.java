@@ -0,0 +1,469 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidBookCopiesException;
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIdException;
+import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.exception.LoanAlreadyRegisteredException;
+import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
+import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
+import it.unisa.diem.ingsoft.biblioteca.exception.UnknownLoanException;
+import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
+import it.unisa.diem.ingsoft.biblioteca.service.GroupCommitLoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.UserService;
+
+public class DatabaseConcurrencyStressTest {
+    private static final int READERS = 4;
+    private static final int SITES = 4;
+    private static final int BOOKS = 5000;
+    private static final int BATCH = 2000;
+    private static final long DURATION_MS = 2000;
+    // Rapporto minimo tra le letture con pool e quelle con una sola connessione
+    private static final int MIN_POOLED_SPEEDUP = 2;
+
+    @TempDir
+    private static Path tempDir;
+
+    @BeforeAll
+    public static void setup() {
+        System.out.println("--- INIZIO STRESS TEST CONCORRENTE ---");
+    }
+
+    @Test
+    public void pooled_ReadsDuringWrites() {
+        Database single = Database.at(tempDir.resolve("single.db"));
+        int singleReads = this.readsDuringWrites(single);
+        single.close();
+
+        Database pooled = Database.pooled(tempDir.resolve("pooled.db"), READERS, Duration.ofSeconds(5));
+        int pooledReads = this.readsDuringWrites(pooled);
+        pooled.close();
+
+        System.out.println(String.format("LETTURE IN %d ms CON UNA CONNESSIONE: %d", DURATION_MS, singleReads));
+        System.out.println(String.format("LETTURE IN %d ms CON POOL (%d LETTORI, WAL): %d", DURATION_MS,
+                    READERS, pooledReads));
+
+        assertTrue(singleReads > 0);
+        // Misurato oltre 8 volte: il margine resta ampio anche su macchine lente o cariche
+        assertTrue(pooledReads >= singleReads * MIN_POOLED_SPEEDUP, String.format(
+                    "Letture con pool (%d) meno di %d volte quelle con una connessione (%d)",
+                    pooledReads, MIN_POOLED_SPEEDUP, singleReads));
+    }
+
+    @Test
+    public void pooled_ReadYourWritesInTransaction() {
+        Database pooled = Database.pooled(tempDir.resolve("transaction.db"), READERS, Duration.ofSeconds(5));
+        BookService bookService = new DatabaseBookService(pooled);
+
+        assertDoesNotThrow(() -> {
+            pooled.getJdbi().useTransaction(handle -> {
+                bookService.add(new Book("1234567890123", "TITOLO", "AUTORE", 1990, 3, 3, "DRAMMATICO", "DESC"));
+
+                // La lettura avviene sulla connessione di scrittura: il libro e' visibile
+                assertTrue(bookService.existsByIsbn("1234567890123"));
+            });
+        });
+
+        assertEquals(3, bookService.countRemainingCopies("1234567890123"));
+        pooled.close();
+    }
+
+    @Test
+    public void loans_ConcurrentRegisterAndComplete() {
+        int copies = 5;
+        int desks = 32;
+        String isbn = "9780000000001";
+
+        // Piu' sedi, ognuna con il proprio pool e la propria connessione di scrittura
+        Path path = tempDir.resolve("loans.db");
+        List<Database> sites = new ArrayList<>();
+        List<LoanService> loanServices = new ArrayList<>();
+        for (int i = 0; i < SITES; i++) {
+            Database site = Database.pooled(path, READERS, Duration.ofSeconds(5));
+            sites.add(site);
+            loanServices.add(new DatabaseLoanService(new DatabaseUserService(site),
+                        new DatabaseBookService(site), site));
+        }
+
+        UserService userService = new DatabaseUserService(sites.get(0));
+        BookService bookService = new DatabaseBookService(sites.get(0));
+        LoanService loanService = loanServices.get(0);
+
+        List<String> userIds = new ArrayList<>();
+        assertDoesNotThrow(() -> {
+            bookService.add(new Book(isbn, "ULTIME COPIE", "AUTORE", 2000, copies, copies, "GIALLO", "DESC"));
+
+            for (int i = 0; i < desks; i++) {
+                String id = String.format("CONC%06d", i);
+                userService.register(new User(id, id + "@studenti.unisa.it", "NOME", "COGNOME"));
+                userIds.add(id);
+            }
+        });
+
+        // Tutti gli sportelli prestano lo stesso libro nello stesso momento
+        AtomicInteger registered = new AtomicInteger();
+        Map<Class<?>, Integer> refused = new ConcurrentHashMap<>();
+        this.runConcurrently(desks, i -> {
+            try {
+                loanServices.get(i % SITES).register(userIds.get(i), isbn, LocalDate.now(),
+                        LocalDate.now().plusDays(30));
+                registered.incrementAndGet();
+            } catch (Exception e) {
+                refused.merge(e.getClass(), 1, Integer::sum);
+            }
+        });
+
+        assertEquals(copies, registered.get());
+        assertEquals(Map.of(NegativeBookCopiesException.class, desks - copies), refused);
+        assertEquals(0, bookService.countRemainingCopies(isbn));
+        assertEquals(copies, loanService.getActiveByBookIsbnContaining(isbn).size());
+
+        // Ogni prestito viene restituito due volte in parallelo: una sola restituzione conta
+        List<String> borrowers = loanService.getActiveByBookIsbnContaining(isbn)
+            .stream()
+            .map(Loan::getUserId)
+            .toList();
+        AtomicInteger completed = new AtomicInteger();
+        Map<Class<?>, Integer> repeated = new ConcurrentHashMap<>();
+        this.runConcurrently(borrowers.size() * 2, i -> {
+            try {
+                loanServices.get(i % SITES).complete(borrowers.get(i / 2), isbn, LocalDate.now());
+                completed.incrementAndGet();
+            } catch (Exception e) {
+                repeated.merge(e.getClass(), 1, Integer::sum);
+            }
+        });
+
+        assertEquals(copies, completed.get());
+        assertEquals(Map.of(UnknownLoanException.class, copies), repeated);
+        assertEquals(copies, bookService.countRemainingCopies(isbn));
+        assertTrue(loanService.getActiveByBookIsbnContaining(isbn).isEmpty());
+
+        // Lo stesso utente chiede lo stesso libro da tutte le sedi insieme
+        Map<Class<?>, Integer> duplicates = new ConcurrentHashMap<>();
+        this.runConcurrently(SITES * 2, i -> {
+            try {
+                loanServices.get(i % SITES).register(userIds.get(0), isbn, LocalDate.now(),
+                        LocalDate.now().plusDays(30));
+            } catch (Exception e) {
+                duplicates.merge(e.getClass(), 1, Integer::sum);
+            }
+        });
+
+        assertEquals(Map.of(LoanAlreadyRegisteredException.class, SITES * 2 - 1), duplicates);
+        assertEquals(copies - 1, bookService.countRemainingCopies(isbn));
+        assertEquals(1, assertDoesNotThrow(() -> loanService.countById(userIds.get(0))));
+        sites.forEach(Database::close);
+
+        System.out.println(String.format("PRESTITI CONCORRENTI DI %d COPIE DA %d SPORTELLI: %d REGISTRATI, %s RIFIUTATI",
+                    copies, desks, registered.get(), refused));
+    }
+
+    @Test
+    public void groupCommit_ConcurrentRegisterAndComplete() {
+        int copies = 5;
+        int desks = 32;
+        String isbn = "9780000000002";
+
+        Database pooled = Database.pooled(tempDir.resolve("group.db"), READERS, Duration.ofSeconds(5));
+        UserService userService = new DatabaseUserService(pooled);
+        BookService bookService = new DatabaseBookService(pooled);
+        GroupCommitLoanService loanService = new GroupCommitLoanService(
+                new DatabaseLoanService(userService, bookService, pooled), pooled);
+
+        List<String> userIds = new ArrayList<>();
+        assertDoesNotThrow(() -> {
+            bookService.add(new Book(isbn, "ULTIME COPIE", "AUTORE", 2000, copies, copies, "GIALLO", "DESC"));
+
+            for (int i = 0; i < desks; i++) {
+                String id = String.format("GRUP%06d", i);
+                userService.register(new User(id, id + "@studenti.unisa.it", "NOME", "COGNOME"));
+                userIds.add(id);
+            }
+        });
+
+        // I prestiti rifiutati nello stesso blocco non annullano quelli registrati
+        AtomicInteger registered = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        this.runConcurrently(desks, i -> {
+            try {
+                loanService.register(userIds.get(i), isbn, LocalDate.now(), LocalDate.now().plusDays(30));
+                registered.incrementAndGet();
+            } catch (NegativeBookCopiesException e) {
+                refused.incrementAndGet();
+            }
+        });
+
+        assertEquals(copies, registered.get());
+        assertEquals(desks - copies, refused.get());
+        assertEquals(0, bookService.countRemainingCopies(isbn));
+        assertEquals(copies, loanService.getActiveByBookIsbnContaining(isbn).size());
+
+        List<String> borrowers = loanService.getActiveByBookIsbnContaining(isbn)
+            .stream()
+            .map(Loan::getUserId)
+            .toList();
+        AtomicInteger completed = new AtomicInteger();
+        this.runConcurrently(borrowers.size() * 2, i -> {
+            try {
+                loanService.complete(borrowers.get(i / 2), isbn, LocalDate.now());
+                completed.incrementAndGet();
+            } catch (UnknownLoanException e) {
+                // Restituzione gia' registrata dall'altro sportello
+            }
+        });
+
+        assertEquals(copies, completed.get());
+        assertEquals(copies, bookService.countRemainingCopies(isbn));
+
+        loanService.close();
+        pooled.close();
+    }
+
+    @Test
+    public void groupCommit_KeepsCheckedExceptions() {
+        Database pooled = Database.pooled(tempDir.resolve("group-errors.db"), READERS, Duration.ofSeconds(5));
+        UserService userService = new DatabaseUserService(pooled);
+        BookService bookService = new DatabaseBookService(pooled);
+        GroupCommitLoanService loanService = new GroupCommitLoanService(
+                new DatabaseLoanService(userService, bookService, pooled), pooled);
+
+        assertDoesNotThrow(() -> {
+            bookService.add(new Book("9780000000003", "TITOLO", "AUTORE", 2000, 2, 2, "GIALLO", "DESC"));
+            userService.register(new User("GRUP000100", "grup100@studenti.unisa.it", "NOME", "COGNOME"));
+            loanService.register("GRUP000100", "9780000000003", LocalDate.now(), LocalDate.now().plusDays(30));
+        });
+
+        assertThrows(LoanAlreadyRegisteredException.class, () -> loanService.register("GRUP000100",
+                    "9780000000003", LocalDate.now(), LocalDate.now().plusDays(30)));
+        assertThrows(UnknownUserByIdException.class, () -> loanService.register("GRUP000999",
+                    "9780000000003", LocalDate.now(), LocalDate.now().plusDays(30)));
+        assertEquals(1, bookService.countRemainingCopies("9780000000003"));
+
+        // Dopo la chiusura le operazioni accodate sono gia' nel database
+        loanService.close();
+        assertTrue(loanService.isActive("GRUP000100", "9780000000003"));
+        assertThrows(IllegalStateException.class, () -> loanService.complete("GRUP000100",
+                    "9780000000003", LocalDate.now()));
+        pooled.close();
+    }
+
+    @Test
+    public void groupCommit_SurvivesErrorInOperation() {
+        Database pooled = Database.pooled(tempDir.resolve("group-fatal.db"), READERS, Duration.ofSeconds(5));
+        UserService userService = new DatabaseUserService(pooled);
+        BookService bookService = new DatabaseBookService(pooled);
+        LoanService failing = new DatabaseLoanService(userService, bookService, pooled) {
+            @Override
+            public void register(String userId, String bookIsbn, LocalDate start, LocalDate deadline)
+                    throws LoanAlreadyRegisteredException, InvalidIdException, InvalidIsbnException,
+                                      UnknownBookByIsbnException, UnknownUserByIdException,
+                                      NegativeBookCopiesException, InvalidBookCopiesException {
+                if (userId.equals("GRUP000201")) {
+                    throw new AssertionError("Errore simulato");
+                }
+                super.register(userId, bookIsbn, start, deadline);
+            }
+        };
+        GroupCommitLoanService loanService = new GroupCommitLoanService(failing, pooled);
+
+        assertDoesNotThrow(() -> {
+            bookService.add(new Book("9780000000004", "TITOLO", "AUTORE", 2000, 2, 2, "GIALLO", "DESC"));
+            userService.register(new User("GRUP000200", "grup200@studenti.unisa.it", "NOME", "COGNOME"));
+            userService.register(new User("GRUP000201", "grup201@studenti.unisa.it", "NOME", "COGNOME"));
+        });
+
+        // L'errore arriva al chiamante e il thread di scrittura accetta altre operazioni
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(CompletionException.class, () -> loanService.register("GRUP000201",
+                        "9780000000004", LocalDate.now(), LocalDate.now().plusDays(30)));
+            loanService.register("GRUP000200", "9780000000004", LocalDate.now(), LocalDate.now().plusDays(30));
+        });
+
+        assertTrue(loanService.isActive("GRUP000200", "9780000000004"));
+        assertEquals(1, bookService.countRemainingCopies("9780000000004"));
+
+        loanService.close();
+        pooled.close();
+    }
+
+    @Test
+    public void groupCommit_Throughput() {
+        int desks = 16;
+        int loansPerDesk = 50;
+
+        long direct = this.timeLoanWrites(tempDir.resolve("direct.db"), desks, loansPerDesk, false);
+        long grouped = this.timeLoanWrites(tempDir.resolve("grouped.db"), desks, loansPerDesk, true);
+
+        System.out.println(String.format("%d PRESTITI E RESTITUZIONI DA %d SPORTELLI: %d ms SENZA GROUP COMMIT, "
+                    + "%d ms CON GROUP COMMIT", desks * loansPerDesk, desks, direct, grouped));
+    }
+
+    private long timeLoanWrites(Path path, int desks, int loansPerDesk, boolean groupCommit) {
+        Database pooled = Database.pooled(path, READERS, Duration.ofSeconds(5));
+        UserService userService = new DatabaseUserService(pooled);
+        BookService bookService = new DatabaseBookService(pooled);
+        LoanService direct = new DatabaseLoanService(userService, bookService, pooled);
+        LoanService loanService = groupCommit ? new GroupCommitLoanService(direct, pooled) : direct;
+
+        assertDoesNotThrow(() -> {
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < loansPerDesk; i++) {
+                books.add(new Book(String.format("%013d", i), "TITOLO " + i, "AUTORE", 2000,
+                            desks, desks, "GIALLO", "DESC"));
+            }
+            bookService.addAll(books);
+
+            for (int i = 0; i < desks; i++) {
+                String id = String.format("DESK%06d", i);
+                userService.register(new User(id, id + "@studenti.unisa.it", "NOME", "COGNOME"));
+            }
+        });
+
+        // Ogni sportello presta e poi riceve indietro un libro alla volta, come al banco
+        long start = System.nanoTime();
+        this.runConcurrently(desks, desk -> {
+            String userId = String.format("DESK%06d", desk);
+            for (int i = 0; i < loansPerDesk; i++) {
+                String isbn = String.format("%013d", i);
+                loanService.register(userId, isbn, LocalDate.now(), LocalDate.now().plusDays(30));
+                loanService.complete(userId, isbn, LocalDate.now());
+            }
+        });
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(loanService.getActive().isEmpty());
+        assertEquals(desks * loansPerDesk, loanService.getAll().size());
+
+        if (loanService instanceof GroupCommitLoanService grouped) {
+            grouped.close();
+        }
+        pooled.close();
+
+        return elapsed;
+    }
+
+    private void runConcurrently(int tasks, ConcurrentTask task) {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < tasks; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                ready.await();
+                task.run(index);
+                return null;
+            }));
+        }
+
+        assertDoesNotThrow(() -> {
+            ready.countDown();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        });
+    }
+
+    @FunctionalInterface
+    private interface ConcurrentTask {
+        void run(int index) throws Exception;
+    }
+
+    private int readsDuringWrites(Database database) {
+        BookService bookService = new DatabaseBookService(database);
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            String isbn = String.format("00000000%05d", i);
+            books.add(new Book(isbn, "TITOLO " + i, "AUTORE", 1990, 3, 3, "DRAMMATICO", "DESC"));
+        }
+        assertDoesNotThrow(() -> bookService.addAll(books));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger reads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // Uno scrittore inserisce continuamente lotti di libri
+        futures.add(executor.submit(() -> {
+            int next = BOOKS;
+            while (running.get()) {
+                List<Book> batch = new ArrayList<>();
+                for (int i = 0; i < BATCH; i++, next++) {
+                    String isbn = String.format("%013d", next);
+                    batch.add(new Book(isbn, "NUOVO " + next, "AUTORE", 2000, 1, 1, "GIALLO", "DESC"));
+                }
+
+                assertDoesNotThrow(() -> bookService.addAll(batch));
+            }
+        }));
+
+        // N lettori cercano nel catalogo
+        for (int i = 0; i < READERS; i++) {
+            futures.add(executor.submit(() -> {
+                while (running.get()) {
+                    bookService.getAllByTitleContaining("TITOLO 42");
+                    reads.incrementAndGet();
+                }
+            }));
+        }
+
+        assertDoesNotThrow(() -> {
+            Thread.sleep(DURATION_MS);
+            running.set(false);
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        });
+
+        return reads.get();
+    }
+
+    @AfterAll
+    public static void teardown() {
+        System.out.println("--- FINE STRESS TEST CONCORRENTE ---");
+    }
+}
@@ -0,0 +1,184 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.ImportReport;
+import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.CatalogueImporter;
+import it.unisa.diem.ingsoft.biblioteca.service.DataExporter;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
+import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.UserService;
+
+public class DatabaseExporterTest {
+    private Database database;
+    private BookService bookService;
+    private UserService userService;
+    private LoanService loanService;
+    private DataExporter exporter;
+
+    private final LocalDate start = LocalDate.of(2025, 3, 1);
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    public void setup() {
+        this.database = TestDatabases.create();
+        this.bookService = new DatabaseBookService(this.database);
+        this.userService = new DatabaseUserService(this.database);
+        this.loanService = new DatabaseLoanService(this.userService, this.bookService, this.database);
+        this.exporter = new DataExporter(this.database);
+    }
+
+    @Test
+    public void export_CsvCanBeImportedBack() throws Exception {
+        this.bookService.add(new Book("9780000000002", "Guerra e pace, volume 1", "Tolstoj",
+                    1869, 3, 2, "Romanzo", "Una \"lunga\"\nstoria"));
+        this.bookService.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 1, 1, "Fantasy", ""));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = this.exporter.export(DataExporter.Table.BOOKS, DataExporter.Format.CSV, out);
+        String csv = out.toString(StandardCharsets.UTF_8);
+
+        assertEquals(2, rows);
+        assertTrue(csv.startsWith("isbn,title,author,genre,release_year,total_copies,remaining_copies,description\n"
+                    + "9780000000001,Lo Hobbit,Tolkien,Fantasy,1937,1,1,\n"));
+        assertTrue(csv.contains("\"Guerra e pace, volume 1\""));
+
+        Database copy = Database.inMemory();
+        BookService copyBooks = new DatabaseBookService(copy);
+        ImportReport report = new CatalogueImporter(copyBooks, copy)
+            .importFrom("esportazione", new StringReader(csv), CatalogueImporter.Format.CSV);
+
+        assertEquals(2, report.getImportedRows());
+        assertEquals(0, report.getFailedRows());
+        Book book = copyBooks.getByIsbn("9780000000002").get();
+        assertEquals("Guerra e pace, volume 1", book.getTitle());
+        assertEquals("Una \"lunga\"\nstoria", book.getDescription());
+        assertEquals(2, book.getRemainingCopies());
+    }
+
+    @Test
+    public void export_JsonLinesAndBinaryWriteEveryRow() throws Exception {
+        this.addUserWithLoans(2);
+        this.loanService.complete("USERID0000", "9780000000000", this.start.plusDays(3));
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        assertEquals(2, this.exporter.export(DataExporter.Table.LOANS, DataExporter.Format.JSON_LINES, json));
+
+        String[] lines = json.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"book_isbn\":\"9780000000000\""));
+        assertTrue(lines[0].matches(".*\"id\":\\d+,.*"));
+        assertTrue(lines[1].endsWith("\"loan_end\":null}"));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        assertEquals(1, this.exporter.export(DataExporter.Table.USERS, DataExporter.Format.BINARY, binary));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(binary.toByteArray()));
+        assertEquals(DataExporter.BINARY_MAGIC, in.readInt());
+        assertEquals(4, in.readShort());
+
+        List<String> columns = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            columns.add(in.readUTF());
+        }
+        assertEquals(DataExporter.Table.USERS.getColumns(), columns);
+
+        assertEquals(1, in.readByte());
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(3, in.readByte());
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            values.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        assertEquals(List.of("USERID0000", "user0@studenti.unisa.it", "NOME", "COGNOME"), values);
+        assertEquals(0, in.readByte());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void exportSnapshot_WritesOneFilePerTable() throws Exception {
+        this.addUserWithLoans(3);
+
+        Map<DataExporter.Table, Long> rows = this.exporter.exportSnapshot(this.tempDir, DataExporter.Format.CSV);
+
+        assertEquals(Map.of(DataExporter.Table.BOOKS, 3L, DataExporter.Table.USERS, 1L,
+                    DataExporter.Table.LOANS, 3L), rows);
+        assertEquals(4, Files.readAllLines(this.tempDir.resolve("books.csv")).size());
+        assertEquals(2, Files.readAllLines(this.tempDir.resolve("users.csv")).size());
+        assertEquals(4, Files.readAllLines(this.tempDir.resolve("loans.csv")).size());
+    }
+
+    @Test
+    public void backup_DoesNotWaitForWritersAndSeesCommittedData() throws Exception {
+        Database pooled = Database.pooled(this.tempDir.resolve("biblioteca.db"));
+        try {
+            BookService books = new DatabaseBookService(pooled);
+            books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 1, 1, "Fantasy", ""));
+
+            Path target = this.tempDir.resolve("backup.db");
+            DataExporter exporter = new DataExporter(pooled);
+
+            // La transazione di scrittura resta aperta durante tutto il backup, eseguito da un altro thread
+            pooled.getJdbi().useTransaction(handle -> {
+                books.add(new Book("9780000000002", "Il Silmarillion", "Tolkien", 1977, 1, 1, "Fantasy", ""));
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        exporter.backup(target);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).get(10, TimeUnit.SECONDS);
+            });
+
+            Database restored = Database.at(target);
+            try {
+                BookService restoredBooks = new DatabaseBookService(restored);
+                assertTrue(restoredBooks.getByIsbn("9780000000001").isPresent());
+                assertFalse(restoredBooks.getByIsbn("9780000000002").isPresent());
+            } finally {
+                restored.close();
+            }
+        } finally {
+            pooled.close();
+        }
+    }
+
+    private void addUserWithLoans(int loans) throws Exception {
+        this.userService.register(new User("USERID0000", "user0@studenti.unisa.it", "NOME", "COGNOME"));
+        for (int i = 0; i < loans; i++) {
+            String isbn = "978000000000" + i;
+            this.bookService.add(new Book(isbn, "Titolo " + i, "Autore", 2000, 1, 1, "Genere", ""));
+            this.loanService.register("USERID0000", isbn, this.start, this.start.plusDays(30));
+        }
+    }
+}
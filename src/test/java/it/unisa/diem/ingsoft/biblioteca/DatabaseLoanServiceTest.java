@@ -3,10 +3,27 @@ package it.unisa.diem.ingsoft.biblioteca;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,16 +35,31 @@ import it.unisa.diem.ingsoft.biblioteca.exception.NegativeBookCopiesException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownBookByIsbnException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownLoanException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
 import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanDetails;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanRequest;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanSort;
+import it.unisa.diem.ingsoft.biblioteca.model.OverdueSummary;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.ReturnRequest;
 import it.unisa.diem.ingsoft.biblioteca.model.User;
 import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.ChangeListener;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
 import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.OverdueMonitor;
 import it.unisa.diem.ingsoft.biblioteca.service.UserService;
 
 public class DatabaseLoanServiceTest {
+    private static final int SITES = 4;
+
+    private Database database;
     private LoanService loanService;
     private BookService bookService;
     private UserService userService;
@@ -47,10 +79,10 @@ public class DatabaseLoanServiceTest {
 
     @BeforeEach
     public void setup() {
-        Database database = Database.inMemory();
-        this.bookService = new DatabaseBookService(database);
-        this.userService = new DatabaseUserService(database);
-        this.loanService = new DatabaseLoanService(this.userService, this.bookService, database);
+        this.database = TestDatabases.create();
+        this.bookService = new DatabaseBookService(this.database);
+        this.userService = new DatabaseUserService(this.database);
+        this.loanService = new DatabaseLoanService(this.userService, this.bookService, this.database);
     }
 
     @Test
@@ -155,6 +187,190 @@ public class DatabaseLoanServiceTest {
         });
     }
 
+    @Test
+    public void complete_KeepsPreviousLoans() {
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddBook(this.validIsbn, 5);
+
+        LocalDate firstEnd = this.start.plusDays(1);
+        LocalDate secondEnd = this.start.plusDays(2);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            this.loanService.complete(this.validUserId, this.validIsbn, firstEnd);
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            this.loanService.complete(this.validUserId, this.validIsbn, secondEnd);
+        });
+
+        // Solo il prestito attivo viene chiuso: il primo mantiene la sua data di restituzione
+        assertEquals(List.of(firstEnd, secondEnd), this.loanService.getByUserIdContaining(this.validUserId)
+                .stream()
+                .map(loan -> loan.getLoanEnd().get())
+                .toList());
+        assertEquals(5, this.bookService.countRemainingCopies(this.validIsbn));
+
+        assertThrows(UnknownLoanException.class, () -> {
+            this.loanService.complete(this.validUserId, this.validIsbn, secondEnd);
+        });
+    }
+
+    @Test
+    public void register_ConcurrentSitesForLastCopy() {
+        assumeTrue(TestDatabases.isPostgres(), "Piu' sedi sullo stesso server");
+        this.createAndAddBook(this.validIsbn, 1);
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0; i < SITES; i++) {
+            String id = String.format("SEDE%06d", i);
+            this.createAndAddUser(id);
+            userIds.add(id);
+        }
+
+        Map<Class<?>, Integer> outcomes = this.raceOnSites((loans, site) -> loans.register(userIds.get(site),
+                    this.validIsbn, this.start, this.deadline));
+
+        assertEquals(Map.of(Void.class, 1, NegativeBookCopiesException.class, SITES - 1), outcomes);
+        assertEquals(0, this.bookService.countRemainingCopies(this.validIsbn));
+        assertEquals(1, this.loanService.getActive().size());
+    }
+
+    @Test
+    public void register_ConcurrentSitesForSameLoan() {
+        assumeTrue(TestDatabases.isPostgres(), "Piu' sedi sullo stesso server");
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+
+        Map<Class<?>, Integer> outcomes = this.raceOnSites((loans, site) -> loans.register(this.validUserId,
+                    this.validIsbn, this.start, this.deadline));
+
+        assertEquals(Map.of(Void.class, 1, LoanAlreadyRegisteredException.class, SITES - 1), outcomes);
+        assertEquals(4, this.bookService.countRemainingCopies(this.validIsbn));
+        assertEquals(1, assertDoesNotThrow(() -> this.loanService.countById(this.validUserId)));
+    }
+
+    @Test
+    public void complete_ConcurrentSitesForSameLoan() {
+        assumeTrue(TestDatabases.isPostgres(), "Piu' sedi sullo stesso server");
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+        assertDoesNotThrow(() -> this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline));
+
+        Map<Class<?>, Integer> outcomes = this.raceOnSites((loans, site) -> loans.complete(this.validUserId,
+                    this.validIsbn, this.start.plusDays(1)));
+
+        assertEquals(Map.of(Void.class, 1, UnknownLoanException.class, SITES - 1), outcomes);
+        assertEquals(5, this.bookService.countRemainingCopies(this.validIsbn));
+        assertEquals(0, assertDoesNotThrow(() -> this.loanService.countById(this.validUserId)));
+    }
+
+    @Test
+    public void registerAll_ConcurrentSitesForLastCopies() {
+        assumeTrue(TestDatabases.isPostgres(), "Piu' sedi sullo stesso server");
+        this.createAndAddBook(this.validIsbn, SITES);
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0; i < SITES * 2; i++) {
+            String id = String.format("SEDE%06d", i);
+            this.createAndAddUser(id);
+            userIds.add(id);
+        }
+
+        // Ogni sede chiede due copie: gli esiti delle singole richieste finiscono nel BatchResult
+        Map<Class<?>, Integer> requests = new ConcurrentHashMap<>();
+        Map<Class<?>, Integer> outcomes = this.raceOnSites((loans, site) -> this.tally(requests,
+                    loans.registerAll(List.of(
+                        new LoanRequest(userIds.get(site * 2), this.validIsbn, this.start, this.deadline),
+                        new LoanRequest(userIds.get(site * 2 + 1), this.validIsbn, this.start, this.deadline)))));
+
+        assertEquals(Map.of(Void.class, SITES), outcomes);
+        assertEquals(Map.of(Void.class, SITES, NegativeBookCopiesException.class, SITES), requests);
+        assertEquals(0, this.bookService.countRemainingCopies(this.validIsbn));
+        assertEquals(SITES, this.loanService.getActive().size());
+    }
+
+    @Test
+    public void completeAll_ConcurrentSitesForSameLoans() {
+        assumeTrue(TestDatabases.isPostgres(), "Piu' sedi sullo stesso server");
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddBook(this.secondIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            this.loanService.register(this.validUserId, this.secondIsbn, this.start, this.deadline);
+        });
+
+        Map<Class<?>, Integer> requests = new ConcurrentHashMap<>();
+        Map<Class<?>, Integer> outcomes = this.raceOnSites((loans, site) -> this.tally(requests,
+                    loans.completeAll(List.of(new ReturnRequest(this.validUserId, this.validIsbn),
+                            new ReturnRequest(this.validUserId, this.secondIsbn)), this.start.plusDays(1))));
+
+        assertEquals(Map.of(Void.class, SITES), outcomes);
+        assertEquals(Map.of(Void.class, 2, UnknownLoanException.class, SITES * 2 - 2), requests);
+        assertEquals(5, this.bookService.countRemainingCopies(this.validIsbn));
+        assertEquals(5, this.bookService.countRemainingCopies(this.secondIsbn));
+        assertEquals(0, assertDoesNotThrow(() -> this.loanService.countById(this.validUserId)));
+    }
+
+    @Test
+    public void registerAll_ReportsFailuresPerItem() {
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddUser(this.secondUserId);
+        this.createAndAddBook(this.validIsbn, 1);
+        this.createAndAddBook(this.secondIsbn, 5);
+
+        LoanRequest first = new LoanRequest(this.validUserId, this.validIsbn, this.start, this.deadline);
+        LoanRequest noCopies = new LoanRequest(this.secondUserId, this.validIsbn, this.start, this.deadline);
+        LoanRequest second = new LoanRequest(this.validUserId, this.secondIsbn, this.start, this.deadline);
+        LoanRequest duplicate = new LoanRequest(this.validUserId, this.secondIsbn, this.start, this.deadline);
+        LoanRequest invalidId = new LoanRequest(this.invalidUserId, this.secondIsbn, this.start, this.deadline);
+        LoanRequest invalidIsbn = new LoanRequest(this.validUserId, this.invalidIsbn, this.start, this.deadline);
+        LoanRequest unknownUser = new LoanRequest(this.nonExistentUserId, this.secondIsbn, this.start, this.deadline);
+        LoanRequest unknownBook = new LoanRequest(this.validUserId, this.nonExistentIsbn, this.start, this.deadline);
+
+        BatchResult<LoanRequest> result = this.loanService.registerAll(List.of(first, noCopies, second,
+                    duplicate, invalidId, invalidIsbn, unknownUser, unknownBook));
+
+        assertFalse(result.isSuccessful());
+        assertEquals(List.of(first, second), result.getSucceeded());
+        assertEquals(List.of(noCopies, duplicate, invalidId, invalidIsbn, unknownUser, unknownBook),
+                List.copyOf(result.getFailures().keySet()));
+        assertInstanceOf(NegativeBookCopiesException.class, result.getFailures().get(noCopies));
+        assertInstanceOf(LoanAlreadyRegisteredException.class, result.getFailures().get(duplicate));
+        assertInstanceOf(InvalidIdException.class, result.getFailures().get(invalidId));
+        assertInstanceOf(InvalidIsbnException.class, result.getFailures().get(invalidIsbn));
+        assertInstanceOf(UnknownUserByIdException.class, result.getFailures().get(unknownUser));
+        assertInstanceOf(UnknownBookByIsbnException.class, result.getFailures().get(unknownBook));
+
+        assertEquals(0, this.bookService.countRemainingCopies(this.validIsbn));
+        assertEquals(4, this.bookService.countRemainingCopies(this.secondIsbn));
+        assertEquals(2, this.loanService.getActiveByUserId(this.validUserId).size());
+    }
+
+    @Test
+    public void completeAll_ReportsFailuresPerItem() {
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddUser(this.secondUserId);
+        this.createAndAddBook(this.validIsbn, 5);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            this.loanService.register(this.secondUserId, this.validIsbn, this.start, this.deadline);
+        });
+
+        ReturnRequest first = new ReturnRequest(this.validUserId, this.validIsbn);
+        ReturnRequest twice = new ReturnRequest(this.validUserId, this.validIsbn);
+        ReturnRequest second = new ReturnRequest(this.secondUserId, this.validIsbn);
+        ReturnRequest unknown = new ReturnRequest(this.validUserId, this.secondIsbn);
+
+        BatchResult<ReturnRequest> result = this.loanService.completeAll(List.of(first, twice, second, unknown),
+                this.deadline);
+
+        assertEquals(List.of(first, second), result.getSucceeded());
+        assertInstanceOf(UnknownLoanException.class, result.getFailures().get(twice));
+        assertInstanceOf(UnknownLoanException.class, result.getFailures().get(unknown));
+
+        assertEquals(5, this.bookService.countRemainingCopies(this.validIsbn));
+        assertTrue(this.loanService.getActive().isEmpty());
+    }
+
     @Test
     public void getByUserIdAndBookIsbn_ExistingLoan() {
         this.createAndAddBook(this.validIsbn, 5);
@@ -246,6 +462,26 @@ public class DatabaseLoanServiceTest {
         assertEquals(1, this.loanService.getActiveByUserId(this.validUserId).size());
     }
 
+    @Test
+    public void getActiveContaining_MatchingStrings() {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddBook(this.secondIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddUser(this.secondUserId);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            this.loanService.register(this.secondUserId, this.secondIsbn, this.start, this.deadline);
+            this.loanService.complete(this.secondUserId, this.secondIsbn, this.deadline);
+        });
+
+        assertEquals(1, this.loanService.getActiveByUserIdContaining("userid").size());
+        assertEquals(1, this.loanService.getActiveByUserIdContaining("3214").size());
+        assertTrue(this.loanService.getActiveByUserIdContaining("9999").isEmpty());
+        assertEquals(1, this.loanService.getActiveByBookIsbnContaining("789000").size());
+        assertTrue(this.loanService.getActiveByBookIsbnContaining("890001").isEmpty());
+    }
+
     @Test
     public void isActive_ActiveLoan() {
         this.createAndAddUser(this.validUserId);
@@ -287,6 +523,61 @@ public class DatabaseLoanServiceTest {
         });
     }
 
+    @Test
+    public void countById_FollowsEveryLoanOperation() {
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddUser(this.secondUserId);
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddBook(this.secondIsbn, 5);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            this.loanService.complete(this.validUserId, this.validIsbn, this.start);
+
+            // Un prestito restituito non conta, anche se resta nello storico
+            assertEquals(0, this.loanService.countById(this.validUserId));
+
+            this.loanService.registerAll(List.of(
+                    new LoanRequest(this.validUserId, this.validIsbn, this.start, this.deadline),
+                    new LoanRequest(this.validUserId, this.secondIsbn, this.start, this.deadline),
+                    new LoanRequest(this.secondUserId, this.validIsbn, this.start, this.deadline),
+                    new LoanRequest(this.secondUserId, this.validIsbn, this.start, this.deadline)));
+            assertEquals(2, this.loanService.countById(this.validUserId));
+            assertEquals(1, this.loanService.countById(this.secondUserId));
+
+            this.loanService.completeAll(List.of(new ReturnRequest(this.validUserId, this.secondIsbn),
+                        new ReturnRequest(this.secondUserId, this.secondIsbn)), this.start);
+            assertEquals(1, this.loanService.countById(this.validUserId));
+            assertEquals(1, this.loanService.countById(this.secondUserId));
+
+            // Un utente rimosso e registrato di nuovo ritrova i prestiti ancora attivi
+            this.userService.removeById(this.secondUserId);
+            assertEquals(0, this.loanService.countById(this.secondUserId));
+            this.createAndAddUser(this.secondUserId);
+            assertEquals(1, this.loanService.countById(this.secondUserId));
+        });
+    }
+
+    @Test
+    public void activeLoanCounters_CheckedAndRebuiltFromLoans() {
+        DatabaseLoanService service = (DatabaseLoanService) this.loanService;
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddUser(this.secondUserId);
+        this.createAndAddBook(this.validIsbn, 5);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+        });
+        assertTrue(service.checkActiveLoanCounters().isEmpty());
+
+        this.database.getJdbi().useHandle(handle -> handle.execute("UPDATE users SET active_loans = 3"));
+
+        assertEquals(List.of(this.validUserId, this.secondUserId), service.checkActiveLoanCounters());
+        assertEquals(2, service.rebuildActiveLoanCounters());
+        assertTrue(service.checkActiveLoanCounters().isEmpty());
+        assertDoesNotThrow(() -> assertEquals(1, this.loanService.countById(this.validUserId)));
+    }
+
     @Test
     public void countById_InvalidUser() {
         assertThrows(InvalidIdException.class, () -> {
@@ -294,6 +585,95 @@ public class DatabaseLoanServiceTest {
         });
     }
 
+    @Test
+    public void getActivePage_ByDeadlineSkipsCompleted() {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddBook(this.secondIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddUser(this.secondUserId);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.start.plusDays(20));
+            this.loanService.register(this.validUserId, this.secondIsbn, this.start, this.start.plusDays(10));
+            this.loanService.register(this.secondUserId, this.validIsbn, this.start, this.start.plusDays(10));
+            this.loanService.register(this.secondUserId, this.secondIsbn, this.start, this.start.plusDays(5));
+            this.loanService.complete(this.secondUserId, this.secondIsbn, this.start);
+        });
+
+        List<Loan> walked = new ArrayList<>();
+        PageKey after = PageKey.first();
+        Page<Loan> page;
+        do {
+            page = this.loanService.getActivePage(after, 1, LoanSort.DEADLINE);
+            walked.addAll(page.getItems());
+            after = page.getNextKey().orElse(null);
+        } while (page.hasNext());
+
+        assertEquals(3, walked.size());
+        assertEquals(this.start.plusDays(10), walked.get(0).getLoanDeadline());
+        assertEquals(this.validUserId, walked.get(0).getUserId());
+        assertEquals(this.secondUserId, walked.get(1).getUserId());
+        assertEquals(this.start.plusDays(20), walked.get(2).getLoanDeadline());
+    }
+
+    @Test
+    public void getOverdue_PagesOldestFirstAndCounts() {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddBook(this.secondIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+        this.createAndAddUser(this.secondUserId);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.start.plusDays(20));
+            this.loanService.register(this.validUserId, this.secondIsbn, this.start, this.start.plusDays(10));
+            this.loanService.register(this.secondUserId, this.validIsbn, this.start, this.start.plusDays(5));
+            this.loanService.register(this.secondUserId, this.secondIsbn, this.start, this.start.plusDays(1));
+            this.loanService.complete(this.secondUserId, this.secondIsbn, this.start);
+        });
+
+        // Il prestito che scade proprio nella data indicata non e' ancora scaduto
+        LocalDate asOf = this.start.plusDays(20);
+        assertEquals(2, this.loanService.countOverdue(asOf));
+        assertEquals(0, this.loanService.countOverdue(this.start));
+
+        Page<Loan> first = this.loanService.getOverdue(asOf, PageKey.first(), 1);
+        assertEquals(this.start.plusDays(5), first.getItems().get(0).getLoanDeadline());
+        assertTrue(first.hasNext());
+
+        Page<Loan> second = this.loanService.getOverdue(asOf, first.getNextKey().get(), 1);
+        assertEquals(this.start.plusDays(10), second.getItems().get(0).getLoanDeadline());
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    public void overdueMonitor_RefreshesAfterLoanChanges() throws Exception {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+
+        Clock clock = Clock.fixed(this.start.plusDays(40).atStartOfDay(ZoneId.systemDefault()).toInstant(),
+                ZoneId.systemDefault());
+        OverdueMonitor monitor = new OverdueMonitor(this.loanService, clock, Duration.ofHours(1));
+
+        BlockingQueue<OverdueSummary> summaries = new LinkedBlockingQueue<>();
+        Consumer<OverdueSummary> listener = summaries::add;
+        monitor.addSummaryListener(listener);
+
+        monitor.start();
+        try {
+            assertEquals(0, summaries.poll(5, TimeUnit.SECONDS).getCount());
+
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+
+            OverdueSummary summary = summaries.poll(5, TimeUnit.SECONDS);
+            assertEquals(1, summary.getCount());
+            assertEquals(this.start.plusDays(40), summary.getAsOf());
+            assertEquals(this.deadline, summary.getOldestDeadline().get());
+            assertEquals(summary, monitor.getSummary().get());
+        } finally {
+            monitor.close();
+        }
+    }
+
     private void createAndAddBook(String isbn, int copies) {
         assertDoesNotThrow(() -> {
             Book book = new Book(isbn, "Titolo Test", "Autore Test", 2020, copies, copies, "Genre", "Desc");
@@ -307,4 +687,161 @@ public class DatabaseLoanServiceTest {
             this.userService.register(user);
         });
     }
+
+    @Test
+    public void register_RefreshesCachedBookCopies() {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+
+        assertEquals(5, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+
+        assertDoesNotThrow(() -> this.loanService.register(this.validUserId, this.validIsbn,
+                    this.start, this.deadline));
+        assertEquals(4, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+
+        assertDoesNotThrow(() -> this.loanService.complete(this.validUserId, this.validIsbn, this.start));
+        assertEquals(5, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+
+        this.loanService.registerAll(List.of(new LoanRequest(this.validUserId, this.validIsbn,
+                        this.start, this.deadline)));
+        assertEquals(4, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+
+        this.loanService.completeAll(List.of(new ReturnRequest(this.validUserId, this.validIsbn)), this.start);
+        assertEquals(5, this.bookService.getByIsbn(this.validIsbn).get().getRemainingCopies());
+    }
+
+    @Test
+    public void getActiveDetailsByUserId_JoinsBook() {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddBook(this.secondIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+
+        assertDoesNotThrow(() -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            this.loanService.register(this.validUserId, this.secondIsbn, this.start, this.deadline);
+            this.loanService.complete(this.validUserId, this.secondIsbn, this.start);
+        });
+
+        List<LoanDetails> details = this.loanService.getActiveDetailsByUserId(this.validUserId);
+
+        assertEquals(1, details.size());
+        assertEquals(this.validIsbn, details.get(0).getBookIsbn());
+        assertEquals(this.deadline, details.get(0).getLoanDeadline());
+        assertEquals(this.bookService.getByIsbn(this.validIsbn).get().getTitle(),
+                details.get(0).getBookTitle().get());
+        assertEquals(this.bookService.getByIsbn(this.validIsbn).get().getAuthor(),
+                details.get(0).getBookAuthor().get());
+        assertTrue(this.loanService.getActiveDetailsByUserId(this.secondUserId).isEmpty());
+    }
+
+    @Test
+    public void register_PublishesLoanAndBookChanges() {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+
+        List<EntityChange> changes = new ArrayList<>();
+        ChangeListener listener = changes::add;
+        this.bookService.addChangeListener(listener);
+
+        assertDoesNotThrow(() -> this.loanService.register(this.validUserId, this.validIsbn,
+                    this.start, this.deadline));
+        assertDoesNotThrow(() -> this.loanService.complete(this.validUserId, this.validIsbn, this.start));
+
+        assertEquals(List.of(
+                EntityChange.loan(EntityChange.Type.ADDED, this.validUserId, this.validIsbn),
+                EntityChange.book(EntityChange.Type.UPDATED, this.validIsbn),
+                EntityChange.loan(EntityChange.Type.UPDATED, this.validUserId, this.validIsbn),
+                EntityChange.book(EntityChange.Type.UPDATED, this.validIsbn)), changes);
+
+        changes.clear();
+        this.loanService.registerAll(List.of(
+                    new LoanRequest(this.validUserId, this.validIsbn, this.start, this.deadline),
+                    new LoanRequest(this.validUserId, this.nonExistentIsbn, this.start, this.deadline)));
+
+        assertEquals(List.of(
+                EntityChange.loan(EntityChange.Type.ADDED, this.validUserId, this.validIsbn),
+                EntityChange.book(EntityChange.Type.UPDATED, this.validIsbn)), changes);
+    }
+
+    @Test
+    public void register_RolledBackChangesAreNotPublished() {
+        this.createAndAddBook(this.validIsbn, 5);
+        this.createAndAddUser(this.validUserId);
+
+        List<EntityChange> changes = new ArrayList<>();
+        ChangeListener listener = changes::add;
+        this.loanService.addChangeListener(listener);
+
+        assertThrows(IllegalStateException.class, () -> this.database.getJdbi().useTransaction(handle -> {
+            this.loanService.register(this.validUserId, this.validIsbn, this.start, this.deadline);
+            assertTrue(changes.isEmpty());
+            throw new IllegalStateException("rollback");
+        }));
+
+        assertTrue(changes.isEmpty());
+        assertFalse(this.loanService.isActive(this.validUserId, this.validIsbn));
+
+        this.loanService.removeChangeListener(listener);
+        assertDoesNotThrow(() -> this.loanService.register(this.validUserId, this.validIsbn,
+                    this.start, this.deadline));
+        assertTrue(changes.isEmpty());
+    }
+
+    /**
+     * @brief Esegue la stessa operazione nello stesso momento da SITES sedi, ognuna con la
+     *  propria connessione di scrittura al database del test.
+     * @return Il numero di esiti per tipo: Void.class per le operazioni riuscite, la classe
+     *  dell'eccezione per le altre.
+     */
+    private Map<Class<?>, Integer> raceOnSites(SiteOperation operation) {
+        List<Database> sites = new ArrayList<>();
+        Map<Class<?>, Integer> outcomes = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(SITES);
+        CyclicBarrier barrier = new CyclicBarrier(SITES);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < SITES; i++) {
+                Database site = TestDatabases.openSite();
+                sites.add(site);
+                LoanService loans = new DatabaseLoanService(new DatabaseUserService(site),
+                        new DatabaseBookService(site), site);
+                int index = i;
+
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    try {
+                        operation.run(loans, index);
+                        outcomes.merge(Void.class, 1, Integer::sum);
+                    } catch (Exception e) {
+                        outcomes.merge(e.getClass(), 1, Integer::sum);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                assertDoesNotThrow(() -> future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+            sites.forEach(Database::close);
+        }
+
+        return outcomes;
+    }
+
+    /**
+     * @brief Aggiunge a outcomes gli esiti delle singole richieste di result, con la stessa
+     *  convenzione di raceOnSites.
+     */
+    private void tally(Map<Class<?>, Integer> outcomes, BatchResult<?> result) {
+        result.getSucceeded().forEach(item -> outcomes.merge(Void.class, 1, Integer::sum));
+        result.getFailures().values().forEach(e -> outcomes.merge(e.getClass(), 1, Integer::sum));
+    }
+
+    @FunctionalInterface
+    private interface SiteOperation {
+        void run(LoanService loans, int site) throws Exception;
+    }
 }
@@ -102,6 +102,7 @@ public class DatabasePerformanceTest {
 
         assertTimeout(duration, () -> loanService.getAll());
         assertTimeout(duration, () -> loanService.getActiveByUserId("ABC1314156"));
+        assertTimeout(duration, () -> loanService.getActiveDetailsByUserId("ABC1314156"));
         assertTimeout(duration, () -> loanService.getByUserIdAndBookIsbn("ABC1314156", "9788808123456"));
         assertTimeout(duration, () -> loanService.getByUserIdContaining("ABC1314156"));
         assertTimeout(duration, () -> loanService.getByBookIsbnContaining("9788808123456"));
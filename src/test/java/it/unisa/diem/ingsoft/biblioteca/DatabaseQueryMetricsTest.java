@@ -0,0 +1,145 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+
+public class DatabaseQueryMetricsTest {
+    private Database database;
+    private QueryMetrics metrics;
+    private BookService books;
+
+    @BeforeEach
+    public void setup() {
+        this.database = Database.inMemory();
+        this.metrics = this.database.getQueryMetrics();
+        this.books = new DatabaseBookService(this.database);
+        this.metrics.reset();
+    }
+
+    @AfterEach
+    public void teardown() {
+        this.database.close();
+    }
+
+    @Test
+    public void namedQuery_CountsCallsAndRows() {
+        this.books.existsByIsbn("9780000000001");
+        this.books.existsByIsbn("9780000000002");
+
+        QueryStats stats = this.find(NamedQuery.BOOK_EXISTS_BY_ISBN.name()).get();
+        assertEquals(2, stats.getCalls());
+        assertEquals(2, stats.getRows());
+        assertEquals(0, stats.getErrors());
+        assertTrue(stats.getP50Micros() <= stats.getP99Micros());
+        assertTrue(stats.getP99Micros() <= stats.getMaxMicros());
+    }
+
+    @Test
+    public void update_CountsModifiedRows() throws Exception {
+        this.books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 2, 2, "Fantasy", ""));
+        this.books.updateRemainingCopies("9780000000001", -1);
+
+        QueryStats stats = this.metrics.getQueries().stream()
+            .filter(query -> query.getSql().startsWith("UPDATE books SET remaining_copies"))
+            .findFirst()
+            .get();
+        assertEquals(1, stats.getCalls());
+        assertEquals(1, stats.getRows());
+    }
+
+    @Test
+    public void batch_CountsModifiedRows() throws Exception {
+        this.books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 2, 2, "Fantasy", ""));
+        this.books.add(new Book("9780000000002", "Il Silmarillion", "Tolkien", 1977, 2, 2, "Fantasy", ""));
+
+        this.database.getJdbi().useHandle(handle -> {
+            PreparedBatch batch = handle.prepareBatch("UPDATE books SET description = 'Batch' WHERE isbn = :isbn");
+            for (String isbn : List.of("9780000000001", "9780000000002", "9780000000003")) {
+                batch.bind("isbn", isbn).add();
+            }
+            batch.execute();
+        });
+
+        QueryStats stats = this.metrics.getQueries().stream()
+            .filter(query -> query.getSql().startsWith("UPDATE books SET description = 'Batch'"))
+            .findFirst()
+            .get();
+        assertEquals(1, stats.getCalls());
+        assertEquals(2, stats.getRows());
+    }
+
+    @Test
+    public void failedQuery_CountsError() {
+        assertThrows(RuntimeException.class, () -> this.database.getJdbi()
+                .useHandle(handle -> handle.execute("INSERT INTO auth(password_hash) VALUES ('hash')")));
+
+        // Le risposte di sicurezza mancanti violano il vincolo NOT NULL durante l'esecuzione
+        QueryStats stats = this.find("INSERT INTO auth(password_hash) VALUES ('hash')").get();
+        assertEquals(1, stats.getCalls());
+        assertEquals(1, stats.getErrors());
+    }
+
+    @Test
+    public void slowQueryThreshold_CountsSlowExecutions() {
+        this.books.existsByIsbn("9780000000001");
+        assertEquals(0, this.metrics.getSlowQueryCount());
+
+        this.metrics.setSlowQueryThreshold(Duration.ZERO);
+        this.books.existsByIsbn("9780000000001");
+        assertEquals(1, this.metrics.getSlowQueryCount());
+
+        assertThrows(IllegalArgumentException.class, () -> this.metrics.setSlowQueryThresholdMillis(-1));
+    }
+
+    @Test
+    public void reset_ClearsStatistics() {
+        this.books.existsByIsbn("9780000000001");
+        this.metrics.reset();
+
+        assertTrue(this.metrics.getQueries().isEmpty());
+    }
+
+    @Test
+    public void registerMBean_ExposesStatisticsUntilClose() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(QueryMetrics.OBJECT_NAME);
+
+        this.metrics.registerMBean();
+        this.books.existsByIsbn("9780000000001");
+
+        assertEquals(QueryMetrics.DEFAULT_SLOW_QUERY_THRESHOLD.toMillis(),
+                server.getAttribute(name, "SlowQueryThresholdMillis"));
+        CompositeData[] queries = (CompositeData[]) server.getAttribute(name, "Queries");
+        assertTrue(queries.length > 0);
+        assertTrue(queries[0].containsKey("p99Micros"));
+
+        this.database.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    private Optional<QueryStats> find(String name) {
+        return this.metrics.getQueries().stream()
+            .filter(query -> query.getName().equals(name))
+            .findFirst();
+    }
+}
@@ -0,0 +1,312 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.EntityChange;
+import it.unisa.diem.ingsoft.biblioteca.model.Loan;
+import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.ChangeListener;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
+import it.unisa.diem.ingsoft.biblioteca.service.LoanService;
+import it.unisa.diem.ingsoft.biblioteca.service.UserService;
+
+public class DatabaseReplicationTest {
+    private static final Duration LONG_STALENESS = Duration.ofMinutes(1);
+
+    private final LocalDate start = LocalDate.of(2025, 3, 1);
+    private final List<EntityChange> received = new CopyOnWriteArrayList<>();
+    // Conservato in un campo: i service mantengono i listener con riferimenti deboli
+    private final ChangeListener listener = this.received::add;
+
+    private ReplicatedDatabase first;
+    private ReplicatedDatabase second;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    public void setup() {
+        this.first = this.openDesk("first.db", LONG_STALENESS);
+        this.second = this.openDesk("second.db", LONG_STALENESS);
+    }
+
+    @AfterEach
+    public void teardown() {
+        this.first.close();
+        this.second.close();
+    }
+
+    @Test
+    public void sync_CopiesExistingCatalogueToNewReplica() throws Exception {
+        BookService books = new DatabaseBookService(this.first);
+        UserService users = new DatabaseUserService(this.first);
+        LoanService loans = new DatabaseLoanService(users, books, this.first);
+        books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 2, 2, "Fantasy", ""));
+        users.register(new User("USERID0000", "user0@studenti.unisa.it", "NOME", "COGNOME"));
+        loans.register("USERID0000", "9780000000001", this.start, this.start.plusDays(30));
+
+        ReplicatedDatabase third = this.openDesk("third.db", LONG_STALENESS);
+        try {
+            assertSame(third.getReplica().getReadJdbi(), third.getReadJdbi());
+
+            LoanService thirdLoans = new DatabaseLoanService(new DatabaseUserService(third),
+                    new DatabaseBookService(third), third);
+            Loan loan = thirdLoans.getActiveByUserId("USERID0000").get(0);
+            assertEquals(this.start.plusDays(30), loan.getLoanDeadline());
+            assertEquals(1, new DatabaseBookService(third).getByIsbn("9780000000001").get().getRemainingCopies());
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test
+    public void sync_CopiesCatalogueLargerThanOnePage() throws Exception {
+        List<Book> catalogue = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            catalogue.add(new Book(String.format("978%010d", i), "Titolo " + i, "Autore", 2020, 1, 1, "Genre", ""));
+        }
+        new DatabaseBookService(this.first).addAll(catalogue);
+
+        ReplicatedDatabase third = this.openDesk("third.db", LONG_STALENESS);
+        try {
+            int copied = third.getReplica()
+                .getJdbi()
+                .withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM books")
+                        .mapTo(Integer.class)
+                        .one());
+            assertEquals(2500, copied);
+            assertTrue(this.containsBook(third.getReplica(), "9780000000000"));
+            assertTrue(this.containsBook(third.getReplica(), "9780000002499"));
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test
+    public void read_ReadsOwnWritesBeforeReplicaCatchesUp() throws Exception {
+        BookService books = new DatabaseBookService(this.first);
+        books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 1, 1, "Fantasy", ""));
+
+        // La replica non ha ancora il libro: la lettura va sul primario
+        assertSame(this.first.getPrimary().getReadJdbi(), this.first.getReadJdbi());
+        assertTrue(books.getByIsbn("9780000000001").isPresent());
+        assertFalse(this.containsBook(this.first.getReplica(), "9780000000001"));
+
+        this.first.sync();
+
+        assertSame(this.first.getReplica().getReadJdbi(), this.first.getReadJdbi());
+        assertTrue(this.containsBook(this.first.getReplica(), "9780000000001"));
+    }
+
+    @Test
+    public void read_UsesPrimaryWhenReplicaIsTooOld() throws Exception {
+        ReplicatedDatabase desk = this.openDesk("stale.db", Duration.ofMillis(100));
+        try {
+            assertSame(desk.getReplica().getReadJdbi(), desk.getReadJdbi());
+
+            Thread.sleep(200);
+            assertSame(desk.getPrimary().getReadJdbi(), desk.getReadJdbi());
+
+            desk.sync();
+            assertSame(desk.getReplica().getReadJdbi(), desk.getReadJdbi());
+        } finally {
+            desk.close();
+        }
+    }
+
+    @Test
+    public void sync_AppliesChangesOfOtherDesks() throws Exception {
+        BookService firstBooks = new DatabaseBookService(this.first);
+        UserService firstUsers = new DatabaseUserService(this.first);
+        LoanService firstLoans = new DatabaseLoanService(firstUsers, firstBooks, this.first);
+        BookService secondBooks = new DatabaseBookService(this.second);
+        UserService secondUsers = new DatabaseUserService(this.second);
+        secondBooks.addChangeListener(this.listener);
+
+        firstBooks.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 2, 2, "Fantasy", ""));
+        firstUsers.register(new User("USERID0000", "user0@studenti.unisa.it", "NOME", "COGNOME"));
+        firstLoans.register("USERID0000", "9780000000001", this.start, this.start.plusDays(30));
+
+        this.second.sync();
+
+        assertSame(this.second.getReplica().getReadJdbi(), this.second.getReadJdbi());
+        assertEquals(1, secondBooks.getByIsbn("9780000000001").get().getRemainingCopies());
+        assertEquals(1, secondBooks.getAllByIsbnContaining("000001").size());
+        assertEquals(1, secondUsers.getAllByIdContaining("ID000").size());
+        assertTrue(this.received.contains(EntityChange.book(EntityChange.Type.ADDED, "9780000000001")));
+        assertTrue(this.received.contains(EntityChange.loan(EntityChange.Type.ADDED, "USERID0000", "9780000000001")));
+
+        firstLoans.complete("USERID0000", "9780000000001", this.start.plusDays(3));
+        this.second.sync();
+
+        assertEquals(2, secondBooks.getByIsbn("9780000000001").get().getRemainingCopies());
+        assertTrue(new DatabaseLoanService(secondUsers, secondBooks, this.second)
+                .getActiveByUserId("USERID0000").isEmpty());
+    }
+
+    @Test
+    public void sync_RemovesRowsDeletedOnPrimary() throws Exception {
+        BookService firstBooks = new DatabaseBookService(this.first);
+        BookService secondBooks = new DatabaseBookService(this.second);
+        firstBooks.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 1, 1, "Fantasy", ""));
+        this.second.sync();
+        assertTrue(secondBooks.getByIsbn("9780000000001").isPresent());
+
+        firstBooks.removeByIsbn("9780000000001");
+        this.second.sync();
+
+        assertFalse(secondBooks.getByIsbn("9780000000001").isPresent());
+        assertTrue(secondBooks.getAllByIsbnContaining("000001").isEmpty());
+    }
+
+    @Test
+    public void sync_CopiesRebuiltLoanCounters() throws Exception {
+        BookService books = new DatabaseBookService(this.first);
+        UserService users = new DatabaseUserService(this.first);
+        DatabaseLoanService loans = new DatabaseLoanService(users, books, this.first);
+        books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 2, 2, "Fantasy", ""));
+        users.register(new User("USERID0000", "user0@studenti.unisa.it", "NOME", "COGNOME"));
+        loans.register("USERID0000", "9780000000001", this.start, this.start.plusDays(30));
+
+        // Un contatore modificato a mano arriva alla replica insieme al prestito
+        this.first.getPrimary()
+            .getJdbi()
+            .useHandle(handle -> handle.execute("UPDATE users SET active_loans = 5"));
+        this.second.sync();
+        LoanService secondLoans = new DatabaseLoanService(new DatabaseUserService(this.second),
+                new DatabaseBookService(this.second), this.second);
+        assertEquals(5, secondLoans.countById("USERID0000"));
+
+        assertEquals(1, loans.rebuildActiveLoanCounters());
+        this.second.sync();
+
+        assertSame(this.second.getReplica().getReadJdbi(), this.second.getReadJdbi());
+        assertEquals(1, secondLoans.countById("USERID0000"));
+    }
+
+    @Test
+    public void sync_PrunesEntriesAppliedByEveryReplica() throws Exception {
+        BookService books = new DatabaseBookService(this.first);
+        for (int i = 0; i < 5; i++) {
+            books.add(new Book("978000000000" + i, "Titolo " + i, "Autore", 2000, 1, 1, "Genere", ""));
+        }
+
+        this.first.sync();
+        assertEquals(5, this.countChangeLog());
+
+        this.second.sync();
+        this.first.sync();
+
+        // L'ultima voce resta, per riconoscere le repliche rimaste indietro
+        assertEquals(1, this.countChangeLog());
+    }
+
+    @Test
+    public void sync_PrunesPastReplicasThatStopReporting() throws Exception {
+        Duration retention = Duration.ofMillis(100);
+        ReplicatedDatabase retired = this.openDesk("retired.db", LONG_STALENESS, retention);
+        retired.close();
+
+        ReplicatedDatabase active = this.openDesk("active.db", LONG_STALENESS, retention);
+        try {
+            BookService books = new DatabaseBookService(this.first);
+            for (int i = 0; i < 5; i++) {
+                books.add(new Book("978000000000" + i, "Titolo " + i, "Autore", 2000, 1, 1, "Genere", ""));
+            }
+
+            Thread.sleep(retention.multipliedBy(3).toMillis());
+            active.sync();
+
+            // La replica dismessa non trattiene piu' le voci che non ha applicato
+            assertEquals(1, this.countChangeLog());
+
+            ReplicatedDatabase reopened = this.openDesk("retired.db", LONG_STALENESS, retention);
+            try {
+                assertTrue(this.containsBook(reopened.getReplica(), "9780000000004"));
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            active.close();
+        }
+    }
+
+    @Test
+    public void recordChanges_RejectsHandleOutsideTransaction() {
+        assertThrows(IllegalStateException.class, () -> this.first.getJdbi().useHandle(handle ->
+                    this.first.recordChanges(handle, List.of(EntityChange.book(EntityChange.Type.ADDED,
+                                "9780000000001")))));
+    }
+
+    @Test
+    public void add_RolledBackWhenChangeLogFails() {
+        BookService books = new DatabaseBookService(this.first);
+        this.first.getPrimary()
+            .getJdbi()
+            .useHandle(handle -> handle.execute("DROP TABLE change_log"));
+
+        // Senza la voce nel change log le altre sedi non vedrebbero il libro
+        assertThrows(RuntimeException.class, () -> books.add(new Book("9780000000001", "Lo Hobbit",
+                        "Tolkien", 1937, 1, 1, "Fantasy", "")));
+        assertFalse(this.containsBook(this.first.getPrimary(), "9780000000001"));
+    }
+
+    @Test
+    public void constructor_RejectsNonPositiveStaleness() {
+        Database primary = Database.pooled(this.tempDir.resolve("primary.db"));
+        Database replica = Database.inMemory();
+        try {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new ReplicatedDatabase(primary, replica, Duration.ZERO));
+        } finally {
+            primary.close();
+            replica.close();
+        }
+    }
+
+    private ReplicatedDatabase openDesk(String replica, Duration maxStaleness) {
+        return new ReplicatedDatabase(Database.pooled(this.tempDir.resolve("primary.db")),
+                Database.pooled(this.tempDir.resolve(replica)), maxStaleness);
+    }
+
+    private ReplicatedDatabase openDesk(String replica, Duration maxStaleness, Duration positionRetention) {
+        return new ReplicatedDatabase(Database.pooled(this.tempDir.resolve("primary.db")),
+                Database.pooled(this.tempDir.resolve(replica)), maxStaleness, positionRetention);
+    }
+
+    private boolean containsBook(Database database, String isbn) {
+        return database.getJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM books WHERE isbn = :isbn")
+                    .bind("isbn", isbn)
+                    .mapTo(Integer.class)
+                    .one()) > 0;
+    }
+
+    private int countChangeLog() {
+        return this.first.getPrimary()
+            .getJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM change_log")
+                    .mapTo(Integer.class)
+                    .one());
+    }
+}
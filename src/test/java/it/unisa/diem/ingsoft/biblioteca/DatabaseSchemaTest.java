@@ -0,0 +1,133 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DatabaseSchemaTest {
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void migrate_NewDatabase() {
+        Database database = Database.inMemory();
+
+        assertEquals(Dialect.SQLITE, database.getDialect());
+        assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(database.getJdbi()));
+        database.close();
+    }
+
+    @Test
+    public void migrate_ExistingDatabaseInPlace() {
+        Path dbPath = this.tempDir.resolve("old.db");
+
+        // Database creato da una versione precedente: tabelle presenti, user_version = 0
+        assertDoesNotThrow(() -> {
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+                    Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE users (id TEXT NOT NULL UNIQUE PRIMARY KEY,"
+                        + "email TEXT NOT NULL UNIQUE, name TEXT NOT NULL, surname TEXT NOT NULL)");
+                statement.execute("INSERT INTO users VALUES ('MATRICOLA1', 'a@studenti.unisa.it', 'A', 'B')");
+            }
+        });
+
+        Database database = Database.at(dbPath);
+        Jdbi jdbi = database.getJdbi();
+
+        assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(jdbi));
+        int users = jdbi.withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM users")
+                    .mapTo(Integer.class)
+                    .one());
+        assertEquals(1, users);
+        database.close();
+
+        // Una seconda apertura non riesegue le migrazioni
+        Database reopened = Database.at(dbPath);
+        assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(reopened.getJdbi()));
+        reopened.close();
+    }
+
+    @Test
+    public void migrate_KeysetPageUsesIndex() {
+        Database database = Database.inMemory();
+
+        // La pagina successiva viene letta dall'indice senza ordinare l'intero catalogo
+        List<String> plan = database.getJdbi()
+            .withHandle(handle -> handle.createQuery("EXPLAIN QUERY PLAN SELECT * FROM books "
+                        + "WHERE (title, isbn) > ('A', '1') ORDER BY title, isbn LIMIT 10")
+                    .map((rs, ctx) -> rs.getString("detail"))
+                    .list());
+
+        assertTrue(plan.stream().anyMatch(detail -> detail.contains("idx_books_title_isbn")));
+        assertTrue(plan.stream().noneMatch(detail -> detail.contains("TEMP B-TREE")));
+        database.close();
+    }
+
+    @Test
+    public void migrate_ActiveLoanLookupUsesIndex() {
+        Database database = Database.inMemory();
+
+        List<String> plan = database.getJdbi()
+            .withHandle(handle -> handle.createQuery("EXPLAIN QUERY PLAN SELECT COUNT(*) FROM loans "
+                        + "WHERE user_id = 'A' AND book_isbn = 'B' AND loan_end IS NULL")
+                    .map((rs, ctx) -> rs.getString("detail"))
+                    .list());
+
+        assertTrue(plan.stream().anyMatch(detail -> detail.contains("idx_loans_active_user_book")));
+        database.close();
+    }
+
+    @Test
+    public void migrate_OverdueCountUsesDeadlineIndex() {
+        Database database = Database.inMemory();
+
+        List<String> plan = database.getJdbi()
+            .withHandle(handle -> handle.createQuery("EXPLAIN QUERY PLAN SELECT COUNT(*) FROM loans "
+                        + "WHERE loan_end IS NULL AND loan_deadline < 0")
+                    .map((rs, ctx) -> rs.getString("detail"))
+                    .list());
+
+        assertTrue(plan.stream().anyMatch(detail -> detail.contains("idx_loans_active_deadline")));
+        database.close();
+    }
+
+    @Test
+    public void migrate_ConcurrentStartsOnPostgres() throws Exception {
+        assumeTrue(TestDatabases.isPostgres(), "Lock advisory di PostgreSQL");
+        String url = TestDatabases.emptyPostgresSchema();
+
+        // Piu' sedi che si avviano insieme sullo stesso schema vuoto: il lock advisory
+        // fa applicare ogni versione una sola volta
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<Database>> starts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            starts.add(executor.submit(() -> Database.postgres(url, 1)));
+        }
+
+        try {
+            for (Future<Database> start : starts) {
+                Database database = start.get();
+                assertEquals(Dialect.POSTGRES, database.getDialect());
+                assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(database.getJdbi()));
+                database.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
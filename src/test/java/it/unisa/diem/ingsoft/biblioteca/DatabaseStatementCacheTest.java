@@ -0,0 +1,136 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
+
+public class DatabaseStatementCacheTest {
+    private Database database;
+    private StatementCache cache;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    public void setup() {
+        this.database = Database.inMemory();
+        this.cache = this.database.getStatementCache();
+    }
+
+    @AfterEach
+    public void teardown() {
+        this.database.close();
+    }
+
+    @Test
+    public void namedQuery_PreparedBeforeFirstUse() {
+        BookService books = new DatabaseBookService(this.database);
+        long misses = this.cache.getMissCount();
+        long hits = this.cache.getHitCount();
+
+        assertFalse(books.existsByIsbn("9780000000001"));
+
+        assertEquals(misses, this.cache.getMissCount());
+        assertEquals(hits + 1, this.cache.getHitCount());
+    }
+
+    @Test
+    public void query_ReusedOnSameConnection() {
+        long misses = this.cache.getMissCount();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, this.countBooksAfter(i));
+        }
+
+        assertEquals(misses + 1, this.cache.getMissCount());
+    }
+
+    @Test
+    public void query_ReusedStatementSeesNewRows() throws Exception {
+        BookService books = new DatabaseBookService(this.database);
+        assertFalse(books.existsByIsbn("9780000000001"));
+
+        books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 1, 1, "Fantasy", ""));
+
+        assertTrue(books.existsByIsbn("9780000000001"));
+        assertTrue(books.getByIsbn("9780000000001").isPresent());
+    }
+
+    @Test
+    public void query_PooledReadersReuseStatements() throws Exception {
+        Database pooled = Database.pooled(this.tempDir.resolve("pooled.db"));
+        try {
+            BookService books = new DatabaseBookService(pooled);
+            books.add(new Book("9780000000001", "Lo Hobbit", "Tolkien", 1937, 1, 1, "Fantasy", ""));
+            long misses = pooled.getStatementCache().getMissCount();
+            long hits = pooled.getStatementCache().getHitCount();
+
+            for (int i = 0; i < 20; i++) {
+                assertTrue(books.existsByIsbn("9780000000001"));
+            }
+
+            // Ogni lettore prepara le NamedQuery una sola volta, alla prima richiesta
+            assertEquals(misses, pooled.getStatementCache().getMissCount());
+            assertEquals(hits + 20, pooled.getStatementCache().getHitCount());
+        } finally {
+            pooled.close();
+        }
+    }
+
+    @Test
+    public void setMaxSize_ZeroDisablesReuse() {
+        this.cache.setMaxSize(0);
+        long hits = this.cache.getHitCount();
+
+        assertFalse(new DatabaseBookService(this.database).existsByIsbn("9780000000001"));
+        assertEquals(0, this.countBooksAfter(0));
+        assertEquals(0, this.countBooksAfter(0));
+
+        assertEquals(hits, this.cache.getHitCount());
+    }
+
+    @Test
+    public void setMaxSize_EvictsLeastRecentlyUsed() {
+        this.cache.setMaxSize(1);
+
+        this.countBooksAfter(0);
+        this.count("SELECT COUNT(*) FROM users");
+        long misses = this.cache.getMissCount();
+
+        // La prima query e' stata scartata per fare posto alla seconda
+        this.countBooksAfter(0);
+        assertEquals(misses + 1, this.cache.getMissCount());
+    }
+
+    @Test
+    public void setMaxSize_RejectsNegative() {
+        assertThrows(IllegalArgumentException.class, () -> this.cache.setMaxSize(-1));
+    }
+
+    private int countBooksAfter(int year) {
+        return this.database.getJdbi()
+            .withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM books WHERE release_year < :year")
+                    .bind("year", year)
+                    .mapTo(Integer.class)
+                    .one());
+    }
+
+    private int count(String sql) {
+        return this.database.getJdbi()
+            .withHandle(handle -> handle.createQuery(sql)
+                    .mapTo(Integer.class)
+                    .one());
+    }
+}
@@ -1,10 +1,14 @@
 package it.unisa.diem.ingsoft.biblioteca;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,9 +20,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.junit.jupiter.api.io.TempDir;
 
+import it.unisa.diem.ingsoft.biblioteca.model.BatchResult;
 import it.unisa.diem.ingsoft.biblioteca.model.Book;
+import it.unisa.diem.ingsoft.biblioteca.model.BookSort;
+import it.unisa.diem.ingsoft.biblioteca.model.ImportReport;
+import it.unisa.diem.ingsoft.biblioteca.model.LoanRequest;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
+import it.unisa.diem.ingsoft.biblioteca.model.ReturnRequest;
 import it.unisa.diem.ingsoft.biblioteca.model.User;
 import it.unisa.diem.ingsoft.biblioteca.service.BookService;
+import it.unisa.diem.ingsoft.biblioteca.service.CatalogueImporter;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseBookService;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseLoanService;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
@@ -177,6 +189,19 @@ public class DatabaseStressTest {
 
     @Test
     @Order(8)
+    public void performance_SearchRanked() {
+        long start = System.currentTimeMillis();
+
+        List<Book> results = bookService.search("TITOLO DRAMMATICO", 50);
+
+        long end = System.currentTimeMillis();
+
+        assertTrue(results.size() == 50);
+        System.out.println(String.format("RICERCA FULL-TEXT SU 10000 LIBRI: IMPIEGATO %d ms", end - start));
+    }
+
+    @Test
+    @Order(9)
     public void performance_ReturnLoans() {
         int count = 1000;
         long start = System.currentTimeMillis();
@@ -199,6 +224,164 @@ public class DatabaseStressTest {
                     count, end - start));
     }
 
+    @Test
+    @Order(10)
+    public void performance_RegisterLoansBulk() {
+        int count = 5000;
+        LocalDate now = LocalDate.now();
+
+        List<LoanRequest> requests = new ArrayList<>();
+        for (int i = 5000; i < 5000 + count; i++) {
+            String userId = String.format("MATRI%05d", i);
+            String isbn = String.format("00000000%05d", i);
+
+            requests.add(new LoanRequest(userId, isbn, now, now.plusDays(30)));
+        }
+
+        long start = System.currentTimeMillis();
+
+        BatchResult<LoanRequest> result = loanService.registerAll(requests);
+
+        long end = System.currentTimeMillis();
+
+        assertTrue(result.isSuccessful());
+        System.out.println(String.format("INSERIMENTO IN BLOCCO DI %d PRESTITI: IMPIEGATO %d ms",
+                    count, end - start));
+    }
+
+    @Test
+    @Order(11)
+    public void performance_ReturnLoansBulk() {
+        int count = 1000;
+
+        List<ReturnRequest> requests = new ArrayList<>();
+        for (int i = 1000; i < 1000 + count; i++) {
+            String userId = String.format("MATRI%05d", i);
+            String isbn = String.format("00000000%05d", i);
+
+            requests.add(new ReturnRequest(userId, isbn));
+        }
+
+        long start = System.currentTimeMillis();
+
+        BatchResult<ReturnRequest> result = loanService.completeAll(requests, LocalDate.now());
+
+        long end = System.currentTimeMillis();
+
+        assertTrue(result.isSuccessful());
+        System.out.println(String.format("RESTITUZIONE IN BLOCCO DI %d PRESTITI: IMPIEGATO %d ms",
+                    count, end - start));
+    }
+
+    @Test
+    @Order(12)
+    public void performance_GetBookPages() {
+        int size = 200;
+
+        long firstStart = System.currentTimeMillis();
+        Page<Book> first = bookService.getPage(PageKey.first(), size, BookSort.TITLE);
+        long firstEnd = System.currentTimeMillis();
+
+        // Scorre tutto il catalogo: ogni pagina riparte dalla chiave della precedente
+        long walkStart = System.currentTimeMillis();
+        int books = first.getItems().size();
+        int pages = 1;
+        Page<Book> page = first;
+        while (page.hasNext()) {
+            page = bookService.getPage(page.getNextKey().get(), size, BookSort.TITLE);
+            books += page.getItems().size();
+            pages++;
+        }
+        long walkEnd = System.currentTimeMillis();
+
+        assertTrue(books >= 10000);
+        System.out.println(String.format("PRIMA PAGINA DI %d LIBRI: IMPIEGATO %d ms", size, firstEnd - firstStart));
+        System.out.println(String.format("LETTURA DI %d LIBRI IN %d PAGINE: IMPIEGATO %d ms",
+                    books, pages, walkEnd - walkStart));
+    }
+
+    @Test
+    @Order(13)
+    public void performance_GetByIsbnCached() {
+        int books = 100;
+        int rounds = 1000;
+
+        List<String> isbns = new ArrayList<>();
+        for (int i = 0; i < books; i++) {
+            isbns.add(String.format("00000000%05d", i));
+        }
+
+        // Prima lettura di ogni libro: dal database
+        long coldStart = System.nanoTime();
+        for (String isbn : isbns) {
+            assertTrue(bookService.getByIsbn(isbn).isPresent());
+        }
+        long coldEnd = System.nanoTime();
+
+        // Letture ripetute, come le celle della tabella dei prestiti: dalla cache
+        long warmStart = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String isbn : isbns) {
+                bookService.getByIsbn(isbn);
+            }
+        }
+        long warmEnd = System.nanoTime();
+
+        System.out.println(String.format("LETTURA PER ISBN DAL DATABASE: IMPIEGATO %d ns PER LIBRO",
+                    (coldEnd - coldStart) / books));
+        System.out.println(String.format("LETTURA PER ISBN DALLA CACHE: IMPIEGATO %d ns PER LIBRO",
+                    (warmEnd - warmStart) / ((long) books * rounds)));
+    }
+
+    @Test
+    @Order(14)
+    public void performance_ImportCatalogueStreaming() throws IOException {
+        int total = 50000;
+
+        // Il file viene generato man mano che l'importer lo legge: non esiste mai per intero in memoria
+        Reader csv = new Reader() {
+            private int row = -1;
+            private String line = "";
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (this.position == this.line.length()) {
+                    if (this.row == total) {
+                        return -1;
+                    }
+
+                    this.line = this.row < 0
+                        ? "isbn,title,author,release_year,total_copies,genre,description\n"
+                        : String.format("97%011d,Titolo importato %d,Autore %d,%d,3,Genere,Descrizione\n",
+                                this.row, this.row, this.row % 500, 1900 + this.row % 120);
+                    this.position = 0;
+                    this.row++;
+                }
+
+                int count = Math.min(length, this.line.length() - this.position);
+                this.line.getChars(this.position, this.position + count, buffer, offset);
+                this.position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        ImportReport report = new CatalogueImporter(bookService, database).importFrom("stress", csv,
+                CatalogueImporter.Format.CSV);
+        long end = System.currentTimeMillis();
+
+        assertEquals(total, report.getImportedRows());
+        assertEquals(0, report.getFailedRows());
+
+        System.out.println(String.format("IMPORTAZIONE CSV DI %d LIBRI A BLOCCHI: IMPIEGATO %d ms",
+                    total, end - start));
+    }
+
     @AfterAll
     public static void teardown() {
         database.close();
@@ -0,0 +1,128 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
+import it.unisa.diem.ingsoft.biblioteca.service.UserService;
+
+/**
+ * Confronta la ricerca per sottostringa delle matricole tramite indice trigram con la
+ * LIKE SQL. Il caso da 1.000.000 di righe si abilita con -Dbiblioteca.stress.large=true.
+ */
+public class DatabaseSubstringIndexStressTest {
+    private static final int QUERIES = 200;
+    private static final int BATCH = 10000;
+
+    @TempDir
+    private static Path tempDir;
+
+    @BeforeAll
+    public static void setup() {
+        System.out.println("--- INIZIO STRESS TEST INDICE TRIGRAM ---");
+    }
+
+    @Test
+    public void getAllByIdContaining_10k() {
+        this.compare(10_000);
+    }
+
+    @Test
+    public void getAllByIdContaining_100k() {
+        this.compare(100_000);
+    }
+
+    @Test
+    public void getAllByIdContaining_1M() {
+        if (!Boolean.getBoolean("biblioteca.stress.large")) {
+            System.out.println("TEST DA 1000000 RIGHE SALTATO (-Dbiblioteca.stress.large=true)");
+            return;
+        }
+
+        this.compare(1_000_000);
+    }
+
+    private void compare(int rows) {
+        Database database = Database.at(tempDir.resolve("index-" + rows + ".db"));
+        Random random = new Random(rows);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            ids.add(String.format("%010d", Math.floorMod(random.nextLong(), 10_000_000_000L)));
+        }
+
+        database.getJdbi().useTransaction(handle -> {
+            PreparedBatch batch = handle.prepareBatch("INSERT OR IGNORE INTO users(id, email, name, surname) "
+                    + "VALUES (:id, :email, :name, :surname)");
+
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                batch.bind("id", id)
+                    .bind("email", id + "@studenti.unisa.it")
+                    .bind("name", "NOME")
+                    .bind("surname", "COGNOME")
+                    .add();
+
+                if ((i + 1) % BATCH == 0) {
+                    batch.execute();
+                }
+            }
+
+            batch.execute();
+        });
+
+        // Sottostringhe di 5 cifre prese da matricole esistenti
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            String id = ids.get(random.nextInt(ids.size()));
+            int start = random.nextInt(id.length() - 5);
+            queries.add(id.substring(start, start + 5));
+        }
+
+        long buildStart = System.currentTimeMillis();
+        UserService userService = new DatabaseUserService(database);
+        long buildTime = System.currentTimeMillis() - buildStart;
+
+        long sqlStart = System.currentTimeMillis();
+        List<Integer> sqlSizes = new ArrayList<>();
+        for (String query : queries) {
+            sqlSizes.add(database.getReadJdbi()
+                    .withHandle(handle -> handle.createQuery("SELECT * FROM users WHERE id LIKE :id")
+                        .bind("id", "%" + query + "%")
+                        .mapTo(User.class)
+                        .list())
+                    .size());
+        }
+        long sqlTime = System.currentTimeMillis() - sqlStart;
+
+        long indexStart = System.currentTimeMillis();
+        List<Integer> indexSizes = new ArrayList<>();
+        for (String query : queries) {
+            indexSizes.add(userService.getAllByIdContaining(query).size());
+        }
+        long indexTime = System.currentTimeMillis() - indexStart;
+
+        assertEquals(sqlSizes, indexSizes);
+        database.close();
+
+        System.out.println(String.format("RIGHE: %d - COSTRUZIONE INDICE: %d ms", rows, buildTime));
+        System.out.println(String.format("RIGHE: %d - %d RICERCHE CON LIKE: %d ms, CON INDICE: %d ms",
+                    rows, QUERIES, sqlTime, indexTime));
+    }
+
+    @AfterAll
+    public static void teardown() {
+        System.out.println("--- FINE STRESS TEST INDICE TRIGRAM ---");
+    }
+}
@@ -6,6 +6,9 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -14,12 +17,16 @@ import it.unisa.diem.ingsoft.biblioteca.exception.DuplicateUserByIdException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidEmailException;
 import it.unisa.diem.ingsoft.biblioteca.exception.InvalidIdException;
 import it.unisa.diem.ingsoft.biblioteca.exception.UnknownUserByIdException;
+import it.unisa.diem.ingsoft.biblioteca.model.Page;
+import it.unisa.diem.ingsoft.biblioteca.model.PageKey;
 import it.unisa.diem.ingsoft.biblioteca.model.User;
+import it.unisa.diem.ingsoft.biblioteca.model.UserSort;
 import it.unisa.diem.ingsoft.biblioteca.service.DatabaseUserService;
 import it.unisa.diem.ingsoft.biblioteca.service.UserService;
 
 public class DatabaseUserServiceTest {
     private UserService userService;
+    private QueryCounter queries;
     private User validUser;
 
     private final String validId = "ABC123DEF5";
@@ -31,9 +38,10 @@ public class DatabaseUserServiceTest {
 
     @BeforeEach
     public void setup() {
-        Database database = Database.inMemory();
+        Database database = TestDatabases.create();
         this.userService = new DatabaseUserService(database);
-        
+        this.queries = QueryCounter.attach(database);
+
         this.validUser = new User(this.validId, this.validEmail, this.validName, this.validSurname);
     }
 
@@ -80,6 +88,26 @@ public class DatabaseUserServiceTest {
         });
     }
 
+    @Test
+    public void register_SingleInsert() throws Exception {
+        this.queries.assertQueries(1, () -> this.userService.register(this.validUser));
+
+        User duplicateEmail = new User("DEF1231239", this.validEmail, this.validName, this.validSurname);
+        // Solo un inserimento fallito paga la select che distingue i duplicati
+        assertThrows(DuplicateUserByEmailException.class,
+                () -> this.queries.assertQueries(2, () -> this.userService.register(duplicateEmail)));
+    }
+
+    @Test
+    public void register_DuplicateEmailBeforeInvalidId() {
+        assertDoesNotThrow(() -> this.userService.register(this.validUser));
+
+        assertThrows(DuplicateUserByEmailException.class, () -> {
+            User user = new User(this.invalidId, this.validEmail, this.validName, this.validSurname);
+            this.userService.register(user);
+        });
+    }
+
     @Test
     public void getById_ExistingId() {
         assertDoesNotThrow(() -> this.userService.register(this.validUser));
@@ -114,6 +142,18 @@ public class DatabaseUserServiceTest {
         assertFalse(this.userService.getAllByFullNameContaining("", "AREL").isEmpty());
     }
 
+    @Test
+    public void getAllByIdContaining_FollowsRegisterAndRemove() {
+        assertDoesNotThrow(() -> this.userService.register(this.validUser));
+
+        assertEquals(1, this.userService.getAllByIdContaining("123def").size());
+        assertEquals(1, this.userService.getAllByIdContaining("C1").size());
+        assertTrue(this.userService.getAllByIdContaining("XYZ").isEmpty());
+
+        assertTrue(this.userService.removeById(this.validId));
+        assertTrue(this.userService.getAllByIdContaining("123DEF").isEmpty());
+    }
+
     @Test
     public void existsById_ExistingId() {
         assertDoesNotThrow(() -> this.userService.register(this.validUser));
@@ -160,6 +200,18 @@ public class DatabaseUserServiceTest {
         assertEquals("MODIFIED_SURNAME", retrieved.getSurname());
     }
 
+    @Test
+    public void updateById_SingleUpdate() throws Exception {
+        assertDoesNotThrow(() -> this.userService.register(this.validUser));
+
+        User updatedUser = new User(this.validId, this.validEmail, "MODIFIED_NAME", this.validSurname);
+        this.queries.assertQueries(1, () -> this.userService.updateById(updatedUser));
+
+        User unknown = new User("1234567890", "other@studenti.unisa.it", "EMPTY", "EMPTY");
+        assertThrows(UnknownUserByIdException.class,
+                () -> this.queries.assertQueries(1, () -> this.userService.updateById(unknown)));
+    }
+
     @Test
     public void updateById_NonExistingUser() {
         User user = new User("1234567890", this.validEmail, "EMPTY", "EMPTY");
@@ -168,6 +220,35 @@ public class DatabaseUserServiceTest {
         });
     }
 
+    @Test
+    public void getPage_BySurnameThenName() {
+        String[][] people = {
+            {"0000000001", "MARIO", "ROSSI"},
+            {"0000000002", "ANNA", "BIANCHI"},
+            {"0000000003", "LUCA", "ROSSI"},
+            {"0000000004", "ANNA", "ROSSI"},
+            {"0000000005", "PAOLO", "VERDI"}
+        };
+
+        assertDoesNotThrow(() -> {
+            for (String[] person : people) {
+                this.userService.register(new User(person[0], person[0] + "@studenti.unisa.it",
+                            person[1], person[2]));
+            }
+        });
+
+        List<String> walked = new ArrayList<>();
+        PageKey after = PageKey.first();
+        Page<User> page;
+        do {
+            page = this.userService.getPage(after, 2, UserSort.SURNAME);
+            page.getItems().forEach(user -> walked.add(user.getId()));
+            after = page.getNextKey().orElse(null);
+        } while (page.hasNext());
+
+        assertEquals(List.of("0000000002", "0000000004", "0000000003", "0000000001", "0000000005"), walked);
+    }
+
     @Test
     public void isEmailValid_InvalidFormats() {
         assertFalse(this.userService.isEmailValid("INVALID@INVALID.IT"));
@@ -0,0 +1,72 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.core.statement.StatementCustomizer;
+
+/**
+ * @brief Conta le istruzioni SQL eseguite su un database, per verificare quante volte un
+ *  metodo dei service va al database. Un PreparedBatch conta come una sola istruzione.
+ *  Il contatore resta installato sulle istanze JDBI del database fino alla sua chiusura.
+ */
+public class QueryCounter implements StatementCustomizer {
+    private final AtomicInteger count = new AtomicInteger();
+
+    private QueryCounter() {
+    }
+
+    /**
+     * @brief Installa un contatore sulle istanze JDBI di scrittura e di lettura.
+     */
+    public static QueryCounter attach(Database database) {
+        QueryCounter counter = new QueryCounter();
+        Jdbi writer = database.getJdbi();
+        Jdbi reader = database.getReadJdbi();
+
+        writer.addCustomizer(counter);
+        if (reader != writer) {
+            reader.addCustomizer(counter);
+        }
+
+        return counter;
+    }
+
+    @Override
+    public void beforeExecution(PreparedStatement statement, StatementContext ctx) {
+        this.count.incrementAndGet();
+    }
+
+    /**
+     * @brief Restituisce il numero di istruzioni eseguite dall'ultimo reset.
+     */
+    public int getCount() {
+        return this.count.get();
+    }
+
+    public void reset() {
+        this.count.set(0);
+    }
+
+    /**
+     * @brief Esegue action e verifica che abbia eseguito esattamente expected istruzioni,
+     *  anche se termina con un'eccezione, che viene poi rilanciata.
+     */
+    public void assertQueries(int expected, Action action) throws Exception {
+        this.reset();
+        try {
+            action.run();
+        } finally {
+            assertEquals(expected, this.getCount(), "Numero di istruzioni SQL eseguite");
+        }
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+}
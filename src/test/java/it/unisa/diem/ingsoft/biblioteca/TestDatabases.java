@@ -0,0 +1,120 @@
+package it.unisa.diem.ingsoft.biblioteca;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * @brief Crea il database su cui eseguire i test dei service.
+ *  Di default e' un database SQLite in memoria. Se la proprieta' di sistema
+ *  biblioteca.postgres.url contiene l'URL JDBC di un server PostgreSQL (profilo Maven
+ *  postgres) i test usano invece quel server: ogni test parte dallo schema vuoto
+ *  biblioteca_test, ricreato ad ogni chiamata.
+ *  Con il valore embedded viene avviato, una sola volta per JVM, un server PostgreSQL
+ *  locale dai binari di embedded-postgres, senza bisogno di un server esterno.
+ */
+public class TestDatabases {
+    public static final String POSTGRES_URL_PROPERTY = "biblioteca.postgres.url";
+    public static final String EMBEDDED = "embedded";
+
+    private static final String POSTGRES_SCHEMA = "biblioteca_test";
+
+    // I test non chiudono i database: si chiude il precedente per non esaurire le connessioni
+    private static Database current;
+    private static String currentUrl;
+    private static EmbeddedPostgres embedded;
+
+    private TestDatabases() {
+    }
+
+    /**
+     * @brief Crea un database vuoto con lo schema piu' recente.
+     */
+    public static synchronized Database create() {
+        if (!TestDatabases.isPostgres()) {
+            return Database.inMemory();
+        }
+
+        currentUrl = TestDatabases.emptyPostgresSchema();
+        current = Database.postgres(currentUrl, 2);
+        return current;
+    }
+
+    /**
+     * @brief Apre un'altra sede, con un proprio pool di connessioni, sul database creato
+     *  dall'ultima chiamata a create. Le sedi vanno chiuse dal test.
+     * @throws IllegalStateException Se i test non vengono eseguiti su PostgreSQL: un
+     *  database SQLite in memoria non e' condivisibile.
+     */
+    public static synchronized Database openSite() {
+        if (currentUrl == null) {
+            throw new IllegalStateException("Nessun database PostgreSQL creato");
+        }
+
+        return Database.postgres(currentUrl, 1);
+    }
+
+    /**
+     * @brief Ricrea vuoto lo schema di test su PostgreSQL, chiudendo il database creato
+     *  in precedenza, senza aprire un nuovo Database.
+     * @return L'URL JDBC con cui aprire lo schema.
+     */
+    public static synchronized String emptyPostgresSchema() {
+        if (current != null) {
+            current.close();
+            current = null;
+            currentUrl = null;
+        }
+
+        String url = System.getProperty(POSTGRES_URL_PROPERTY, "");
+        if (url.equals(EMBEDDED)) {
+            url = TestDatabases.startEmbedded();
+        }
+
+        try (Connection connection = DriverManager.getConnection(url);
+                Statement statement = connection.createStatement()) {
+            // L'estensione resta in public, cosi' non viene eliminata insieme allo schema di test
+            statement.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm SCHEMA public");
+            statement.execute("DROP SCHEMA IF EXISTS " + POSTGRES_SCHEMA + " CASCADE");
+            statement.execute("CREATE SCHEMA " + POSTGRES_SCHEMA);
+        } catch (SQLException e) {
+            throw new RuntimeException("Impossibile preparare lo schema di test su " + url, e);
+        }
+
+        String separator = url.contains("?") ? "&" : "?";
+        return url + separator + "currentSchema=" + POSTGRES_SCHEMA + ",public";
+    }
+
+    /**
+     * @brief Indica se i test vengono eseguiti su PostgreSQL.
+     */
+    public static boolean isPostgres() {
+        return !System.getProperty(POSTGRES_URL_PROPERTY, "").isBlank();
+    }
+
+    private static String startEmbedded() {
+        if (embedded == null) {
+            try {
+                embedded = EmbeddedPostgres.builder()
+                    .start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossibile avviare PostgreSQL embedded", e);
+            }
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    embedded.close();
+                } catch (IOException e) {
+                    // Il processo termina comunque con la JVM
+                }
+            }));
+        }
+
+        return embedded.getJdbcUrl("postgres", "postgres");
+    }
+}